@@ -0,0 +1,179 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ArrayCodecTest {
+
+    private static final int OFFSET = 7;
+
+    @ParameterizedTest
+    @CsvSource({
+        "16bit_8000Hz_mono.wav,    4",
+        "16bit_8000Hz_stereo.wav,  4",
+        "16bit_44100Hz_mono.wav,   4",
+        "16bit_44100Hz_stereo.wav, 4",
+        "16bit_44100Hz_stereo.wav, 2",
+        "16bit_44100Hz_mono.wav,   3",
+        "16bit_44100Hz_stereo.wav, 5",
+    })
+    public void matchesBufferCodec(String name, int bits) throws IOException {
+        WAVFile pcm     = TestUtils.getClasspathWav("pcm_"+name);
+        short[] samples = toArray(pcm.getReadOnlyData().asShortBuffer());
+
+        ADPCMEncoderConfig ecfg =
+            ADPCMEncoder.configure()
+            .setChannels     (pcm.getChannels())
+            .setSampleRate   (pcm.getSampleRate())
+            .setBitsPerSample(bits)
+            .end();
+
+        ADPCMDecoderConfig dcfg =
+            ADPCMDecoder.configure()
+            .setChannels     (pcm.getChannels())
+            .setSampleRate   (pcm.getSampleRate())
+            .setBlockSize    (ecfg.getBlockSize())
+            .setBitsPerSample(bits)
+            .end();
+
+        final int outSize = ecfg.computeOutputSize(samples.length / pcm.getChannels());
+
+        // encode
+        // -------------------------------------------------------------------------------------------------------------
+        ByteBuffer expectAdpcm = new ADPCMEncoder(ecfg).encode(ShortBuffer.wrap(samples), ByteBuffer.allocate(outSize));
+
+        short[] in = new short[samples.length + OFFSET];
+        System.arraycopy(samples, 0, in, OFFSET, samples.length);
+
+        // the output array is dirty, to check that unused bytes are cleared
+        byte[] adpcm = new byte[outSize + OFFSET];
+        Arrays.fill(adpcm, (byte) 0x55);
+
+        assertEquals(outSize, new ADPCMEncoder(ecfg).encode(in, OFFSET, samples.length, adpcm, OFFSET));
+        assertArrayEquals(expectAdpcm.array(), Arrays.copyOfRange(adpcm, OFFSET, adpcm.length));
+
+        // decode
+        // -------------------------------------------------------------------------------------------------------------
+        ShortBuffer expectPcm = new ADPCMDecoder(dcfg).decode(expectAdpcm.flip(), ShortBuffer.allocate(samples.length));
+
+        short[] out = new short[samples.length + OFFSET];
+
+        assertEquals(outSize, new ADPCMDecoder(dcfg).decode(adpcm, OFFSET, out, OFFSET, samples.length));
+        assertArrayEquals(expectPcm.array(), Arrays.copyOfRange(out, OFFSET, out.length));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "16bit_8000Hz_mono.wav,    4",
+        "16bit_8000Hz_stereo.wav,  4",
+        "16bit_44100Hz_stereo.wav, 2",
+        "16bit_44100Hz_stereo.wav, 3",
+        "16bit_88200Hz_stereo.wav, 5",
+    })
+    public void planarMatchesInterleaved(String name, int bits) throws IOException {
+        WAVFile pcm      = TestUtils.getClasspathWav("pcm_"+name);
+        short[] samples  = toArray(pcm.getReadOnlyData().asShortBuffer());
+        int     channels = pcm.getChannels();
+        int     length   = samples.length / channels;
+
+        ADPCMEncoderConfig ecfg =
+            ADPCMEncoder.configure()
+            .setChannels     (channels)
+            .setSampleRate   (pcm.getSampleRate())
+            .setBitsPerSample(bits)
+            .end();
+
+        ADPCMDecoderConfig dcfg =
+            ADPCMDecoder.configure()
+            .setChannels     (channels)
+            .setSampleRate   (pcm.getSampleRate())
+            .setBlockSize    (ecfg.getBlockSize())
+            .setBitsPerSample(bits)
+            .end();
+
+        final int outSize = ecfg.computeOutputSize(length);
+
+        // encode
+        // -------------------------------------------------------------------------------------------------------------
+        byte[] expectAdpcm = new byte[outSize];
+        new ADPCMEncoder(ecfg).encode(samples, 0, samples.length, expectAdpcm, 0);
+
+        short[][] in = new short[channels][length + OFFSET];
+        for (int i=0; i<samples.length; i++) {
+            in[i % channels][OFFSET + i / channels] = samples[i];
+        }
+
+        byte[] adpcm = new byte[outSize + OFFSET];
+        Arrays.fill(adpcm, (byte) 0x55);
+
+        assertEquals(outSize, new ADPCMEncoder(ecfg).encode(in, OFFSET, length, adpcm, OFFSET));
+        assertArrayEquals(expectAdpcm, Arrays.copyOfRange(adpcm, OFFSET, adpcm.length));
+
+        // decode
+        // -------------------------------------------------------------------------------------------------------------
+        short[] expectPcm = new short[samples.length];
+        new ADPCMDecoder(dcfg).decode(expectAdpcm, 0, expectPcm, 0, expectPcm.length);
+
+        short[][] out = new short[channels][length + OFFSET];
+
+        assertEquals(outSize, new ADPCMDecoder(dcfg).decode(adpcm, OFFSET, out, OFFSET, length));
+
+        for (int i=0; i<expectPcm.length; i++) {
+            assertEquals(expectPcm[i], out[i % channels][OFFSET + i / channels], "sample "+i);
+        }
+    }
+
+    @Test
+    public void rejectsBadPlanarArrays() {
+        ADPCMEncoderConfig ecfg = ADPCMEncoder.configure().setChannels(2).end();
+        ADPCMDecoderConfig dcfg = ADPCMDecoder.configure().setChannels(2).setBlockSize(ecfg.getBlockSize()).end();
+
+        ADPCMEncoder encoder = new ADPCMEncoder(ecfg);
+        ADPCMDecoder decoder = new ADPCMDecoder(dcfg);
+
+        assertThrows(IllegalArgumentException.class, () ->
+            encoder.encode(new short[1][10], 0, 10, new byte[1024], 0));
+        assertThrows(IllegalArgumentException.class, () ->
+            decoder.decode(new byte[1024], 0, new short[3][10], 0, 10));
+
+        assertThrows(IndexOutOfBoundsException.class, () ->
+            encoder.encode(new short[][] { new short[10], new short[5] }, 0, 10, new byte[1024], 0));
+        assertThrows(IndexOutOfBoundsException.class, () ->
+            decoder.decode(new byte[1024], 0, new short[][] { new short[10], new short[5] }, 0, 10));
+    }
+
+    @Test
+    public void rejectsBadRanges() {
+        ADPCMEncoderConfig ecfg = ADPCMEncoder.configure().setChannels(1).end();
+        ADPCMDecoderConfig dcfg = ADPCMDecoder.configure().setChannels(1).setBlockSize(ecfg.getBlockSize()).end();
+
+        ADPCMEncoder encoder = new ADPCMEncoder(ecfg);
+        ADPCMDecoder decoder = new ADPCMDecoder(dcfg);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> encoder.encode(new short[10], 5, 10, new byte[1024], 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> encoder.encode(new short[10], 0, 10, new byte[4], 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> decoder.decode(new byte[1024], 0, new short[10], 5, 10));
+
+        final byte[]  truncated = new byte[ecfg.getBlockSize() - 1];
+        final short[] block     = new short[ecfg.getSamplesPerBlock()];
+        assertThrows(IOException.class, () -> decoder.decode(truncated, 0, block, 0, block.length));
+    }
+
+    private static short[] toArray(ShortBuffer buf) {
+        short[] dst = new short[buf.remaining()];
+        buf.get(dst);
+        return dst;
+    }
+}
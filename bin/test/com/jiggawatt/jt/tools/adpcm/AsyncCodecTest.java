@@ -0,0 +1,94 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.AsyncCodec;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsyncCodecTest {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @ValueSource(strings={"16bit_8000Hz_mono.wav", "16bit_44100Hz_stereo.wav"})
+    public void encodesFileToFile(String name) throws IOException {
+        Path in  = copyToTemp("pcm_"+name);
+        Path out = tempDir.resolve("adpcm_"+name);
+
+        AsyncCodec.getDefault().encodeAsync(in, out).join();
+
+        assertEquals(TestUtils.getClasspathWav("adpcm_"+name), WAVFile.fromFile(out));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings={"16bit_8000Hz_mono.wav", "16bit_44100Hz_stereo.wav"})
+    public void decodesFileToFile(String name) throws IOException {
+        Path in  = copyToTemp("adpcm_"+name);
+        Path out = tempDir.resolve("dec_"+name);
+
+        AsyncCodec.getDefault().decodeAsync(in, out).join();
+
+        WAVFile expect = TestUtils.getClasspathWav("dec_"+name);
+        WAVFile actual = WAVFile.fromFile(out);
+
+        assertEquals(expect.getFormat(),       actual.getFormat());
+        assertEquals(expect.getChannels(),     actual.getChannels());
+        assertEquals(expect.getSampleRate(),   actual.getSampleRate());
+        assertEquals(expect.getNumSamples(),   actual.getNumSamples());
+        assertEquals(expect.getReadOnlyData(), actual.getReadOnlyData());
+    }
+
+    @Test
+    public void readsFile() throws IOException {
+        Path in = copyToTemp("adpcm_16bit_8000Hz_stereo.wav");
+
+        WAVFile actual = AsyncCodec.getDefault().readAsync(in).join();
+
+        assertEquals(TestUtils.getClasspathWav("adpcm_16bit_8000Hz_stereo.wav"), actual);
+    }
+
+    @Test
+    public void failsOnMissingFile() {
+        CompletionException e = assertThrows(
+            CompletionException.class,
+            () -> AsyncCodec.getDefault().readAsync(tempDir.resolve("missing.wav")).join()
+        );
+
+        assertTrue(e.getCause() instanceof IOException);
+    }
+
+    @Test
+    public void rejectsAdpcmInputToEncoder() throws IOException {
+        Path in = copyToTemp("adpcm_16bit_8000Hz_mono.wav");
+
+        CompletionException e = assertThrows(
+            CompletionException.class,
+            () -> AsyncCodec.getDefault().encodeAsync(in, tempDir.resolve("out.wav")).join()
+        );
+
+        assertTrue(e.getCause() instanceof IOException);
+    }
+
+    private Path copyToTemp(String name) throws IOException {
+        Path dst = tempDir.resolve(name);
+        try (InputStream in = TestUtils.openClasspathStream(name)) {
+            Files.copy(in, dst, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return dst;
+    }
+}
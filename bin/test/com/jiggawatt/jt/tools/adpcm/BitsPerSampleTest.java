@@ -0,0 +1,232 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BitsPerSampleTest {
+
+    // block layout
+    // =================================================================================================================
+    @ParameterizedTest
+    @CsvSource({
+        // bits, channels, block size, samples per block
+        "2, 1, 256, 1009",
+        "3, 1, 256, 673",
+        "4, 1, 256, 505",
+        "5, 1, 256, 385",
+        "2, 2, 512, 1009",
+        "3, 2, 512, 673",
+        "5, 2, 512, 385",
+    })
+    public void computesSamplesPerBlock(int bits, int channels, int blockSize, int samplesPerBlock) {
+        ADPCMEncoderConfig cfg =
+            ADPCMEncoder.configure()
+            .setChannels     (channels)
+            .setBlockSize    (blockSize)
+            .setBitsPerSample(bits)
+            .end();
+
+        assertEquals(samplesPerBlock, cfg.getSamplesPerBlock());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints={0, 1, 6, 8, 16})
+    public void rejectsUnsupportedBitsPerSample(int bits) {
+        assertThrows(IllegalArgumentException.class, () -> ADPCMEncoder.configure().setBitsPerSample(bits));
+        assertThrows(IllegalArgumentException.class, () -> ADPCMDecoder.configure().setBitsPerSample(bits));
+    }
+
+    @Test
+    public void decodesCodesLeastSignificantBitFirst() throws IOException {
+        ADPCMDecoderConfig cfg =
+            ADPCMDecoder.configure()
+            .setChannels     (1)
+            .setBitsPerSample(2)
+            .end();
+
+        // initial sample 0 at step index 0, then the codes 1, 0, 0, ...
+        ByteBuffer  block = ByteBuffer.wrap(new byte[] { 0, 0, 0, 0, 0x01, 0, 0, 0 });
+        ShortBuffer out   = ShortBuffer.allocate(17);
+
+        new ADPCMDecoder(cfg).decode(block, out);
+
+        short[] actual = new short[4];
+        out.flip().get(actual);
+
+        // (3 * 7) >> 1 = 10, then (1 * 9) >> 1 = 4, then (1 * 8) >> 1 = 4, then (1 * 7) >> 1 = 3
+        assertArrayEquals(new short[] { 0, 10, 14, 18 }, actual);
+    }
+
+    @Test
+    public void decodesStereoGroupsInterleavedByWord() throws IOException {
+        ADPCMDecoderConfig cfg =
+            ADPCMDecoder.configure()
+            .setChannels     (2)
+            .setBlockSize    (512)
+            .setBitsPerSample(3)
+            .end();
+
+        // a final, partial block of 33 samples: the headers, then one 12-byte group per channel, stored as 4-byte words in the order L0 R0 L1 R1 L2 R2
+        ByteBuffer block = ByteBuffer.wrap(new byte[] {
+            0, 0, 0, 0,                 // left:  initial sample 0 at step index 0
+            (byte) 0xe8, 0x03, 0, 0,    // right: initial sample 1000 at step index 0
+            0x03, 0, 0, 0,              // left:  codes 3, 0, 0, ...
+            0x01, 0, 0, 0,              // right: codes 1, 0, 0, ...
+            0, 0, 0, 0,                 // left
+            0x01, 0, 0, 0,              // right: bit 32, the sign bit of code 10
+            0, 0, 0, 0,                 // left
+            0, 0, 0, 0,                 // right
+        });
+        ShortBuffer out = ShortBuffer.allocate(33 * 2);
+
+        new ADPCMDecoder(cfg).decode(block, out);
+        assertEquals(33 * 2, out.position());
+
+        short[] left  = new short[33];
+        short[] right = new short[33];
+        for (int i = 0; i < 33; i++) {
+            left [i] = out.get(i * 2);
+            right[i] = out.get(i * 2 + 1);
+        }
+
+        // code 3 adds (7 * 7) >> 2 = 12 and moves to step 9; then each 0 adds step >> 2 and steps down to 7
+        short[] expectLeft = new short[33];
+        expectLeft[1] = 12;
+        expectLeft[2] = 14;
+        expectLeft[3] = 16;
+        for (int i = 4; i < 33; i++) {
+            expectLeft[i] = (short) (13 + i);
+        }
+
+        // code 1 adds (3 * 7) >> 2 = 5; code 4, a negative 0, subtracts 7 >> 2 = 1
+        short[] expectRight = new short[33];
+        expectRight[0] = 1000;
+        expectRight[1] = 1005;
+        for (int i = 2; i <= 10; i++) {
+            expectRight[i] = (short) (1004 + i);
+        }
+        expectRight[11] = 1013;
+        for (int i = 12; i < 33; i++) {
+            expectRight[i] = (short) (1002 + i);
+        }
+
+        assertArrayEquals(expectLeft,  left);
+        assertArrayEquals(expectRight, right);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 2, 3, 4, 5 })
+    public void encodesStereoAsMonoWordsInterleaved(int bits) throws IOException {
+        WAVFile     pcm    = TestUtils.getClasspathWav("pcm_16bit_8000Hz_stereo.wav");
+        ShortBuffer stereo = pcm.getReadOnlyData().asShortBuffer();
+        ShortBuffer left   = ShortBuffer.allocate(pcm.getNumSamples());
+        ShortBuffer right  = ShortBuffer.allocate(pcm.getNumSamples());
+        while (stereo.hasRemaining()) {
+            left .put(stereo.get());
+            right.put(stereo.get());
+        }
+
+        // the channels are encoded independently, and every block header and group is a whole number of words, so a
+        // stereo stream is the two mono streams, interleaved a word at a time
+        byte[] l = encode(left .flip(), 1, 256, bits);
+        byte[] r = encode(right.flip(), 1, 256, bits);
+        byte[] expect = new byte[l.length * 2];
+        for (int i = 0; i < l.length; i += 4) {
+            System.arraycopy(l, i, expect, i * 2,     4);
+            System.arraycopy(r, i, expect, i * 2 + 4, 4);
+        }
+
+        assertArrayEquals(expect, encode(stereo.rewind(), 2, 512, bits));
+    }
+
+    private static byte[] encode(ShortBuffer in, int channels, int blockSize, int bits) throws IOException {
+        ADPCMEncoderConfig cfg =
+            ADPCMEncoder.configure()
+            .setChannels     (channels)
+            .setBlockSize    (blockSize)
+            .setBitsPerSample(bits)
+            .end();
+
+        ByteBuffer out = ByteBuffer.allocate(cfg.computeOutputSize(in));
+        new ADPCMEncoder(cfg).encode(in, out);
+        return out.array();
+    }
+
+    // round trip
+    // =================================================================================================================
+    @ParameterizedTest
+    @CsvSource({
+        "2, 16bit_8000Hz_mono.wav,    0.95",
+        "3, 16bit_8000Hz_mono.wav,    0.98",
+        "5, 16bit_8000Hz_mono.wav,    0.999",
+        "2, 16bit_44100Hz_stereo.wav, 0.95",
+        "3, 16bit_44100Hz_stereo.wav, 0.98",
+        "5, 16bit_44100Hz_stereo.wav, 0.999",
+    })
+    public void roundTrip(int bits, String name, double minCorrelation) throws IOException {
+        WAVFile     pcm   = TestUtils.getClasspathWav("pcm_"+name);
+        ShortBuffer input = pcm.getReadOnlyData().asShortBuffer();
+
+        ADPCMEncoderConfig cfg =
+            ADPCMEncoder.configure()
+            .setChannels     (pcm.getChannels())
+            .setSampleRate   (pcm.getSampleRate())
+            .setBitsPerSample(bits)
+            .end();
+
+        ByteBuffer encoded = new ADPCMEncoder(cfg).encode(input, ByteBuffer.allocate(cfg.computeOutputSize(input)));
+        assertEquals(encoded.capacity(), encoded.position());
+
+        // write and read back a WAV file
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WAVFile.fromADPCMBuffer(encoded.rewind(), pcm.getNumSamples(), cfg).dump(bytes);
+        WAVFile adpcm = WAVFile.fromStream(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertEquals(WAVFile.Format.IMA_ADPCM,  adpcm.getFormat());
+        assertEquals(bits,                      adpcm.getBitsPerSample());
+        assertEquals(pcm.getNumSamples(),       adpcm.getNumSamples());
+
+        ADPCMDecoderConfig decCfg =
+            ADPCMDecoder.configure()
+            .setChannels     (adpcm.getChannels())
+            .setSampleRate   (adpcm.getSampleRate())
+            .setBlockSize    (adpcm.getBlockSize())
+            .setBitsPerSample(adpcm.getBitsPerSample())
+            .end();
+
+        ShortBuffer decoded = ShortBuffer.allocate(adpcm.getNumSamples() * adpcm.getChannels());
+        new ADPCMDecoder(decCfg).decode(adpcm.getReadOnlyData(), decoded);
+
+        assertTrue(correlation(input.rewind(), decoded.flip()) >= minCorrelation);
+    }
+
+    private static double correlation(ShortBuffer a, ShortBuffer b) {
+        assertEquals(a.remaining(), b.remaining());
+
+        double ab = 0, aa = 0, bb = 0;
+        while (a.hasRemaining()) {
+            double x = a.get();
+            double y = b.get();
+            ab += x * y;
+            aa += x * x;
+            bb += y * y;
+        }
+
+        return ab / Math.sqrt(aa * bb);
+    }
+}
@@ -0,0 +1,128 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.BufferPool;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BufferPoolTest {
+
+    @Test
+    public void reusesReleasedBuffers() {
+        BufferPool pool = new BufferPool(true, 1 << 20);
+
+        ByteBuffer first;
+        try (BufferPool.Lease lease = pool.acquire(3000)) {
+            first = lease.buffer();
+
+            assertTrue  (first.isDirect());
+            assertEquals(3000, first.limit());
+            assertEquals(4096, first.capacity());
+            assertEquals(1, pool.getOutstandingCount());
+        }
+
+        assertEquals(4096, pool.getRetainedBytes());
+
+        // same size class
+        try (BufferPool.Lease lease = pool.acquire(2049)) {
+            assertSame  (first, lease.buffer());
+            assertEquals(2049, lease.buffer().limit());
+        }
+
+        // another size class
+        try (BufferPool.Lease lease = pool.acquire(5000)) {
+            assertNotSame(first, lease.buffer());
+        }
+
+        assertEquals(3, pool.getAcquireCount());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(3, pool.getReleaseCount());
+        assertEquals(0, pool.getOutstandingCount());
+    }
+
+    @Test
+    public void limitsRetainedBytes() {
+        BufferPool pool = new BufferPool(false, 8192);
+
+        BufferPool.Lease a = pool.acquire(8192);
+        BufferPool.Lease b = pool.acquire(8192);
+
+        a.release();
+        b.release();
+        b.release(); // no effect
+
+        assertEquals(8192, pool.getRetainedBytes());
+        assertEquals(2, pool.getReleaseCount());
+        assertThrows(IllegalStateException.class, b::buffer);
+    }
+
+    @Test
+    public void detectsLeaks() throws InterruptedException {
+        BufferPool pool = new BufferPool(false, 1 << 20);
+
+        pool.acquire(100);
+
+        for (int i=0; i<100 && pool.getLeakCount() == 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, pool.getLeakCount());
+        assertEquals(0, pool.getOutstandingCount());
+    }
+
+    @Test
+    public void encodesAndDecodes() throws IOException {
+        WAVFile            pcm   = TestUtils.getClasspathWav("pcm_16bit_44100Hz_stereo.wav");
+        WAVFile            adpcm = TestUtils.getClasspathWav("adpcm_16bit_44100Hz_stereo.wav");
+        ShortBuffer        input = pcm.getReadOnlyData().asShortBuffer();
+        ADPCMEncoderConfig cfg   =
+            ADPCMEncoder.configure()
+            .setChannels  (pcm.getChannels())
+            .setSampleRate(pcm.getSampleRate())
+            .setBlockSize (adpcm.getBlockSize())
+            .end();
+
+        BufferPool pool = new BufferPool(true, 1 << 24);
+
+        try (BufferPool.Lease encoded = pool.encode(new ADPCMEncoder(cfg), input)) {
+            assertEquals(adpcm.getReadOnlyData(), encoded.buffer());
+        }
+
+        try (BufferPool.Lease decoded = pool.decode(adpcm)) {
+            ByteBuffer expect = TestUtils.getClasspathWav("dec_16bit_44100Hz_stereo.wav").getReadOnlyData();
+            assertEquals(expect, decoded.buffer());
+        }
+    }
+
+    @Test
+    public void readsFiles(@TempDir Path dir) throws IOException {
+        WAVFile expect = TestUtils.getClasspathWav("adpcm_16bit_8000Hz_mono.wav");
+        Path    file   = dir.resolve("test.wav");
+
+        try (OutputStream out = Files.newOutputStream(file)) {
+            expect.dump(out);
+        }
+
+        BufferPool pool = new BufferPool(false, 1 << 20);
+
+        try (BufferPool.Lease lease = pool.readFile(file)) {
+            assertEquals(Files.size(file), lease.buffer().remaining());
+            assertEquals(expect, WAVFile.fromBuffer(lease.buffer()));
+        }
+    }
+}
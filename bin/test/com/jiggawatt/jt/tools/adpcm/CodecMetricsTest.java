@@ -0,0 +1,176 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.impl.LatencyHistogram;
+import com.jiggawatt.jt.tools.adpcm.util.CodecMetrics;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CodecMetricsTest {
+
+    private final CodecMetrics metrics = CodecMetrics.getInstance();
+
+    @BeforeEach
+    public void enable() {
+        metrics.reset();
+        metrics.setEnabled(true);
+    }
+
+    @AfterEach
+    public void disable() {
+        CodecMetrics.unregister();
+        metrics.reset();
+    }
+
+    @Test
+    public void countsBlocksSamplesAndBytes() throws IOException {
+        WAVFile pcm = TestUtils.getClasspathWav("pcm_16bit_8000Hz_stereo.wav");
+        metrics.reset();
+
+        ADPCMEncoderConfig cfg =
+            ADPCMEncoder.configure()
+            .setChannels  (pcm.getChannels())
+            .setSampleRate(pcm.getSampleRate())
+            .setBlockSize (512)
+            .end();
+
+        int numSamples = pcm.getNumSamples();
+        int numBlocks  = (numSamples + cfg.getSamplesPerBlock() - 1) / cfg.getSamplesPerBlock();
+
+        ByteBuffer encoded = ByteBuffer.allocate(cfg.computeOutputSize(numSamples));
+        new ADPCMEncoder(cfg).encode(pcm.getReadOnlyData().asShortBuffer(), encoded).flip();
+
+        assertEquals(numBlocks,           metrics.getEncodedBlocks());
+        assertEquals(numSamples,          metrics.getEncodedSamples());
+        assertEquals(encoded.remaining(), metrics.getEncodedBytes());
+
+        WAVFile adpcm = WAVFile.fromADPCMBuffer(encoded, numSamples, cfg);
+        ShortBuffer decoded = ShortBuffer.allocate(numSamples * pcm.getChannels());
+        new ADPCMDecoder(adpcm.createDecoderConfig()).decode(adpcm.getReadOnlyData(), decoded);
+
+        assertEquals(numBlocks,           metrics.getDecodedBlocks());
+        assertEquals(numSamples,          metrics.getDecodedSamples());
+        assertEquals(encoded.remaining(), metrics.getDecodedBytes());
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        adpcm.dump(file);
+        WAVFile.fromBuffer(ByteBuffer.wrap(file.toByteArray()));
+
+        assertEquals(1,                   metrics.getDumpedFiles());
+        assertEquals(encoded.remaining(), metrics.getDumpedBytes());
+        assertEquals(1,                   metrics.getLoadedFiles());
+        assertEquals(encoded.remaining(), metrics.getLoadedBytes());
+
+        assertTrue(metrics.getEncodeLatencyP50Nanos() > 0);
+        assertTrue(metrics.getEncodeLatencyP50Nanos() <= metrics.getEncodeLatencyP99Nanos());
+        assertTrue(metrics.getEncodeLatencyP99Nanos() <= metrics.getEncodeLatencyP999Nanos());
+        assertTrue(metrics.getDecodeLatencyP50Nanos() > 0);
+        assertTrue(metrics.getDecodeLatencyP50Nanos() <= metrics.getDecodeLatencyP99Nanos());
+        assertTrue(metrics.getDecodeLatencyP99Nanos() <= metrics.getDecodeLatencyP999Nanos());
+
+        assertEquals(0, metrics.getEncodeErrors());
+        assertEquals(0, metrics.getDecodeErrors());
+        assertEquals(0, metrics.getFileErrors());
+
+        // nothing is recorded while disabled
+        metrics.setEnabled(false);
+        new ADPCMEncoder(cfg).encode(pcm.getReadOnlyData().asShortBuffer(), encoded.clear());
+        assertEquals(numBlocks, metrics.getEncodedBlocks());
+    }
+
+    @Test
+    public void countsErrors() throws IOException {
+        ADPCMDecoderConfig cfg =
+            ADPCMDecoder.configure()
+            .setChannels  (1)
+            .setSampleRate(8000)
+            .setBlockSize (256)
+            .end();
+
+        ADPCMDecoder decoder = new ADPCMDecoder(cfg);
+
+        // too short, then a step index out of range
+        assertThrows(IOException.class, () -> decoder.decode(new byte[100], 0, new short[1000], 0, 1000));
+
+        byte[] block = new byte[256];
+        block[2] = 89;
+        assertThrows(IOException.class, () -> decoder.decode(block, 0, new short[505], 0, 505));
+
+        assertThrows(IOException.class, () -> WAVFile.fromBuffer(ByteBuffer.wrap(new byte[4])));
+
+        assertEquals(2, metrics.getDecodeErrors());
+        assertEquals(1, metrics.getFileErrors());
+    }
+
+    @Test
+    public void publishesMXBean() throws JMException, IOException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName  name   = new ObjectName(CodecMetrics.OBJECT_NAME);
+
+        metrics.setEnabled(false);
+        CodecMetrics.register();
+        CodecMetrics.register();
+
+        assertTrue(server.isRegistered(name));
+        assertTrue(metrics.isEnabled());
+
+        WAVFile pcm = TestUtils.getClasspathWav("pcm_16bit_8000Hz_mono.wav");
+        metrics.reset();
+        pcm.dump(new ByteArrayOutputStream());
+
+        assertEquals(1L,   server.getAttribute(name, "DumpedFiles"));
+        assertEquals(true, server.getAttribute(name, "Enabled"));
+
+        server.invoke(name, "reset", null, null);
+        assertEquals(0L, metrics.getDumpedFiles());
+
+        CodecMetrics.unregister();
+
+        assertFalse(server.isRegistered(name));
+        assertFalse(metrics.isEnabled());
+    }
+
+    @Test
+    public void histogramPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(0.99));
+
+        long[] values = new long[100_000];
+        for (int i=0; i<values.length; i++) {
+            // spread over several orders of magnitude
+            values[i] = (long) Math.pow(10, 1 + 6.0 * i / values.length);
+            histogram.record(values[i]);
+        }
+
+        Arrays.sort(values);
+        assertEquals(values.length, histogram.getCount());
+
+        for (double q : new double[] { 0, 0.5, 0.9, 0.99, 0.999, 1 }) {
+            long expect = values[Math.max(0, (int) Math.ceil(q * values.length) - 1)];
+            long actual = histogram.getPercentile(q);
+
+            assertTrue(actual >= expect && actual <= expect * 1.125, q+": expected ~"+expect+", found "+actual);
+        }
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertThrows(IllegalArgumentException.class, () -> histogram.getPercentile(1.5));
+    }
+}
@@ -0,0 +1,111 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EncoderProgressTest {
+
+    @Test
+    public void reportsProgressPerBlock() throws IOException {
+        WAVFile            pcm = TestUtils.getClasspathWav("pcm_16bit_8000Hz_stereo.wav");
+        ADPCMEncoderConfig cfg = TestUtils.configureEncoder(pcm, 512).end();
+
+        List<long[]> reports = new ArrayList<>();
+        ByteBuffer   actual  = ByteBuffer.allocate(cfg.computeOutputSize(pcm.getNumSamples()));
+
+        new ADPCMEncoder(cfg).encode(
+            pcm.getReadOnlyData().asShortBuffer(),
+            actual,
+            (done, total, remaining) -> reports.add(new long[] { done, total, remaining }),
+            new CancellationToken()
+        ).flip();
+
+        assertEquals(encode(pcm, cfg), actual);
+
+        int numBlocks = (pcm.getNumSamples() + cfg.getSamplesPerBlock() - 1) / cfg.getSamplesPerBlock();
+        assertEquals(numBlocks, reports.size());
+
+        for (int i=0; i<reports.size(); i++) {
+            long[] report = reports.get(i);
+            assertEquals(Math.min((i + 1L) * cfg.getSamplesPerBlock(), pcm.getNumSamples()), report[0]);
+            assertEquals(pcm.getNumSamples(), report[1]);
+            assertTrue(report[2] >= 0);
+        }
+
+        assertEquals(0, reports.get(reports.size() - 1)[2]);
+    }
+
+    @Test
+    public void cancellationLeavesWholeBlocks() throws IOException {
+        WAVFile            pcm = TestUtils.getClasspathWav("pcm_16bit_8000Hz_stereo.wav");
+        ADPCMEncoderConfig cfg = TestUtils.configureEncoder(pcm, 512).end();
+
+        CancellationToken token  = new CancellationToken();
+        ShortBuffer       in     = pcm.getReadOnlyData().asShortBuffer();
+        ByteBuffer        actual = ByteBuffer.allocate(cfg.computeOutputSize(pcm.getNumSamples()));
+
+        InterruptedIOException e = assertThrows(InterruptedIOException.class, () ->
+            new ADPCMEncoder(cfg).encode(in, actual, (done, total, remaining) -> {
+                if (done >= 10L * cfg.getSamplesPerBlock()) {
+                    token.cancel();
+                }
+            }, token)
+        );
+
+        assertPartialResult(pcm, cfg, 10, in, actual, e);
+    }
+
+    @Test
+    public void interruptionLeavesWholeBlocks() throws IOException {
+        WAVFile            pcm = TestUtils.getClasspathWav("pcm_16bit_8000Hz_stereo.wav");
+        ADPCMEncoderConfig cfg = TestUtils.configureEncoder(pcm, 512).end();
+
+        ShortBuffer in     = pcm.getReadOnlyData().asShortBuffer();
+        ByteBuffer  actual = ByteBuffer.allocate(cfg.computeOutputSize(pcm.getNumSamples()));
+
+        try {
+            InterruptedIOException e = assertThrows(InterruptedIOException.class, () ->
+                new ADPCMEncoder(cfg).encode(in, actual, (done, total, remaining) -> {
+                    if (done >= 3L * cfg.getSamplesPerBlock()) {
+                        Thread.currentThread().interrupt();
+                    }
+                }, new CancellationToken())
+            );
+
+            assertTrue(Thread.currentThread().isInterrupted());
+            assertPartialResult(pcm, cfg, 3, in, actual, e);
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    private static void assertPartialResult(
+            WAVFile pcm, ADPCMEncoderConfig cfg, int blocks, ShortBuffer in, ByteBuffer out, InterruptedIOException e)
+            throws IOException {
+
+        assertEquals(blocks * cfg.getBlockSize(), e.bytesTransferred);
+        assertEquals(blocks * cfg.getBlockSize(), out.position());
+        assertEquals(blocks * cfg.getSamplesPerBlock() * pcm.getChannels(), in.position());
+
+        // the partial output is the start of the complete one
+        ByteBuffer expect = encode(pcm, cfg).limit(blocks * cfg.getBlockSize());
+        assertEquals(expect, out.flip());
+    }
+
+    private static ByteBuffer encode(WAVFile pcm, ADPCMEncoderConfig cfg) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(cfg.computeOutputSize(pcm.getNumSamples()));
+        return new ADPCMEncoder(cfg).encode(pcm.getReadOnlyData().asShortBuffer(), out).flip();
+    }
+}
@@ -0,0 +1,108 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EncoderStateTest {
+
+    @ParameterizedTest
+    @CsvSource({
+        "16bit_8000Hz_mono.wav,    true,  4",
+        "16bit_44100Hz_stereo.wav, true,  4",
+        "16bit_44100Hz_stereo.wav, false, 4",
+        "16bit_88200Hz_stereo.wav, true,  4",
+        "16bit_44100Hz_stereo.wav, true,  3",
+    })
+    public void resumesOnAnotherEncoder(String name, boolean shape, int bits) throws IOException {
+        WAVFile     pcm   = TestUtils.getClasspathWav("pcm_"+name);
+        ShortBuffer input = pcm.getReadOnlyData().asShortBuffer();
+
+        ADPCMEncoderConfig cfg =
+            ADPCMEncoder.configure()
+            .setChannels     (pcm.getChannels())
+            .setSampleRate   (pcm.getSampleRate())
+            .setNoiseShaping (shape)
+            .setBitsPerSample(bits)
+            .end();
+
+        ByteBuffer expect = new ADPCMEncoder(cfg).encode(input.duplicate(), ByteBuffer.allocate(cfg.computeOutputSize(input)));
+
+        // encode the first few blocks, then hand off to a fresh encoder through the binary form
+        final int split = 5 * cfg.getSamplesPerBlock() * cfg.getChannels();
+
+        ByteBuffer   actual = ByteBuffer.allocate(cfg.computeOutputSize(input));
+        ADPCMEncoder first  = new ADPCMEncoder(cfg);
+        first.encode(input.duplicate().limit(split), actual, false);
+
+        byte[] checkpoint = first.snapshot().toByteArray();
+
+        ADPCMEncoder second = new ADPCMEncoder(cfg);
+        second.restore(EncoderState.fromByteArray(checkpoint));
+        second.encode(input.duplicate().position(split), actual, true);
+
+        assertEquals(expect.flip(), actual.flip());
+    }
+
+    @Test
+    public void roundTripsBinaryForm() throws IOException {
+        ADPCMEncoderConfig cfg     = ADPCMEncoder.configure().setChannels(2).end();
+        ADPCMEncoder       encoder = new ADPCMEncoder(cfg);
+
+        short[] samples = new short[cfg.getSamplesPerBlock() * 2];
+        for (int i=0; i<samples.length; i++) {
+            samples[i] = (short) (Math.sin(i * 0.01) * 10000);
+        }
+
+        encoder.encode(ShortBuffer.wrap(samples), ByteBuffer.allocate(cfg.getBlockSize()), false);
+
+        EncoderState state = encoder.snapshot();
+        byte[]       bytes = state.toByteArray();
+
+        assertTrue (state.isStarted());
+        assertEquals(3 + 2 * 21, bytes.length);
+        assertEquals(state, EncoderState.fromByteArray(bytes));
+    }
+
+    @Test
+    public void snapshotsFreshEncoder() throws IOException {
+        ADPCMEncoder encoder = new ADPCMEncoder(ADPCMEncoder.configure().setChannels(1).end());
+        EncoderState state   = encoder.snapshot();
+
+        assertFalse(state.isStarted());
+        assertEquals(state, EncoderState.fromByteArray(state.toByteArray()));
+    }
+
+    @Test
+    public void rejectsMalformedState() {
+        byte[] valid = new ADPCMEncoder(ADPCMEncoder.configure().setChannels(1).end()).snapshot().toByteArray();
+
+        assertThrows(IOException.class, () -> EncoderState.fromByteArray(new byte[0]));
+        assertThrows(IOException.class, () -> EncoderState.fromByteArray(Arrays.copyOf(valid, valid.length - 1)));
+        assertThrows(IOException.class, () -> EncoderState.fromByteArray(Arrays.copyOf(valid, valid.length + 1)));
+
+        byte[] badVersion = valid.clone();
+        badVersion[0] = 99;
+        assertThrows(IOException.class, () -> EncoderState.fromByteArray(badVersion));
+    }
+
+    @Test
+    public void rejectsChannelMismatch() {
+        EncoderState mono   = new ADPCMEncoder(ADPCMEncoder.configure().setChannels(1).end()).snapshot();
+        ADPCMEncoder stereo = new ADPCMEncoder(ADPCMEncoder.configure().setChannels(2).end());
+
+        assertThrows(IllegalArgumentException.class, () -> stereo.restore(mono));
+    }
+}
@@ -0,0 +1,130 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.PCMRingBuffer;
+import com.jiggawatt.jt.tools.adpcm.util.RealtimeEncoder;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RealtimeEncoderTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"16bit_8000Hz_mono.wav", "16bit_44100Hz_stereo.wav"})
+    public void matchesOneShotEncode(String name) throws IOException {
+        WAVFile            pcm     = TestUtils.getClasspathWav("pcm_"+name);
+        short[]            samples = toArray(pcm.getReadOnlyData().asShortBuffer());
+        ADPCMEncoderConfig cfg     =
+            ADPCMEncoder.configure()
+            .setChannels  (pcm.getChannels())
+            .setSampleRate(pcm.getSampleRate())
+            .end();
+
+        final int  size   = cfg.computeOutputSize(samples.length / cfg.getChannels());
+        ByteBuffer expect = new ADPCMEncoder(cfg).encode(ShortBuffer.wrap(samples), ByteBuffer.allocate(size));
+
+        RealtimeEncoder encoder = new RealtimeEncoder(cfg, 4);
+        ByteBuffer      actual  = ByteBuffer.allocate(size);
+
+        // write in odd-sized pieces, as a capture device might
+        final int piece = 331 * cfg.getChannels();
+        for (int off=0; off<samples.length; off+=piece) {
+            final int len = Math.min(piece, samples.length - off);
+            assertEquals(len, encoder.write(samples, off, len));
+            encoder.encode(actual);
+        }
+        encoder.finish(actual);
+
+        assertEquals(0, encoder.getOverrunCount());
+        assertEquals(expect.flip(), actual.flip());
+    }
+
+    @Test
+    public void countsOverrunsAndUnderruns() throws IOException {
+        ADPCMEncoderConfig cfg     = ADPCMEncoder.configure().setChannels(2).end();
+        RealtimeEncoder    encoder = new RealtimeEncoder(cfg, 1);
+        ByteBuffer         out     = ByteBuffer.allocate(cfg.getBlockSize() * 4);
+
+        assertEquals(0, encoder.encode(out));
+        assertEquals(1, encoder.getUnderrunCount());
+
+        // the ring buffer's capacity is rounded up to a power of two
+        short[] frames   = new short[cfg.getSamplesPerBlock() * 2 * 4];
+        int     buffered = encoder.write(frames, 0, frames.length);
+
+        assertTrue  (buffered < frames.length);
+        assertEquals(1, encoder.getOverrunCount());
+        assertEquals((frames.length - buffered) / 2, encoder.getDroppedFrameCount());
+        assertEquals(buffered / 2, encoder.getBufferedFrames());
+
+        assertEquals(buffered / (cfg.getSamplesPerBlock() * 2), encoder.encode(out));
+        assertEquals(1, encoder.getUnderrunCount());
+    }
+
+    @Test
+    public void transfersBetweenThreads() throws InterruptedException {
+        final int           count = 1 << 20;
+        final PCMRingBuffer ring  = new PCMRingBuffer(1000);
+
+        assertEquals(1024, ring.capacity());
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread producer = new Thread(() -> {
+            short[] chunk = new short[97];
+            int     next  = 0;
+
+            while (next < count) {
+                final int len = Math.min(chunk.length, count - next);
+                for (int i=0; i<len; i++) {
+                    chunk[i] = (short) (next + i);
+                }
+
+                int off = 0;
+                while (off < len) {
+                    off += ring.offer(chunk, off, len - off);
+                }
+                next += len;
+            }
+        });
+
+        Thread consumer = new Thread(() -> {
+            short[] chunk = new short[61];
+            int     next  = 0;
+
+            while (next < count) {
+                final int len = ring.poll(chunk, 0, chunk.length);
+                for (int i=0; i<len; i++) {
+                    if (chunk[i] != (short) next++) {
+                        failure.compareAndSet(null, new AssertionError("value "+(next - 1)+" out of order"));
+                        return;
+                    }
+                }
+            }
+        });
+
+        producer.start();
+        consumer.start();
+        producer.join();
+        consumer.join();
+
+        assertNull(failure.get());
+        assertEquals(0, ring.size());
+    }
+
+    private static short[] toArray(ShortBuffer buf) {
+        short[] dst = new short[buf.remaining()];
+        buf.get(dst);
+        return dst;
+    }
+}
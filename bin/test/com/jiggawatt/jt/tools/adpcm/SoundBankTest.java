@@ -0,0 +1,135 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.SoundBank;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SoundBankTest {
+
+    private static final List<String> NAMES = Arrays.asList(
+        "16bit_8000Hz_mono.wav",
+        "16bit_8000Hz_stereo.wav",
+        "16bit_44100Hz_mono.wav",
+        "16bit_44100Hz_stereo.wav"
+    );
+
+    @TempDir
+    Path tempDir;
+
+    private Path bankFile;
+
+    @BeforeEach
+    public void writeBank() throws IOException {
+        SoundBank.Builder builder = SoundBank.builder();
+        for (String name : NAMES) {
+            builder.add(name, TestUtils.getClasspathWav("adpcm_"+name));
+        }
+
+        bankFile = tempDir.resolve("test.bank");
+        builder.write(bankFile);
+    }
+
+    @Test
+    public void findsClipsByName() throws IOException {
+        SoundBank bank = SoundBank.open(bankFile);
+
+        assertEquals(NAMES.size(),           bank.size());
+        assertEquals(new HashSet<>(NAMES),   new HashSet<>(bank.getNames()));
+
+        for (String name : NAMES) {
+            WAVFile         expect = TestUtils.getClasspathWav("adpcm_"+name);
+            SoundBank.Clip  clip   = bank.getClip(name);
+
+            assertNotNull(clip);
+            assertEquals(name,                       clip.getName());
+            assertEquals(expect.getChannels(),       clip.getChannels());
+            assertEquals(expect.getSampleRate(),     clip.getSampleRate());
+            assertEquals(expect.getNumSamples(),     clip.getNumSamples());
+            assertEquals(expect.getBlockSize(),      clip.getBlockSize());
+            assertEquals(expect.getBitsPerSample(),  clip.getBitsPerSample());
+            assertEquals(expect.getReadOnlyData(),   clip.getReadOnlyData());
+            assertEquals(expect,                     clip.toWAVFile());
+        }
+
+        assertNull(bank.getClip("missing.wav"));
+    }
+
+    @Test
+    public void decodesClips() throws IOException {
+        SoundBank bank = SoundBank.open(bankFile);
+
+        for (String name : NAMES) {
+            ShortBuffer    expect = TestUtils.getClasspathWav("dec_"+name).getReadOnlyData().asShortBuffer();
+            SoundBank.Clip clip   = bank.getClip(name);
+
+            ShortBuffer actual = clip.decode(ShortBuffer.allocate(clip.getNumSamples() * clip.getChannels()));
+
+            assertEquals(expect, actual.flip());
+        }
+    }
+
+    @Test
+    public void alignsClipData() throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(bankFile));
+        SoundBank  bank  = SoundBank.fromBuffer(bytes);
+
+        for (int i=0; i<bank.size(); i++) {
+            ByteBuffer data = bank.getClip(i).getReadOnlyData();
+
+            // find the clip's data in the file and check its offset
+            int offset = -1;
+            for (int p=0; p<bytes.capacity(); p+=4096) {
+                if (bytes.duplicate().position(p).limit(Math.min(bytes.capacity(), p + data.remaining())).equals(data)) {
+                    offset = p;
+                    break;
+                }
+            }
+
+            assertEquals(0, offset % 4096);
+        }
+    }
+
+    @Test
+    public void rejectsDuplicateNames() throws IOException {
+        WAVFile clip = TestUtils.getClasspathWav("adpcm_16bit_8000Hz_mono.wav");
+
+        assertThrows(IllegalArgumentException.class, () -> SoundBank.builder().add("a", clip).add("a", clip));
+    }
+
+    @Test
+    public void rejectsPcmClips() throws IOException {
+        WAVFile clip = TestUtils.getClasspathWav("pcm_16bit_8000Hz_mono.wav");
+
+        assertThrows(IllegalArgumentException.class, () -> SoundBank.builder().add("a", clip));
+    }
+
+    @Test
+    public void rejectsMalformedFiles() throws IOException {
+        byte[] bytes = Files.readAllBytes(bankFile);
+
+        assertThrows(IOException.class, () -> SoundBank.fromBuffer(ByteBuffer.wrap(bytes, 0, 8)));
+
+        // point the first clip's data past the end of the file
+        ByteBuffer corrupt = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+        corrupt.putLong(16 + 16, bytes.length);
+        assertThrows(IOException.class, () -> SoundBank.fromBuffer(corrupt));
+    }
+}
@@ -0,0 +1,136 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.StreamingDecoder;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StreamingDecoderTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"16bit_8000Hz_mono.wav", "16bit_8000Hz_stereo.wav", "16bit_44100Hz_stereo.wav"})
+    public void decodesWAVFile(String name) throws IOException {
+        ShortBuffer expect = TestUtils.getClasspathWav("dec_"+name).getReadOnlyData().asShortBuffer();
+
+        try (StreamingDecoder decoder = StreamingDecoder.open(
+            Channels.newChannel(TestUtils.openClasspathStream("adpcm_"+name)),
+            4
+        )) {
+            assertEquals(expect, readAll(decoder, 300));
+        }
+    }
+
+    @Test
+    public void decodesRawData() throws IOException {
+        WAVFile     adpcm  = TestUtils.getClasspathWav("adpcm_16bit_44100Hz_mono.wav");
+        ShortBuffer expect = TestUtils.getClasspathWav("dec_16bit_44100Hz_mono.wav").getReadOnlyData().asShortBuffer();
+
+        byte[] data = new byte[adpcm.getReadOnlyData().remaining()];
+        adpcm.getReadOnlyData().get(data);
+
+        try (StreamingDecoder decoder = new StreamingDecoder(
+            Channels.newChannel(new ByteArrayInputStream(data)),
+            adpcm.createDecoderConfig(),
+            adpcm.getNumSamples(),
+            2
+        )) {
+            assertEquals(expect, readAll(decoder, 1000));
+        }
+    }
+
+    @Test
+    public void countsUnderruns() throws IOException {
+        WAVFile        adpcm   = TestUtils.getClasspathWav("adpcm_16bit_8000Hz_mono.wav");
+        CountDownLatch release = new CountDownLatch(1);
+
+        // a channel that stalls until released
+        ReadableByteChannel stalled = new ReadableByteChannel() {
+            private final ReadableByteChannel data =
+                Channels.newChannel(new ByteArrayInputStream(toArray(adpcm.getReadOnlyData())));
+
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return data.read(dst);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return data.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                data.close();
+            }
+        };
+
+        ADPCMDecoderConfig cfg = adpcm.createDecoderConfig();
+
+        try (StreamingDecoder decoder = new StreamingDecoder(stalled, cfg, adpcm.getNumSamples(), 2)) {
+            assertEquals(0, decoder.read(new short[64], 0, 64));
+            assertEquals(1, decoder.getUnderrunCount());
+
+            release.countDown();
+
+            assertEquals(adpcm.getNumSamples(), readAll(decoder, 64).remaining());
+        }
+    }
+
+    @Test
+    public void reportsMalformedData() throws IOException {
+        WAVFile adpcm = TestUtils.getClasspathWav("adpcm_16bit_8000Hz_mono.wav");
+
+        // a final block of 3 bytes can't hold a header
+        byte[] data = toArray(adpcm.getReadOnlyData().limit(adpcm.createDecoderConfig().getBlockSize() + 3));
+
+        try (StreamingDecoder decoder = new StreamingDecoder(
+            Channels.newChannel(new ByteArrayInputStream(data)),
+            adpcm.createDecoderConfig(),
+            -1,
+            2
+        )) {
+            assertThrows(IOException.class, () -> readAll(decoder, 64));
+        }
+    }
+
+    private static ShortBuffer readAll(StreamingDecoder decoder, int chunk) throws IOException {
+        short[] buf = new short[chunk];
+        ShortBuffer dst = ShortBuffer.allocate(1 << 22);
+
+        int count;
+        while ((count = decoder.read(buf, 0, buf.length)) >= 0) {
+            dst.put(buf, 0, count);
+            if (count == 0) {
+                Thread.yield();
+            }
+        }
+
+        assertTrue(decoder.isEndOfStream());
+        return dst.flip();
+    }
+
+    private static byte[] toArray(ByteBuffer buf) {
+        byte[] dst = new byte[buf.remaining()];
+        buf.get(dst);
+        return dst;
+    }
+}
@@ -0,0 +1,173 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class WAVEditTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "adpcm_16bit_8000Hz_mono.wav",
+        "adpcm_16bit_8000Hz_stereo.wav",
+        "adpcm_16bit_44100Hz_stereo.wav",
+    })
+    public void slicesMatchDecodedRange(String name) throws IOException {
+        assertSlicesMatchDecodedRange(TestUtils.getClasspathWav(name));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 2, 3, 4, 5 })
+    public void slicesMatchDecodedRangeAtEveryBitDepth(int bits) throws IOException {
+        WAVFile            pcm = TestUtils.getClasspathWav("pcm_16bit_8000Hz_stereo.wav");
+        ADPCMEncoderConfig cfg =
+            ADPCMEncoder.configure()
+            .setChannels     (pcm.getChannels())
+            .setSampleRate   (pcm.getSampleRate())
+            .setBlockSize    (1024)
+            .setBitsPerSample(bits)
+            .end();
+
+        ByteBuffer adpcm = ByteBuffer.allocate(cfg.computeOutputSize(pcm.getNumSamples()));
+        new ADPCMEncoder(cfg).encode(pcm.getReadOnlyData().asShortBuffer(), adpcm).flip();
+
+        assertSlicesMatchDecodedRange(WAVFile.fromADPCMBuffer(adpcm, pcm.getNumSamples(), cfg));
+    }
+
+    @Test
+    public void splitAndConcatRestoreFile() throws IOException {
+        WAVFile file = TestUtils.getClasspathWav("adpcm_16bit_8000Hz_stereo.wav");
+        int     spb  = file.getSamplesPerBlock();
+
+        List<WAVFile> parts = file.split(7 * spb);
+        assertEquals((file.getNumSamples() + 7 * spb - 1) / (7 * spb), parts.size());
+
+        for (WAVFile part : parts.subList(0, parts.size() - 1)) {
+            assertEquals(7 * spb, part.getNumSamples());
+        }
+
+        WAVFile joined = WAVFile.concat(parts);
+        assertEquals(file.getNumSamples(),   joined.getNumSamples());
+        assertEquals(file.getReadOnlyData(), joined.getReadOnlyData());
+        assertEquals(file.getNumSamples(),   reload(joined).getNumSamples());
+    }
+
+    @Test
+    public void concatJoinsDecodedAudio() throws IOException {
+        WAVFile file = TestUtils.getClasspathWav("adpcm_16bit_8000Hz_mono.wav");
+        int     spb  = file.getSamplesPerBlock();
+
+        // the second half, then the first block, then a short piece of the third block
+        WAVFile joined = reload(WAVFile.concat(Arrays.asList(
+            file.slice(4 * spb, file.getNumSamples()).slice(0, 2 * spb),
+            file.slice(0, spb),
+            file.slice(2 * spb, 2 * spb + 123)
+        )));
+
+        short[] whole  = decode(file);
+        short[] expect = new short[3 * spb + 123];
+        System.arraycopy(whole, 4 * spb, expect, 0,       2 * spb);
+        System.arraycopy(whole, 0,       expect, 2 * spb, spb);
+        System.arraycopy(whole, 2 * spb, expect, 3 * spb, 123);
+
+        assertArrayEquals(expect, decode(joined));
+    }
+
+    @Test
+    public void slicesPcmFilesAnywhere() throws IOException {
+        WAVFile file = TestUtils.getClasspathWav("pcm_16bit_8000Hz_stereo.wav");
+        assertEquals(1, file.getSamplesPerBlock());
+
+        WAVFile slice = reload(file.slice(1001, 2002));
+        assertEquals(1001, slice.getNumSamples());
+
+        ByteBuffer expect = file.getReadOnlyData().position(1001 * 4).limit(2002 * 4);
+        assertEquals(expect, slice.getReadOnlyData());
+
+        WAVFile joined = WAVFile.concat(file.split(999));
+        assertEquals(file.getReadOnlyData(), joined.getReadOnlyData());
+    }
+
+    @Test
+    public void rejectsBadRanges() throws IOException {
+        WAVFile file = TestUtils.getClasspathWav("adpcm_16bit_8000Hz_stereo.wav");
+        int     spb  = file.getSamplesPerBlock();
+
+        assertThrows(IllegalArgumentException.class,  () -> file.slice(1, spb));
+        assertThrows(IllegalArgumentException.class,  () -> file.slice(spb, spb));
+        assertThrows(IndexOutOfBoundsException.class, () -> file.slice(-spb, spb));
+        assertThrows(IndexOutOfBoundsException.class, () -> file.slice(0, file.getNumSamples() + 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> file.slice(2 * spb, spb));
+
+        assertThrows(IllegalArgumentException.class, () -> file.split(0));
+        assertThrows(IllegalArgumentException.class, () -> file.split(spb + 1));
+    }
+
+    @Test
+    public void concatRejectsIncompatibleFiles() throws IOException {
+        WAVFile mono   = TestUtils.getClasspathWav("adpcm_16bit_8000Hz_mono.wav");
+        WAVFile stereo = TestUtils.getClasspathWav("adpcm_16bit_8000Hz_stereo.wav");
+        WAVFile pcm    = TestUtils.getClasspathWav("pcm_16bit_8000Hz_mono.wav");
+        int     spb    = mono.getSamplesPerBlock();
+
+        assertThrows(IllegalArgumentException.class, () -> WAVFile.concat(Collections.emptyList()));
+        assertThrows(IllegalArgumentException.class, () -> WAVFile.concat(Arrays.asList(mono, stereo)));
+        assertThrows(IllegalArgumentException.class, () -> WAVFile.concat(Arrays.asList(mono, pcm)));
+
+        // only the last file may end in a partial block
+        assertThrows(IllegalArgumentException.class, () ->
+            WAVFile.concat(Arrays.asList(mono.slice(0, spb + 1), mono.slice(0, spb))));
+        WAVFile.concat(Arrays.asList(mono.slice(0, spb), mono.slice(0, spb + 1)));
+    }
+
+    private static void assertSlicesMatchDecodedRange(WAVFile file) throws IOException {
+        final int     spb      = file.getSamplesPerBlock();
+        final int     n        = file.getNumSamples();
+        final int     channels = file.getChannels();
+        final short[] whole    = decode(file);
+
+        final List<int[]> ranges = new ArrayList<>();
+        ranges.add(new int[] { 0,       1           });
+        ranges.add(new int[] { 0,       spb         });
+        ranges.add(new int[] { 2 * spb, 5 * spb     });
+        ranges.add(new int[] { 2 * spb, 5 * spb + 2 });
+        ranges.add(new int[] { 2 * spb, 5 * spb + 37 });
+        ranges.add(new int[] { 3 * spb, n           });
+        ranges.add(new int[] { 3 * spb, n - 1       });
+
+        for (int[] range : ranges) {
+            final WAVFile slice = reload(file.slice(range[0], range[1]));
+            assertEquals(range[1] - range[0], slice.getNumSamples());
+
+            final short[] expect = Arrays.copyOfRange(whole, range[0] * channels, range[1] * channels);
+            assertArrayEquals(expect, decode(slice), "range ["+range[0]+", "+range[1]+")");
+        }
+    }
+
+    private static WAVFile reload(WAVFile file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        file.dump(out);
+        return WAVFile.fromBuffer(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    private static short[] decode(WAVFile file) throws IOException {
+        ShortBuffer out = ShortBuffer.allocate(file.getNumSamples() * file.getChannels());
+        new ADPCMDecoder(file.createDecoderConfig()).decode(file.getReadOnlyData(), out);
+        return out.array();
+    }
+}
@@ -0,0 +1,47 @@
+package com.jiggawatt.jt.tools.adpcm.data;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class TestUtils {
+    public static WAVFile getClasspathWav(String name) throws IOException {
+        try (InputStream in = TestUtils.class.getResourceAsStream(name)) {
+            if (in==null) {
+                throw new FileNotFoundException(name);
+            }
+
+            return WAVFile.fromStream(in);
+        }
+    }
+
+    public static InputStream openClasspathStream(String name) throws IOException {
+        InputStream in = TestUtils.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new FileNotFoundException(name);
+        }
+        return in;
+    }
+
+    /**
+     * Starts an encoder configuration with the channel count and sample rate of the given PCM file, and the default
+     * block size for them.
+     */
+    public static ADPCMEncoderConfig.Builder configureEncoder(WAVFile pcm) {
+        return ADPCMEncoder.configure()
+            .setChannels  (pcm.getChannels())
+            .setSampleRate(pcm.getSampleRate());
+    }
+
+    /**
+     * Starts an encoder configuration with the channel count and sample rate of the given PCM file, and the given
+     * block size.
+     */
+    public static ADPCMEncoderConfig.Builder configureEncoder(WAVFile pcm, int blockSize) {
+        return configureEncoder(pcm).setBlockSize(blockSize);
+    }
+}
@@ -0,0 +1,86 @@
+package com.jiggawatt.jt.tools.adpcm.impl;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoderConfig;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+
+import java.util.Optional;
+
+/**
+ * Reports codec operations to Java Flight Recorder. Each {@code begin} method returns a token, or {@code null} if the
+ * event is disabled; the matching {@code end} method records the event, and ignores {@code null} tokens.
+ * <p>
+ * This is the Java 11 version of this class. The events themselves live in {@link FlightEvents}, which is only loaded
+ * if this module can read {@code jdk.jfr}; the dependency is optional, so a runtime image may leave it out.
+ */
+public final class CodecEvents {
+
+    private static final boolean AVAILABLE;
+
+    static {
+        final Optional<Module> jfr = ModuleLayer.boot().findModule("jdk.jfr");
+        AVAILABLE = jfr.isPresent() && CodecEvents.class.getModule().canRead(jfr.get());
+    }
+
+    public static Object beginEncode() {
+        return AVAILABLE ? FlightEvents.beginEncode() : null;
+    }
+
+    /**
+     * @param samples  the number of samples per channel encoded
+     * @param bytes    the number of bytes of ADPCM data produced
+     */
+    public static void endEncode(Object event, ADPCMEncoderConfig cfg, int samples, int bytes) {
+        if (event != null) {
+            FlightEvents.endEncode(event, cfg, samples, bytes);
+        }
+    }
+
+    public static Object beginDecode() {
+        return AVAILABLE ? FlightEvents.beginDecode() : null;
+    }
+
+    /**
+     * @param samples  the number of samples per channel decoded
+     * @param bytes    the number of bytes of ADPCM data consumed
+     */
+    public static void endDecode(Object event, ADPCMDecoderConfig cfg, int samples, int bytes) {
+        if (event != null) {
+            FlightEvents.endDecode(event, cfg, samples, bytes);
+        }
+    }
+
+    public static Object beginBlock() {
+        return AVAILABLE ? FlightEvents.beginBlock() : null;
+    }
+
+    /**
+     * @param samples  the number of samples per channel in the block
+     */
+    public static void endBlock(Object event, ADPCMEncoderConfig cfg, int samples) {
+        if (event != null) {
+            FlightEvents.endBlock(event, cfg, samples);
+        }
+    }
+
+    public static Object beginLoad() {
+        return AVAILABLE ? FlightEvents.beginLoad() : null;
+    }
+
+    public static void endLoad(Object event, WAVHeader header) {
+        if (event != null) {
+            FlightEvents.endLoad(event, header);
+        }
+    }
+
+    public static Object beginDump() {
+        return AVAILABLE ? FlightEvents.beginDump() : null;
+    }
+
+    public static void endDump(Object event, WAVHeader header) {
+        if (event != null) {
+            FlightEvents.endDump(event, header);
+        }
+    }
+
+    private CodecEvents() {}
+}
@@ -0,0 +1,238 @@
+package com.jiggawatt.jt.tools.adpcm.impl;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoderConfig;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import static com.jiggawatt.jt.tools.adpcm.impl.WAVHeader.WAVE_FORMAT_PCM;
+
+/**
+ * The Flight Recorder events behind {@link CodecEvents}. Every event is disabled by default; turn them on in a JFC
+ * settings file, or with {@code jdk.jfr.Recording.enable("com.jiggawatt.jt.adpcm.Encode")}.
+ * <p>
+ * Whether an event is enabled is checked on a shared instance, which is never committed, so a disabled event costs a
+ * field read and allocates nothing.
+ *
+ * @author Nikita Leonidov
+ */
+final class FlightEvents {
+
+    private static final EncodeEvent ENCODE = new EncodeEvent();
+    private static final DecodeEvent DECODE = new DecodeEvent();
+    private static final BlockEvent  BLOCK  = new BlockEvent();
+    private static final LoadEvent   LOAD   = new LoadEvent();
+    private static final DumpEvent   DUMP   = new DumpEvent();
+
+    // encoder and decoder calls
+    // =================================================================================================================
+    static Object beginEncode() {
+        if (!ENCODE.isEnabled()) {
+            return null;
+        }
+
+        final EncodeEvent event = new EncodeEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endEncode(Object token, ADPCMEncoderConfig cfg, int samples, int bytes) {
+        final EncodeEvent event = (EncodeEvent) token;
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.channels      = cfg.getChannels();
+            event.sampleRate    = cfg.getSampleRate();
+            event.blockSize     = cfg.getBlockSize();
+            event.bitsPerSample = cfg.getBitsPerSample();
+            event.noiseShaping  = cfg.getNoiseShaping();
+            event.samples       = samples;
+            event.bytes         = bytes;
+            event.commit();
+        }
+    }
+
+    static Object beginDecode() {
+        if (!DECODE.isEnabled()) {
+            return null;
+        }
+
+        final DecodeEvent event = new DecodeEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endDecode(Object token, ADPCMDecoderConfig cfg, int samples, int bytes) {
+        final DecodeEvent event = (DecodeEvent) token;
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.channels      = cfg.getChannels();
+            event.sampleRate    = cfg.getSampleRate();
+            event.blockSize     = cfg.getBlockSize();
+            event.bitsPerSample = cfg.getBitsPerSample();
+            event.samples       = samples;
+            event.bytes         = bytes;
+            event.commit();
+        }
+    }
+
+    // per-block search
+    // =================================================================================================================
+    static Object beginBlock() {
+        if (!BLOCK.isEnabled()) {
+            return null;
+        }
+
+        final BlockEvent event = new BlockEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endBlock(Object token, ADPCMEncoderConfig cfg, int samples) {
+        final BlockEvent event = (BlockEvent) token;
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.channels      = cfg.getChannels();
+            event.bitsPerSample = cfg.getBitsPerSample();
+            event.noiseShaping  = cfg.getNoiseShaping();
+            event.samples       = samples;
+            event.commit();
+        }
+    }
+
+    // WAV files
+    // =================================================================================================================
+    static Object beginLoad() {
+        if (!LOAD.isEnabled()) {
+            return null;
+        }
+
+        final LoadEvent event = new LoadEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endLoad(Object token, WAVHeader header) {
+        final LoadEvent event = (LoadEvent) token;
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.format     = formatName(header);
+            event.channels   = header.getChannels();
+            event.sampleRate = header.getSampleRate();
+            event.samples    = header.getNumSamples();
+            event.bytes      = header.getDataSize();
+            event.commit();
+        }
+    }
+
+    static Object beginDump() {
+        if (!DUMP.isEnabled()) {
+            return null;
+        }
+
+        final DumpEvent event = new DumpEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endDump(Object token, WAVHeader header) {
+        final DumpEvent event = (DumpEvent) token;
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.format     = formatName(header);
+            event.channels   = header.getChannels();
+            event.sampleRate = header.getSampleRate();
+            event.samples    = header.getNumSamples();
+            event.bytes      = header.getDataSize();
+            event.commit();
+        }
+    }
+
+    private static String formatName(WAVHeader header) {
+        return header.getFormat() == WAVE_FORMAT_PCM ? "PCM" : "IMA ADPCM";
+    }
+
+    private FlightEvents() {}
+
+    // event types
+    // =================================================================================================================
+    @Name("com.jiggawatt.jt.adpcm.Encode")
+    @Label("ADPCM Encode")
+    @Description("A call to ADPCMEncoder.encode")
+    @Category("jt-adpcm")
+    @Enabled(false)
+    static final class EncodeEvent extends Event {
+        @Label("Channels")                    int     channels;
+        @Label("Sample Rate")                 int     sampleRate;
+        @Label("Block Size")      @DataAmount int     blockSize;
+        @Label("Bits per Sample")             int     bitsPerSample;
+        @Label("Noise Shaping")               boolean noiseShaping;
+        @Label("Samples")                     int     samples;
+        @Label("Bytes")           @DataAmount int     bytes;
+    }
+
+    @Name("com.jiggawatt.jt.adpcm.Decode")
+    @Label("ADPCM Decode")
+    @Description("A call to ADPCMDecoder.decode")
+    @Category("jt-adpcm")
+    @Enabled(false)
+    static final class DecodeEvent extends Event {
+        @Label("Channels")                    int     channels;
+        @Label("Sample Rate")                 int     sampleRate;
+        @Label("Block Size")      @DataAmount int     blockSize;
+        @Label("Bits per Sample")             int     bitsPerSample;
+        @Label("Samples")                     int     samples;
+        @Label("Bytes")           @DataAmount int     bytes;
+    }
+
+    @Name("com.jiggawatt.jt.adpcm.BlockSearch")
+    @Label("ADPCM Block Search")
+    @Description("The lookahead search for one block of ADPCM samples, if it takes longer than the threshold")
+    @Category("jt-adpcm")
+    @Enabled(false)
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class BlockEvent extends Event {
+        @Label("Channels")                    int     channels;
+        @Label("Bits per Sample")             int     bitsPerSample;
+        @Label("Noise Shaping")               boolean noiseShaping;
+        @Label("Samples")                     int     samples;
+    }
+
+    @Name("com.jiggawatt.jt.adpcm.WAVLoad")
+    @Label("WAV Load")
+    @Description("A WAV file read into a WAVFile")
+    @Category("jt-adpcm")
+    @Enabled(false)
+    static final class LoadEvent extends Event {
+        @Label("Format")                      String  format;
+        @Label("Channels")                    int     channels;
+        @Label("Sample Rate")                 int     sampleRate;
+        @Label("Samples")                     long    samples;
+        @Label("Data Size")       @DataAmount long    bytes;
+    }
+
+    @Name("com.jiggawatt.jt.adpcm.WAVDump")
+    @Label("WAV Dump")
+    @Description("A WAVFile written to a stream")
+    @Category("jt-adpcm")
+    @Enabled(false)
+    static final class DumpEvent extends Event {
+        @Label("Format")                      String  format;
+        @Label("Channels")                    int     channels;
+        @Label("Sample Rate")                 int     sampleRate;
+        @Label("Samples")                     long    samples;
+        @Label("Data Size")       @DataAmount long    bytes;
+    }
+}
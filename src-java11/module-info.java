@@ -0,0 +1,16 @@
+module com.jiggawatt.jt.tools.adpcm {
+    requires java.base;
+    requires static transitive java.desktop;
+    requires static java.management;
+    requires static jdk.jfr;
+
+    exports com.jiggawatt.jt.tools.adpcm;
+    exports com.jiggawatt.jt.tools.adpcm.flow;
+    exports com.jiggawatt.jt.tools.adpcm.sound;
+    exports com.jiggawatt.jt.tools.adpcm.util;
+
+    provides javax.sound.sampled.spi.AudioFileReader
+        with com.jiggawatt.jt.tools.adpcm.sound.ADPCMAudioFileReader;
+    provides javax.sound.sampled.spi.FormatConversionProvider
+        with com.jiggawatt.jt.tools.adpcm.sound.ADPCMFormatConversionProvider;
+}
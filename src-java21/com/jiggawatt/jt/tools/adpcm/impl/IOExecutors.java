@@ -0,0 +1,22 @@
+package com.jiggawatt.jt.tools.adpcm.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors on which asynchronous file I/O waits. This is the Java 21 version of this class, which runs
+ * each I/O operation on its own virtual thread.
+ */
+public final class IOExecutors {
+
+    /**
+     * Creates an executor for blocking I/O. Virtual threads are always daemon threads, so an idle executor does not
+     * keep the JVM alive.
+     * @return a new executor
+     */
+    public static ExecutorService newExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("jt-adpcm-io-", 0).factory());
+    }
+
+    private IOExecutors() {}
+}
@@ -0,0 +1,347 @@
+package com.jiggawatt.jt.tools.adpcm.util;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoderConfig;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+import com.jiggawatt.jt.tools.adpcm.impl.ADPCMUtil;
+import com.jiggawatt.jt.tools.adpcm.impl.DS64Chunk;
+import com.jiggawatt.jt.tools.adpcm.impl.WAVHeader;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.jiggawatt.jt.tools.adpcm.impl.RIFFUtil.chunkId;
+import static com.jiggawatt.jt.tools.adpcm.impl.RIFFUtil.requireId;
+import static com.jiggawatt.jt.tools.adpcm.impl.WAVHeader.DATA_ID;
+import static com.jiggawatt.jt.tools.adpcm.impl.WAVHeader.DS64_ID;
+import static com.jiggawatt.jt.tools.adpcm.impl.WAVHeader.FACT_ID;
+import static com.jiggawatt.jt.tools.adpcm.impl.WAVHeader.FMT_ID;
+import static com.jiggawatt.jt.tools.adpcm.impl.WAVHeader.WAVE_FORMAT_PCM;
+import static com.jiggawatt.jt.tools.adpcm.impl.WAVHeader.WAVE_ID;
+import static com.jiggawatt.jt.tools.adpcm.impl.WAVHeader.requireRiffId;
+
+/**
+ * Encodes, decodes and maps audio held in {@link MemorySegment}s, such as buffers owned by a native audio stack, or
+ * WAV files mapped with an {@link Arena}. Segments are accessed through direct buffer views of a window of whole
+ * blocks at a time, so audio is never copied to the heap, and a segment may be larger than 2 GB.
+ * <p>
+ * This class is only available on Java 22 and later.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class SegmentCodec {
+
+    private static final ValueLayout.OfInt INT_LE = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    /** The approximate size of the PCM window processed by a single call to the encoder or decoder. */
+    private static final int WINDOW_BYTES = 1 << 26;
+
+    private SegmentCodec() {}
+
+    /**
+     * Computes the number of bytes the given encoder configuration generates for an input of the given length. Unlike
+     * {@link ADPCMEncoderConfig#computeOutputSize(int)}, this supports more than {@code Integer.MAX_VALUE} samples.
+     * @param cfg         encoder configuration
+     * @param numSamples  number of input samples per channel
+     * @return the number of bytes required to store the input with ADPCM encoding
+     */
+    public static long computeOutputSize(ADPCMEncoderConfig cfg, long numSamples) {
+        return cfg.computeOutputSize(numSamples);
+    }
+
+    /**
+     * Encodes the 16-bit little-endian PCM data in segment {@code pcm}, and stores the resulting ADPCM data at the start
+     * of segment {@code adpcm}. As with {@link ADPCMEncoder#encode(java.nio.ShortBuffer, ByteBuffer)}, the encoder
+     * starts a new stream.
+     * @param encoder  the encoder
+     * @param pcm      interleaved 16-bit PCM data; a trailing partial frame is ignored
+     * @param adpcm    output segment; must be at least {@link #computeOutputSize(ADPCMEncoderConfig, long)} bytes long
+     * @return the number of bytes stored in {@code adpcm}
+     * @throws IllegalArgumentException if {@code adpcm} is too small
+     * @throws IOException when an encoding problem occurs
+     */
+    public static long encode(ADPCMEncoder encoder, MemorySegment pcm, MemorySegment adpcm) throws IOException {
+        final ADPCMEncoderConfig cfg = encoder.getConfiguration();
+
+        final int  frameBytes = cfg.getChannels() * 2;
+        final int  blockBytes = cfg.getSamplesPerBlock() * frameBytes;
+        final long numSamples = pcm.byteSize() / frameBytes;
+        final long outSize    = computeOutputSize(cfg, numSamples);
+
+        if (adpcm.byteSize() < outSize) {
+            throw new IllegalArgumentException(
+                "output segment too small: "+outSize+" bytes required, "+adpcm.byteSize()+" available"
+            );
+        }
+
+        final long inSize           = numSamples * frameBytes;
+        final long blocksPerWindow  = Math.max(1, WINDOW_BYTES / blockBytes);
+
+        long inOff  = 0;
+        long outOff = 0;
+
+        encoder.reset();
+
+        while (inOff < inSize) {
+            final long    count = Math.min(inSize - inOff, blocksPerWindow * blockBytes);
+            final boolean last  = inOff + count == inSize;
+
+            // every window but the last holds whole blocks, so the size of its output is known
+            final long outCount = last ? outSize - outOff : count / blockBytes * cfg.getBlockSize();
+
+            final ByteBuffer in  = pcm.asSlice(inOff, count).asByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+            final ByteBuffer out = adpcm.asSlice(outOff, outCount).asByteBuffer();
+
+            encoder.encode(in.asShortBuffer(), out, last);
+
+            inOff  += count;
+            outOff += out.position();
+        }
+
+        return outOff;
+    }
+
+    /**
+     * Decodes the ADPCM data at the start of segment {@code adpcm} until segment {@code pcm} is full. As with
+     * {@link ADPCMDecoder#decode(ByteBuffer, java.nio.ShortBuffer)}, a final, partial block is expected when the size
+     * of {@code pcm} is not a whole number of blocks.
+     * @param decoder  the decoder
+     * @param adpcm    ADPCM data
+     * @param pcm      output segment for interleaved 16-bit little-endian PCM data; a trailing partial frame is left
+     *                 untouched
+     * @return the number of bytes read from {@code adpcm}
+     * @throws IOException when {@code adpcm} contains too few bytes, or a malformed block
+     */
+    public static long decode(ADPCMDecoder decoder, MemorySegment adpcm, MemorySegment pcm) throws IOException {
+        final ADPCMDecoderConfig cfg = decoder.getConfiguration();
+
+        final int  frameBytes = cfg.getChannels() * 2;
+        final int  blockBytes = cfg.getSamplesPerBlock() * frameBytes;
+        final long numSamples = pcm.byteSize() / frameBytes;
+        final long inSize     = ADPCMUtil.computeOutputSize(
+            numSamples,
+            cfg.getChannels(),
+            cfg.getSamplesPerBlock(),
+            cfg.getBlockSize(),
+            cfg.getBitsPerSample()
+        );
+
+        if (adpcm.byteSize() < inSize) {
+            throw new IOException("too few elements left in input segment");
+        }
+
+        final long outSize         = numSamples * frameBytes;
+        final long blocksPerWindow = Math.max(1, WINDOW_BYTES / blockBytes);
+
+        long inOff  = 0;
+        long outOff = 0;
+
+        while (outOff < outSize) {
+            final long    count = Math.min(outSize - outOff, blocksPerWindow * blockBytes);
+            final boolean last  = outOff + count == outSize;
+
+            // the decoder reads until its input runs out, so each window's input must end with its last block
+            final long inCount = last ? inSize - inOff : count / blockBytes * cfg.getBlockSize();
+
+            final ByteBuffer in  = adpcm.asSlice(inOff, inCount).asByteBuffer();
+            final ByteBuffer out = pcm.asSlice(outOff, count).asByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+
+            decoder.decode(in, out.asShortBuffer());
+
+            inOff  += inCount;
+            outOff += count;
+        }
+
+        return inOff;
+    }
+
+    // file mapping
+    // =================================================================================================================
+    /**
+     * Maps the WAV file at the given path into memory. The audio data is not read until it is accessed, and remains
+     * mapped until {@code arena} is closed. RIFF, RF64 and BW64 files are supported.
+     * @param file   path to a WAV file
+     * @param arena  the arena that controls the lifetime of the mapping
+     * @return the mapped file
+     * @throws IOException if an I/O problem occurs, or if the file is malformed or unsupported
+     */
+    public static Mapping map(Path file, Arena arena) throws IOException {
+        final MemorySegment segment;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+        }
+
+        if (segment.byteSize() < 12) {
+            throw new IOException("malformed file; expected at least 12 bytes, found "+segment.byteSize());
+        }
+
+        final boolean rf64 = requireRiffId(segment.get(INT_LE, 0));
+        requireId(segment.get(INT_LE, 8), WAVE_ID);
+
+        long      riffSize = Integer.toUnsignedLong(segment.get(INT_LE, 4));
+        DS64Chunk ds64     = null;
+        long      pos      = 12;
+
+        if (rf64) {
+            // the ds64 chunk must come first, since it holds the real sizes of the RIFF and data chunks
+            if (segment.byteSize() < pos + 8) {
+                throw new IOException("expected "+chunkId(DS64_ID)+" chunk in file; none found");
+            }
+
+            requireId(segment.get(INT_LE, pos), DS64_ID);
+
+            final long chunkSize = Integer.toUnsignedLong(segment.get(INT_LE, pos + 4));
+            if (chunkSize > segment.byteSize() - pos - 8) {
+                throw new IOException("malformed file; ds64 chunk of "+chunkSize+" bytes is too large");
+            }
+
+            ds64     = DS64Chunk.read(copyChunk(segment.asSlice(pos + 8, chunkSize)));
+            riffSize = ds64.getRiffSize();
+            pos     += 8 + chunkSize + (chunkSize % 2);
+        }
+
+        final long riffEnd = Math.min(segment.byteSize(), 8 + riffSize);
+
+        // find the chunks we need to read the audio in this file
+        // =============================================================================================================
+        ByteBuffer    fmtChunk  = null;
+        ByteBuffer    factChunk = null;
+        MemorySegment dataChunk = null;
+
+        while (pos + 8 <= riffEnd) {
+            final int  chunkId   = segment.get(INT_LE, pos);
+            final long chunkSize = DS64Chunk.resolveSize(ds64, chunkId, segment.get(INT_LE, pos + 4));
+
+            pos += 8;
+
+            if (chunkSize > riffEnd - pos) {
+                throw new IOException(
+                    "malformed file; expected "+chunkSize+" bytes in "+chunkId(chunkId)+" chunk, but found "+
+                    (riffEnd - pos)
+                );
+            }
+
+            final MemorySegment chunk = segment.asSlice(pos, chunkSize);
+
+            if (chunkId == FMT_ID && fmtChunk == null) {
+                fmtChunk = copyChunk(chunk);
+            } else if (chunkId == FACT_ID && factChunk == null) {
+                factChunk = copyChunk(chunk);
+            } else if (chunkId == DATA_ID && dataChunk == null) {
+                dataChunk = chunk;
+            }
+
+            // chunks are word-aligned
+            pos += chunkSize + (chunkSize % 2);
+        }
+
+        if (fmtChunk == null) {
+            throw new IOException("expected "+chunkId(FMT_ID)+" chunk in file; none found");
+        }
+
+        if (dataChunk == null) {
+            throw new IOException("expected "+chunkId(DATA_ID)+" chunk in file; none found");
+        }
+
+        return new Mapping(WAVHeader.fromChunks(fmtChunk, factChunk, ds64, dataChunk.byteSize()), dataChunk);
+    }
+
+    /**
+     * A WAV file mapped into memory by {@link #map(Path, Arena)}.
+     */
+    public static final class Mapping {
+        private final WAVHeader     header;
+        private final MemorySegment data;
+
+        private Mapping(WAVHeader header, MemorySegment data) {
+            this.header = header;
+            this.data   = data;
+        }
+
+        /**
+         * @return the encoding used by the mapped file
+         */
+        public WAVFile.Format getFormat() {
+            return header.getFormat()==WAVE_FORMAT_PCM ? WAVFile.Format.PCM : WAVFile.Format.IMA_ADPCM;
+        }
+
+        /**
+         * @return the number of channels
+         */
+        public int getChannels() {
+            return header.getChannels();
+        }
+
+        /**
+         * @return the sample rate in Hz
+         */
+        public int getSampleRate() {
+            return header.getSampleRate();
+        }
+
+        /**
+         * @return the number of bits per sample
+         */
+        public int getBitsPerSample() {
+            return header.getBitsPerSample();
+        }
+
+        /**
+         * @return the block size in bytes
+         */
+        public int getBlockSize() {
+            return header.getBlockAlign();
+        }
+
+        /**
+         * @return the number of samples per channel
+         */
+        public long getNumSamples() {
+            return header.getNumSamples();
+        }
+
+        /**
+         * @return a read-only segment containing the audio data
+         */
+        public MemorySegment getData() {
+            return data;
+        }
+
+        /**
+         * Creates a decoder configuration matching this file.
+         * @return a decoder configuration
+         * @throws IllegalStateException if this is not an IMA ADPCM file
+         */
+        public ADPCMDecoderConfig createDecoderConfig() {
+            if (getFormat() != WAVFile.Format.IMA_ADPCM) {
+                throw new IllegalStateException("not an IMA ADPCM file");
+            }
+
+            return
+                ADPCMDecoder.configure()
+                .setChannels     (getChannels())
+                .setSampleRate   (getSampleRate())
+                .setBlockSize    (getBlockSize())
+                .setBitsPerSample(getBitsPerSample())
+                .end();
+        }
+    }
+
+    // implementation
+    // =================================================================================================================
+    private static ByteBuffer copyChunk(MemorySegment chunk) {
+        final ByteBuffer dst = ByteBuffer.allocate((int) chunk.byteSize()).order(ByteOrder.LITTLE_ENDIAN);
+        MemorySegment.ofBuffer(dst).copyFrom(chunk);
+        return dst;
+    }
+}
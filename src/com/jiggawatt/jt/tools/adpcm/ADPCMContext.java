@@ -36,17 +36,30 @@ final class ADPCMContext {
 
     private final Channel[] channels;
 
-    ADPCMContext(int blockAdpcmSamples, short[] pcmBlock, int numChannels) {
+    /**
+     * Creates a context with every channel zeroed.
+     * @param numChannels  the number of channels
+     */
+    ADPCMContext(int numChannels) {
         channels = new Channel[numChannels];
         for (int i=0; i<numChannels; i++) {
             channels[i] = new Channel();
         }
+    }
+
+    /**
+     * Creates a context for a stream starting with the given block, choosing each channel's initial step index from the
+     * average difference between its samples. Sample {@code i} of channel {@code ch} is
+     * {@code pcm[ch][offsets[ch] + i * stride]}.
+     */
+    ADPCMContext(int blockAdpcmSamples, short[][] pcm, int[] offsets, int stride, int numChannels) {
+        this(numChannels);
 
-        int[] initialDeltas = computeInitialDeltas(blockAdpcmSamples, pcmBlock);
+        for (int ch=0; ch < channels.length; ch++) {
+            final int initialDelta = computeInitialDelta(blockAdpcmSamples, pcm[ch], offsets[ch], stride);
 
-        for (int ch=0; ch < numChannels; ch++) {
             for (byte i=0; i<=88; i++) {
-                if (i==88 || initialDeltas[ch] < (ADPCMUtil.stepTable(i) + ADPCMUtil.stepTable(i+1))/2) {
+                if (i==88 || initialDelta < (ADPCMUtil.stepTable(i) + ADPCMUtil.stepTable(i+1))/2) {
                     channels[ch].index = i;
                     break;
                 }
@@ -62,28 +75,14 @@ final class ADPCMContext {
         return channels[ch];
     }
 
-    private int[] computeInitialDeltas(int blockAdpcmSamples, short[] pcmBlock) {
-        final int numChannels = channels.length;
-        int[] initialDeltas = new int[2];
-
-        if (numChannels == 2) {
-            for (int i=(blockAdpcmSamples-1) * numChannels; i>0; i-=numChannels) {
-                initialDeltas[0] -= initialDeltas[0] >> 3;
-                initialDeltas[0] += Math.abs(pcmBlock[i] - pcmBlock[i-numChannels]);
+    private static int computeInitialDelta(int blockAdpcmSamples, short[] pcm, int off, int stride) {
+        int initialDelta = 0;
 
-                initialDeltas[1] -= initialDeltas[1] >> 3;
-                initialDeltas[1] += Math.abs(pcmBlock[i-1] - pcmBlock[i+1]);
-            }
-        } else {
-            for (int i =(blockAdpcmSamples-1) * numChannels; i>0; i-=numChannels) {
-                initialDeltas[0] -= initialDeltas[0] >> 3;
-                initialDeltas[0] += Math.abs(pcmBlock[i] - pcmBlock[i - numChannels]);
-            }
+        for (int i=off + (blockAdpcmSamples-1) * stride; i>off; i-=stride) {
+            initialDelta -= initialDelta >> 3;
+            initialDelta += Math.abs(pcm[i] - pcm[i - stride]);
         }
 
-        initialDeltas[0] >>= 3;
-        initialDeltas[1] >>= 3;
-
-        return initialDeltas;
+        return initialDelta >> 3;
     }
 }
@@ -1,10 +1,14 @@
 package com.jiggawatt.jt.tools.adpcm;
 
 import com.jiggawatt.jt.tools.adpcm.impl.ADPCMUtil;
+import com.jiggawatt.jt.tools.adpcm.impl.CodecEvents;
+import com.jiggawatt.jt.tools.adpcm.impl.MetricsRecorder;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.Objects;
 
 /**
  * Decodes ADPCM input to 16-bit PCM data.
@@ -17,17 +21,27 @@ public final class ADPCMDecoder {
     private final int numChannels;
     private final int blockSize;
     private final int samplesPerBlock;
+    private final int bitsPerSample;
 
-    private final short[] pcmBlock;
-    private final byte[]  adpcmBlock;
+    private final short[]   pcmBlock;
+    private final short[][] planarBlock;
+    private final byte[]    adpcmBlock;
+
+    // scratch space, so decoding a block doesn't allocate
+    private final int[]     pcmData    = new int[2];
+    private final byte[]    index      = new byte[2];
+    private final short[][] outPlanes  = new short[2][];
+    private final int[]     outOffsets = new int[2];
 
     public ADPCMDecoder(ADPCMDecoderConfig cfg) {
         config          = cfg;
         numChannels     = cfg.getChannels();
         blockSize       = cfg.getBlockSize();
         samplesPerBlock = cfg.getSamplesPerBlock();
+        bitsPerSample   = cfg.getBitsPerSample();
 
         pcmBlock        = new short[samplesPerBlock * numChannels];
+        planarBlock     = new short[numChannels][samplesPerBlock];
         adpcmBlock      = new byte[blockSize];
     }
 
@@ -64,6 +78,10 @@ public final class ADPCMDecoder {
      * @throws IOException when an encoding problem occurs
      */
     public ShortBuffer decode(ByteBuffer in, ShortBuffer out) throws IOException {
+        final int    inStart  = in.position();
+        final int    outStart = out.position();
+        final Object event    = CodecEvents.beginDecode();
+
         while (in.hasRemaining()) {
             int blockAdpcmSamples = samplesPerBlock;
             int blockPcmSamples   = samplesPerBlock;
@@ -71,39 +89,215 @@ public final class ADPCMDecoder {
 
             int numSamples = out.remaining()/numChannels;
             if (blockAdpcmSamples > numSamples) {
-                blockAdpcmSamples = ((numSamples + 6) & ~7) + 1;
-                currentBlockSize  = (blockAdpcmSamples - 1) / (numChannels ^ 3) + (numChannels * 4);
+                blockAdpcmSamples = ADPCMUtil.computePartialBlockSamples(numSamples, bitsPerSample);
+                currentBlockSize  = ADPCMUtil.computePartialBlockSize(numChannels, blockAdpcmSamples, bitsPerSample);
                 blockPcmSamples   = numSamples;
             }
 
             if (in.remaining() < currentBlockSize) {
+                MetricsRecorder.recordDecodeError();
                 throw new IOException("too few elements left in input buffer");
             }
 
             in.get(adpcmBlock, 0, currentBlockSize);
 
-            decodeBlock(pcmBlock, adpcmBlock, currentBlockSize);
+            decodeBlock(pcmBlock, 0, adpcmBlock, 0, currentBlockSize);
 
             out.put(pcmBlock, 0, blockPcmSamples * numChannels);
         }
 
+        final int samples = (out.position() - outStart) / numChannels;
+        final int bytes   = in.position() - inStart;
+
+        CodecEvents.endDecode(event, config, samples, bytes);
+        MetricsRecorder.recordDecoded(samples, bytes);
+
         return out;
     }
 
-    private void decodeBlock(short[] outBuf, byte[] inBuf, int inBufSize) throws IOException {
-        int[]  pcmData = new int[2];
-        byte[] index   = new byte[2];
-        int    outPtr  = 0;
-        int    inPtr   = 0;
+    /**
+     * Decodes ADPCM data stored in array {@code in}, starting at index {@code inOff}, until {@code len} 16-bit PCM
+     * values have been stored in array {@code out}, starting at index {@code off}. Unlike
+     * {@link #decode(ByteBuffer, ShortBuffer)}, this method is driven by the size of the output: as with the buffer
+     * version, a final, partial block is expected when {@code len} is not a whole number of blocks. The arrays are
+     * worked on in place; only a final, partial block is copied.
+     * @param in     input array; contains ADPCM data
+     * @param inOff  the index of the first byte to decode
+     * @param out    output array for interleaved 16-bit PCM data
+     * @param off    the index at which to store the first decoded value
+     * @param len    the number of values to decode; a trailing partial frame is ignored
+     * @return the number of bytes read from {@code in}
+     * @throws IndexOutOfBoundsException if either offset, or the output range, lies outside its array
+     * @throws IOException when {@code in} contains too few bytes, or a malformed block
+     * @since 1.2.0
+     */
+    public int decode(byte[] in, int inOff, short[] out, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(inOff, 0, in.length);
+        Objects.checkFromIndexSize(off, len, out.length);
+
+        final Object event = CodecEvents.beginDecode();
+
+        int inPtr     = inOff;
+        int outPtr    = off;
+        int remaining = len / numChannels;
+
+        while (remaining > 0) {
+            if (remaining >= samplesPerBlock) {
+                if (in.length - inPtr < blockSize) {
+                    MetricsRecorder.recordDecodeError();
+                    throw new IOException("too few elements left in input buffer");
+                }
+
+                decodeBlock(out, outPtr, in, inPtr, blockSize);
+
+                inPtr     += blockSize;
+                outPtr    += samplesPerBlock * numChannels;
+                remaining -= samplesPerBlock;
+            } else {
+                // a partial block may decode to more samples than requested, so it can't be decoded in place
+                final int blockAdpcmSamples = ADPCMUtil.computePartialBlockSamples(remaining, bitsPerSample);
+                final int currentBlockSize  =
+                    ADPCMUtil.computePartialBlockSize(numChannels, blockAdpcmSamples, bitsPerSample);
+
+                if (in.length - inPtr < currentBlockSize) {
+                    MetricsRecorder.recordDecodeError();
+                    throw new IOException("too few elements left in input buffer");
+                }
+
+                decodeBlock(pcmBlock, 0, in, inPtr, currentBlockSize);
+                System.arraycopy(pcmBlock, 0, out, outPtr, remaining * numChannels);
+
+                inPtr     += currentBlockSize;
+                remaining  = 0;
+            }
+        }
+
+        // don't hold on to the caller's array
+        Arrays.fill(outPlanes, null);
+
+        CodecEvents.endDecode(event, config, len / numChannels, inPtr - inOff);
+        MetricsRecorder.recordDecoded(len / numChannels, inPtr - inOff);
+
+        return inPtr - inOff;
+    }
+
+    /**
+     * Decodes ADPCM data stored in array {@code in}, starting at index {@code inOff}, until {@code len} 16-bit PCM
+     * samples per channel have been stored in the arrays in {@code out}, one array per channel, starting at index
+     * {@code off} in each. The samples are identical to those {@link #decode(byte[], int, short[], int, int)} stores in
+     * interleaved form, but each channel is written with unit stride, so planar consumers need no deinterleaving pass.
+     * As with the interleaved version, a final, partial block is expected when {@code len} is not a whole number of
+     * blocks, and only that block is copied.
+     * @param in     input array; contains ADPCM data
+     * @param inOff  the index of the first byte to decode
+     * @param out    one output array for 16-bit PCM data per channel
+     * @param off    the index at which to store the first decoded sample in each array
+     * @param len    the number of samples per channel to decode
+     * @return the number of bytes read from {@code in}
+     * @throws IllegalArgumentException if {@code out} doesn't hold one array per channel
+     * @throws IndexOutOfBoundsException if either offset, or an output range, lies outside its array
+     * @throws IOException when {@code in} contains too few bytes, or a malformed block
+     * @since 1.2.0
+     */
+    public int decode(byte[] in, int inOff, short[][] out, int off, int len) throws IOException {
+        if (out.length != numChannels) {
+            throw new IllegalArgumentException("expected "+numChannels+" output arrays, found "+out.length);
+        }
+
+        Objects.checkFromIndexSize(inOff, 0, in.length);
+        for (short[] channel : out) {
+            Objects.checkFromIndexSize(off, len, channel.length);
+        }
+
+        final Object event = CodecEvents.beginDecode();
+
+        int inPtr     = inOff;
+        int outPtr    = off;
+        int remaining = len;
+
+        while (remaining > 0) {
+            if (remaining >= samplesPerBlock) {
+                if (in.length - inPtr < blockSize) {
+                    MetricsRecorder.recordDecodeError();
+                    throw new IOException("too few elements left in input buffer");
+                }
+
+                for (int ch=0; ch<numChannels; ch++) {
+                    outPlanes [ch] = out[ch];
+                    outOffsets[ch] = outPtr;
+                }
+
+                decodeBlock(outPlanes, outOffsets, 1, in, inPtr, blockSize);
+
+                inPtr     += blockSize;
+                outPtr    += samplesPerBlock;
+                remaining -= samplesPerBlock;
+            } else {
+                // a partial block may decode to more samples than requested, so it can't be decoded in place
+                final int blockAdpcmSamples = ADPCMUtil.computePartialBlockSamples(remaining, bitsPerSample);
+                final int currentBlockSize  =
+                    ADPCMUtil.computePartialBlockSize(numChannels, blockAdpcmSamples, bitsPerSample);
+
+                if (in.length - inPtr < currentBlockSize) {
+                    MetricsRecorder.recordDecodeError();
+                    throw new IOException("too few elements left in input buffer");
+                }
+
+                for (int ch=0; ch<numChannels; ch++) {
+                    outPlanes [ch] = planarBlock[ch];
+                    outOffsets[ch] = 0;
+                }
+
+                decodeBlock(outPlanes, outOffsets, 1, in, inPtr, currentBlockSize);
+
+                for (int ch=0; ch<numChannels; ch++) {
+                    System.arraycopy(planarBlock[ch], 0, out[ch], outPtr, remaining);
+                }
+
+                inPtr     += currentBlockSize;
+                remaining  = 0;
+            }
+        }
+
+        // don't hold on to the caller's arrays
+        Arrays.fill(outPlanes, null);
+
+        CodecEvents.endDecode(event, config, len, inPtr - inOff);
+        MetricsRecorder.recordDecoded(len, inPtr - inOff);
+
+        return inPtr - inOff;
+    }
+
+    private void decodeBlock(short[] outBuf, int outOff, byte[] inBuf, int inOff, int inBufSize) throws IOException {
+        // interleaved output is written in place, each channel with a stride of one frame
+        for (int ch=0; ch<numChannels; ch++) {
+            outPlanes [ch] = outBuf;
+            outOffsets[ch] = outOff + ch;
+        }
+
+        decodeBlock(outPlanes, outOffsets, numChannels, inBuf, inOff, inBufSize);
+    }
+
+    /**
+     * Decodes one block. Sample {@code i} of channel {@code ch} is stored at {@code out[ch][offsets[ch] + i * stride]},
+     * so the same code serves interleaved and planar output.
+     */
+    private void decodeBlock(short[][] out, int[] offsets, int stride, byte[] inBuf, int inOff, int inBufSize)
+            throws IOException {
+        final boolean timed = MetricsRecorder.isEnabled();
+        final long    start = timed ? System.nanoTime() : 0;
+
+        int inPtr = inOff;
 
         for (int ch=0; ch<numChannels; ch++) {
             int a = Byte.toUnsignedInt(inBuf[inPtr]);
             int b = Byte.toUnsignedInt(inBuf[inPtr+1]);
 
-            pcmData[ch] = outBuf[outPtr++] = (short)(a | (b << 8));
+            pcmData[ch] = out[ch][offsets[ch]] = (short)(a | (b << 8));
             index[ch] = inBuf[inPtr+2];
 
             if (index[ch] < 0 || index[ch] > 88 || inBuf[inPtr+3]!=0) {
+                MetricsRecorder.recordDecodeError();
                 throw new IOException("malformed block header");
             }
 
@@ -111,10 +305,27 @@ public final class ADPCMDecoder {
             inPtr     += 4;
         }
 
+        // the header holds each channel's first sample, so the codes start with the second
+        if (bitsPerSample != 4) {
+            decodeGroups(out, offsets, stride, inBuf, inPtr, inBufSize, pcmData, index);
+        } else {
+            decodeChunks(out, offsets, stride, inBuf, inPtr, inBufSize, pcmData, index);
+        }
+
+        if (timed) {
+            MetricsRecorder.recordDecodedBlock(System.nanoTime() - start);
+        }
+    }
+
+    private void decodeChunks(short[][] out, int[] offsets, int stride, byte[] inBuf, int inPtr, int inBufSize, int[] pcmData, byte[] index) {
         int chunks = inBufSize / (numChannels*4);
+        int sample = 1;
 
         while ((chunks--)> 0) {
             for (int ch=0; ch<numChannels; ch++) {
+                final short[] outBuf = out[ch];
+                final int     outPtr = offsets[ch] + sample * stride;
+
                 for (int i=0; i<4; i++) {
                     int step = ADPCMUtil.stepTable(index[ch]);
 
@@ -127,10 +338,10 @@ public final class ADPCMDecoder {
                     if ((v & 8) != 0) delta = -delta;
 
                     pcmData[ch] += delta;
-                    index  [ch] += ADPCMUtil.indexTable(v & 0x7);
+                    index  [ch]  = (byte) (index[ch] + ADPCMUtil.indexTable(v & 0x7));
                     index  [ch]  = clip(index[ch], 0, 88);
                     pcmData[ch]  = clip(pcmData[ch], -32768, 32767);
-                    outBuf[outPtr + i*2*numChannels] = (short)pcmData[ch];
+                    outBuf[outPtr + i*2*stride] = (short)pcmData[ch];
 
                     step = ADPCMUtil.stepTable(index[ch]);
                     delta = step >> 3;
@@ -141,18 +352,61 @@ public final class ADPCMDecoder {
                     if ((v & 0x80) != 0) delta = -delta;
 
                     pcmData[ch] += delta;
-                    index  [ch] += ADPCMUtil.indexTable((v >> 4) &0x7);
+                    index  [ch]  = (byte) (index[ch] + ADPCMUtil.indexTable((v >> 4) &0x7));
                     index  [ch]  = clip(index[ch], 0, 88);
                     pcmData[ch]  = clip(pcmData[ch], -32768, 32767);
-                    outBuf[outPtr + (i*2+1)*numChannels] = (short) pcmData[ch];
+                    outBuf[outPtr + (i*2+1)*stride] = (short) pcmData[ch];
 
                     inPtr++;
                 }
+            }
 
-                outPtr++;
+            sample += 8;
+        }
+    }
+
+    private void decodeGroups(short[][] out, int[] offsets, int stride, byte[] inBuf, int inPtr, int inBufSize, int[] pcmData, byte[] index) {
+        final int groupSamples = ADPCMUtil.groupSamples(bitsPerSample);
+        final int groupBytes   = ADPCMUtil.groupBytes(bitsPerSample);
+        final int codeMask     = (1 << bitsPerSample) - 1;
+        final int magMask      = codeMask >> 1;
+
+        // any bytes after the last whole group are padding
+        int groups = inBufSize / (groupBytes * numChannels);
+        int sample = 1;
+
+        while ((groups--)> 0) {
+            for (int ch=0; ch<numChannels; ch++) {
+                final short[] outBuf = out[ch];
+
+                int pcmPtr  = offsets[ch] + sample * stride;
+                int bytePtr = 0;
+                int bits    = 0;
+                int numBits = 0;
+
+                for (int i=0; i<groupSamples; i++) {
+                    if (numBits < bitsPerSample) {
+                        final byte b = inBuf[inPtr + ADPCMUtil.groupByteOffset(numChannels, ch, bytePtr++)];
+                        bits    |= Byte.toUnsignedInt(b) << numBits;
+                        numBits += 8;
+                    }
+
+                    int code = bits & codeMask;
+                    bits    >>>= bitsPerSample;
+                    numBits  -= bitsPerSample;
+
+                    pcmData[ch] += ADPCMUtil.computeDelta(bitsPerSample, code, ADPCMUtil.stepTable(index[ch]));
+                    index  [ch]  = (byte) (index[ch] + ADPCMUtil.indexTable(bitsPerSample, code & magMask));
+                    index  [ch]  = clip(index[ch], 0, 88);
+                    pcmData[ch]  = clip(pcmData[ch], -32768, 32767);
+                    outBuf[pcmPtr] = (short) pcmData[ch];
+
+                    pcmPtr += stride;
+                }
             }
 
-            outPtr += numChannels * 7;
+            inPtr  += groupBytes * numChannels;
+            sample += groupSamples;
         }
     }
 
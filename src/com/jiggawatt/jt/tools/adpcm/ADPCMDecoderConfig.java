@@ -12,6 +12,7 @@ public final class ADPCMDecoderConfig {
     private int blockSize;
     private int sampleRate;
     private int samplesPerBlock;
+    private int bitsPerSample;
 
     public static final int AUTO_BLOCK_SIZE = -1;
 
@@ -21,18 +22,20 @@ public final class ADPCMDecoderConfig {
      * @author Nikita Leonidov
      */
     public static final class Builder {
-        private int     channels   = 2;
-        private int     blockSize  = AUTO_BLOCK_SIZE;
-        private int     sampleRate = 44100;
+        private int     channels      = 2;
+        private int     blockSize     = AUTO_BLOCK_SIZE;
+        private int     sampleRate    = 44100;
+        private int     bitsPerSample = 4;
 
         Builder(ADPCMDecoderConfig other) {
             if (other==null) {
                 return;
             }
 
-            channels   = other.getChannels();
-            blockSize  = other.getBlockSize();
-            sampleRate = other.getSampleRate();
+            channels      = other.getChannels();
+            blockSize     = other.getBlockSize();
+            sampleRate    = other.getSampleRate();
+            bitsPerSample = other.getBitsPerSample();
         }
 
         /**
@@ -84,6 +87,22 @@ public final class ADPCMDecoderConfig {
             return this;
         }
 
+        /**
+         * Sets the number of bits per ADPCM sample. The default value is 4, which is the standard IMA ADPCM format;
+         * 2, 3 and 5 bits per sample use the layout written by ADPCM-XQ and read by FFmpeg. This must match the input.
+         * @param bits  2, 3, 4 or 5
+         * @return this builder
+         * @since 1.2.0
+         */
+        public Builder setBitsPerSample(int bits) {
+            if (!ADPCMUtil.isSupportedBitsPerSample(bits)) {
+                throw new IllegalArgumentException("unsupported bits per sample: "+bits+"; must be 2, 3, 4 or 5");
+            }
+
+            bitsPerSample = bits;
+            return this;
+        }
+
         /**
          * Creates a configuration object with the parameters passed to this builder.
          * @return a new configuration object
@@ -94,7 +113,8 @@ public final class ADPCMDecoderConfig {
             ret.channels        = channels;
             ret.blockSize       = blockSize == AUTO_BLOCK_SIZE ? ADPCMUtil.computeBlockSize(channels, sampleRate) : blockSize;
             ret.sampleRate      = sampleRate;
-            ret.samplesPerBlock = ADPCMUtil.computeSamplesPerBlock(channels, ret.blockSize);
+            ret.bitsPerSample   = bitsPerSample;
+            ret.samplesPerBlock = ADPCMUtil.computeSamplesPerBlock(channels, ret.blockSize, bitsPerSample);
 
             return ret;
         }
@@ -128,6 +148,15 @@ public final class ADPCMDecoderConfig {
         return sampleRate;
     }
 
+    /**
+     * @return the number of bits per ADPCM sample
+     * @see ADPCMDecoderConfig.Builder#setBitsPerSample(int)
+     * @since 1.2.0
+     */
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
     /**
      * @return the input block size in samples
      */
@@ -1,10 +1,15 @@
 package com.jiggawatt.jt.tools.adpcm;
 
 import com.jiggawatt.jt.tools.adpcm.impl.ADPCMUtil;
+import com.jiggawatt.jt.tools.adpcm.impl.CodecEvents;
+import com.jiggawatt.jt.tools.adpcm.impl.MetricsRecorder;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.Objects;
 
 /**
  * Encodes 16-bit PCM data to ADPCM.
@@ -17,21 +22,41 @@ public final class ADPCMEncoder {
     private final int          numChannels;
     private final int          blockSize;
     private final int          samplesPerBlock;
+    private final int          bitsPerSample;
     private final int          lookahead;
     private final NoiseShaping shaping;
 
-    private final short[] pcmBlock;
-    private final byte[]  adpcmBlock;
+    private final short[]   pcmBlock;
+    private final short[][] planarBlock;
+    private final byte[]    adpcmBlock;
+
+    // scratch space, so encoding a block doesn't allocate
+    private final int[]                  initPcmData = new int[2];
+    private final byte[]                 initIndex   = new byte[2];
+    private final int[]                  bestNibble  = new int[1];
+    private final short[][]              inPlanes    = new short[2][];
+    private final int[]                  inOffsets   = new int[2];
+    private final ADPCMContext.Channel[] searchState;
+
+    private ADPCMContext ctx;
 
     public ADPCMEncoder(ADPCMEncoderConfig cfg) {
         config          = cfg;
         numChannels     = cfg.getChannels();
         blockSize       = cfg.getBlockSize();
         samplesPerBlock = cfg.getSamplesPerBlock();
+        bitsPerSample   = cfg.getBitsPerSample();
         lookahead       = 3;
 
-        pcmBlock   = new short[cfg.getSamplesPerBlock() * numChannels];
-        adpcmBlock = new byte [cfg.getBlockSize()];
+        pcmBlock    = new short[cfg.getSamplesPerBlock() * numChannels];
+        planarBlock = new short[numChannels][cfg.getSamplesPerBlock()];
+        adpcmBlock  = new byte [cfg.getBlockSize()];
+
+        // one per level of the lookahead search
+        searchState = new ADPCMContext.Channel[lookahead + 1];
+        for (int i=0; i<searchState.length; i++) {
+            searchState[i] = new ADPCMContext.Channel();
+        }
 
         if (cfg.getNoiseShaping()) {
             shaping = cfg.getSampleRate() > 64000 ? NoiseShaping.STATIC : NoiseShaping.DYNAMIC;
@@ -74,65 +99,385 @@ public final class ADPCMEncoder {
      * @throws IOException when an I/O problem occurs
      */
     public ByteBuffer encode(ShortBuffer in, ByteBuffer out) throws IOException {
-        int currentBlockSize = blockSize;
-        ADPCMContext ctx = null;
+        reset();
+        return encode(in, out, true);
+    }
 
-        while (in.hasRemaining()) {
-            int blockAdpcmSamples = samplesPerBlock;
-            int blockPcmSamples   = samplesPerBlock;
-            int numSamples = in.remaining() / numChannels;
-
-            if (blockPcmSamples > numSamples) {
-                blockAdpcmSamples = ((numSamples + 6) & ~7) + 1;
-                currentBlockSize  = (blockAdpcmSamples - 1) / (numChannels ^ 3) + (numChannels * 4);
-                blockPcmSamples   = numSamples;
+    /**
+     * Encodes {@code len} 16-bit PCM values stored in array {@code in}, starting at index {@code off}, and stores the
+     * resulting ADPCM data in array {@code out}, starting at index {@code outOff}. This is equivalent to
+     * {@link #encode(ShortBuffer, ByteBuffer)}, but works on the arrays in place: only a final, partial block is
+     * copied.
+     * @param in      input array; contains interleaved 16-bit PCM data
+     * @param off     the index of the first value to encode
+     * @param len     the number of values to encode; a trailing partial frame is ignored
+     * @param out     output array for ADPCM data; must have room for {@link ADPCMEncoderConfig#computeOutputSize(int)}
+     *                bytes from {@code outOff}
+     * @param outOff  the index at which to store the first byte of ADPCM data
+     * @return the number of bytes stored in {@code out}
+     * @throws IndexOutOfBoundsException if either range lies outside its array
+     * @throws ADPCMEncodingException when an encoding problem occurs
+     * @throws IOException when an I/O problem occurs
+     * @since 1.2.0
+     */
+    public int encode(short[] in, int off, int len, byte[] out, int outOff) throws IOException {
+        Objects.checkFromIndexSize(off, len, in.length);
+
+        final int numSamples = len / numChannels;
+        Objects.checkFromIndexSize(outOff, config.computeOutputSize(numSamples), out.length);
+
+        reset();
+
+        final Object event = CodecEvents.beginEncode();
+
+        int inPtr     = off;
+        int outPtr    = outOff;
+        int remaining = numSamples;
+
+        while (remaining >= samplesPerBlock) {
+            final int numBytes = encodeBlock(in, inPtr, samplesPerBlock, out, outPtr);
+
+            // with 3 and 5 bits per sample, full blocks may end with a few unused bytes; these are always zero
+            Arrays.fill(out, outPtr + numBytes, outPtr + blockSize, (byte) 0);
+
+            inPtr     += samplesPerBlock * numChannels;
+            outPtr    += blockSize;
+            remaining -= samplesPerBlock;
+        }
+
+        // the final block is padded by repeating its last samples, so it can't be encoded in place
+        if (remaining > 0) {
+            final int blockAdpcmSamples = ADPCMUtil.computePartialBlockSamples(remaining, bitsPerSample);
+            final int count             = remaining * numChannels;
+
+            System.arraycopy(in, inPtr, pcmBlock, 0, count);
+            for (int dst=count; dst<blockAdpcmSamples * numChannels; dst++) {
+                pcmBlock[dst] = pcmBlock[dst - numChannels];
             }
 
-            final int count = blockPcmSamples * numChannels;
-            in.get(pcmBlock, 0, count);
+            outPtr += encodeBlock(pcmBlock, 0, blockAdpcmSamples, out, outPtr);
+        }
 
-            // if this is the last block and it's not full, duplicate the last sample(s) so we don't cerate problems
-            // for the lookahead
-            if (blockAdpcmSamples > blockPcmSamples) {
-                int dst = blockPcmSamples * numChannels;
-                int src = dst - numChannels;
-                int dups = (blockAdpcmSamples - blockPcmSamples) * numChannels;
+        // don't hold on to the caller's array
+        Arrays.fill(inPlanes, null);
 
-                while ((dups--)>0) {
-                    pcmBlock[dst++] = pcmBlock[src++];
-                }
+        reset();
+
+        CodecEvents.endEncode(event, config, numSamples, outPtr - outOff);
+        MetricsRecorder.recordEncoded(numSamples, outPtr - outOff);
+
+        return outPtr - outOff;
+    }
+
+    /**
+     * Encodes {@code len} 16-bit PCM samples per channel stored in the arrays in {@code in}, one array per channel,
+     * starting at index {@code off} in each, and stores the resulting ADPCM data in array {@code out}, starting at
+     * index {@code outOff}. The output is identical to that of {@link #encode(short[], int, int, byte[], int)} for the
+     * interleaved form of the same input, but the encoder reads each channel with unit stride, and no interleaving pass
+     * is needed for planar input. As with the interleaved version, only a final, partial block is copied.
+     * @param in      one input array of 16-bit PCM data per channel
+     * @param off     the index of the first sample to encode in each array
+     * @param len     the number of samples per channel to encode
+     * @param out     output array for ADPCM data; must have room for {@link ADPCMEncoderConfig#computeOutputSize(int)}
+     *                bytes from {@code outOff}
+     * @param outOff  the index at which to store the first byte of ADPCM data
+     * @return the number of bytes stored in {@code out}
+     * @throws IllegalArgumentException if {@code in} doesn't hold one array per channel
+     * @throws IndexOutOfBoundsException if any range lies outside its array
+     * @throws ADPCMEncodingException when an encoding problem occurs
+     * @throws IOException when an I/O problem occurs
+     * @since 1.2.0
+     */
+    public int encode(short[][] in, int off, int len, byte[] out, int outOff) throws IOException {
+        if (in.length != numChannels) {
+            throw new IllegalArgumentException("expected "+numChannels+" input arrays, found "+in.length);
+        }
+
+        for (short[] channel : in) {
+            Objects.checkFromIndexSize(off, len, channel.length);
+        }
+
+        Objects.checkFromIndexSize(outOff, config.computeOutputSize(len), out.length);
+
+        reset();
+
+        final Object event = CodecEvents.beginEncode();
+
+        int inPtr     = off;
+        int outPtr    = outOff;
+        int remaining = len;
+
+        while (remaining >= samplesPerBlock) {
+            for (int ch=0; ch<numChannels; ch++) {
+                inPlanes [ch] = in[ch];
+                inOffsets[ch] = inPtr;
             }
 
-            if (ctx==null) {
-                ctx = new ADPCMContext(blockAdpcmSamples, pcmBlock, numChannels);
+            final int numBytes = encodeBlock(inPlanes, inOffsets, 1, samplesPerBlock, out, outPtr);
+
+            // with 3 and 5 bits per sample, full blocks may end with a few unused bytes; these are always zero
+            Arrays.fill(out, outPtr + numBytes, outPtr + blockSize, (byte) 0);
+
+            inPtr     += samplesPerBlock;
+            outPtr    += blockSize;
+            remaining -= samplesPerBlock;
+        }
+
+        // the final block is padded by repeating its last samples, so it can't be encoded in place
+        if (remaining > 0) {
+            final int blockAdpcmSamples = ADPCMUtil.computePartialBlockSamples(remaining, bitsPerSample);
+
+            for (int ch=0; ch<numChannels; ch++) {
+                final short[] dst = planarBlock[ch];
+
+                System.arraycopy(in[ch], inPtr, dst, 0, remaining);
+                Arrays.fill(dst, remaining, blockAdpcmSamples, dst[remaining - 1]);
+
+                inPlanes [ch] = dst;
+                inOffsets[ch] = 0;
             }
 
-            int numBytes = encodeBlock(ctx, adpcmBlock, pcmBlock, blockAdpcmSamples);
-            if (numBytes != currentBlockSize) {
-                throw new ADPCMEncodingException(
-                    "unexpected number of bytes encoded; " +
-                    "expected "+currentBlockSize+", found "+numBytes
+            outPtr += encodeBlock(inPlanes, inOffsets, 1, blockAdpcmSamples, out, outPtr);
+        }
+
+        // don't hold on to the caller's arrays
+        Arrays.fill(inPlanes, null);
+
+        reset();
+
+        CodecEvents.endEncode(event, config, len, outPtr - outOff);
+        MetricsRecorder.recordEncoded(len, outPtr - outOff);
+
+        return outPtr - outOff;
+    }
+
+    /**
+     * Encodes a portion of a PCM stream. Unlike {@link #encode(ShortBuffer, ByteBuffer)}, this method continues the
+     * stream encoded by previous calls, so the input may be supplied in pieces of any size. Each call encodes as many
+     * whole blocks as {@code in} contains, and leaves any remaining samples in {@code in} for the next call. When
+     * {@code endOfInput} is {@code true}, the remaining samples are encoded as a final, shorter block, and the encoder
+     * is {@linkplain #reset() reset}.
+     * @param in          input buffer; contains 16-bit PCM data
+     * @param out         output buffer for ADPCM data
+     * @param endOfInput  {@code true} if {@code in} contains the end of the stream, {@code false} otherwise
+     * @return {@code out}
+     * @throws ADPCMEncodingException when an encoding problem occurs
+     * @throws IOException when an I/O problem occurs
+     * @since 1.2.0
+     */
+    public ByteBuffer encode(ShortBuffer in, ByteBuffer out, boolean endOfInput) throws IOException {
+        final int    wholeBlock = samplesPerBlock * numChannels;
+        final int    inStart    = in.position();
+        final int    outStart   = out.position();
+        final Object event      = CodecEvents.beginEncode();
+
+        while (in.remaining() >= wholeBlock || (endOfInput && in.hasRemaining())) {
+            encodeBlock(in, out);
+        }
+
+        if (endOfInput) {
+            reset();
+        }
+
+        final int samples = (in.position() - inStart) / numChannels;
+        final int bytes   = out.position() - outStart;
+
+        CodecEvents.endEncode(event, config, samples, bytes);
+        MetricsRecorder.recordEncoded(samples, bytes);
+
+        return out;
+    }
+
+    /**
+     * Encodes the PCM audio data stored in buffer {@code in}, as {@link #encode(ShortBuffer, ByteBuffer)} does, but
+     * reports its progress and can be stopped. After each block, {@code listener} is told how many samples have been
+     * encoded, and how long the rest should take at the throughput measured so far. Before each block, the encoder
+     * checks {@code token} and the current thread's interrupt status.
+     * <p>
+     * If the encode is cancelled or interrupted, this method throws {@link InterruptedIOException} and leaves a
+     * partial result: {@code out} holds the blocks encoded so far, which form a valid ADPCM stream of their own; its
+     * position, and that of {@code in}, are just past those blocks; and
+     * {@link InterruptedIOException#bytesTransferred} is the number of bytes stored in {@code out}. The thread's
+     * interrupt status is left set.
+     * @param in        input buffer; contains 16-bit PCM data
+     * @param out       output buffer for ADPCM data
+     * @param listener  receives progress after each block
+     * @param token     stops the encode when cancelled
+     * @return {@code out}
+     * @throws InterruptedIOException if {@code token} is cancelled, or the current thread interrupted
+     * @throws ADPCMEncodingException when an encoding problem occurs
+     * @throws IOException when an I/O problem occurs
+     * @since 1.2.0
+     */
+    public ByteBuffer encode(ShortBuffer in, ByteBuffer out, ProgressListener listener, CancellationToken token)
+            throws IOException {
+        Objects.requireNonNull(listener);
+        Objects.requireNonNull(token);
+
+        reset();
+
+        final int    total    = in.remaining() / numChannels;
+        final int    inStart  = in.position();
+        final int    outStart = out.position();
+        final long   start    = System.nanoTime();
+        final Object event    = CodecEvents.beginEncode();
+
+        while (in.hasRemaining()) {
+            if (token.isCancelled() || Thread.currentThread().isInterrupted()) {
+                reset();
+
+                final InterruptedIOException e = new InterruptedIOException(
+                    "encoding stopped after "+(in.position() - inStart) / numChannels+" of "+total+" samples"
                 );
+                e.bytesTransferred = out.position() - outStart;
+                throw e;
             }
 
-            out.put(adpcmBlock, 0, currentBlockSize);
+            encodeBlock(in, out);
+
+            final int  done    = (in.position() - inStart) / numChannels;
+            final long elapsed = System.nanoTime() - start;
+
+            listener.progress(done, total, (long) ((double) elapsed / done * (total - done)));
         }
 
+        reset();
+
+        final int samples = (in.position() - inStart) / numChannels;
+        final int bytes   = out.position() - outStart;
+
+        CodecEvents.endEncode(event, config, samples, bytes);
+        MetricsRecorder.recordEncoded(samples, bytes);
+
         return out;
     }
 
-    private int encodeBlock(ADPCMContext ctx, byte[] outBuf, short[] inBuf, int inCount) {
-        final int[]  initPcmData = new int[2];
-        final byte[] initIndex   = new byte[2];
+    /**
+     * Discards the state of the stream encoded by previous calls to {@link #encode(ShortBuffer, ByteBuffer, boolean)},
+     * so the next block starts a new stream.
+     * @since 1.2.0
+     */
+    public void reset() {
+        ctx = null;
+    }
+
+    /**
+     * Captures the state this encoder carries from one block to the next. Combined with
+     * {@link #restore(EncoderState)}, this lets a stream encoded with {@link #encode(ShortBuffer, ByteBuffer, boolean)}
+     * be checkpointed, and continued later by another encoder.
+     * @return a snapshot of this encoder's state
+     * @since 1.2.0
+     */
+    public EncoderState snapshot() {
+        return EncoderState.capture(ctx, numChannels);
+    }
+
+    /**
+     * Continues the stream captured by {@link #snapshot()}. The next block is encoded exactly as it would have been by
+     * the encoder the snapshot was taken from, provided both encoders have the same configuration.
+     * @param state  a snapshot of an encoder with the same configuration as this one
+     * @throws IllegalArgumentException if {@code state} has a different number of channels than this encoder
+     * @since 1.2.0
+     */
+    public void restore(EncoderState state) {
+        if (state.getChannels() != numChannels) {
+            throw new IllegalArgumentException(
+                "channel count mismatch: expected "+numChannels+", found "+state.getChannels()
+            );
+        }
+
+        ctx = state.createContext();
+    }
+
+    private void encodeBlock(ShortBuffer in, ByteBuffer out) throws IOException {
+        int currentBlockSize  = blockSize;
+        int blockAdpcmSamples = samplesPerBlock;
+        int blockPcmSamples   = samplesPerBlock;
+        int numSamples = in.remaining() / numChannels;
+
+        if (blockPcmSamples > numSamples) {
+            blockAdpcmSamples = ADPCMUtil.computePartialBlockSamples(numSamples, bitsPerSample);
+            currentBlockSize  = ADPCMUtil.computePartialBlockSize(numChannels, blockAdpcmSamples, bitsPerSample);
+            blockPcmSamples   = numSamples;
+        }
+
+        final int count = blockPcmSamples * numChannels;
+        in.get(pcmBlock, 0, count);
+
+        // if this is the last block and it's not full, duplicate the last sample(s) so we don't cerate problems
+        // for the lookahead
+        if (blockAdpcmSamples > blockPcmSamples) {
+            int dst = blockPcmSamples * numChannels;
+            int src = dst - numChannels;
+            int dups = (blockAdpcmSamples - blockPcmSamples) * numChannels;
+
+            while ((dups--)>0) {
+                pcmBlock[dst++] = pcmBlock[src++];
+            }
+        }
+
+        // with 3 and 5 bits per sample, full blocks may end with a few unused bytes; these are always zero
+        encodeBlock(pcmBlock, 0, blockAdpcmSamples, adpcmBlock, 0);
+
+        out.put(adpcmBlock, 0, currentBlockSize);
+    }
+
+    private int encodeBlock(short[] inBuf, int inOff, int blockAdpcmSamples, byte[] outBuf, int outOff)
+            throws ADPCMEncodingException {
+        // interleaved input is read in place, each channel with a stride of one frame
+        for (int ch=0; ch<numChannels; ch++) {
+            inPlanes [ch] = inBuf;
+            inOffsets[ch] = inOff + ch;
+        }
+
+        return encodeBlock(inPlanes, inOffsets, numChannels, blockAdpcmSamples, outBuf, outOff);
+    }
+
+    /**
+     * Encodes one block. Sample {@code i} of channel {@code ch} is {@code in[ch][offsets[ch] + i * stride]}, so the
+     * same code serves interleaved and planar input.
+     */
+    private int encodeBlock(short[][] in, int[] offsets, int stride, int blockAdpcmSamples, byte[] outBuf, int outOff)
+            throws ADPCMEncodingException {
+        if (ctx==null) {
+            ctx = new ADPCMContext(blockAdpcmSamples, in, offsets, stride, numChannels);
+        }
+
+        final int expectBytes = ADPCMUtil.computePartialBlockSize(numChannels, blockAdpcmSamples, bitsPerSample);
+
+        final Object  event = CodecEvents.beginBlock();
+        final boolean timed = MetricsRecorder.isEnabled();
+        final long    start = timed ? System.nanoTime() : 0;
+
+        int numBytes = encodeBlock(ctx, outBuf, outOff, in, offsets, stride, blockAdpcmSamples);
+
+        CodecEvents.endBlock(event, config, blockAdpcmSamples);
+
+        if (numBytes != expectBytes) {
+            MetricsRecorder.recordEncodeError();
+            throw new ADPCMEncodingException(
+                "unexpected number of bytes encoded; " +
+                "expected "+expectBytes+", found "+numBytes
+            );
+        }
+
+        if (timed) {
+            MetricsRecorder.recordEncodedBlock(System.nanoTime() - start);
+        }
+
+        return numBytes;
+    }
+
+    private int encodeBlock(
+            ADPCMContext ctx, byte[] outBuf, int outOff, short[][] in, int[] offsets, int stride, int inCount) {
         int written = 0;
 
         getDecodeParameters(ctx, initPcmData, initIndex);
 
-        int inPtr  = 0;
-        int outPtr = 0;
+        int outPtr = outOff;
 
         for (int ch=0; ch < ctx.getNumChannels(); ch++) {
-            initPcmData[ch] = inBuf[inPtr++];
+            initPcmData[ch] = in[ch][offsets[ch]];
             outBuf[outPtr]   = (byte) initPcmData[ch];
             outBuf[outPtr+1] = (byte) (initPcmData[ch] >> 8);
             outBuf[outPtr+2] = initIndex[ch];
@@ -143,40 +488,92 @@ public final class ADPCMEncoder {
         }
 
         setDecodeParameters(ctx, initPcmData, initIndex);
-        written += encodeChunks(ctx, outBuf, outPtr, inBuf, inPtr, inCount);
+
+        // the header holds each channel's first sample, so the codes start with the second
+        if (bitsPerSample == 4) {
+            written += encodeChunks(ctx, outBuf, outPtr, in, offsets, stride, inCount);
+        } else {
+            written += encodeGroups(ctx, outBuf, outPtr, in, offsets, stride, inCount);
+        }
 
         return written;
     }
 
-    private int encodeChunks(ADPCMContext ctx, byte[] outBuf, int outPtr, short[] inBuf, int inPtr, int inCount) {
+    private int encodeChunks(
+            ADPCMContext ctx, byte[] outBuf, int outPtr, short[][] in, int[] offsets, int stride, int inCount) {
         int chunks = (inCount-1)/8;
         int written = chunks * 4 * ctx.getNumChannels();
+        int sample  = 1;
 
         while ((chunks--)>0) {
             for (int ch=0; ch<ctx.getNumChannels(); ch++) {
-                int pcmPtr = inPtr + ch;
+                final short[] inBuf = in[ch];
+
+                int pcmPtr = offsets[ch] + sample * stride;
 
                 for (int i=0; i<4; i++) {
-                    outBuf[outPtr] = encodeSample(ctx, ch, inBuf, pcmPtr, chunks * 8 + (3 - i) * 2 + 2);
-                    pcmPtr += ctx.getNumChannels();
-                    outBuf[outPtr] |= encodeSample(ctx, ch, inBuf, pcmPtr, chunks * 8 + (3 - i) * 2 + 1) << 4;
-                    pcmPtr += ctx.getNumChannels();
+                    outBuf[outPtr] = encodeSample(ctx, ch, inBuf, pcmPtr, stride, chunks * 8 + (3 - i) * 2 + 2);
+                    pcmPtr += stride;
+                    outBuf[outPtr] |= (byte) (encodeSample(ctx, ch, inBuf, pcmPtr, stride, chunks * 8 + (3 - i) * 2 + 1) << 4);
+                    pcmPtr += stride;
                     outPtr++;
                 }
             }
 
-            inPtr += 8 * ctx.getNumChannels();
+            sample += 8;
         }
 
         return written;
     }
 
-    private byte encodeSample(ADPCMContext ctx, int ch, short[] inBuf, int inPtr, int numSamples) {
+    private int encodeGroups(
+            ADPCMContext ctx, byte[] outBuf, int outPtr, short[][] in, int[] offsets, int stride, int inCount) {
+        final int numChannels  = ctx.getNumChannels();
+        final int groupSamples = ADPCMUtil.groupSamples(bitsPerSample);
+        final int groupBytes   = ADPCMUtil.groupBytes(bitsPerSample);
+
+        int groups    = (inCount-1)/groupSamples;
+        int written   = groups * groupBytes * numChannels;
+        int remaining = inCount-1;
+        int sample    = 1;
+
+        while ((groups--)>0) {
+            for (int ch=0; ch<numChannels; ch++) {
+                final short[] inBuf = in[ch];
+
+                int pcmPtr  = offsets[ch] + sample * stride;
+                int bytePtr = 0;
+                int bits    = 0;
+                int numBits = 0;
+
+                // codes are packed least significant bit first, and may straddle bytes; like the 4-bit chunks, the
+                // group is stored as 4-byte words interleaved by channel
+                for (int i=0; i<groupSamples; i++) {
+                    bits    |= encodeSample(ctx, ch, inBuf, pcmPtr, stride, remaining - i) << numBits;
+                    numBits += bitsPerSample;
+                    pcmPtr  += stride;
+
+                    while (numBits >= 8) {
+                        outBuf[outPtr + ADPCMUtil.groupByteOffset(numChannels, ch, bytePtr++)] = (byte) bits;
+                        bits    >>>= 8;
+                        numBits  -= 8;
+                    }
+                }
+            }
+
+            outPtr    += groupBytes * numChannels;
+            sample    += groupSamples;
+            remaining -= groupSamples;
+        }
+
+        return written;
+    }
+
+    private byte encodeSample(ADPCMContext ctx, int ch, short[] inBuf, int inPtr, int stride, int numSamples) {
         ADPCMContext.Channel chan = ctx.getChannel(ch);
         int csample    = inBuf[inPtr];
         int depth      = numSamples -1;
         int step       = ADPCMUtil.stepTable(chan.index);
-        int trialDelta = step >> 3;
 
         switch (shaping) {
             case DYNAMIC:
@@ -193,17 +590,11 @@ public final class ADPCMEncoder {
             depth = lookahead;
         }
 
-        int[] bestNibble = new int[1];
-        minimumError(chan, ctx.getNumChannels(), csample, inBuf, inPtr, depth, bestNibble);
+        minimumError(chan, stride, csample, inBuf, inPtr, depth, bestNibble);
         int nibble = bestNibble[0];
 
-        if ((nibble & 1)!=0) trialDelta += (step >> 2);
-        if ((nibble & 2)!=0) trialDelta += (step >> 1);
-        if ((nibble & 4)!=0) trialDelta += step;
-        if ((nibble & 8)!=0) trialDelta = -trialDelta;
-
-        chan.pcmData += trialDelta;
-        chan.index   += ADPCMUtil.indexTable(nibble & 0x07);
+        chan.pcmData += ADPCMUtil.computeDelta(bitsPerSample, nibble, step);
+        chan.index   = (byte) (chan.index + ADPCMUtil.indexTable(bitsPerSample, nibble & magnitudeMask()));
         chan.index = clip(chan.index, 0, 88);
         chan.pcmData = clip(chan.pcmData, -32768, 32767);
 
@@ -214,32 +605,31 @@ public final class ADPCMEncoder {
         return (byte) nibble;
     }
 
-    private double minimumError(ADPCMContext.Channel pchan, int numChannels, int csample, short[] inBuf, int inPtr, int depth, int[] bestNibble) {
-        ADPCMContext.Channel chan = new ADPCMContext.Channel(pchan);
+    private double minimumError(ADPCMContext.Channel pchan, int stride, int csample, short[] inBuf, int inPtr, int depth, int[] bestNibble) {
+        ADPCMContext.Channel chan = searchState[depth].set(pchan);
 
-        int delta      = csample - chan.pcmData;
-        int step       = ADPCMUtil.stepTable(chan.index);
-        int trialDelta = (step >> 3);
+        int delta   = csample - chan.pcmData;
+        int step    = ADPCMUtil.stepTable(chan.index);
+        int maxMag  = magnitudeMask();
+        int signBit = maxMag + 1;
 
         int    nibble;
         int    nibble2;
         double minError;
 
+        // start from the code closest to the delta, so the search below can prune most of the others
+        int mag = bitsPerSample == 4
+            ? (Math.abs(delta) << 2) / step
+            : ((Math.abs(delta) << (bitsPerSample - 1)) / step) >> 1;
+
         if (delta < 0) {
-            int mag = (-delta << 2) / step;
-            nibble = 0x8 | (mag > 7 ? 7 : mag);
+            nibble = signBit | (mag > maxMag ? maxMag : mag);
         }
         else {
-            int mag = (delta << 2) / step;
-            nibble = mag > 7 ? 7 : mag;
+            nibble = mag > maxMag ? maxMag : mag;
         }
 
-        if ((nibble & 1)!=0) trialDelta += (step >> 2);
-        if ((nibble & 2)!=0) trialDelta += (step >> 1);
-        if ((nibble & 4)!=0) trialDelta += step;
-        if ((nibble & 8)!=0) trialDelta = -trialDelta;
-
-        chan.pcmData += trialDelta;
+        chan.pcmData += ADPCMUtil.computeDelta(bitsPerSample, nibble, step);
         chan.pcmData = clip(chan.pcmData, -32768, 32767);
 
         if (bestNibble!=null) {
@@ -249,14 +639,14 @@ public final class ADPCMEncoder {
         minError = (double) (chan.pcmData - csample) * (chan.pcmData - csample);
 
         if (depth!=0) {
-            chan.index += ADPCMUtil.indexTable(nibble & 0x07);
+            chan.index = (byte) (chan.index + ADPCMUtil.indexTable(bitsPerSample, nibble & maxMag));
             chan.index = clip(chan.index, 0, 88);
-            minError += minimumError(chan, numChannels, inBuf[inPtr+numChannels], inBuf, inPtr + numChannels, depth - 1, null);
+            minError += minimumError(chan, stride, inBuf[inPtr+stride], inBuf, inPtr + stride, depth - 1, null);
         } else {
             return minError;
         }
 
-        for (nibble2 = 0; nibble2 <= 0xF; ++nibble2) {
+        for (nibble2 = 0; nibble2 <= (signBit | maxMag); ++nibble2) {
             double error;
 
             if (nibble2 == nibble) {
@@ -264,22 +654,16 @@ public final class ADPCMEncoder {
             }
 
             chan.set(pchan);
-            trialDelta = (step >> 3);
-
-            if ((nibble2 & 1)!=0) trialDelta += (step >> 2);
-            if ((nibble2 & 2)!=0) trialDelta += (step >> 1);
-            if ((nibble2 & 4)!=0) trialDelta += step;
-            if ((nibble2 & 8)!=0) trialDelta = -trialDelta;
 
-            chan.pcmData += trialDelta;
+            chan.pcmData += ADPCMUtil.computeDelta(bitsPerSample, nibble2, step);
             chan.pcmData = clip(chan.pcmData, -32768, 32767);
 
             error = (double) (chan.pcmData - csample) * (chan.pcmData - csample);
 
             if (error < minError) {
-                chan.index += ADPCMUtil.indexTable(nibble2 & 0x07);
+                chan.index = (byte) (chan.index + ADPCMUtil.indexTable(bitsPerSample, nibble2 & maxMag));
                 chan.index = clip(chan.index, 0, 88);
-                error += minimumError(chan, numChannels, inBuf[inPtr+numChannels], inBuf, inPtr+numChannels, depth - 1, null);
+                error += minimumError(chan, stride, inBuf[inPtr+stride], inBuf, inPtr+stride, depth - 1, null);
 
                 if (error < minError) {
                     if (bestNibble!=null) {
@@ -293,6 +677,13 @@ public final class ADPCMEncoder {
         return minError;
     }
 
+    /**
+     * @return a mask for the magnitude bits of an ADPCM code, i.e. everything but the sign bit
+     */
+    private int magnitudeMask() {
+        return (1 << (bitsPerSample - 1)) - 1;
+    }
+
     private int shapeDynamic(ADPCMContext.Channel chan, int csample) {
         int sam  = (3 * chan.history [0] - chan.history [1]) >> 1;
         int temp = csample - (((chan.weight * sam) + 512) >> 10);
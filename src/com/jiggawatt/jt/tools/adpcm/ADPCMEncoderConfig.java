@@ -3,6 +3,7 @@ package com.jiggawatt.jt.tools.adpcm;
 import com.jiggawatt.jt.tools.adpcm.impl.ADPCMUtil;
 
 import java.nio.ShortBuffer;
+import java.util.Objects;
 
 /**
  * Configuration object for {@link ADPCMEncoder}. Acquire an instance using {@link ADPCMEncoder#configure()}.
@@ -13,6 +14,7 @@ public final class ADPCMEncoderConfig {
     private int     channels;
     private int     sampleRate;
     private boolean noiseShaping;
+    private int     bitsPerSample;
 
     private int blockSize;
     private int samplesPerBlock;
@@ -27,8 +29,9 @@ public final class ADPCMEncoderConfig {
     public static final class Builder {
         private int     channels     = 2;
         private int     sampleRate   = 44100;
-        private boolean noiseShaping = true;
-        private int     blockSize    = AUTO_BLOCK_SIZE;
+        private boolean noiseShaping  = true;
+        private int     blockSize     = AUTO_BLOCK_SIZE;
+        private int     bitsPerSample = 4;
 
         Builder(ADPCMEncoderConfig other) {
             if (other==null) {
@@ -37,8 +40,9 @@ public final class ADPCMEncoderConfig {
 
             channels     = other.getChannels();
             sampleRate   = other.getSampleRate();
-            noiseShaping = other.getNoiseShaping();
-            blockSize    = other.blockSize;
+            noiseShaping  = other.getNoiseShaping();
+            blockSize     = other.blockSize;
+            bitsPerSample = other.getBitsPerSample();
         }
 
         /**
@@ -101,6 +105,23 @@ public final class ADPCMEncoderConfig {
             return this;
         }
 
+        /**
+         * Sets the number of bits per ADPCM sample. The default value is 4, which is the standard IMA ADPCM format;
+         * 2, 3 and 5 bits per sample use the layout written by ADPCM-XQ and read by FFmpeg. Fewer bits per sample
+         * increase compression, but decrease sound quality.
+         * @param bits  2, 3, 4 or 5
+         * @return this builder
+         * @since 1.2.0
+         */
+        public Builder setBitsPerSample(int bits) {
+            if (!ADPCMUtil.isSupportedBitsPerSample(bits)) {
+                throw new IllegalArgumentException("unsupported bits per sample: "+bits+"; must be 2, 3, 4 or 5");
+            }
+
+            bitsPerSample = bits;
+            return this;
+        }
+
         /**
          * Creates a configuration object with the parameters passed to this builder.
          * @return a new configuration object
@@ -108,12 +129,13 @@ public final class ADPCMEncoderConfig {
         public ADPCMEncoderConfig end() {
             ADPCMEncoderConfig ret = new ADPCMEncoderConfig();
 
-            ret.channels     = channels;
-            ret.sampleRate   = sampleRate;
-            ret.noiseShaping = noiseShaping;
-            ret.blockSize    = blockSize == AUTO_BLOCK_SIZE ? ADPCMUtil.computeBlockSize(channels, sampleRate) : blockSize;
+            ret.channels      = channels;
+            ret.sampleRate    = sampleRate;
+            ret.noiseShaping  = noiseShaping;
+            ret.bitsPerSample = bitsPerSample;
+            ret.blockSize     = blockSize == AUTO_BLOCK_SIZE ? ADPCMUtil.computeBlockSize(channels, sampleRate) : blockSize;
 
-            ret.samplesPerBlock = ADPCMUtil.computeSamplesPerBlock(channels, ret.blockSize);
+            ret.samplesPerBlock = ADPCMUtil.computeSamplesPerBlock(channels, ret.blockSize, bitsPerSample);
 
             return ret;
         }
@@ -147,6 +169,15 @@ public final class ADPCMEncoderConfig {
         return noiseShaping;
     }
 
+    /**
+     * @return the number of bits per ADPCM sample
+     * @see ADPCMEncoderConfig.Builder#setBitsPerSample(int)
+     * @since 1.2.0
+     */
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
     /**
      * @return the output block size in bytes
      * @see ADPCMEncoderConfig.Builder#setBlockSize(int)
@@ -172,7 +203,7 @@ public final class ADPCMEncoderConfig {
      * @return the number of bytes required to store the input with ADPCM encoding
      */
     public int computeOutputSize(ShortBuffer in) {
-        return ADPCMUtil.computeOutputSize(in.capacity()/channels, channels, samplesPerBlock, blockSize);
+        return computeOutputSize(in.capacity()/channels);
     }
 
     /**
@@ -181,10 +212,34 @@ public final class ADPCMEncoderConfig {
      * @return the number of bytes required to store an input of the given length with ADPCM encoding
      */
     public int computeOutputSize(int numSamples) {
-        int blockSize       = ADPCMUtil.computeBlockSize(channels, sampleRate);
-        int samplesPerBlock = ADPCMUtil.computeSamplesPerBlock(channels, blockSize);
+        return ADPCMUtil.computeOutputSize(numSamples, channels, samplesPerBlock, blockSize, bitsPerSample);
+    }
+
+    /**
+     * Computes the total number of bytes that will be generated by this encoder for the given input. Unlike
+     * {@link #computeOutputSize(int)}, this supports outputs larger than 2 GB, such as those streamed to RF64 files.
+     * @param numSamples number of input samples
+     * @return the number of bytes required to store an input of the given length with ADPCM encoding
+     * @since 1.2.0
+     */
+    public long computeOutputSize(long numSamples) {
+        return ADPCMUtil.computeOutputSize(numSamples, channels, samplesPerBlock, blockSize, bitsPerSample);
+    }
 
-        return ADPCMUtil.computeOutputSize(numSamples, channels, samplesPerBlock, blockSize);
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ADPCMEncoderConfig)) return false;
+        ADPCMEncoderConfig that = (ADPCMEncoderConfig) o;
+        return channels      == that.channels
+            && sampleRate    == that.sampleRate
+            && noiseShaping  == that.noiseShaping
+            && bitsPerSample == that.bitsPerSample
+            && blockSize     == that.blockSize;
     }
 
+    @Override
+    public int hashCode() {
+        return Objects.hash(channels, sampleRate, noiseShaping, bitsPerSample, blockSize);
+    }
 }
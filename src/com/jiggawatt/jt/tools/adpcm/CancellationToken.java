@@ -0,0 +1,38 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Asks a long encode to stop. The encoder checks the token between blocks, so an encode stops within one block of
+ * {@link #cancel()} being called, from any thread. See
+ * {@link ADPCMEncoder#encode(ShortBuffer, ByteBuffer, ProgressListener, CancellationToken)}.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class CancellationToken {
+
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a token that has not been cancelled.
+     */
+    public CancellationToken() {
+        //
+    }
+
+    /**
+     * Cancels every encode that uses this token, now or later.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return {@code true} if {@link #cancel()} has been called, {@code false} otherwise
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,219 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of the state an {@link ADPCMEncoder} carries from one block to the next: for each channel,
+ * the predicted sample, the step table index, and the noise shaping error, weight and history. Take a snapshot with
+ * {@link ADPCMEncoder#snapshot()} between blocks, and pass it to {@link ADPCMEncoder#restore(EncoderState)} on another
+ * encoder to continue the same stream; the output is identical to what the original encoder would have produced.
+ * <p>
+ * States can be stored and transmitted in a compact binary form with {@link #toByteArray()} and
+ * {@link #fromByteArray(byte[])}. A state does not include the encoder configuration; it must be restored on an
+ * encoder with the same configuration as the one it was taken from.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class EncoderState {
+
+    private static final byte VERSION = 1;
+
+    /** The size of a single channel's state in the binary form. */
+    private static final int CHANNEL_BYTES = 21;
+
+    private final int     numChannels;
+    private final boolean started;
+    private final int[]   pcmData;
+    private final byte[]  index;
+    private final int[]   error;
+    private final int[]   weight;
+    private final int[]   history;
+
+    private EncoderState(int numChannels, boolean started) {
+        this.numChannels = numChannels;
+        this.started     = started;
+
+        pcmData = new int [numChannels];
+        index   = new byte[numChannels];
+        error   = new int [numChannels];
+        weight  = new int [numChannels];
+        history = new int [numChannels * 2];
+    }
+
+    /**
+     * Captures the given encoder context.
+     * @param ctx          the context, or {@code null} if the encoder has not started a stream
+     * @param numChannels  the number of channels
+     */
+    static EncoderState capture(ADPCMContext ctx, int numChannels) {
+        EncoderState dst = new EncoderState(numChannels, ctx!=null);
+
+        if (ctx!=null) {
+            for (int ch=0; ch<numChannels; ch++) {
+                ADPCMContext.Channel chan = ctx.getChannel(ch);
+
+                dst.pcmData[ch]       = chan.pcmData;
+                dst.index  [ch]       = chan.index;
+                dst.error  [ch]       = chan.error;
+                dst.weight [ch]       = chan.weight;
+                dst.history[ch*2]     = chan.history[0];
+                dst.history[ch*2 + 1] = chan.history[1];
+            }
+        }
+
+        return dst;
+    }
+
+    /**
+     * @return a new encoder context with this state, or {@code null} if this is the state of an encoder that has not
+     *         started a stream
+     */
+    ADPCMContext createContext() {
+        if (!started) {
+            return null;
+        }
+
+        ADPCMContext ctx = new ADPCMContext(numChannels);
+
+        for (int ch=0; ch<numChannels; ch++) {
+            ADPCMContext.Channel chan = ctx.getChannel(ch);
+
+            chan.pcmData    = pcmData[ch];
+            chan.index      = index  [ch];
+            chan.error      = error  [ch];
+            chan.weight     = weight [ch];
+            chan.history[0] = history[ch*2];
+            chan.history[1] = history[ch*2 + 1];
+        }
+
+        return ctx;
+    }
+
+    /**
+     * @return the number of channels
+     */
+    public int getChannels() {
+        return numChannels;
+    }
+
+    /**
+     * @return {@code false} if this is the state of an encoder that has not encoded any blocks since it was created
+     *         or reset, {@code true} otherwise
+     */
+    public boolean isStarted() {
+        return started;
+    }
+
+    // binary form
+    // =================================================================================================================
+    /**
+     * Serializes this state. The result is 3 bytes long, plus 21 bytes per channel.
+     * @return the binary form of this state
+     */
+    public byte[] toByteArray() {
+        ByteBuffer dst = ByteBuffer.allocate(3 + numChannels * CHANNEL_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        dst.put(VERSION);
+        dst.put((byte) numChannels);
+        dst.put((byte) (started ? 1 : 0));
+
+        for (int ch=0; ch<numChannels; ch++) {
+            dst.putInt(pcmData[ch]);
+            dst.put   (index  [ch]);
+            dst.putInt(error  [ch]);
+            dst.putInt(weight [ch]);
+            dst.putInt(history[ch*2]);
+            dst.putInt(history[ch*2 + 1]);
+        }
+
+        return dst.array();
+    }
+
+    /**
+     * Deserializes a state produced by {@link #toByteArray()}.
+     * @param bytes  the binary form of a state
+     * @return the state
+     * @throws IOException if {@code bytes} does not contain a valid state
+     */
+    public static EncoderState fromByteArray(byte[] bytes) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            final byte version = in.get();
+            if (version != VERSION) {
+                throw new IOException("unsupported encoder state version: "+version);
+            }
+
+            final int numChannels = in.get();
+            if (numChannels!=1 && numChannels!=2) {
+                throw new IOException("malformed encoder state: unsupported channel count "+numChannels);
+            }
+
+            final int flags = in.get();
+            if (flags!=0 && flags!=1) {
+                throw new IOException("malformed encoder state");
+            }
+
+            EncoderState dst = new EncoderState(numChannels, flags==1);
+
+            for (int ch=0; ch<numChannels; ch++) {
+                dst.pcmData[ch]       = in.getInt();
+                dst.index  [ch]       = in.get();
+                dst.error  [ch]       = in.getInt();
+                dst.weight [ch]       = in.getInt();
+                dst.history[ch*2]     = in.getInt();
+                dst.history[ch*2 + 1] = in.getInt();
+
+                if (dst.index[ch] < 0 || dst.index[ch] > 88 || dst.pcmData[ch] < -32768 || dst.pcmData[ch] > 32767) {
+                    throw new IOException("malformed encoder state: channel "+ch+" out of range");
+                }
+            }
+
+            if (in.hasRemaining()) {
+                throw new IOException("malformed encoder state: "+in.remaining()+" trailing bytes");
+            }
+
+            return dst;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("malformed encoder state: too short", e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        EncoderState state = (EncoderState) o;
+
+        return
+            numChannels == state.numChannels
+            && started == state.started
+            && Arrays.equals(pcmData, state.pcmData)
+            && Arrays.equals(index,   state.index)
+            && Arrays.equals(error,   state.error)
+            && Arrays.equals(weight,  state.weight)
+            && Arrays.equals(history, state.history);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 31 * numChannels + (started ? 1 : 0);
+        result = 31 * result + Arrays.hashCode(pcmData);
+        result = 31 * result + Arrays.hashCode(index);
+        result = 31 * result + Arrays.hashCode(error);
+        result = 31 * result + Arrays.hashCode(weight);
+        result = 31 * result + Arrays.hashCode(history);
+        return result;
+    }
+}
@@ -0,0 +1,24 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Receives the progress of a long encode, once per block. See
+ * {@link ADPCMEncoder#encode(ShortBuffer, ByteBuffer, ProgressListener, CancellationToken)}.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+    /**
+     * Called on the encoding thread after each block. The encoder waits for this method to return, so it should be
+     * quick; to stop the encode, cancel its {@link CancellationToken}.
+     * @param done            the number of samples per channel encoded so far
+     * @param total           the number of samples per channel to encode
+     * @param remainingNanos  the estimated time until the encode is done, based on the throughput so far
+     */
+    void progress(long done, long total, long remainingNanos);
+}
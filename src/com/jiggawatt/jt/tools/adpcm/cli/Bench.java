@@ -0,0 +1,181 @@
+package com.jiggawatt.jt.tools.adpcm.cli;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoderConfig;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measures encoding and decoding throughput, and the signal-to-noise ratio of the decoded audio, for a set of PCM files
+ * across block sizes and noise shaping settings. Each file is encoded and decoded a number of times per setting, and
+ * the fastest run counts; the results for every file are added up.
+ *
+ * @author Nikita Leonidov
+ */
+final class Bench {
+
+    private final Options     opts;
+    private final PrintStream out;
+    private final PrintStream err;
+
+    Bench(Options opts, PrintStream out, PrintStream err) {
+        this.opts = opts;
+        this.out  = out;
+        this.err  = err;
+    }
+
+    /**
+     * @return {@code true} if every file could be read, {@code false} otherwise
+     */
+    boolean run() throws IOException {
+        boolean ok = true;
+
+        // load the input
+        // -------------------------------------------------------------------------------------------------------------
+        final List<Clip> clips = new ArrayList<>();
+
+        for (String name : opts.paths) {
+            final Path path = Paths.get(name);
+
+            final List<Path> files;
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> walk = Files.walk(path)) {
+                    files = walk
+                        .filter(Files::isRegularFile)
+                        .filter(f -> f.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".wav"))
+                        .collect(Collectors.toList());
+                }
+            } else {
+                files = List.of(path);
+            }
+
+            for (Path file : files) {
+                try {
+                    final WAVFile wav = WAVFile.fromFile(file);
+                    if (wav.getFormat() != WAVFile.Format.PCM) {
+                        err.println(file+": skipped; not a PCM file");
+                        continue;
+                    }
+                    clips.add(new Clip(wav));
+                } catch (IOException e) {
+                    err.println(file+": "+e.getMessage());
+                    ok = false;
+                }
+            }
+        }
+
+        if (clips.isEmpty()) {
+            err.println("no PCM files to measure");
+            return false;
+        }
+
+        long totalSamples = 0;
+        for (Clip clip : clips) {
+            totalSamples += clip.numSamples;
+        }
+
+        out.printf(Locale.ROOT, "%d files, %d samples per channel, %d bits per sample, best of %d%n",
+            clips.size(), totalSamples, opts.bits, opts.iterations);
+        out.printf(Locale.ROOT, "%6s  %7s  %16s  %16s  %8s%n",
+            "block", "shaping", "encode (Ms/s)", "decode (Ms/s)", "SNR (dB)");
+
+        // measure
+        // -------------------------------------------------------------------------------------------------------------
+        for (int blockSize : opts.blockSizes) {
+            for (boolean shaping : new boolean[] { true, false }) {
+                long   encodeNanos = 0;
+                long   decodeNanos = 0;
+                double signal      = 0;
+                double noise       = 0;
+
+                for (Clip clip : clips) {
+                    final ADPCMEncoderConfig ecfg =
+                        opts.encoderConfig(clip.channels, clip.sampleRate, blockSize, shaping);
+                    final ADPCMDecoderConfig dcfg =
+                        ADPCMDecoder.configure()
+                        .setChannels     (clip.channels)
+                        .setSampleRate   (clip.sampleRate)
+                        .setBlockSize    (blockSize)
+                        .setBitsPerSample(opts.bits)
+                        .end();
+
+                    final ADPCMEncoder encoder = new ADPCMEncoder(ecfg);
+                    final ADPCMDecoder decoder = new ADPCMDecoder(dcfg);
+                    final byte[]       adpcm   = new byte[ecfg.computeOutputSize(clip.numSamples)];
+                    final short[]      decoded = new short[clip.pcm.length];
+
+                    long bestEncode = Long.MAX_VALUE;
+                    long bestDecode = Long.MAX_VALUE;
+
+                    for (int i=0; i<opts.iterations; i++) {
+                        final long t0 = System.nanoTime();
+                        encoder.encode(clip.pcm, 0, clip.pcm.length, adpcm, 0);
+                        final long t1 = System.nanoTime();
+                        decoder.decode(adpcm, 0, decoded, 0, decoded.length);
+                        final long t2 = System.nanoTime();
+
+                        bestEncode = Math.min(bestEncode, t1 - t0);
+                        bestDecode = Math.min(bestDecode, t2 - t1);
+                    }
+
+                    encodeNanos += bestEncode;
+                    decodeNanos += bestDecode;
+
+                    for (int i=0; i<decoded.length; i++) {
+                        final double s = clip.pcm[i];
+                        final double d = s - decoded[i];
+                        signal += s * s;
+                        noise  += d * d;
+                    }
+                }
+
+                out.printf(Locale.ROOT, "%6d  %7s  %16.2f  %16.2f  %8.2f%n",
+                    blockSize,
+                    shaping ? "on" : "off",
+                    rate(totalSamples, encodeNanos),
+                    rate(totalSamples, decodeNanos),
+                    noise == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(signal / noise));
+            }
+        }
+
+        return ok;
+    }
+
+    /**
+     * @return millions of samples per channel per second
+     */
+    private static double rate(long samples, long nanos) {
+        return nanos == 0 ? 0 : samples * 1e3 / nanos;
+    }
+
+    private static final class Clip {
+        final short[] pcm;
+        final int     channels;
+        final int     sampleRate;
+        final int     numSamples;
+
+        Clip(WAVFile wav) {
+            final ShortBuffer data = wav.getReadOnlyData().asShortBuffer();
+
+            pcm        = new short[data.remaining()];
+            channels   = wav.getChannels();
+            sampleRate = wav.getSampleRate();
+            numSamples = wav.getNumSamples();
+
+            data.get(pcm);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.jiggawatt.jt.tools.adpcm.cli;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoderConfig;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+import com.jiggawatt.jt.tools.adpcm.impl.WAVHeader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.jiggawatt.jt.tools.adpcm.impl.WAVHeader.WAVE_FORMAT_PCM;
+
+/**
+ * Converts a WAV file, or a directory tree of WAV files, in parallel. Files are streamed from input to output a few
+ * blocks at a time, so their size doesn't matter. Each output is written to a temporary file, which is renamed once
+ * complete; an output that is newer than its input is taken to be up to date, and skipped.
+ *
+ * @author Nikita Leonidov
+ */
+final class Convert {
+
+    enum Mode { ENCODE, DECODE }
+
+    /** The number of blocks read, converted and written at a time. */
+    private static final int CHUNK_BLOCKS = 64;
+
+    private final Mode        mode;
+    private final Options     opts;
+    private final PrintStream out;
+    private final PrintStream err;
+
+    Convert(Mode mode, Options opts, PrintStream out, PrintStream err) {
+        this.mode = mode;
+        this.opts = opts;
+        this.out  = out;
+        this.err  = err;
+    }
+
+    /**
+     * @return {@code true} if every file was converted or up to date, {@code false} if any failed
+     */
+    boolean run(Path input, Path output) throws IOException {
+        final List<Path[]> jobs = new ArrayList<>();
+
+        if (Files.isDirectory(input)) {
+            try (Stream<Path> files = Files.walk(input)) {
+                for (Path file : files.filter(Convert::isWav).collect(Collectors.toList())) {
+                    jobs.add(new Path[] { file, output.resolve(input.relativize(file).toString()) });
+                }
+            }
+        } else if (Files.isDirectory(output)) {
+            jobs.add(new Path[] { input, output.resolve(input.getFileName().toString()) });
+        } else {
+            jobs.add(new Path[] { input, output });
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(Math.min(opts.threads, Math.max(jobs.size(), 1)));
+
+        int converted = 0;
+        int skipped   = 0;
+        int failed    = 0;
+
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>(jobs.size());
+            for (Path[] job : jobs) {
+                results.add(pool.submit(() -> convert(job[0], job[1])));
+            }
+
+            for (int i=0; i<jobs.size(); i++) {
+                try {
+                    if (results.get(i).get()) {
+                        converted++;
+                    } else {
+                        skipped++;
+                    }
+                } catch (ExecutionException e) {
+                    failed++;
+                    err.println(jobs.get(i)[0]+": "+e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        out.println(converted+" converted, "+skipped+" up to date, "+failed+" failed");
+
+        return failed == 0;
+    }
+
+    /**
+     * @return {@code true} if the file was converted, {@code false} if its output was up to date
+     */
+    private boolean convert(Path input, Path output) throws IOException {
+        if (!opts.force
+                && Files.exists(output)
+                && Files.getLastModifiedTime(output).compareTo(Files.getLastModifiedTime(input)) >= 0) {
+            return false;
+        }
+
+        final Path parent = output.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+
+        final Path temp = Files.createTempFile(parent, output.getFileName().toString(), ".tmp");
+
+        try {
+            try (InputStream  in = new BufferedInputStream(Files.newInputStream(input));
+                 OutputStream os = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                if (mode == Mode.ENCODE) {
+                    encode(in, os);
+                } else {
+                    decode(in, os);
+                }
+            }
+
+            Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        return true;
+    }
+
+    private void encode(InputStream in, OutputStream out) throws IOException {
+        final WAVHeader header = WAVHeader.read(in);
+        if (header.getFormat() != WAVE_FORMAT_PCM) {
+            throw new IOException("expected a PCM file; found IMA ADPCM");
+        }
+
+        final int  channels   = header.getChannels();
+        final long numSamples = header.getNumSamples();
+
+        final ADPCMEncoderConfig cfg =
+            opts.encoderConfig(channels, header.getSampleRate(), opts.blockSize, opts.noiseShaping);
+
+        final long dataSize = cfg.computeOutputSize(numSamples);
+
+        WAVHeader.forADPCM(
+            numSamples,
+            dataSize,
+            channels,
+            cfg.getSampleRate(),
+            cfg.getBlockSize(),
+            cfg.getBitsPerSample()
+        ).write(out);
+
+        final ADPCMEncoder    encoder   = new ADPCMEncoder(cfg);
+        final DataInputStream data      = new DataInputStream(in);
+        final int             chunk     = CHUNK_BLOCKS * cfg.getSamplesPerBlock() * channels;
+        final byte[]          pcmBytes  = new byte[chunk * 2];
+        final ShortBuffer     pcm       = ByteBuffer.wrap(pcmBytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        final byte[]          adpcm     = new byte[CHUNK_BLOCKS * cfg.getBlockSize()];
+        final ByteBuffer      adpcmOut  = ByteBuffer.wrap(adpcm);
+
+        long remaining = numSamples * channels;
+
+        // each chunk holds whole blocks, so the encoder never has samples left over
+        while (remaining > 0) {
+            final int count = (int) Math.min(chunk, remaining);
+            data.readFully(pcmBytes, 0, count * 2);
+            remaining -= count;
+
+            encoder.encode(pcm.clear().limit(count), adpcmOut.clear(), remaining == 0);
+            out.write(adpcm, 0, adpcmOut.position());
+        }
+
+        if (dataSize % 2 != 0) {
+            out.write(0);
+        }
+    }
+
+    private void decode(InputStream in, OutputStream out) throws IOException {
+        final WAVHeader header = WAVHeader.read(in);
+        if (header.getFormat() == WAVE_FORMAT_PCM) {
+            throw new IOException("expected an IMA ADPCM file; found PCM");
+        }
+
+        final int  channels   = header.getChannels();
+        final long numSamples = header.getNumSamples();
+
+        final ADPCMDecoderConfig cfg =
+            ADPCMDecoder.configure()
+            .setChannels     (channels)
+            .setSampleRate   (header.getSampleRate())
+            .setBlockSize    (header.getBlockAlign())
+            .setBitsPerSample(header.getBitsPerSample())
+            .end();
+
+        WAVHeader.forPCM(numSamples * channels * 2, channels, cfg.getSampleRate()).write(out);
+
+        final ADPCMDecoder    decoder  = new ADPCMDecoder(cfg);
+        final DataInputStream data     = new DataInputStream(in);
+        final int             chunk    = CHUNK_BLOCKS * cfg.getSamplesPerBlock();
+        final byte[]          adpcm    = new byte[CHUNK_BLOCKS * cfg.getBlockSize()];
+        final short[]         pcm      = new short[chunk * channels];
+        final byte[]          pcmBytes = new byte[pcm.length * 2];
+        final ShortBuffer     pcmOut   = ByteBuffer.wrap(pcmBytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+
+        long remainingBytes   = header.getDataSize();
+        long remainingSamples = numSamples;
+
+        while (remainingSamples > 0) {
+            final int size = (int) Math.min(adpcm.length, remainingBytes);
+            data.readFully(adpcm, 0, size);
+            remainingBytes -= size;
+
+            final int count = (int) Math.min(chunk, remainingSamples) * channels;
+            decoder.decode(adpcm, 0, pcm, 0, count);
+            remainingSamples -= count / channels;
+
+            pcmOut.clear().put(pcm, 0, count);
+            out.write(pcmBytes, 0, count * 2);
+        }
+    }
+
+    private static boolean isWav(Path file) {
+        return Files.isRegularFile(file) && file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".wav");
+    }
+}
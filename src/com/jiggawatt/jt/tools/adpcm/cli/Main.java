@@ -0,0 +1,109 @@
+package com.jiggawatt.jt.tools.adpcm.cli;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * The command-line entry point. Run {@code java -jar jt-adpcm.jar} without arguments for usage.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class Main {
+
+    /** Returned when every file was processed. */
+    public static final int EXIT_OK     = 0;
+    /** Returned when at least one file could not be processed. */
+    public static final int EXIT_FAILED = 1;
+    /** Returned when the command line is malformed. */
+    public static final int EXIT_USAGE  = 2;
+
+    private static final String USAGE =
+        "usage:\n" +
+        "  encode [options] <input> <output>   convert PCM WAV files to IMA ADPCM\n" +
+        "  decode [options] <input> <output>   convert IMA ADPCM WAV files to PCM\n" +
+        "  bench  [options] <input>...         measure throughput and quality on PCM WAV files\n" +
+        "\n" +
+        "<input> and <output> are files, or directories that are converted recursively.\n" +
+        "\n" +
+        "options:\n" +
+        "  --threads <n>             number of files to convert at once (default: number of processors)\n" +
+        "  --force                   convert files even if the output is newer than the input\n" +
+        "  --block-size <bytes>      ADPCM block size, a power of two from 256 to 32768 (default: automatic)\n" +
+        "  --bits <n>                bits per ADPCM sample: 2, 3, 4 or 5 (default: 4)\n" +
+        "  --no-noise-shaping        turn off noise shaping when encoding\n" +
+        "  --block-sizes <list>      bench: comma-separated block sizes (default: 256,512,1024,2048,4096)\n" +
+        "  --iterations <n>          bench: timed runs per setting; the fastest counts (default: 3)\n";
+
+    private Main() {
+        // nada
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs a command.
+     * @param args  the command line
+     * @param out   the stream for progress and results
+     * @param err   the stream for errors and usage
+     * @return {@link #EXIT_OK}, {@link #EXIT_FAILED} or {@link #EXIT_USAGE}
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        if (args.length == 0) {
+            err.print(USAGE);
+            return EXIT_USAGE;
+        }
+
+        final Options opts;
+        try {
+            opts = Options.parse(Arrays.copyOfRange(args, 1, args.length));
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.print(USAGE);
+            return EXIT_USAGE;
+        }
+
+        try {
+            switch (args[0]) {
+                case "encode":
+                case "decode": {
+                    if (opts.paths.size() != 2) {
+                        err.println(args[0]+": expected an input and an output");
+                        err.print(USAGE);
+                        return EXIT_USAGE;
+                    }
+
+                    final Convert.Mode mode   = args[0].equals("encode") ? Convert.Mode.ENCODE : Convert.Mode.DECODE;
+                    final Path         input  = Paths.get(opts.paths.get(0));
+                    final Path         output = Paths.get(opts.paths.get(1));
+
+                    return new Convert(mode, opts, out, err).run(input, output) ? EXIT_OK : EXIT_FAILED;
+                }
+                case "bench": {
+                    if (opts.paths.isEmpty()) {
+                        err.println("bench: expected at least one input");
+                        err.print(USAGE);
+                        return EXIT_USAGE;
+                    }
+
+                    return new Bench(opts, out, err).run() ? EXIT_OK : EXIT_FAILED;
+                }
+                default:
+                    err.println("unknown command: "+args[0]);
+                    err.print(USAGE);
+                    return EXIT_USAGE;
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return EXIT_USAGE;
+        } catch (IOException e) {
+            err.println("error: "+e.getMessage());
+            return EXIT_FAILED;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.jiggawatt.jt.tools.adpcm.cli;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The options and positional arguments of a command.
+ *
+ * @author Nikita Leonidov
+ */
+final class Options {
+
+    int          threads      = Runtime.getRuntime().availableProcessors();
+    boolean      force        = false;
+    int          blockSize    = ADPCMEncoderConfig.AUTO_BLOCK_SIZE;
+    int          bits         = 4;
+    boolean      noiseShaping = true;
+    int[]        blockSizes   = { 256, 512, 1024, 2048, 4096 };
+    int          iterations   = 3;
+    List<String> paths        = new ArrayList<>();
+
+    private Options() {
+        // nada
+    }
+
+    /**
+     * Parses the arguments that follow the command.
+     * @throws IllegalArgumentException if an option is unknown, lacks its value, or has an invalid value
+     */
+    static Options parse(String[] args) {
+        final Options dst = new Options();
+
+        for (int i=0; i<args.length; i++) {
+            final String arg = args[i];
+
+            switch (arg) {
+                case "--threads":
+                    dst.threads = positive(arg, value(args, ++i, arg));
+                    break;
+                case "--force":
+                    dst.force = true;
+                    break;
+                case "--block-size":
+                    dst.blockSize = blockSize(value(args, ++i, arg));
+                    break;
+                case "--bits":
+                    dst.bits = integer(arg, value(args, ++i, arg));
+                    ADPCMEncoder.configure().setBitsPerSample(dst.bits);
+                    break;
+                case "--no-noise-shaping":
+                    dst.noiseShaping = false;
+                    break;
+                case "--block-sizes": {
+                    final String[] sizes = value(args, ++i, arg).split(",");
+                    dst.blockSizes = new int[sizes.length];
+                    for (int j=0; j<sizes.length; j++) {
+                        dst.blockSizes[j] = blockSize(sizes[j].trim());
+                    }
+                    break;
+                }
+                case "--iterations":
+                    dst.iterations = positive(arg, value(args, ++i, arg));
+                    break;
+                default:
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException("unknown option: "+arg);
+                    }
+                    dst.paths.add(arg);
+            }
+        }
+
+        return dst;
+    }
+
+    /**
+     * @return an encoder configuration with these options, for input with the given format
+     */
+    ADPCMEncoderConfig encoderConfig(int channels, int sampleRate, int blockSize, boolean noiseShaping) {
+        return ADPCMEncoder.configure()
+            .setChannels     (channels)
+            .setSampleRate   (sampleRate)
+            .setBlockSize    (blockSize)
+            .setBitsPerSample(bits)
+            .setNoiseShaping (noiseShaping)
+            .end();
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("missing value for "+option);
+        }
+        return args[i];
+    }
+
+    private static int integer(String option, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid value for "+option+": "+value);
+        }
+    }
+
+    private static int positive(String option, String value) {
+        final int n = integer(option, value);
+        if (n < 1) {
+            throw new IllegalArgumentException("invalid value for "+option+": "+value+"; must be greater than 0");
+        }
+        return n;
+    }
+
+    private static int blockSize(String value) {
+        final int size = integer("block size", value);
+        // validated by the builder
+        ADPCMEncoder.configure().setBlockSize(size);
+        return size;
+    }
+}
@@ -0,0 +1,110 @@
+package com.jiggawatt.jt.tools.adpcm.flow;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoderConfig;
+import com.jiggawatt.jt.tools.adpcm.impl.ADPCMUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Queue;
+import java.util.concurrent.Flow;
+
+/**
+ * A {@link Flow.Processor} that decodes a stream of ADPCM data to 16-bit PCM. Input buffers may be split at any
+ * byte; the processor emits one {@link ShortBuffer} of interleaved samples per ADPCM block.
+ * <p>
+ * The processor requests one buffer from its upstream at a time, and only when its subscriber has outstanding demand
+ * and every block decoded from the previous buffer has been delivered, so a slow subscriber throttles decoding and
+ * memory use is bounded by the size of the largest input buffer.
+ * <p>
+ * Input buffers are not modified. This processor supports a single subscriber.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class ADPCMDecodingProcessor extends CodecProcessor<ByteBuffer, ShortBuffer> {
+
+    private final ADPCMDecoder decoder;
+    private final int          numChannels;
+    private final int          samplesPerBlock;
+    private final int          bitsPerSample;
+    private final ByteBuffer   pending;
+
+    private long samplesLeft;
+
+    /**
+     * Creates a processor that decodes every sample in its input, including the padding that may follow the last
+     * sample in the final block.
+     * @param cfg  decoder configuration matching the input
+     */
+    public ADPCMDecodingProcessor(ADPCMDecoderConfig cfg) {
+        this(cfg, -1);
+    }
+
+    /**
+     * Creates a processor that decodes at most {@code numSamples} samples per channel; the rest of the input is
+     * discarded.
+     * @param cfg         decoder configuration matching the input
+     * @param numSamples  the number of samples per channel to decode, e.g. the value given in the {@code fact} chunk
+     *                    of a WAV file, or -1 to decode the whole input
+     */
+    public ADPCMDecodingProcessor(ADPCMDecoderConfig cfg, long numSamples) {
+        decoder         = new ADPCMDecoder(cfg);
+        numChannels     = cfg.getChannels();
+        samplesPerBlock = cfg.getSamplesPerBlock();
+        bitsPerSample   = cfg.getBitsPerSample();
+        pending         = ByteBuffer.allocate(cfg.getBlockSize());
+        samplesLeft     = numSamples < 0 ? Long.MAX_VALUE : numSamples;
+    }
+
+    @Override
+    void process(ByteBuffer item, Queue<ShortBuffer> out) throws IOException {
+        final ByteBuffer src = item.duplicate();
+
+        while (src.hasRemaining()) {
+            final int count = Math.min(src.remaining(), pending.remaining());
+            final int limit = src.limit();
+
+            src.limit(src.position() + count);
+            pending.put(src);
+            src.limit(limit);
+
+            if (!pending.hasRemaining()) {
+                decode(samplesPerBlock, out);
+            }
+        }
+    }
+
+    @Override
+    void flush(Queue<ShortBuffer> out) throws IOException {
+        final int count = pending.position();
+        if (count == 0) {
+            return;
+        }
+
+        // only the final block may be shorter than the block size
+        if (!ADPCMUtil.isValidPartialBlockSize(numChannels, count, bitsPerSample)) {
+            throw new IOException("malformed block: unexpected size "+count);
+        }
+
+        decode(ADPCMUtil.computeSamplesPerBlock(numChannels, count, bitsPerSample), out);
+    }
+
+    private void decode(int blockSamples, Queue<ShortBuffer> out) throws IOException {
+        pending.flip();
+
+        if (samplesLeft > 0) {
+            final ShortBuffer block = ShortBuffer.allocate(blockSamples * numChannels);
+            decoder.decode(pending, block);
+
+            // the final block might contain padding samples
+            final int outSamples = (int) Math.min(blockSamples, samplesLeft);
+            samplesLeft -= outSamples;
+
+            out.add(block.flip().limit(outSamples * numChannels));
+        }
+
+        pending.clear();
+    }
+}
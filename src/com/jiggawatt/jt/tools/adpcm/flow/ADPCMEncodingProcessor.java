@@ -0,0 +1,76 @@
+package com.jiggawatt.jt.tools.adpcm.flow;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Queue;
+import java.util.concurrent.Flow;
+
+/**
+ * A {@link Flow.Processor} that encodes a stream of 16-bit PCM chunks to ADPCM. Chunks may contain any number of
+ * interleaved samples; the processor emits one {@link ByteBuffer} per ADPCM block, and a shorter final block for the
+ * samples left over when the upstream completes.
+ * <p>
+ * The processor requests one chunk from its upstream at a time, and only when its subscriber has outstanding demand
+ * and every block encoded from the previous chunk has been delivered. Memory use is therefore bounded by the size of
+ * the largest chunk, no matter how long the stream is.
+ * <p>
+ * Input buffers are not modified. This processor supports a single subscriber.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class ADPCMEncodingProcessor extends CodecProcessor<ShortBuffer, ByteBuffer> {
+
+    private final ADPCMEncoder encoder;
+    private final int          blockSize;
+    private final ShortBuffer  pending;
+
+    /**
+     * Creates a processor that encodes its input with the given configuration.
+     * @param cfg  encoder configuration; its channel count and sample rate must match the input
+     */
+    public ADPCMEncodingProcessor(ADPCMEncoderConfig cfg) {
+        encoder   = new ADPCMEncoder(cfg);
+        blockSize = cfg.getBlockSize();
+        pending   = ShortBuffer.allocate(cfg.getSamplesPerBlock() * cfg.getChannels());
+    }
+
+    @Override
+    void process(ShortBuffer item, Queue<ByteBuffer> out) throws IOException {
+        final ShortBuffer src = item.duplicate();
+
+        while (src.hasRemaining()) {
+            final int count = Math.min(src.remaining(), pending.remaining());
+            final int limit = src.limit();
+
+            src.limit(src.position() + count);
+            pending.put(src);
+            src.limit(limit);
+
+            if (!pending.hasRemaining()) {
+                out.add(encode(false));
+            }
+        }
+    }
+
+    @Override
+    void flush(Queue<ByteBuffer> out) throws IOException {
+        if (pending.position() > 0) {
+            out.add(encode(true));
+        }
+    }
+
+    private ByteBuffer encode(boolean endOfInput) throws IOException {
+        final ByteBuffer block = ByteBuffer.allocate(blockSize);
+
+        pending.flip();
+        encoder.encode(pending, block, endOfInput);
+        pending.clear();
+
+        return block.flip();
+    }
+}
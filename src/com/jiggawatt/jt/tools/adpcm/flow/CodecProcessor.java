@@ -0,0 +1,242 @@
+package com.jiggawatt.jt.tools.adpcm.flow;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base class for the codec processors. Signals from both sides are funneled into a single drain loop, which runs on
+ * whichever thread signals while no other thread is draining. Upstream items are requested one at a time, and only
+ * once every block produced from the previous item has been delivered downstream, so a processor holds at most one
+ * input item and the blocks produced from it.
+ *
+ * @param <I> the upstream item type
+ * @param <O> the downstream item type
+ * @author Nikita Leonidov
+ */
+abstract class CodecProcessor<I, O> implements Flow.Processor<I, O> {
+
+    private final AtomicInteger wip        = new AtomicInteger();
+    private final AtomicLong    requested  = new AtomicLong();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    private final Queue<I> input  = new ConcurrentLinkedQueue<>();
+    private final Queue<O> output = new ArrayDeque<>();
+
+    private volatile Flow.Subscriber<? super O> downstream;
+    private volatile Flow.Subscription          upstream;
+    private volatile boolean                    upstreamDone;
+    private volatile Throwable                  error;
+    private volatile boolean                    cancelled;
+
+    // only accessed from the drain loop
+    private boolean awaitingInput;
+    private boolean flushed;
+    private boolean done;
+
+    /**
+     * Processes a single upstream item.
+     * @param item  the item to process
+     * @param out   receives the items to deliver downstream
+     * @throws IOException if the item cannot be processed
+     */
+    abstract void process(I item, Queue<O> out) throws IOException;
+
+    /**
+     * Processes whatever input has been buffered by {@link #process(Object, Queue)} once the upstream has completed.
+     * @param out  receives the items to deliver downstream
+     * @throws IOException if the buffered input cannot be processed
+     */
+    abstract void flush(Queue<O> out) throws IOException;
+
+    @Override
+    public final void subscribe(Flow.Subscriber<? super O> subscriber) {
+        Objects.requireNonNull(subscriber);
+
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override public void request(long n) {}
+                @Override public void cancel() {}
+            });
+            subscriber.onError(new IllegalStateException("this processor supports a single subscriber"));
+            return;
+        }
+
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    error = new IllegalArgumentException("non-positive request: "+n);
+                    upstreamDone = true;
+                    cancelUpstream();
+                } else {
+                    addRequested(n);
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                cancelUpstream();
+                drain();
+            }
+        });
+
+        downstream = subscriber;
+        drain();
+    }
+
+    @Override
+    public final void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+
+        upstream = subscription;
+
+        if (cancelled) {
+            subscription.cancel();
+        }
+
+        drain();
+    }
+
+    @Override
+    public final void onNext(I item) {
+        input.offer(Objects.requireNonNull(item));
+        drain();
+    }
+
+    @Override
+    public final void onError(Throwable throwable) {
+        error        = Objects.requireNonNull(throwable);
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public final void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    private void addRequested(long n) {
+        long current, next;
+        do {
+            current = requested.get();
+            if (current == Long.MAX_VALUE) {
+                return;
+            }
+            next = current + n;
+            if (next < 0) {
+                next = Long.MAX_VALUE;
+            }
+        } while (!requested.compareAndSet(current, next));
+    }
+
+    private void cancelUpstream() {
+        final Flow.Subscription s = upstream;
+        if (s != null) {
+            s.cancel();
+        }
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            drainLoop();
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drainLoop() {
+        final Flow.Subscriber<? super O> s = downstream;
+        if (s == null) {
+            return;
+        }
+
+        while (!done) {
+            if (cancelled) {
+                done = true;
+                input.clear();
+                output.clear();
+                return;
+            }
+
+            final Throwable e = error;
+            if (e != null) {
+                fail(s, e);
+                return;
+            }
+
+            if (!output.isEmpty()) {
+                if (requested.get() == 0) {
+                    return;
+                }
+                if (requested.get() != Long.MAX_VALUE) {
+                    requested.decrementAndGet();
+                }
+                s.onNext(output.poll());
+                continue;
+            }
+
+            final I item = input.poll();
+            if (item != null) {
+                awaitingInput = false;
+                try {
+                    process(item, output);
+                } catch (IOException | RuntimeException ex) {
+                    cancelUpstream();
+                    fail(s, ex);
+                    return;
+                }
+                continue;
+            }
+
+            if (upstreamDone) {
+                if (!flushed) {
+                    flushed = true;
+                    try {
+                        flush(output);
+                    } catch (IOException | RuntimeException ex) {
+                        fail(s, ex);
+                        return;
+                    }
+                    continue;
+                }
+
+                done = true;
+                s.onComplete();
+                return;
+            }
+
+            final Flow.Subscription up = upstream;
+            if (up != null && requested.get() > 0 && !awaitingInput) {
+                awaitingInput = true;
+                up.request(1);
+                continue;
+            }
+
+            return;
+        }
+    }
+
+    private void fail(Flow.Subscriber<? super O> s, Throwable e) {
+        done = true;
+        input.clear();
+        output.clear();
+        s.onError(e);
+    }
+}
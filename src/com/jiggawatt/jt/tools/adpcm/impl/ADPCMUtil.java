@@ -22,6 +22,25 @@ public class ADPCMUtil {
         -1, -1, -1, -1, 2, 4, 6, 8
     };
 
+    /** Index table adjustments by magnitude, for 2 to 5 bits per sample. */
+    private static final int[][] INDEX_TABLES = {
+        { -1, 2 },
+        { -1, -1, 1, 2 },
+        INDEX_TABLE,
+        { -1, -1, -1, -1, -1, -1, -1, -1, 1, 2, 4, 6, 8, 10, 13, 18 }
+    };
+
+    /**
+     * Samples in each channel are packed into groups, and the groups are interleaved by channel in 4-byte words; see
+     * {@link #groupByteOffset(int, int, int)}. These are the group sizes in bytes and in samples for 2 to 5 bits per
+     * sample.
+     */
+    private static final int[] GROUP_BYTES   = {  4, 12, 4, 20 };
+    private static final int[] GROUP_SAMPLES = { 16, 32, 8, 32 };
+
+    public static final int MIN_BITS_PER_SAMPLE = 2;
+    public static final int MAX_BITS_PER_SAMPLE = 5;
+
     public static int stepTable(int idx) {
         return STEP_TABLE[idx];
     }
@@ -30,24 +49,143 @@ public class ADPCMUtil {
         return INDEX_TABLE[idx];
     }
 
-    public static int computeOutputSize(int numSamples, int numChannels, int samplesPerBlock, int blockSize) {
+    /**
+     * @param bitsPerSample  bits per ADPCM sample
+     * @param magnitude      the ADPCM code without its sign bit
+     * @return the step table index adjustment for the given code
+     */
+    public static int indexTable(int bitsPerSample, int magnitude) {
+        return INDEX_TABLES[bitsPerSample - MIN_BITS_PER_SAMPLE][magnitude];
+    }
+
+    /**
+     * Computes the signed difference from the previous sample encoded by the given ADPCM code. 4-bit codes are decoded
+     * bit by bit, as in the IMA reference decoder; other sizes use {@code ((2 * magnitude + 1) * step) >> (bits - 1)}.
+     * @param bitsPerSample  bits per ADPCM sample
+     * @param code           the ADPCM code
+     * @param step           the current step size
+     * @return the difference from the previous sample
+     */
+    public static int computeDelta(int bitsPerSample, int code, int step) {
+        int delta;
+
+        if (bitsPerSample == 4) {
+            delta = step >> 3;
+            if ((code & 1)!=0) delta += (step >> 2);
+            if ((code & 2)!=0) delta += (step >> 1);
+            if ((code & 4)!=0) delta += step;
+        } else {
+            final int shift = bitsPerSample - 1;
+            delta = ((2 * (code & ((1 << shift) - 1)) + 1) * step) >> shift;
+        }
+
+        return (code & (1 << (bitsPerSample - 1)))!=0 ? -delta : delta;
+    }
+
+    public static int groupBytes(int bitsPerSample) {
+        return GROUP_BYTES[bitsPerSample - MIN_BITS_PER_SAMPLE];
+    }
+
+    public static int groupSamples(int bitsPerSample) {
+        return GROUP_SAMPLES[bitsPerSample - MIN_BITS_PER_SAMPLE];
+    }
+
+    /**
+     * Locates a byte of a channel's group within one group of every channel. As with 4-bit chunks, and as in ADPCM-XQ
+     * and FFmpeg, each channel's group is split into 4-byte words, and the words are interleaved by channel.
+     * @param numChannels  number of channels
+     * @param ch           the channel
+     * @param i            the index of the byte within the channel's group
+     * @return the offset of the byte from the start of the groups
+     */
+    public static int groupByteOffset(int numChannels, int ch, int i) {
+        return (i & 3) + (i >> 2) * numChannels * 4 + ch * 4;
+    }
+
+    public static boolean isSupportedBitsPerSample(int bitsPerSample) {
+        return bitsPerSample >= MIN_BITS_PER_SAMPLE && bitsPerSample <= MAX_BITS_PER_SAMPLE;
+    }
+
+    public static int computeOutputSize(int numSamples, int numChannels, int samplesPerBlock, int blockSize, int bitsPerSample) {
         final int q = numSamples / samplesPerBlock;
         final int r = numSamples % samplesPerBlock;
 
         int ret = q * blockSize;
 
         if (r!=0) {
-            int lastAdpcmBlockSamples = ((r + 6) & ~7) + 1;
-            ret += (lastAdpcmBlockSamples - 1) / (numChannels ^ 3) + (numChannels * 4);
+            ret += computePartialBlockSize(numChannels, computePartialBlockSamples(r, bitsPerSample), bitsPerSample);
         }
 
         return ret;
     }
 
+    /**
+     * Like {@link #computeOutputSize(int, int, int, int, int)}, but for inputs whose output may exceed 2 GB.
+     */
+    public static long computeOutputSize(
+            long numSamples,
+            int numChannels,
+            int samplesPerBlock,
+            int blockSize,
+            int bitsPerSample
+    ) {
+        final long q = numSamples / samplesPerBlock;
+        final int  r = (int) (numSamples % samplesPerBlock);
+
+        long ret = q * blockSize;
+
+        if (r!=0) {
+            ret += computePartialBlockSize(numChannels, computePartialBlockSamples(r, bitsPerSample), bitsPerSample);
+        }
+
+        return ret;
+    }
+
+    /**
+     * @param numSamples     the number of samples per channel left for the final block
+     * @param bitsPerSample  bits per ADPCM sample
+     * @return the number of samples per channel in a final block holding {@code numSamples} samples, including the
+     *         padding that completes its last group
+     */
+    public static int computePartialBlockSamples(int numSamples, int bitsPerSample) {
+        final int groupSamples = groupSamples(bitsPerSample);
+        return (numSamples + groupSamples - 2) / groupSamples * groupSamples + 1;
+    }
+
+    /**
+     * @param numChannels    the number of channels
+     * @param blockSamples   a value returned by {@link #computePartialBlockSamples(int, int)}
+     * @param bitsPerSample  bits per ADPCM sample
+     * @return the size in bytes of a final block with the given number of samples per channel
+     */
+    public static int computePartialBlockSize(int numChannels, int blockSamples, int bitsPerSample) {
+        return (blockSamples - 1) / groupSamples(bitsPerSample) * groupBytes(bitsPerSample) * numChannels + numChannels * 4;
+    }
+
+    /**
+     * @param numChannels    the number of channels
+     * @param size           the size of a final block in bytes
+     * @param bitsPerSample  bits per ADPCM sample
+     * @return {@code true} if a final block may have the given size, i.e. it consists of the block header and a whole
+     *         number of groups
+     */
+    public static boolean isValidPartialBlockSize(int numChannels, int size, int bitsPerSample) {
+        return size >= numChannels * 4 && (size - numChannels * 4) % (groupBytes(bitsPerSample) * numChannels) == 0;
+    }
+
     public static int computeSamplesPerBlock(int numChannels, int blockSize) {
         return (blockSize - numChannels * 4) * (numChannels ^ 3) + 1;
     }
 
+    public static int computeSamplesPerBlock(int numChannels, int blockSize, int bitsPerSample) {
+        if (bitsPerSample == 4) {
+            return computeSamplesPerBlock(numChannels, blockSize);
+        }
+
+        final int groups = (blockSize - numChannels * 4) / (groupBytes(bitsPerSample) * numChannels);
+        return groups * groupSamples(bitsPerSample) + 1;
+    }
+
     public static int computeBlockSize(int channels, int sampleRate) {
         return 256 * channels * (sampleRate < 11000 ? 1 : sampleRate / 11000);
     }
@@ -0,0 +1,108 @@
+package com.jiggawatt.jt.tools.adpcm.impl;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.module.ModuleDescriptor;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Computes the keys of {@link com.jiggawatt.jt.tools.adpcm.util.EncodeCache EncodeCache} entries, and the version of
+ * this library that each key includes.
+ * <p>
+ * On the module path, the version is that of the module, which the compiler records in its descriptor. On the class
+ * path, where the descriptor is not read, it comes from a resource that the build fills in; the package's
+ * implementation version is no help, since it is only set by the JAR manifest, and never for a named module.
+ */
+public final class CacheKeys {
+
+    private static final String VERSION_RESOURCE = "version.properties";
+    private static final String UNKNOWN_VERSION  = "development";
+
+    /** The version of this library. */
+    public static final String VERSION = versionOf(CacheKeys.class.getModule());
+
+    /**
+     * Computes the key under which the result of encoding the given input is cached.
+     * @param pcm      16-bit PCM data, from its position to its limit; its position is not changed
+     * @param cfg      encoder configuration
+     * @param version  the version of the library that encodes it
+     * @return a lowercase hexadecimal SHA-256 digest
+     */
+    public static String compute(ShortBuffer pcm, ADPCMEncoderConfig cfg, String version) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform must support SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        final ByteBuffer chunk = ByteBuffer.allocate(8192);
+
+        chunk.put(version.getBytes(StandardCharsets.UTF_8)).put((byte) 0);
+        chunk.putInt(cfg.getChannels());
+        chunk.putInt(cfg.getSampleRate());
+        chunk.putInt(cfg.getBlockSize());
+        chunk.putInt(cfg.getSamplesPerBlock());
+        chunk.putInt(cfg.getBitsPerSample());
+        chunk.put((byte) (cfg.getNoiseShaping() ? 1 : 0));
+
+        // samples are hashed in a fixed byte order, whatever the order of the buffer
+        final ShortBuffer samples = pcm.duplicate();
+        while (samples.hasRemaining()) {
+            while (samples.hasRemaining() && chunk.remaining() >= 2) {
+                chunk.putShort(samples.get());
+            }
+            digest.update(chunk.array(), 0, chunk.position());
+            chunk.clear();
+        }
+
+        digest.update(chunk.array(), 0, chunk.position());
+
+        final StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * Finds the version of this library as loaded into the given module.
+     * @param module  the module containing this class, which is unnamed on the class path
+     * @return the version of the module, or that written by the build, or {@code "development"} if neither is known
+     */
+    public static String versionOf(Module module) {
+        final ModuleDescriptor descriptor = module.getDescriptor();
+        if (descriptor != null) {
+            final Optional<String> version = descriptor.rawVersion();
+            if (version.isPresent()) {
+                return version.get();
+            }
+        }
+
+        final Properties props = new Properties();
+        try (InputStream in = CacheKeys.class.getResourceAsStream(VERSION_RESOURCE)) {
+            if (in != null) {
+                props.load(in);
+            }
+        } catch (IOException e) {
+            return UNKNOWN_VERSION;
+        }
+
+        final String version = props.getProperty("version");
+
+        // an IDE that copies the resource without filtering it leaves the placeholder in place
+        return version != null && !version.startsWith("${") ? version : UNKNOWN_VERSION;
+    }
+
+    private CacheKeys() {}
+}
@@ -0,0 +1,67 @@
+package com.jiggawatt.jt.tools.adpcm.impl;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoderConfig;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+
+/**
+ * Reports codec operations to Java Flight Recorder. Each {@code begin} method returns a token, or {@code null} if the
+ * event is disabled; the matching {@code end} method records the event, and ignores {@code null} tokens.
+ * <p>
+ * Flight Recorder's API requires Java 11, so this version of the class does nothing. On Java 11 and later, the
+ * multi-release JAR replaces it with one that records events.
+ */
+public final class CodecEvents {
+
+    public static Object beginEncode() {
+        return null;
+    }
+
+    /**
+     * @param samples  the number of samples per channel encoded
+     * @param bytes    the number of bytes of ADPCM data produced
+     */
+    public static void endEncode(Object event, ADPCMEncoderConfig cfg, int samples, int bytes) {
+        // nada
+    }
+
+    public static Object beginDecode() {
+        return null;
+    }
+
+    /**
+     * @param samples  the number of samples per channel decoded
+     * @param bytes    the number of bytes of ADPCM data consumed
+     */
+    public static void endDecode(Object event, ADPCMDecoderConfig cfg, int samples, int bytes) {
+        // nada
+    }
+
+    public static Object beginBlock() {
+        return null;
+    }
+
+    /**
+     * @param samples  the number of samples per channel in the block
+     */
+    public static void endBlock(Object event, ADPCMEncoderConfig cfg, int samples) {
+        // nada
+    }
+
+    public static Object beginLoad() {
+        return null;
+    }
+
+    public static void endLoad(Object event, WAVHeader header) {
+        // nada
+    }
+
+    public static Object beginDump() {
+        return null;
+    }
+
+    public static void endDump(Object event, WAVHeader header) {
+        // nada
+    }
+
+    private CodecEvents() {}
+}
@@ -0,0 +1,152 @@
+package com.jiggawatt.jt.tools.adpcm.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.jiggawatt.jt.tools.adpcm.impl.RIFFUtil.chunkId;
+import static com.jiggawatt.jt.tools.adpcm.impl.WAVHeader.DATA_ID;
+
+/**
+ * The contents of the {@code ds64} chunk that follows the {@code WAVE} id in RF64 and BW64 files (EBU Tech 3306, ITU-R
+ * BS.2088). It holds the 64-bit sizes of the RIFF chunk, the {@code data} chunk and the sample count, plus an optional
+ * table of sizes for other chunks. A 32-bit size of {@code 0xFFFFFFFF} in such a file means "see {@code ds64}".
+ */
+public final class DS64Chunk {
+
+    /** The size of a {@code ds64} chunk without a table, not including its id and size. */
+    public static final int SIZE = 28;
+
+    /** The 32-bit size stored in place of one that has been moved to the {@code ds64} chunk. */
+    public static final int PLACEHOLDER = 0xffffffff;
+
+    private final long riffSize;
+    private final long dataSize;
+    private final long sampleCount;
+
+    private final Map<Integer, Long> table;
+
+    /**
+     * Creates a {@code ds64} chunk without a table.
+     * @param riffSize     the size of the RIFF chunk
+     * @param dataSize     the size of the {@code data} chunk
+     * @param sampleCount  the number of samples per channel, as stored in the {@code fact} chunk
+     */
+    public DS64Chunk(long riffSize, long dataSize, long sampleCount) {
+        this(riffSize, dataSize, sampleCount, new HashMap<>());
+    }
+
+    private DS64Chunk(long riffSize, long dataSize, long sampleCount, Map<Integer, Long> table) {
+        this.riffSize    = riffSize;
+        this.dataSize    = dataSize;
+        this.sampleCount = sampleCount;
+        this.table       = table;
+    }
+
+    /**
+     * Parses the contents of a {@code ds64} chunk.
+     * @param in  the contents of the chunk, not including its id and size
+     * @return the parsed chunk
+     * @throws IOException if the chunk is malformed
+     */
+    public static DS64Chunk read(ByteBuffer in) throws IOException {
+        in = in.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        if (in.remaining() < SIZE) {
+            throw new IOException(
+                "malformed file; expected at least "+SIZE+" bytes in ds64 chunk, found "+in.remaining()
+            );
+        }
+
+        final long riffSize    = uint64(in.getLong());
+        final long dataSize    = uint64(in.getLong());
+        final long sampleCount = uint64(in.getLong());
+        final int  tableLength = in.getInt();
+
+        if (tableLength < 0 || tableLength > in.remaining() / 12) {
+            throw new IOException(
+                "malformed file; ds64 table length "+Integer.toUnsignedString(tableLength)+" is too large"
+            );
+        }
+
+        final Map<Integer, Long> table = new HashMap<>();
+        for (int i=0; i<tableLength; i++) {
+            final int id = in.getInt();
+            table.put(id, uint64(in.getLong()));
+        }
+
+        return new DS64Chunk(riffSize, dataSize, sampleCount, table);
+    }
+
+    /**
+     * Resolves the 32-bit size of a chunk in a RIFF, RF64 or BW64 file.
+     * @param ds64     the file's {@code ds64} chunk, or {@code null} if it's a RIFF file
+     * @param chunkId  the id of the chunk
+     * @param size     the 32-bit size stored in the chunk's header
+     * @return the size of the chunk
+     * @throws IOException if the size was moved to the {@code ds64} chunk, which doesn't list it
+     */
+    public static long resolveSize(DS64Chunk ds64, int chunkId, int size) throws IOException {
+        if (ds64 == null || size != PLACEHOLDER) {
+            return Integer.toUnsignedLong(size);
+        }
+
+        if (chunkId == DATA_ID) {
+            return ds64.dataSize;
+        }
+
+        final Long dst = ds64.table.get(chunkId);
+        if (dst == null) {
+            throw new IOException("malformed file; no size for "+chunkId(chunkId)+" chunk in ds64 chunk");
+        }
+
+        return dst;
+    }
+
+    /**
+     * Resolves the sample count stored in the {@code fact} chunk of a RIFF, RF64 or BW64 file.
+     * @param ds64  the file's {@code ds64} chunk, or {@code null} if it's a RIFF file
+     * @param fact  the 32-bit sample count stored in the {@code fact} chunk
+     * @return the sample count
+     */
+    public static long resolveSampleCount(DS64Chunk ds64, int fact) {
+        return ds64 == null || fact != PLACEHOLDER ? Integer.toUnsignedLong(fact) : ds64.sampleCount;
+    }
+
+    /**
+     * Creates the contents of this chunk, not including its id and size. The table is not written.
+     * @return a buffer containing the chunk's contents
+     */
+    public ByteBuffer toBuffer() {
+        final ByteBuffer dst = ByteBuffer.allocate(SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        dst.putLong(riffSize);
+        dst.putLong(dataSize);
+        dst.putLong(sampleCount);
+        dst.putInt (0);
+
+        return dst.rewind();
+    }
+
+    public long getRiffSize() {
+        return riffSize;
+    }
+
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    private static long uint64(long value) throws IOException {
+        // sizes this large can't occur in a real file, and would turn negative in our arithmetic
+        if (value < 0) {
+            throw new IOException("malformed file; ds64 size "+Long.toUnsignedString(value)+" out of range");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,26 @@
+package com.jiggawatt.jt.tools.adpcm.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors on which asynchronous file I/O waits. On Java 21 and later, the multi-release JAR replaces
+ * this class with one that uses virtual threads.
+ */
+public final class IOExecutors {
+
+    /**
+     * Creates an executor for blocking I/O. Its threads are daemon threads, so an idle executor does not keep the JVM
+     * alive.
+     * @return a new executor
+     */
+    public static ExecutorService newExecutor() {
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "jt-adpcm-io");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private IOExecutors() {}
+}
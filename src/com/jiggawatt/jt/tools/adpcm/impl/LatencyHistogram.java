@@ -0,0 +1,114 @@
+package com.jiggawatt.jt.tools.adpcm.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in nanoseconds, which many threads may record to at once without locking. Each power of two
+ * is split into 8 linear buckets, so a percentile is reported to within 12.5% of the true value. Durations of 2^41 ns,
+ * about 36 minutes, or more share the last bucket.
+ * <p>
+ * Every bucket is a {@link LongAdder}, which spreads concurrent updates over separate cells, so threads recording at
+ * the same time don't contend for a single counter.
+ *
+ * @author Nikita Leonidov
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS     = 3;
+    private static final int SUB_BUCKETS  = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+
+    private final LongAdder[] buckets = new LongAdder[(MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS];
+
+    public LatencyHistogram() {
+        for (int i=0; i<buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos  a duration; negative values count as zero
+     */
+    public void record(long nanos) {
+        buckets[bucket(nanos)].increment();
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Estimates a percentile of the recorded durations. Durations recorded while this method runs may or may not be
+     * taken into account.
+     * @param quantile  the fraction of durations that are at most the result, from 0 to 1; e.g. 0.99 for p99
+     * @return the largest duration in the bucket that holds the given quantile, or 0 if nothing has been recorded
+     * @throws IllegalArgumentException if {@code quantile} is outside the range [0, 1]
+     */
+    public long getPercentile(double quantile) {
+        if (!(quantile >= 0 && quantile <= 1)) {
+            throw new IllegalArgumentException("quantile must be between 0 and 1; found "+quantile);
+        }
+
+        final long[] counts = new long[buckets.length];
+        long         total  = 0;
+
+        for (int i=0; i<buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            total    += counts[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+
+        long seen = 0;
+        for (int i=0; i<counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+
+        return upperBound(counts.length - 1);
+    }
+
+    /**
+     * Discards every recorded duration. Durations recorded while this method runs may or may not be kept.
+     */
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(value, 0);
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS - 1;
+        }
+
+        final int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        final int  shift = bucket / SUB_BUCKETS - 1;
+        final long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+
+        return lower + (1L << shift) - 1;
+    }
+}
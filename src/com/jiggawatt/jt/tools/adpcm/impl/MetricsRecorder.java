@@ -0,0 +1,184 @@
+package com.jiggawatt.jt.tools.adpcm.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the work done by the encoder, the decoder and {@code WAVFile}, for
+ * {@link com.jiggawatt.jt.tools.adpcm.util.CodecMetrics}. Recording is off until that class turns it on; while it is
+ * off, each block costs a single volatile read.
+ *
+ * @author Nikita Leonidov
+ */
+public final class MetricsRecorder {
+
+    private static volatile boolean enabled;
+
+    private static final LongAdder encodedBlocks  = new LongAdder();
+    private static final LongAdder encodedSamples = new LongAdder();
+    private static final LongAdder encodedBytes   = new LongAdder();
+    private static final LongAdder encodeErrors   = new LongAdder();
+
+    private static final LongAdder decodedBlocks  = new LongAdder();
+    private static final LongAdder decodedSamples = new LongAdder();
+    private static final LongAdder decodedBytes   = new LongAdder();
+    private static final LongAdder decodeErrors   = new LongAdder();
+
+    private static final LongAdder loadedFiles    = new LongAdder();
+    private static final LongAdder loadedBytes    = new LongAdder();
+    private static final LongAdder dumpedFiles    = new LongAdder();
+    private static final LongAdder dumpedBytes    = new LongAdder();
+    private static final LongAdder fileErrors     = new LongAdder();
+
+    private static final LatencyHistogram encodeLatency = new LatencyHistogram();
+    private static final LatencyHistogram decodeLatency = new LatencyHistogram();
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    // recording
+    // =================================================================================================================
+    public static void recordEncodedBlock(long nanos) {
+        encodedBlocks.increment();
+        encodeLatency.record(nanos);
+    }
+
+    /**
+     * @param samples  the number of samples per channel encoded by a call to the encoder
+     * @param bytes    the number of bytes it produced
+     */
+    public static void recordEncoded(int samples, int bytes) {
+        if (enabled) {
+            encodedSamples.add(samples);
+            encodedBytes.add(bytes);
+        }
+    }
+
+    public static void recordEncodeError() {
+        if (enabled) {
+            encodeErrors.increment();
+        }
+    }
+
+    public static void recordDecodedBlock(long nanos) {
+        decodedBlocks.increment();
+        decodeLatency.record(nanos);
+    }
+
+    /**
+     * @param samples  the number of samples per channel decoded by a call to the decoder
+     * @param bytes    the number of bytes it consumed
+     */
+    public static void recordDecoded(int samples, int bytes) {
+        if (enabled) {
+            decodedSamples.add(samples);
+            decodedBytes.add(bytes);
+        }
+    }
+
+    public static void recordDecodeError() {
+        if (enabled) {
+            decodeErrors.increment();
+        }
+    }
+
+    public static void recordLoad(long bytes) {
+        if (enabled) {
+            loadedFiles.increment();
+            loadedBytes.add(bytes);
+        }
+    }
+
+    public static void recordDump(long bytes) {
+        if (enabled) {
+            dumpedFiles.increment();
+            dumpedBytes.add(bytes);
+        }
+    }
+
+    public static void recordFileError() {
+        if (enabled) {
+            fileErrors.increment();
+        }
+    }
+
+    // reading
+    // =================================================================================================================
+    public static long getEncodedBlocks() {
+        return encodedBlocks.sum();
+    }
+
+    public static long getEncodedSamples() {
+        return encodedSamples.sum();
+    }
+
+    public static long getEncodedBytes() {
+        return encodedBytes.sum();
+    }
+
+    public static long getEncodeErrors() {
+        return encodeErrors.sum();
+    }
+
+    public static long getDecodedBlocks() {
+        return decodedBlocks.sum();
+    }
+
+    public static long getDecodedSamples() {
+        return decodedSamples.sum();
+    }
+
+    public static long getDecodedBytes() {
+        return decodedBytes.sum();
+    }
+
+    public static long getDecodeErrors() {
+        return decodeErrors.sum();
+    }
+
+    public static long getLoadedFiles() {
+        return loadedFiles.sum();
+    }
+
+    public static long getLoadedBytes() {
+        return loadedBytes.sum();
+    }
+
+    public static long getDumpedFiles() {
+        return dumpedFiles.sum();
+    }
+
+    public static long getDumpedBytes() {
+        return dumpedBytes.sum();
+    }
+
+    public static long getFileErrors() {
+        return fileErrors.sum();
+    }
+
+    public static LatencyHistogram getEncodeLatency() {
+        return encodeLatency;
+    }
+
+    public static LatencyHistogram getDecodeLatency() {
+        return decodeLatency;
+    }
+
+    public static void reset() {
+        for (LongAdder counter : new LongAdder[] {
+                encodedBlocks, encodedSamples, encodedBytes, encodeErrors,
+                decodedBlocks, decodedSamples, decodedBytes, decodeErrors,
+                loadedFiles, loadedBytes, dumpedFiles, dumpedBytes, fileErrors }) {
+            counter.reset();
+        }
+
+        encodeLatency.reset();
+        decodeLatency.reset();
+    }
+
+    private MetricsRecorder() {}
+}
@@ -60,5 +60,25 @@ public class RIFFUtil {
         return (a & 0xff) | (b & 0xff) << 8 | (c & 0xff) << 16 | d << 24;
     }
 
+    public static byte[] readFully(InputStream in, int count) throws IOException {
+        byte[] b = new byte[count];
+        int n = in.readNBytes(b, 0, count);
+        if (n != count) {
+            throw new EOFException("expected "+count+" bytes; found "+n);
+        }
+        return b;
+    }
+
+    public static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                checkByte(in);
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
     private RIFFUtil() {}
 }
@@ -0,0 +1,580 @@
+package com.jiggawatt.jt.tools.adpcm.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import static com.jiggawatt.jt.tools.adpcm.impl.RIFFUtil.*;
+
+/**
+ * The format information stored in a WAV file's {@code fmt } and {@code fact} chunks, plus the size of its
+ * {@code data} chunk. Shared by {@code WAVFile} and the streaming readers, which parse the header without loading the
+ * audio data.
+ * <p>
+ * Sizes and sample counts are {@code long}s. Files whose sizes don't fit the 32-bit fields of a RIFF file are read and
+ * written in the RF64 format, which moves them to a {@code ds64} chunk; see {@link DS64Chunk}.
+ */
+public final class WAVHeader {
+
+    public static final int RIFF_ID = chunkId("RIFF");
+    public static final int RF64_ID = chunkId("RF64");
+    public static final int BW64_ID = chunkId("BW64");
+    public static final int WAVE_ID = chunkId("WAVE");
+    public static final int DS64_ID = chunkId("ds64");
+    public static final int FMT_ID  = chunkId("fmt ");
+    public static final int FACT_ID = chunkId("fact");
+    public static final int DATA_ID = chunkId("data");
+
+    public static final int WAVE_FORMAT_PCM        = 0x1;
+    public static final int WAVE_FORMAT_IMA_ADPCM  = 0x11;
+    public static final int WAVE_FORMAT_EXTENSIBLE = 0xfffe;
+
+    /** The largest size that fits in the 32-bit size fields of a RIFF file. */
+    public static final long MAX_UINT32 = 0xffffffffL;
+
+    private static final int MAX_CHUNK_SIZE = 1 << 16;
+
+    private long factSamples;
+    private int  format;
+    private long numSamples;
+    private int  realBitsPerSample;
+    private long dataSize;
+
+    // raw header
+    // =================================================================================================================
+    private int formatTag;
+    private int numChannels;
+    private int sampleRate;
+    private int bytesPerSecond;
+    private int blockAlign;
+    private int rawBitsPerSample;
+    private int cbSize;
+    private int union;
+    private int channelMask;
+    private int subFormat;   // this is actually the first 2 bytes of the GUID
+    private String GUID;     // this is the remainder of the GUID
+
+    /**
+     * Creates the header of an IMA ADPCM file.
+     * @param numSamples  the number of samples per channel
+     * @param dataSize    the size of the ADPCM data in bytes
+     * @param channels    the number of channels
+     * @param sampleRate  the sample rate in Hz
+     * @param blockSize      the ADPCM block size in bytes
+     * @param bitsPerSample  the number of bits per ADPCM sample
+     * @return a new header
+     */
+    public static WAVHeader forADPCM(
+            long numSamples,
+            long dataSize,
+            int channels,
+            int sampleRate,
+            int blockSize,
+            int bitsPerSample
+    ) {
+        final int samplesPerBlock = ADPCMUtil.computeSamplesPerBlock(channels, blockSize, bitsPerSample);
+
+        WAVHeader dst = new WAVHeader();
+
+        dst.factSamples       = numSamples;
+        dst.format            = WAVE_FORMAT_IMA_ADPCM;
+        dst.numSamples        = numSamples;
+        dst.realBitsPerSample = bitsPerSample;
+        dst.dataSize          = dataSize;
+
+        dst.formatTag        = WAVE_FORMAT_IMA_ADPCM;
+        dst.numChannels      = channels;
+        dst.sampleRate       = sampleRate;
+        dst.bytesPerSecond   = ADPCMUtil.computeBytesPerSecond(sampleRate, blockSize, samplesPerBlock);
+        dst.blockAlign       = blockSize;
+        dst.rawBitsPerSample = bitsPerSample;
+        dst.cbSize           = 2;
+        dst.union            = samplesPerBlock;
+        dst.channelMask      = 0;
+        dst.subFormat        = 0;
+        dst.GUID             = new String(new byte[14]);
+
+        return dst;
+    }
+
+    /**
+     * Creates the header of a 16-bit PCM file.
+     * @param dataSize    the size of the PCM data in bytes
+     * @param channels    the number of channels
+     * @param sampleRate  the sample rate in Hz
+     * @return a new header
+     */
+    public static WAVHeader forPCM(long dataSize, int channels, int sampleRate) {
+        WAVHeader dst = new WAVHeader();
+
+        final int bytesPerSample = 2;
+        final int bitsPerSample  = 16;
+
+        dst.factSamples       = 0;
+        dst.format            = WAVE_FORMAT_PCM;
+        dst.numSamples        = dataSize / (bytesPerSample * channels);
+        dst.realBitsPerSample = bitsPerSample;
+        dst.dataSize          = dataSize;
+
+        dst.formatTag        = WAVE_FORMAT_PCM;
+        dst.numChannels      = channels;
+        dst.sampleRate       = sampleRate;
+        dst.bytesPerSecond   = sampleRate * channels * bytesPerSample;
+        dst.blockAlign       = bytesPerSample * channels;
+        dst.rawBitsPerSample = bitsPerSample;
+
+        // the following members are not written for pcm files
+        dst.cbSize           = 0;
+        dst.union            = 0;
+        dst.channelMask      = 0;
+        dst.subFormat        = 0;
+        dst.GUID             = new String(new byte[14]);
+
+        return dst;
+    }
+
+    /**
+     * Creates a header from the contents of a WAV file's chunks.
+     * @param fmtChunk   the contents of the {@code fmt } chunk
+     * @param factChunk  the contents of the {@code fact} chunk, or {@code null} if the file has none
+     * @param dataSize   the size of the {@code data} chunk in bytes
+     * @return the header of the file
+     * @throws IOException if the file is malformed or unsupported
+     */
+    public static WAVHeader fromChunks(ByteBuffer fmtChunk, ByteBuffer factChunk, long dataSize) throws IOException {
+        return fromChunks(fmtChunk, factChunk, null, dataSize);
+    }
+
+    /**
+     * Creates a header from the contents of an RF64 or BW64 file's chunks.
+     * @param fmtChunk   the contents of the {@code fmt } chunk
+     * @param factChunk  the contents of the {@code fact} chunk, or {@code null} if the file has none
+     * @param ds64       the file's {@code ds64} chunk, or {@code null} if it's a RIFF file
+     * @param dataSize   the size of the {@code data} chunk in bytes, as resolved with {@code ds64}
+     * @return the header of the file
+     * @throws IOException if the file is malformed or unsupported
+     */
+    public static WAVHeader fromChunks(ByteBuffer fmtChunk, ByteBuffer factChunk, DS64Chunk ds64, long dataSize)
+            throws IOException {
+        WAVHeader dst = new WAVHeader();
+
+        dst.readFmtChunk(fmtChunk);
+        if (factChunk != null) {
+            dst.readFactChunk(factChunk, ds64);
+        }
+        dst.setDataSize(dataSize);
+
+        return dst;
+    }
+
+    /**
+     * Checks the id at the start of a WAV file.
+     * @param id  the first four bytes of the file
+     * @return {@code true} for an RF64 or BW64 file, which must have a {@code ds64} chunk; {@code false} for a RIFF
+     *         file
+     * @throws IOException if this isn't a RIFF, RF64 or BW64 file
+     */
+    public static boolean requireRiffId(int id) throws IOException {
+        if (id == RF64_ID || id == BW64_ID) {
+            return true;
+        }
+
+        requireId(id, RIFF_ID);
+        return false;
+    }
+
+    /**
+     * Reads a WAV header from the given stream, stopping at the start of the audio data. Unlike {@code WAVFile}, this
+     * expects the {@code fmt } chunk to precede the {@code data} chunk, as it does in all well-formed files.
+     * @param in  the stream from which to read the WAV file; on return, positioned at the first byte of audio data
+     * @return the header of the file
+     * @throws IOException if an I/O problem occurs, or if the file is malformed or unsupported
+     */
+    public static WAVHeader read(InputStream in) throws IOException {
+        WAVHeader dst = new WAVHeader();
+
+        final boolean rf64 = requireRiffId(intLittleEndian(in));
+        intLittleEndian(in); // the RIFF chunk size; we stop reading at the data chunk, so we don't need it
+        requireId(in, WAVE_ID);
+
+        DS64Chunk ds64 = null;
+
+        if (rf64) {
+            // the ds64 chunk must come first, since the sizes of the chunks after it may depend on it
+            requireId(in, DS64_ID);
+
+            final long chunkSize = Integer.toUnsignedLong(intLittleEndian(in));
+            ds64 = DS64Chunk.read(readChunk(in, DS64_ID, chunkSize));
+            skipFully(in, chunkSize % 2);
+        }
+
+        boolean hasFmt = false;
+
+        while (true) {
+            final int  chunkId   = intLittleEndian(in);
+            final long chunkSize = DS64Chunk.resolveSize(ds64, chunkId, intLittleEndian(in));
+
+            if (chunkId == DATA_ID) {
+                if (!hasFmt) {
+                    break;
+                }
+
+                dst.setDataSize(chunkSize);
+                return dst;
+            }
+
+            if (chunkId == FMT_ID && !hasFmt) {
+                dst.readFmtChunk(readChunk(in, chunkId, chunkSize));
+                hasFmt = true;
+            } else if (chunkId == FACT_ID) {
+                dst.readFactChunk(readChunk(in, chunkId, chunkSize), ds64);
+            } else {
+                skipFully(in, chunkSize);
+            }
+
+            // chunks are word-aligned
+            if ((chunkSize % 2) != 0) {
+                skipFully(in, 1);
+            }
+        }
+
+        throw new IOException("expected " + chunkId(FMT_ID) + " chunk in file; none found");
+    }
+
+    private void readFmtChunk(ByteBuffer in) throws IOException {
+        formatTag        = uint16(in);  // 2
+        numChannels      = uint16(in);  // 2
+        sampleRate       = uint32(in);  // 4
+        bytesPerSecond   = uint32(in);  // 4
+        blockAlign       = uint16(in);  // 2
+        rawBitsPerSample = uint16(in);  // 2
+        cbSize           = uint16(in);  // 2
+        union            = uint16(in);  // 2
+        channelMask      = uint32(in);  // 4
+        subFormat        = uint16(in);  // 2
+
+        byte[] b = new byte[14];
+        for (int i = 0; i < 14; i++) {
+            b[i] = int8(in);
+        }
+        GUID = new String(b);
+
+        final boolean hasExtensionBytes = in.capacity() >= 40;
+
+        format = hasExtensionBytes && formatTag == WAVE_FORMAT_EXTENSIBLE
+                ? subFormat
+                : formatTag;
+
+        int validBitsPerSample = union;
+
+        realBitsPerSample = hasExtensionBytes && validBitsPerSample!=0
+                ? validBitsPerSample
+                : rawBitsPerSample;
+
+        // validate
+        // =============================================================================================================
+        if (numChannels < 1 || numChannels > 2) {
+            throw new IOException("unsupported number of channels: "+numChannels+"; expected mono or stereo");
+        }
+
+        if (format == WAVE_FORMAT_PCM) {
+            if (realBitsPerSample != 16) {
+                throw new IOException("unsupported bits per sample: " + realBitsPerSample + "; expected 16");
+            }
+
+            if (blockAlign != numChannels*2) {
+                throw new IOException("block alignment must match number of channels");
+            }
+        } else if (format == WAVE_FORMAT_IMA_ADPCM) {
+            if (!ADPCMUtil.isSupportedBitsPerSample(realBitsPerSample)) {
+                throw new IOException("unsupported bits per sample: "+realBitsPerSample+"; expected 2, 3, 4 or 5");
+            }
+
+            if (blockAlign < numChannels*4) {
+                throw new IOException("malformed WAV file");
+            }
+
+            int expect = ADPCMUtil.computeSamplesPerBlock(numChannels, blockAlign, realBitsPerSample);
+            int samplesPerBlock = union;
+            if (samplesPerBlock != expect) {
+                throw new IOException("malformed WAV file");
+            }
+        } else {
+            throw new IOException("unsupported format; PCM or IMA ADPCM expected");
+        }
+    }
+
+    private void readFactChunk(ByteBuffer in, DS64Chunk ds64) {
+        factSamples = DS64Chunk.resolveSampleCount(ds64, in.getInt());
+    }
+
+    private void setDataSize(long chunkSize) throws IOException {
+        if (chunkSize==0) {
+            throw new IOException("malformed WAV file: no samples");
+        }
+
+        final int channels = numChannels;
+
+        // determine number of samples & validate
+        // =============================================================================================================
+        if (format == WAVE_FORMAT_PCM) {
+            if (chunkSize % blockAlign != 0) {
+                throw new IOException("malformed WAV file; data chunk size is not a multiple of block alignment");
+            }
+
+            numSamples = chunkSize / blockAlign;
+        } else {
+            long q = chunkSize / blockAlign;
+            int  r = (int) (chunkSize % blockAlign);
+
+            int  lastBlockSamples;
+            long fact = factSamples;
+
+            numSamples = q * getSamplesPerBlock();
+
+            if (r!=0) {
+                if (!ADPCMUtil.isValidPartialBlockSize(channels, r, realBitsPerSample)) {
+                    throw new IOException("malformed WAV file");
+                }
+
+                lastBlockSamples = ADPCMUtil.computeSamplesPerBlock(channels, r, realBitsPerSample);
+                numSamples += lastBlockSamples;
+            } else {
+                lastBlockSamples = getSamplesPerBlock();
+            }
+
+            // some writers store the total number of samples in a stereo file's fact chunk, rather than the number per
+            // channel; a count that matches the data exactly is taken as it is
+            if (fact!=0 && fact!=numSamples) {
+                if (fact < numSamples && fact > numSamples - lastBlockSamples) {
+                    numSamples = fact;
+                } else if (
+                    channels == 2 && (fact >>= 1) < numSamples
+                    && fact > numSamples - lastBlockSamples
+                ) {
+                    numSamples = fact;
+                }
+            }
+        }
+
+        if (numSamples==0) {
+            throw new IOException("malformed WAV file: no samples");
+        }
+
+        dataSize = chunkSize;
+    }
+
+    /**
+     * Creates the contents of the {@code fmt } chunk for this header.
+     * @return a buffer containing the chunk's contents, not including its id and size
+     */
+    private ByteBuffer createFmtChunk() {
+        final boolean isPcm = format == WAVE_FORMAT_PCM;
+
+        final ByteBuffer fmtChunk =
+            ByteBuffer
+            .allocate(26 + 14) // size of format chunk = 8-byte header + 26 bytes + 14-byte format GUID remainder
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+        fmtChunk.putShort((short) formatTag);
+        fmtChunk.putShort((short) numChannels);
+        fmtChunk.putInt  (sampleRate);
+        fmtChunk.putInt  (bytesPerSecond);
+        fmtChunk.putShort((short) blockAlign);
+        fmtChunk.putShort((short) rawBitsPerSample);
+
+        if (!isPcm) {
+            fmtChunk.putShort((short) cbSize);
+            fmtChunk.putShort((short) union);
+            if (channelMask != 0 && subFormat != 0) {
+                fmtChunk.putInt  (channelMask);
+                fmtChunk.putShort((short) subFormat);
+                fmtChunk.put     (GUID.getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+
+        fmtChunk.limit(fmtChunk.position()).rewind();
+
+        return fmtChunk;
+    }
+
+    /**
+     * Creates the contents of the {@code fact} chunk for this header.
+     * @param rf64  whether the chunk is written to an RF64 file, where a sample count that doesn't fit in 32 bits is
+     *              moved to the {@code ds64} chunk
+     * @return a buffer containing the chunk's contents, not including its id and size; empty for PCM files, which
+     *         have no {@code fact} chunk
+     */
+    private ByteBuffer createFactChunk(boolean rf64) {
+        if (format == WAVE_FORMAT_PCM) {
+            return ByteBuffer.allocate(0);
+        }
+
+        ByteBuffer factChunk = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        factChunk.putInt(rf64 && factSamples > MAX_UINT32 ? DS64Chunk.PLACEHOLDER : (int) factSamples);
+        return factChunk.rewind();
+    }
+
+    /**
+     * Writes the start of a WAV file with this header: the RIFF header, the {@code fmt } and {@code fact} chunks, and
+     * the id and size of the {@code data} chunk. The caller must follow this with exactly {@link #getDataSize()} bytes
+     * of audio data, and a zero padding byte if that number is odd.
+     * <p>
+     * The file is written in the RF64 format if its sizes don't fit in the 32-bit fields of a RIFF file, and in the
+     * RIFF format otherwise.
+     * @param out  the stream to which to write
+     * @throws IOException if an I/O problem occurs
+     */
+    public void write(OutputStream out) throws IOException {
+        write(out, false);
+    }
+
+    /**
+     * Writes the start of a WAV file with this header, like {@link #write(OutputStream)}.
+     * @param out        the stream to which to write
+     * @param forceRf64  {@code true} to write an RF64 file even if its sizes fit in a RIFF file
+     * @throws IOException if an I/O problem occurs
+     */
+    public void write(OutputStream out, boolean forceRf64) throws IOException {
+        final ByteBuffer fmtChunk = createFmtChunk();
+
+        final long dataPadding = dataSize % 2;
+        final int  factSize    = format == WAVE_FORMAT_PCM ? 0 : 4 + 8;
+        final long riffSize    = 4 + fmtChunk.limit() + 8 + factSize + dataSize + 8 + dataPadding;
+
+        final boolean rf64 = forceRf64 || riffSize > MAX_UINT32 || factSamples > MAX_UINT32;
+
+        final ByteBuffer factChunk = createFactChunk(rf64);
+        final int        ds64Size  = rf64 ? DS64Chunk.SIZE + 8 : 0;
+
+        final ByteBuffer dst = ByteBuffer.allocate(12 + ds64Size + fmtChunk.limit() + 8 + factSize + 8)
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+        if (rf64) {
+            final DS64Chunk ds64 = new DS64Chunk(riffSize + ds64Size, dataSize, factSamples);
+
+            dst.putInt(RF64_ID).putInt(DS64Chunk.PLACEHOLDER).putInt(WAVE_ID);
+            dst.putInt(DS64_ID).putInt(DS64Chunk.SIZE).put(ds64.toBuffer());
+        } else {
+            dst.putInt(RIFF_ID).putInt((int) riffSize).putInt(WAVE_ID);
+        }
+
+        dst.putInt(FMT_ID).putInt(fmtChunk.limit()).put(fmtChunk);
+        if (factSize > 0) {
+            dst.putInt(FACT_ID).putInt(factChunk.limit()).put(factChunk);
+        }
+        dst.putInt(DATA_ID).putInt(rf64 ? DS64Chunk.PLACEHOLDER : (int) dataSize);
+
+        out.write(dst.array(), 0, dst.position());
+    }
+
+    public int getChannels() {
+        return numChannels;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getBitsPerSample() {
+        return realBitsPerSample;
+    }
+
+    /**
+     * @return {@link #WAVE_FORMAT_PCM} or {@link #WAVE_FORMAT_IMA_ADPCM}
+     */
+    public int getFormat() {
+        return format;
+    }
+
+    public long getNumSamples() {
+        return numSamples;
+    }
+
+    public int getBlockAlign() {
+        return blockAlign;
+    }
+
+    public int getSamplesPerBlock() {
+        return union;
+    }
+
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof WAVHeader)) return false;
+        WAVHeader header = (WAVHeader) o;
+        return factSamples == header.factSamples
+            && format == header.format
+            && numSamples == header.numSamples
+            && realBitsPerSample == header.realBitsPerSample
+            && dataSize == header.dataSize
+            && formatTag == header.formatTag
+            && numChannels == header.numChannels
+            && sampleRate == header.sampleRate
+            && bytesPerSecond == header.bytesPerSecond
+            && blockAlign == header.blockAlign
+            && rawBitsPerSample == header.rawBitsPerSample
+            && cbSize == header.cbSize
+            && union == header.union
+            && channelMask == header.channelMask
+            && subFormat == header.subFormat
+            && GUID.equals(header.GUID);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(
+            factSamples,
+            format,
+            numSamples,
+            realBitsPerSample,
+            dataSize,
+            formatTag,
+            numChannels,
+            sampleRate,
+            bytesPerSecond,
+            blockAlign,
+            rawBitsPerSample,
+            cbSize,
+            union,
+            channelMask,
+            subFormat,
+            GUID
+        );
+    }
+
+    private WAVHeader() {
+        //
+    }
+
+    private static ByteBuffer readChunk(InputStream in, int chunkId, long chunkSize) throws IOException {
+        // only the small chunks are read into memory, so anything this large is malformed
+        if (chunkSize > MAX_CHUNK_SIZE) {
+            throw new IOException("malformed file; "+chunkId(chunkId)+" chunk of "+chunkSize+" bytes is too large");
+        }
+
+        byte[] bytes = readFully(in, (int) chunkSize);
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int uint16(ByteBuffer in) {
+        return in.hasRemaining() ? Short.toUnsignedInt(in.getShort()) : 0;
+    }
+
+    private static int uint32(ByteBuffer in) {
+        return in.hasRemaining() ? in.getInt() : 0;
+    }
+
+    private static byte int8(ByteBuffer in) {
+        return in.hasRemaining() ? in.get() : 0;
+    }
+}
@@ -0,0 +1,137 @@
+package com.jiggawatt.jt.tools.adpcm.sound;
+
+import com.jiggawatt.jt.tools.adpcm.impl.WAVHeader;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import javax.sound.sampled.spi.AudioFileReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+
+/**
+ * Reads IMA ADPCM WAV files for {@code javax.sound.sampled}. Only the file header is parsed up front; the audio
+ * stream returned by this reader is positioned at the start of the ADPCM data, and can be decoded on demand with
+ * {@link ADPCMFormatConversionProvider}:
+ * <pre>{@code
+ * AudioInputStream adpcm = AudioSystem.getAudioInputStream(file);
+ * AudioInputStream pcm   = AudioSystem.getAudioInputStream(AudioFormat.Encoding.PCM_SIGNED, adpcm);
+ * }</pre>
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class ADPCMAudioFileReader extends AudioFileReader {
+
+    /** The maximum number of bytes we're willing to read before the data chunk when we need to reset the stream. */
+    private static final int MARK_LIMIT = 64 * 1024;
+
+    /**
+     * Creates a reader. {@link AudioSystem} finds this class through the service loader, so it is rarely necessary to
+     * call this directly.
+     */
+    public ADPCMAudioFileReader() {
+        //
+    }
+
+    @Override
+    public AudioFileFormat getAudioFileFormat(InputStream stream) throws UnsupportedAudioFileException, IOException {
+        stream.mark(MARK_LIMIT);
+        try {
+            return createFileFormat(readHeader(stream));
+        } finally {
+            stream.reset();
+        }
+    }
+
+    @Override
+    public AudioFileFormat getAudioFileFormat(URL url) throws UnsupportedAudioFileException, IOException {
+        try (InputStream in = url.openStream()) {
+            return createFileFormat(readHeader(in));
+        }
+    }
+
+    @Override
+    public AudioFileFormat getAudioFileFormat(File file) throws UnsupportedAudioFileException, IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return createFileFormat(readHeader(in));
+        }
+    }
+
+    @Override
+    public AudioInputStream getAudioInputStream(InputStream stream) throws UnsupportedAudioFileException, IOException {
+        stream.mark(MARK_LIMIT);
+        try {
+            return createStream(stream, readHeader(stream));
+        } catch (UnsupportedAudioFileException | IOException e) {
+            stream.reset();
+            throw e;
+        }
+    }
+
+    @Override
+    public AudioInputStream getAudioInputStream(URL url) throws UnsupportedAudioFileException, IOException {
+        return openStream(url.openStream());
+    }
+
+    @Override
+    public AudioInputStream getAudioInputStream(File file) throws UnsupportedAudioFileException, IOException {
+        return openStream(Files.newInputStream(file.toPath()));
+    }
+
+    private static AudioInputStream openStream(InputStream in) throws UnsupportedAudioFileException, IOException {
+        InputStream buffered = new BufferedInputStream(in);
+        try {
+            return createStream(buffered, readHeader(buffered));
+        } catch (UnsupportedAudioFileException | IOException | RuntimeException e) {
+            buffered.close();
+            throw e;
+        }
+    }
+
+    private static WAVHeader readHeader(InputStream in) throws UnsupportedAudioFileException, IOException {
+        final WAVHeader header;
+        try {
+            header = WAVHeader.read(in);
+        } catch (IOException e) {
+            // this also rejects files the other readers can handle, like 8-bit PCM, so we can't tell them apart from
+            // real I/O errors
+            UnsupportedAudioFileException ex = new UnsupportedAudioFileException(e.getMessage());
+            ex.initCause(e);
+            throw ex;
+        }
+
+        if (header.getFormat() != WAVHeader.WAVE_FORMAT_IMA_ADPCM) {
+            throw new UnsupportedAudioFileException("not an IMA ADPCM file");
+        }
+
+        return header;
+    }
+
+    private static AudioFormat createFormat(WAVHeader header) {
+        return ADPCMFormatConversionProvider.createFormat(
+            header.getSampleRate(),
+            header.getChannels(),
+            header.getBlockAlign(),
+            header.getBitsPerSample()
+        );
+    }
+
+    private static AudioFileFormat createFileFormat(WAVHeader header) {
+        // the frame length is an int, so larger files report an unknown length
+        final long numSamples  = header.getNumSamples();
+        final int  frameLength = numSamples > Integer.MAX_VALUE ? AudioSystem.NOT_SPECIFIED : (int) numSamples;
+
+        return new AudioFileFormat(AudioFileFormat.Type.WAVE, createFormat(header), frameLength);
+    }
+
+    private static AudioInputStream createStream(InputStream in, WAVHeader header) {
+        return new ADPCMAudioInputStream(in, createFormat(header), header.getDataSize(), header.getNumSamples());
+    }
+}
@@ -0,0 +1,24 @@
+package com.jiggawatt.jt.tools.adpcm.sound;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import java.io.InputStream;
+
+/**
+ * An ADPCM audio stream read from a WAV file. Carries the number of samples recorded in the file header, which lets
+ * {@link ADPCMFormatConversionProvider} drop the padding at the end of the final block.
+ * @author Nikita Leonidov
+ */
+final class ADPCMAudioInputStream extends AudioInputStream {
+
+    private final long numSamples;
+
+    ADPCMAudioInputStream(InputStream in, AudioFormat format, long dataSize, long numSamples) {
+        super(in, format, dataSize);
+        this.numSamples = numSamples;
+    }
+
+    long getNumSamples() {
+        return numSamples;
+    }
+}
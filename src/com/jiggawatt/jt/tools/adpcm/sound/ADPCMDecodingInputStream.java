@@ -0,0 +1,133 @@
+package com.jiggawatt.jt.tools.adpcm.sound;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoderConfig;
+import com.jiggawatt.jt.tools.adpcm.impl.ADPCMUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Decodes a stream of ADPCM blocks to 16-bit PCM, one block at a time.
+ * @author Nikita Leonidov
+ */
+final class ADPCMDecodingInputStream extends InputStream {
+
+    private final InputStream  in;
+    private final ADPCMDecoder decoder;
+    private final int          numChannels;
+    private final int          blockSize;
+    private final int          samplesPerBlock;
+    private final int          bitsPerSample;
+
+    private final byte[]      adpcmBlock;
+    private final ByteBuffer  pcmBlock;
+    private final ShortBuffer pcmView;
+
+    private long    samplesLeft;
+    private boolean eof;
+
+    /**
+     * @param in          ADPCM input
+     * @param cfg         decoder configuration matching the input
+     * @param numSamples  the number of samples per channel to decode, or -1 to decode until the input is exhausted
+     * @param bigEndian   the byte order of the PCM output
+     */
+    ADPCMDecodingInputStream(InputStream in, ADPCMDecoderConfig cfg, long numSamples, boolean bigEndian) {
+        this.in         = in;
+        decoder         = new ADPCMDecoder(cfg);
+        numChannels     = cfg.getChannels();
+        blockSize       = cfg.getBlockSize();
+        samplesPerBlock = cfg.getSamplesPerBlock();
+        bitsPerSample   = cfg.getBitsPerSample();
+        samplesLeft     = numSamples < 0 ? Long.MAX_VALUE : numSamples;
+
+        adpcmBlock = new byte[blockSize];
+        pcmBlock   =
+            ByteBuffer.allocate(samplesPerBlock * numChannels * 2)
+            .order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        pcmView    = pcmBlock.asShortBuffer();
+
+        pcmBlock.limit(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return Byte.toUnsignedInt(pcmBlock.get());
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!fill()) {
+            return -1;
+        }
+
+        final int count = Math.min(len, pcmBlock.remaining());
+        pcmBlock.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return pcmBlock.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Decodes the next block if the current one has been consumed.
+     * @return {@code true} if there is PCM data available, {@code false} at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        if (pcmBlock.hasRemaining()) {
+            return true;
+        }
+
+        if (eof || samplesLeft == 0) {
+            return false;
+        }
+
+        final int count = in.readNBytes(adpcmBlock, 0, blockSize);
+        if (count == 0) {
+            eof = true;
+            return false;
+        }
+
+        if (count < blockSize) {
+            eof = true;
+
+            // only the final block may be shorter than the block size
+            if (!ADPCMUtil.isValidPartialBlockSize(numChannels, count, bitsPerSample)) {
+                throw new IOException("malformed block: unexpected size "+count);
+            }
+        }
+
+        final int blockSamples = count == blockSize
+            ? samplesPerBlock
+            : ADPCMUtil.computeSamplesPerBlock(numChannels, count, bitsPerSample);
+
+        pcmView.clear().limit(blockSamples * numChannels);
+        decoder.decode(ByteBuffer.wrap(adpcmBlock, 0, count), pcmView);
+
+        // the final block might contain padding samples
+        final int outSamples = (int) Math.min(blockSamples, samplesLeft);
+        samplesLeft -= outSamples;
+
+        pcmBlock.limit(outSamples * numChannels * 2).rewind();
+
+        return pcmBlock.hasRemaining();
+    }
+}
@@ -0,0 +1,201 @@
+package com.jiggawatt.jt.tools.adpcm.sound;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoderConfig;
+import com.jiggawatt.jt.tools.adpcm.impl.ADPCMUtil;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.spi.FormatConversionProvider;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Converts IMA ADPCM audio streams to 16-bit signed PCM. The conversion happens lazily, one ADPCM block at a time, as
+ * the resulting stream is read. Obtain ADPCM streams with {@link ADPCMAudioFileReader}, or call
+ * {@link AudioSystem#getAudioInputStream(AudioFormat.Encoding, AudioInputStream)} with
+ * {@link AudioFormat.Encoding#PCM_SIGNED} to use this provider through the {@code javax.sound.sampled} service lookup.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class ADPCMFormatConversionProvider extends FormatConversionProvider {
+
+    /** The encoding of IMA ADPCM audio streams. */
+    public static final AudioFormat.Encoding IMA_ADPCM = new AudioFormat.Encoding("IMA_ADPCM");
+
+    /**
+     * The {@link AudioFormat} property holding the ADPCM block size in bytes, as an {@link Integer}. Formats without
+     * this property are assumed to use the block size computed by {@link ADPCMDecoderConfig#AUTO_BLOCK_SIZE}.
+     */
+    public static final String BLOCK_SIZE_PROPERTY = "adpcm.blockSize";
+
+    private static final AudioFormat.Encoding[] SOURCE_ENCODINGS = { IMA_ADPCM };
+    private static final AudioFormat.Encoding[] TARGET_ENCODINGS = { AudioFormat.Encoding.PCM_SIGNED };
+    private static final AudioFormat.Encoding[] NO_ENCODINGS     = {};
+    private static final AudioFormat[]          NO_FORMATS       = {};
+
+    /**
+     * Creates a provider. {@link AudioSystem} finds this class through the service loader, so it is rarely necessary
+     * to call this directly.
+     */
+    public ADPCMFormatConversionProvider() {
+        //
+    }
+
+    /**
+     * Creates an ADPCM audio format with the given parameters.
+     * @param sampleRate  sample rate in Hz
+     * @param channels    1 for mono, 2 for stereo
+     * @param blockSize   ADPCM block size in bytes
+     * @return an audio format describing a stream of ADPCM blocks
+     */
+    public static AudioFormat createFormat(int sampleRate, int channels, int blockSize) {
+        return createFormat(sampleRate, channels, blockSize, 4);
+    }
+
+    /**
+     * Creates an ADPCM audio format with the given parameters.
+     * @param sampleRate     sample rate in Hz
+     * @param channels       1 for mono, 2 for stereo
+     * @param blockSize      ADPCM block size in bytes
+     * @param bitsPerSample  bits per ADPCM sample; 2, 3, 4 or 5
+     * @return an audio format describing a stream of ADPCM blocks
+     */
+    public static AudioFormat createFormat(int sampleRate, int channels, int blockSize, int bitsPerSample) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(BLOCK_SIZE_PROPERTY, blockSize);
+
+        // blocks are not all the same size: the final block might be shorter, so we treat the stream as a sequence of
+        // single bytes
+        return new AudioFormat(
+            IMA_ADPCM,
+            sampleRate,
+            bitsPerSample,
+            channels,
+            AudioSystem.NOT_SPECIFIED,
+            AudioSystem.NOT_SPECIFIED,
+            false,
+            properties
+        );
+    }
+
+    @Override
+    public AudioFormat.Encoding[] getSourceEncodings() {
+        return SOURCE_ENCODINGS.clone();
+    }
+
+    @Override
+    public AudioFormat.Encoding[] getTargetEncodings() {
+        return TARGET_ENCODINGS.clone();
+    }
+
+    @Override
+    public AudioFormat.Encoding[] getTargetEncodings(AudioFormat sourceFormat) {
+        return isADPCM(sourceFormat) ? TARGET_ENCODINGS.clone() : NO_ENCODINGS;
+    }
+
+    @Override
+    public AudioFormat[] getTargetFormats(AudioFormat.Encoding targetEncoding, AudioFormat sourceFormat) {
+        if (!isADPCM(sourceFormat) || !AudioFormat.Encoding.PCM_SIGNED.equals(targetEncoding)) {
+            return NO_FORMATS;
+        }
+
+        return new AudioFormat[] {
+            pcmFormat(sourceFormat, false),
+            pcmFormat(sourceFormat, true)
+        };
+    }
+
+    @Override
+    public AudioInputStream getAudioInputStream(AudioFormat.Encoding targetEncoding, AudioInputStream sourceStream) {
+        return getAudioInputStream(pcmFormat(sourceStream.getFormat(), false), sourceStream);
+    }
+
+    @Override
+    public AudioInputStream getAudioInputStream(AudioFormat targetFormat, AudioInputStream sourceStream) {
+        final AudioFormat sourceFormat = sourceStream.getFormat();
+
+        if (!isConversionSupported(targetFormat, sourceFormat)) {
+            throw new IllegalArgumentException("unsupported conversion: "+sourceFormat+" to "+targetFormat);
+        }
+
+        final int channels = sourceFormat.getChannels();
+
+        ADPCMDecoderConfig cfg =
+            ADPCMDecoder.configure()
+            .setChannels     (channels)
+            .setSampleRate   ((int) sourceFormat.getSampleRate())
+            .setBlockSize    (blockSize(sourceFormat))
+            .setBitsPerSample(bitsPerSample(sourceFormat))
+            .end();
+
+        final long numSamples = numSamples(sourceStream, cfg);
+
+        return new AudioInputStream(
+            new ADPCMDecodingInputStream(sourceStream, cfg, numSamples, targetFormat.isBigEndian()),
+            targetFormat,
+            numSamples < 0 ? AudioSystem.NOT_SPECIFIED : numSamples
+        );
+    }
+
+    private static boolean isADPCM(AudioFormat format) {
+        return IMA_ADPCM.equals(format.getEncoding())
+            && (format.getChannels() == 1 || format.getChannels() == 2)
+            && format.getSampleRate() >= 1
+            && (
+                format.getSampleSizeInBits() == AudioSystem.NOT_SPECIFIED
+                || ADPCMUtil.isSupportedBitsPerSample(format.getSampleSizeInBits())
+            );
+    }
+
+    private static int bitsPerSample(AudioFormat format) {
+        final int bits = format.getSampleSizeInBits();
+        return bits == AudioSystem.NOT_SPECIFIED ? 4 : bits;
+    }
+
+    private static int blockSize(AudioFormat format) {
+        Object blockSize = format.getProperty(BLOCK_SIZE_PROPERTY);
+        return blockSize instanceof Integer ? (Integer) blockSize : ADPCMDecoderConfig.AUTO_BLOCK_SIZE;
+    }
+
+    private static AudioFormat pcmFormat(AudioFormat sourceFormat, boolean bigEndian) {
+        return new AudioFormat(
+            AudioFormat.Encoding.PCM_SIGNED,
+            sourceFormat.getSampleRate(),
+            16,
+            sourceFormat.getChannels(),
+            sourceFormat.getChannels() * 2,
+            sourceFormat.getSampleRate(),
+            bigEndian
+        );
+    }
+
+    /**
+     * Determines the number of samples per channel in the given stream.
+     * @return the number of samples, or -1 if the number is not known
+     */
+    private static long numSamples(AudioInputStream sourceStream, ADPCMDecoderConfig cfg) {
+        if (sourceStream instanceof ADPCMAudioInputStream) {
+            return ((ADPCMAudioInputStream) sourceStream).getNumSamples();
+        }
+
+        // without a fact chunk, count the samples in each block, including any padding in the last one
+        final long numBytes = sourceStream.getFrameLength();
+        if (numBytes == AudioSystem.NOT_SPECIFIED) {
+            return -1;
+        }
+
+        final int channels = cfg.getChannels();
+        final long q = numBytes / cfg.getBlockSize();
+        final int  r = (int) (numBytes % cfg.getBlockSize());
+
+        long numSamples = q * cfg.getSamplesPerBlock();
+        if (r >= channels * 4) {
+            numSamples += ADPCMUtil.computeSamplesPerBlock(channels, r, cfg.getBitsPerSample());
+        }
+
+        return numSamples;
+    }
+}
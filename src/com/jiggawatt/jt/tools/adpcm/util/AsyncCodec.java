@@ -0,0 +1,307 @@
+package com.jiggawatt.jt.tools.adpcm.util;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoderConfig;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+import com.jiggawatt.jt.tools.adpcm.impl.IOExecutors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Asynchronous counterparts to {@link WAVFile#fromFile(Path)}, {@link WAVFile#dump(java.io.OutputStream)},
+ * {@link ADPCMEncoder} and {@link ADPCMDecoder}. Files are read and written with {@link AsynchronousFileChannel}, and
+ * the codec runs on a separate executor, so no caller thread blocks on a transcode.
+ * <p>
+ * The {@linkplain #getDefault() default instance} encodes and decodes on the common {@link ForkJoinPool}. On Java 21
+ * and later it performs file I/O on virtual threads, so thousands of transcodes can wait on the disk at once without a
+ * large platform thread pool; on earlier versions it uses a cached pool of daemon threads.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class AsyncCodec {
+
+    private static final class DefaultHolder {
+        static final AsyncCodec INSTANCE = new AsyncCodec(IOExecutors.newExecutor(), ForkJoinPool.commonPool());
+    }
+
+    private final ExecutorService ioExecutor;
+    private final Executor        codecExecutor;
+
+    /**
+     * Creates an asynchronous codec with the given executors. The caller remains responsible for shutting them down.
+     * @param ioExecutor     the executor on which {@link AsynchronousFileChannel} performs I/O and runs completion
+     *                       handlers
+     * @param codecExecutor  the executor on which audio is encoded and decoded
+     */
+    public AsyncCodec(ExecutorService ioExecutor, Executor codecExecutor) {
+        this.ioExecutor    = Objects.requireNonNull(ioExecutor);
+        this.codecExecutor = Objects.requireNonNull(codecExecutor);
+    }
+
+    /**
+     * @return a shared instance using the default executors
+     */
+    public static AsyncCodec getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Reads the WAV file at the given path.
+     * @param file  path to the input file
+     * @return a future that completes with the contents of the file
+     */
+    public CompletableFuture<WAVFile> readAsync(Path file) {
+        return readAll(file).thenApply(AsyncCodec::parse);
+    }
+
+    /**
+     * Writes a WAV file to the given path, replacing any existing file.
+     * @param wav   the file to write
+     * @param file  path to the output file
+     * @return a future that completes when the file has been written
+     */
+    public CompletableFuture<Void> writeAsync(WAVFile wav, Path file) {
+        final ByteBuffer bytes;
+        try {
+            bytes = serialize(wav);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return writeAll(file, bytes);
+    }
+
+    /**
+     * Encodes the given PCM file to ADPCM.
+     * @param pcm  16-bit PCM input
+     * @param cfg  encoder configuration; its channel count and sample rate must match the input
+     * @return a future that completes with the encoded file
+     */
+    public CompletableFuture<WAVFile> encodeAsync(WAVFile pcm, ADPCMEncoderConfig cfg) {
+        return CompletableFuture.supplyAsync(() -> encode(pcm, cfg), codecExecutor);
+    }
+
+    /**
+     * Decodes the given ADPCM file to 16-bit PCM.
+     * @param adpcm  ADPCM input
+     * @return a future that completes with the decoded file
+     */
+    public CompletableFuture<WAVFile> decodeAsync(WAVFile adpcm) {
+        return CompletableFuture.supplyAsync(() -> decode(adpcm), codecExecutor);
+    }
+
+    /**
+     * Encodes a PCM WAV file to an ADPCM WAV file with noise shaping and an automatically computed block size.
+     * @param in   path to the PCM input file
+     * @param out  path to the ADPCM output file
+     * @return a future that completes when the output file has been written
+     */
+    public CompletableFuture<Void> encodeAsync(Path in, Path out) {
+        return encodeAsync(in, out, true);
+    }
+
+    /**
+     * Encodes a PCM WAV file to an ADPCM WAV file with an automatically computed block size.
+     * @param in            path to the PCM input file
+     * @param out           path to the ADPCM output file
+     * @param noiseShaping  {@code true} to enable noise shaping
+     * @return a future that completes when the output file has been written
+     * @see ADPCMEncoderConfig.Builder#setNoiseShaping(boolean)
+     */
+    public CompletableFuture<Void> encodeAsync(Path in, Path out, boolean noiseShaping) {
+        return
+            readAsync(in)
+            .thenCompose(pcm -> encodeAsync(pcm, configure(pcm, noiseShaping)))
+            .thenCompose(adpcm -> writeAsync(adpcm, out));
+    }
+
+    /**
+     * Decodes an ADPCM WAV file to a 16-bit PCM WAV file.
+     * @param in   path to the ADPCM input file
+     * @param out  path to the PCM output file
+     * @return a future that completes when the output file has been written
+     */
+    public CompletableFuture<Void> decodeAsync(Path in, Path out) {
+        return
+            readAsync(in)
+            .thenCompose(this::decodeAsync)
+            .thenCompose(pcm -> writeAsync(pcm, out));
+    }
+
+    // codec
+    // =================================================================================================================
+    private static ADPCMEncoderConfig configure(WAVFile pcm, boolean noiseShaping) {
+        return
+            ADPCMEncoder.configure()
+            .setChannels    (pcm.getChannels())
+            .setSampleRate  (pcm.getSampleRate())
+            .setNoiseShaping(noiseShaping)
+            .setBlockSize   (ADPCMEncoderConfig.AUTO_BLOCK_SIZE)
+            .end();
+    }
+
+    private static WAVFile encode(WAVFile pcm, ADPCMEncoderConfig cfg) {
+        if (pcm.getFormat() != WAVFile.Format.PCM) {
+            throw new CompletionException(new IOException("expected a PCM file; found "+pcm.getFormat()));
+        }
+
+        try {
+            ShortBuffer input  = pcm.getReadOnlyData().asShortBuffer();
+            ByteBuffer  output = ByteBuffer.allocate(cfg.computeOutputSize(input));
+
+            new ADPCMEncoder(cfg).encode(input, output);
+
+            return WAVFile.fromADPCMBuffer(output.rewind(), pcm.getNumSamples(), cfg);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static WAVFile decode(WAVFile adpcm) {
+        if (adpcm.getFormat() != WAVFile.Format.IMA_ADPCM) {
+            throw new CompletionException(new IOException("expected an IMA ADPCM file; found "+adpcm.getFormat()));
+        }
+
+        ADPCMDecoderConfig cfg = adpcm.createDecoderConfig();
+
+        try {
+            ByteBuffer output =
+                ByteBuffer.allocate(adpcm.getNumSamples() * adpcm.getChannels() * 2)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            new ADPCMDecoder(cfg).decode(adpcm.getReadOnlyData(), output.asShortBuffer());
+
+            return WAVFile.fromPCMBuffer(output, adpcm.getChannels(), adpcm.getSampleRate());
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    // file i/o
+    // =================================================================================================================
+    private static WAVFile parse(ByteBuffer bytes) {
+        try {
+            return WAVFile.fromBuffer(bytes);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static ByteBuffer serialize(WAVFile wav) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wav.dump(out);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    private CompletableFuture<ByteBuffer> readAll(Path file) {
+        final CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+        final AsynchronousFileChannel channel;
+        final ByteBuffer dst;
+
+        try {
+            channel = AsynchronousFileChannel.open(file, Set.of(StandardOpenOption.READ), ioExecutor);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        try {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("file too large: "+file+" ("+size+" bytes)");
+            }
+            dst = ByteBuffer.allocate((int) size);
+        } catch (IOException e) {
+            closeQuietly(channel, e);
+            return CompletableFuture.failedFuture(e);
+        }
+
+        channel.read(dst, 0, dst, new CompletionHandler<Integer, ByteBuffer>() {
+            @Override
+            public void completed(Integer count, ByteBuffer buf) {
+                if (count >= 0 && buf.hasRemaining()) {
+                    channel.read(buf, buf.position(), buf, this);
+                    return;
+                }
+
+                try {
+                    channel.close();
+                    result.complete(buf.flip());
+                } catch (IOException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Throwable t, ByteBuffer buf) {
+                closeQuietly(channel, t);
+                result.completeExceptionally(t);
+            }
+        });
+
+        return result;
+    }
+
+    private CompletableFuture<Void> writeAll(Path file, ByteBuffer src) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        final AsynchronousFileChannel channel;
+
+        try {
+            channel = AsynchronousFileChannel.open(
+                file,
+                Set.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING),
+                ioExecutor
+            );
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        channel.write(src, 0, src, new CompletionHandler<Integer, ByteBuffer>() {
+            @Override
+            public void completed(Integer count, ByteBuffer buf) {
+                if (buf.hasRemaining()) {
+                    channel.write(buf, buf.position(), buf, this);
+                    return;
+                }
+
+                try {
+                    channel.close();
+                    result.complete(null);
+                } catch (IOException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Throwable t, ByteBuffer buf) {
+                closeQuietly(channel, t);
+                result.completeExceptionally(t);
+            }
+        });
+
+        return result;
+    }
+
+    private static void closeQuietly(AsynchronousFileChannel channel, Throwable cause) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.jiggawatt.jt.tools.adpcm.util;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Encodes large numbers of independent clips, such as the sound assets of a game. The output of every clip is sized up
+ * front and laid out in a single heap buffer; the clips are then encoded on a {@link ForkJoinPool}, largest first, so
+ * that one long clip picked up late doesn't keep a single thread busy after the others are done.
+ * <p>
+ * Creating an {@link ADPCMEncoder} allocates its block buffers, which for a clip shorter than a block can cost more
+ * than encoding it. A batch encoder therefore keeps one encoder per thread for each configuration it has seen, and
+ * reuses it for every clip with that configuration, in this and later batches.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class BatchEncoder {
+
+    private final ForkJoinPool pool;
+
+    private final ThreadLocal<Map<ADPCMEncoderConfig, ADPCMEncoder>> encoders =
+        ThreadLocal.withInitial(HashMap::new);
+
+    private final LongAdder createdEncoders = new LongAdder();
+
+    /**
+     * Creates a batch encoder that runs on the common {@link ForkJoinPool}.
+     */
+    public BatchEncoder() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a batch encoder that runs on the given pool.
+     * @param pool  the pool on which to encode
+     */
+    public BatchEncoder(ForkJoinPool pool) {
+        this.pool = Objects.requireNonNull(pool);
+    }
+
+    /**
+     * Encodes the given clips.
+     * @param jobs  the clips to encode; every clip must have a different ID
+     * @return the encoded clips, and statistics for the batch
+     * @throws IOException when an encoding problem occurs
+     * @throws IllegalArgumentException if two clips have the same ID, or the output would exceed 2 GB
+     */
+    public Result encode(Stream<Job> jobs) throws IOException {
+        final long start = System.nanoTime();
+
+        final List<Job> batch = jobs.collect(Collectors.toCollection(ArrayList::new));
+
+        // lay out the output
+        // -------------------------------------------------------------------------------------------------------------
+        final Map<String, ByteBuffer> outputs = new LinkedHashMap<>();
+        final Task[]                  queue   = new Task[batch.size()];
+
+        long total   = 0;
+        long samples = 0;
+
+        for (int i=0; i<queue.length; i++) {
+            final Job job = batch.get(i);
+
+            if (outputs.containsKey(job.id)) {
+                throw new IllegalArgumentException("duplicate clip ID: "+job.id);
+            }
+            outputs.put(job.id, null);
+
+            queue[i] = new Task(job, total);
+            total   += job.outSize;
+            samples += job.numSamples;
+        }
+
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("output too large: "+total+" bytes; the limit is 2 GB");
+        }
+
+        final ByteBuffer slab = ByteBuffer.allocate((int) total);
+
+        for (Task task : queue) {
+            outputs.put(task.job.id, task.output(slab).slice());
+        }
+
+        // encode, largest first
+        // -------------------------------------------------------------------------------------------------------------
+        Arrays.sort(queue, (a, b) -> Integer.compare(b.job.numSamples, a.job.numSamples));
+
+        final long encodersBefore = createdEncoders.sum();
+
+        try {
+            pool.invoke(new Encode(queue, slab));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        return new Result(
+            Collections.unmodifiableMap(outputs),
+            samples,
+            total,
+            createdEncoders.sum() - encodersBefore,
+            System.nanoTime() - start
+        );
+    }
+
+    // implementation
+    // =================================================================================================================
+    private ADPCMEncoder encoderFor(ADPCMEncoderConfig cfg) {
+        return encoders.get().computeIfAbsent(cfg, c -> {
+            createdEncoders.increment();
+            return new ADPCMEncoder(c);
+        });
+    }
+
+    /**
+     * Runs one worker per thread of the pool. Each worker takes the largest clip not yet taken until none are left, so
+     * the longest clips start first, and the short ones fill the gaps between them.
+     */
+    @SuppressWarnings("serial") // never serialized
+    private final class Encode extends RecursiveAction {
+        private final Task[]        queue;
+        private final ByteBuffer    slab;
+        private final AtomicInteger next = new AtomicInteger();
+
+        Encode(Task[] queue, ByteBuffer slab) {
+            this.queue = queue;
+            this.slab  = slab;
+        }
+
+        @Override
+        protected void compute() {
+            final int workers = Math.min(pool.getParallelism(), queue.length);
+            final List<ForkJoinTask<?>> tasks = new ArrayList<>(workers);
+
+            for (int i=0; i<workers; i++) {
+                tasks.add(ForkJoinTask.adapt(this::work));
+            }
+
+            invokeAll(tasks);
+        }
+
+        private void work() {
+            int i;
+            while ((i = next.getAndIncrement()) < queue.length) {
+                final Job job = queue[i].job;
+
+                try {
+                    encoderFor(job.config).encode(job.pcm.duplicate(), queue[i].output(slab));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A job, and the offset of its output in the batch's buffer.
+     */
+    private static final class Task {
+        final Job job;
+        final int outOffset;
+
+        Task(Job job, long outOffset) {
+            this.job       = job;
+            this.outOffset = (int) outOffset;
+        }
+
+        ByteBuffer output(ByteBuffer slab) {
+            return slab.duplicate().position(outOffset).limit(outOffset + job.outSize);
+        }
+    }
+
+    /**
+     * A clip to encode.
+     */
+    public static final class Job {
+        private final String             id;
+        private final ShortBuffer        pcm;
+        private final ADPCMEncoderConfig config;
+        private final int                numSamples;
+        private final int                outSize;
+
+        /**
+         * Creates a job.
+         * @param id   identifies the clip in the {@link Result}
+         * @param pcm  16-bit PCM data, from its position to its limit; must not be modified until the batch is done
+         * @param cfg  encoder configuration
+         */
+        public Job(String id, ShortBuffer pcm, ADPCMEncoderConfig cfg) {
+            this.id         = Objects.requireNonNull(id);
+            this.pcm        = pcm.duplicate();
+            this.config     = Objects.requireNonNull(cfg);
+            this.numSamples = pcm.remaining() / cfg.getChannels();
+            this.outSize    = cfg.computeOutputSize(numSamples);
+        }
+
+        /**
+         * Creates a job for a PCM file.
+         * @param id   identifies the clip in the {@link Result}
+         * @param pcm  16-bit PCM input
+         * @param cfg  encoder configuration; its channel count must match the input
+         * @throws IllegalArgumentException if {@code pcm} is not a PCM file
+         */
+        public Job(String id, WAVFile pcm, ADPCMEncoderConfig cfg) {
+            this(id, pcmData(pcm), cfg);
+        }
+
+        /**
+         * @return the ID of the clip
+         */
+        public String getId() {
+            return id;
+        }
+
+        private static ShortBuffer pcmData(WAVFile pcm) {
+            if (pcm.getFormat() != WAVFile.Format.PCM) {
+                throw new IllegalArgumentException("unsupported format: "+pcm.getFormat()+"; PCM expected");
+            }
+            return pcm.getReadOnlyData().asShortBuffer();
+        }
+    }
+
+    /**
+     * The output of a batch, and its throughput.
+     */
+    public static final class Result {
+        private final Map<String, ByteBuffer> outputs;
+        private final long                    numSamples;
+        private final long                    outputBytes;
+        private final long                    createdEncoders;
+        private final long                    elapsedNanos;
+
+        private Result(
+            Map<String, ByteBuffer> outputs,
+            long                    numSamples,
+            long                    outputBytes,
+            long                    createdEncoders,
+            long                    elapsedNanos
+        ) {
+            this.outputs         = outputs;
+            this.numSamples      = numSamples;
+            this.outputBytes     = outputBytes;
+            this.createdEncoders = createdEncoders;
+            this.elapsedNanos    = elapsedNanos;
+        }
+
+        /**
+         * @return the ADPCM data for each clip by ID, in the order the jobs were given; all of these are views of a
+         *         single heap buffer
+         */
+        public Map<String, ByteBuffer> getOutputs() {
+            return outputs;
+        }
+
+        /**
+         * @param id  the ID of a clip
+         * @return a buffer containing the clip's ADPCM data, from its position to its limit, or {@code null} if the
+         *         batch has no clip with the given ID
+         */
+        public ByteBuffer getOutput(String id) {
+            final ByteBuffer output = outputs.get(id);
+            return output == null ? null : output.duplicate();
+        }
+
+        /**
+         * @return the number of clips encoded
+         */
+        public int getClipCount() {
+            return outputs.size();
+        }
+
+        /**
+         * @return the total number of samples per channel encoded
+         */
+        public long getSampleCount() {
+            return numSamples;
+        }
+
+        /**
+         * @return the total number of bytes of ADPCM data produced
+         */
+        public long getOutputBytes() {
+            return outputBytes;
+        }
+
+        /**
+         * @return the number of encoders created for this batch; encoders created for earlier batches are reused
+         */
+        public long getCreatedEncoders() {
+            return createdEncoders;
+        }
+
+        /**
+         * @return the time taken by the batch in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return the number of clips encoded per second
+         */
+        public double getClipsPerSecond() {
+            return perSecond(outputs.size());
+        }
+
+        /**
+         * @return the number of samples per channel encoded per second
+         */
+        public double getSamplesPerSecond() {
+            return perSecond(numSamples);
+        }
+
+        private double perSecond(long count) {
+            return elapsedNanos == 0 ? 0 : count * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                "clips=" + outputs.size() +
+                ", samples=" + numSamples +
+                ", outputBytes=" + outputBytes +
+                ", createdEncoders=" + createdEncoders +
+                ", elapsedNanos=" + elapsedNanos +
+                '}';
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.jiggawatt.jt.tools.adpcm.util;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe pool of byte buffers for codec input and output. Buffers are grouped into power-of-two size classes;
+ * a request is served by a released buffer of its class if there is one, and by a new buffer otherwise. Released
+ * buffers are kept for reuse until the pool holds a fixed number of bytes; beyond that, they are left to the garbage
+ * collector.
+ * <p>
+ * A buffer is handed out as a {@link Lease}, which returns it to the pool when {@linkplain Lease#release() released}
+ * or closed, so it can be used with try-with-resources. A lease that becomes unreachable without being released is
+ * counted as a {@linkplain #getLeakCount() leak}; its buffer is not returned to the pool.
+ * <p>
+ * {@link #encode(ADPCMEncoder, ShortBuffer)}, {@link #decode(ADPCMDecoder, ByteBuffer, int)},
+ * {@link #decode(WAVFile)} and {@link #readFile(Path)} run the codec and file I/O straight into pooled buffers.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class BufferPool {
+
+    private static final class CleanerHolder {
+        static final Cleaner CLEANER = Cleaner.create();
+    }
+
+    /** The size of the smallest class, as a power of two. */
+    private static final int MIN_SHIFT = 10;
+    /** The size of the largest pooled class, as a power of two; larger buffers are never reused. */
+    private static final int MAX_SHIFT = 30;
+
+    private final boolean             direct;
+    private final long                maxRetainedBytes;
+    private final Queue<ByteBuffer>[] classes;
+
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final LongAdder  acquires      = new LongAdder();
+    private final LongAdder  hits          = new LongAdder();
+    private final LongAdder  releases      = new LongAdder();
+    private final LongAdder  leaks         = new LongAdder();
+
+    /**
+     * Creates a buffer pool.
+     * @param direct            {@code true} to allocate direct buffers, {@code false} to allocate heap buffers
+     * @param maxRetainedBytes  the maximum number of bytes of released buffers the pool keeps for reuse
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(boolean direct, long maxRetainedBytes) {
+        if (maxRetainedBytes < 0) {
+            throw new IllegalArgumentException("unsupported pool size: "+maxRetainedBytes+"; must not be negative");
+        }
+
+        this.direct           = direct;
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.classes          = (Queue<ByteBuffer>[]) new Queue<?>[MAX_SHIFT - MIN_SHIFT + 1];
+
+        for (int i=0; i<classes.length; i++) {
+            classes[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Leases a buffer with at least the given number of bytes.
+     * @param size  the number of bytes required
+     * @return a lease of a little-endian buffer whose position is 0 and whose limit is {@code size}; the contents of
+     *         the buffer are undefined
+     */
+    public Lease acquire(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("unsupported buffer size: "+size+"; must not be negative");
+        }
+
+        acquires.increment();
+
+        final int  sizeClass = sizeClass(size);
+        ByteBuffer buffer    = null;
+
+        if (sizeClass >= 0) {
+            buffer = classes[sizeClass].poll();
+        }
+
+        if (buffer != null) {
+            retainedBytes.addAndGet(-buffer.capacity());
+            hits.increment();
+        } else {
+            final int capacity = sizeClass >= 0 ? 1 << (sizeClass + MIN_SHIFT) : size;
+            buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        }
+
+        buffer.clear().limit(size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        return new Lease(buffer, sizeClass);
+    }
+
+    // codec
+    // =================================================================================================================
+    /**
+     * Encodes the given PCM data into a pooled buffer.
+     * @param encoder  the encoder
+     * @param pcm      16-bit PCM data
+     * @return a lease of a buffer containing the ADPCM data, from its position to its limit
+     * @throws IOException when an encoding problem occurs
+     */
+    public Lease encode(ADPCMEncoder encoder, ShortBuffer pcm) throws IOException {
+        final ADPCMEncoderConfig cfg   = encoder.getConfiguration();
+        final Lease              lease = acquire(cfg.computeOutputSize(pcm.remaining() / cfg.getChannels()));
+
+        try {
+            encoder.encode(pcm, lease.buffer()).flip();
+            return lease;
+        } catch (IOException | RuntimeException e) {
+            lease.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Decodes the given ADPCM data into a pooled buffer.
+     * @param decoder     the decoder
+     * @param adpcm       ADPCM data
+     * @param numSamples  the number of samples per channel to decode
+     * @return a lease of a buffer containing interleaved little-endian 16-bit PCM data, from its position to its limit
+     * @throws IOException when a decoding problem occurs
+     */
+    public Lease decode(ADPCMDecoder decoder, ByteBuffer adpcm, int numSamples) throws IOException {
+        final Lease lease = acquire(numSamples * decoder.getConfiguration().getChannels() * 2);
+
+        try {
+            decoder.decode(adpcm, lease.buffer().asShortBuffer());
+            return lease;
+        } catch (IOException | RuntimeException e) {
+            lease.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Decodes the given ADPCM file into a pooled buffer.
+     * @param adpcm  an ADPCM-encoded file
+     * @return a lease of a buffer containing interleaved little-endian 16-bit PCM data, from its position to its limit
+     * @throws IOException when a decoding problem occurs
+     * @throws IllegalStateException if the file is not ADPCM-encoded
+     */
+    public Lease decode(WAVFile adpcm) throws IOException {
+        return decode(new ADPCMDecoder(adpcm.createDecoderConfig()), adpcm.getReadOnlyData(), adpcm.getNumSamples());
+    }
+
+    /**
+     * Reads the file at the given path into a pooled buffer. Pass the buffer to {@link WAVFile#fromBuffer(ByteBuffer)}
+     * to read a WAV file without the temporary array {@link WAVFile#fromFile(Path)} allocates.
+     * @param file  path to the input file
+     * @return a lease of a buffer containing the file, from its position to its limit
+     * @throws IOException if an I/O problem occurs, or if the file is larger than 2 GB
+     */
+    public Lease readFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("file too large: "+file+" ("+size+" bytes)");
+            }
+
+            final Lease lease = acquire((int) size);
+
+            try {
+                final ByteBuffer dst = lease.buffer();
+                while (dst.hasRemaining() && channel.read(dst) >= 0) {
+                    // keep reading
+                }
+                dst.flip();
+                return lease;
+            } catch (IOException | RuntimeException e) {
+                lease.release();
+                throw e;
+            }
+        }
+    }
+
+    // metrics
+    // =================================================================================================================
+    /**
+     * @return the number of buffers leased
+     */
+    public long getAcquireCount() {
+        return acquires.sum();
+    }
+
+    /**
+     * @return the number of leases served by a released buffer rather than a new one
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of leases that have been released
+     */
+    public long getReleaseCount() {
+        return releases.sum();
+    }
+
+    /**
+     * @return the number of leases neither released nor leaked; exact only when no other thread is using the pool
+     */
+    public long getOutstandingCount() {
+        return acquires.sum() - releases.sum() - leaks.sum();
+    }
+
+    /**
+     * @return the number of leases that became unreachable without being released
+     */
+    public long getLeakCount() {
+        return leaks.sum();
+    }
+
+    /**
+     * @return the number of bytes of released buffers the pool currently keeps for reuse
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    // implementation
+    // =================================================================================================================
+    /**
+     * @return the index of the smallest class that holds {@code size} bytes, or -1 if it is too large to pool
+     */
+    private static int sizeClass(int size) {
+        if (size <= 1 << MIN_SHIFT) {
+            return 0;
+        }
+
+        final int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+
+    private void recycle(ByteBuffer buffer, int sizeClass) {
+        releases.increment();
+
+        if (sizeClass < 0) {
+            return;
+        }
+
+        final long capacity = buffer.capacity();
+
+        // reserve room for the buffer before offering it, so concurrent releases can't exceed the limit
+        long retained;
+        do {
+            retained = retainedBytes.get();
+            if (retained + capacity > maxRetainedBytes) {
+                return;
+            }
+        } while (!retainedBytes.compareAndSet(retained, retained + capacity));
+
+        classes[sizeClass].offer(buffer);
+    }
+
+    /**
+     * A buffer leased from a {@link BufferPool}. Release it exactly once, directly or by closing it, when it is no
+     * longer used; the buffer must not be touched afterwards.
+     */
+    public final class Lease implements AutoCloseable {
+        private final ByteBuffer        buffer;
+        private final int               sizeClass;
+        private final LeakDetector      detector;
+        private final Cleaner.Cleanable cleanable;
+
+        private Lease(ByteBuffer buffer, int sizeClass) {
+            this.buffer    = buffer;
+            this.sizeClass = sizeClass;
+            this.detector  = new LeakDetector(leaks);
+            this.cleanable = CleanerHolder.CLEANER.register(this, detector);
+        }
+
+        /**
+         * @return the leased buffer
+         * @throws IllegalStateException if this lease has been released
+         */
+        public ByteBuffer buffer() {
+            if (detector.released) {
+                throw new IllegalStateException("lease released");
+            }
+            return buffer;
+        }
+
+        /**
+         * Returns the buffer to the pool. Has no effect if this lease has already been released.
+         */
+        public void release() {
+            synchronized (detector) {
+                if (detector.released) {
+                    return;
+                }
+                detector.released = true;
+            }
+
+            cleanable.clean();
+            recycle(buffer, sizeClass);
+        }
+
+        /**
+         * Equivalent to {@link #release()}.
+         */
+        @Override
+        public void close() {
+            release();
+        }
+    }
+
+    /**
+     * Counts a leak if it runs before its lease is released. Must not refer to the lease, or the lease would never
+     * become unreachable.
+     */
+    private static final class LeakDetector implements Runnable {
+        private final LongAdder leaks;
+
+        volatile boolean released;
+
+        LeakDetector(LongAdder leaks) {
+            this.leaks = leaks;
+        }
+
+        @Override
+        public void run() {
+            if (!released) {
+                leaks.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.jiggawatt.jt.tools.adpcm.util;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoderConfig;
+import com.jiggawatt.jt.tools.adpcm.impl.ADPCMUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decodes many ADPCM clips at once into a single direct buffer. The size of every clip is computed up front, so the
+ * output is allocated once; the clips are then split into runs of blocks, which are decoded in parallel on a
+ * {@link ForkJoinPool}, each straight into its own region of the output.
+ * <p>
+ * This suits loading a large set of sounds at once, e.g. at the start of a level: it takes advantage of every core, and
+ * creates a single off-heap allocation rather than one heap buffer per clip.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class BulkDecoder {
+
+    /** The number of blocks decoded by a single task. */
+    private static final int BLOCKS_PER_TASK = 32;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a bulk decoder that runs on the common {@link ForkJoinPool}.
+     */
+    public BulkDecoder() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a bulk decoder that runs on the given pool.
+     * @param pool  the pool on which to decode
+     */
+    public BulkDecoder(ForkJoinPool pool) {
+        this.pool = Objects.requireNonNull(pool);
+    }
+
+    /**
+     * Decodes the given ADPCM files.
+     * @param clips  ADPCM-encoded files
+     * @return one buffer of interleaved 16-bit samples per input file, in the same order; all of these are views of a
+     *         single direct buffer
+     * @throws IOException if a file is malformed
+     * @throws IllegalArgumentException if a file is not ADPCM-encoded, or the output would exceed 2 GB
+     */
+    public List<ShortBuffer> decode(List<WAVFile> clips) throws IOException {
+        final List<Clip> jobs = new ArrayList<>(clips.size());
+
+        for (WAVFile clip : clips) {
+            if (clip.getFormat() != WAVFile.Format.IMA_ADPCM) {
+                throw new IllegalArgumentException("unsupported format: "+clip.getFormat()+"; IMA ADPCM expected");
+            }
+
+            jobs.add(new Clip(clip.getReadOnlyData(), clip.createDecoderConfig(), clip.getNumSamples()));
+        }
+
+        return decodeAll(jobs);
+    }
+
+    /**
+     * Decodes the given buffers of ADPCM data, which must all have the same format. Every sample in each buffer is
+     * decoded, including the padding that may follow the last sample in the final block.
+     * @param clips  buffers containing ADPCM data, from their position to their limit
+     * @param cfg    decoder configuration matching every buffer
+     * @return one buffer of interleaved 16-bit samples per input buffer, in the same order; all of these are views of a
+     *         single direct buffer
+     * @throws IOException if a buffer is malformed
+     * @throws IllegalArgumentException if the output would exceed 2 GB
+     */
+    public List<ShortBuffer> decode(List<ByteBuffer> clips, ADPCMDecoderConfig cfg) throws IOException {
+        final List<Clip> jobs = new ArrayList<>(clips.size());
+
+        for (ByteBuffer clip : clips) {
+            jobs.add(new Clip(clip.duplicate(), cfg, countSamples(clip.remaining(), cfg)));
+        }
+
+        return decodeAll(jobs);
+    }
+
+    // implementation
+    // =================================================================================================================
+    private List<ShortBuffer> decodeAll(List<Clip> clips) throws IOException {
+        // lay out the output
+        // -------------------------------------------------------------------------------------------------------------
+        long total = 0;
+        for (Clip clip : clips) {
+            clip.outOffset = total;
+            total += (long) clip.numSamples * clip.cfg.getChannels();
+        }
+
+        if (total * 2 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("output too large: "+(total * 2)+" bytes; the limit is 2 GB");
+        }
+
+        final ShortBuffer slab = ByteBuffer.allocateDirect((int) total * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+
+        final List<ShortBuffer> views = new ArrayList<>(clips.size());
+        final List<Run>         runs  = new ArrayList<>();
+
+        for (Clip clip : clips) {
+            final int count = clip.numSamples * clip.cfg.getChannels();
+            final int start = (int) clip.outOffset;
+
+            views.add(slab.duplicate().position(start).limit(start + count).slice());
+
+            final int spb = clip.cfg.getSamplesPerBlock();
+            for (int sample=0; sample<clip.numSamples; sample+=spb * BLOCKS_PER_TASK) {
+                runs.add(new Run(clip, slab, sample, Math.min(spb * BLOCKS_PER_TASK, clip.numSamples - sample)));
+            }
+        }
+
+        // decode
+        // -------------------------------------------------------------------------------------------------------------
+        try {
+            pool.invoke(new Decode(runs, 0, runs.size()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        return Collections.unmodifiableList(views);
+    }
+
+    /**
+     * Counts every sample in the given amount of ADPCM data, including padding.
+     */
+    private static int countSamples(int dataSize, ADPCMDecoderConfig cfg) throws IOException {
+        final int channels  = cfg.getChannels();
+        final int blockSize = cfg.getBlockSize();
+        final int r         = dataSize % blockSize;
+
+        long numSamples = (long) (dataSize / blockSize) * cfg.getSamplesPerBlock();
+
+        if (r != 0) {
+            if (!ADPCMUtil.isValidPartialBlockSize(channels, r, cfg.getBitsPerSample())) {
+                throw new IOException("malformed block: unexpected size "+r);
+            }
+            numSamples += ADPCMUtil.computeSamplesPerBlock(channels, r, cfg.getBitsPerSample());
+        }
+
+        if (numSamples > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("input too large: "+numSamples+" samples");
+        }
+
+        return (int) numSamples;
+    }
+
+    private static final class Clip {
+        final ByteBuffer         data;
+        final ADPCMDecoderConfig cfg;
+        final int                numSamples;
+
+        long outOffset;
+
+        Clip(ByteBuffer data, ADPCMDecoderConfig cfg, int numSamples) {
+            this.data       = data;
+            this.cfg        = cfg;
+            this.numSamples = numSamples;
+        }
+    }
+
+    /**
+     * A run of consecutive blocks of a clip. Every block carries its own decoder state, so runs are independent.
+     */
+    private static final class Run {
+        final Clip        clip;
+        final ShortBuffer slab;
+        final int         firstSample;
+        final int         numSamples;
+
+        Run(Clip clip, ShortBuffer slab, int firstSample, int numSamples) {
+            this.clip        = clip;
+            this.slab        = slab;
+            this.firstSample = firstSample;
+            this.numSamples  = numSamples;
+        }
+
+        void decode() throws IOException {
+            final ADPCMDecoderConfig cfg = clip.cfg;
+            final int channels  = cfg.getChannels();
+            final int blockSize = cfg.getBlockSize();
+
+            // read exactly the bytes holding our samples, so the decoder doesn't mistake the padding samples that
+            // might follow for another block
+            final int inStart = firstSample / cfg.getSamplesPerBlock() * blockSize;
+            final int inSize  = ADPCMUtil.computeOutputSize(
+                numSamples,
+                channels,
+                cfg.getSamplesPerBlock(),
+                blockSize,
+                cfg.getBitsPerSample()
+            );
+
+            final ByteBuffer in = clip.data.duplicate();
+            if (inStart + inSize > in.remaining()) {
+                throw new IOException("malformed ADPCM data: expected at least "+(inStart + inSize)+" bytes");
+            }
+            in.position(in.position() + inStart).limit(in.position() + inSize);
+
+            final int outStart = (int) clip.outOffset + firstSample * channels;
+            final ShortBuffer out = slab.duplicate();
+            out.position(outStart).limit(outStart + numSamples * channels);
+
+            new ADPCMDecoder(cfg).decode(in, out);
+        }
+    }
+
+    @SuppressWarnings("serial") // never serialized
+    private static final class Decode extends RecursiveAction {
+        private final List<Run> runs;
+        private final int       from;
+        private final int       to;
+
+        Decode(List<Run> runs, int from, int to) {
+            this.runs = runs;
+            this.from = from;
+            this.to   = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                try {
+                    runs.get(from).decode();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else if (to - from > 1) {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new Decode(runs, from, mid), new Decode(runs, mid, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.jiggawatt.jt.tools.adpcm.util;
+
+import com.jiggawatt.jt.tools.adpcm.impl.MetricsRecorder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the blocks, samples and bytes processed by every {@link com.jiggawatt.jt.tools.adpcm.ADPCMEncoder},
+ * {@link com.jiggawatt.jt.tools.adpcm.ADPCMDecoder} and {@link WAVFile} in the JVM, along with failures, and keeps
+ * histograms of the time taken to encode and decode each block. Recording is off by default; {@link #register()}
+ * turns it on, and publishes the metrics as an MXBean named {@value #OBJECT_NAME}.
+ * <p>
+ * Counters and histogram buckets are {@link java.util.concurrent.atomic.LongAdder}s, so codecs on different threads
+ * don't contend when recording. Percentiles are accurate to within 12.5%.
+ * <p>
+ * JMX lives in the {@code java.management} module, which this library only requires if {@link #register()} or
+ * {@link #unregister()} is called; the metrics can also be read directly, without JMX. Every reference to JMX is kept
+ * in a nested class that only those two methods load, so the rest of this class links without the module.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class CodecMetrics implements CodecMetricsMXBean {
+
+    /** The name under which {@link #register()} publishes the metrics. */
+    public static final String OBJECT_NAME = "com.jiggawatt.jt.tools.adpcm:type=CodecMetrics";
+
+    private static final CodecMetrics INSTANCE = new CodecMetrics();
+
+    /**
+     * Publishes {@link #INSTANCE}. This class is only loaded, and {@code java.management} only needed, once
+     * {@link #register()} or {@link #unregister()} is called.
+     */
+    private static final class JMX {
+
+        static void register() {
+            try {
+                final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                final ObjectName  name   = new ObjectName(OBJECT_NAME);
+
+                synchronized (INSTANCE) {
+                    if (!server.isRegistered(name)) {
+                        server.registerMBean(INSTANCE, name);
+                    }
+                }
+            } catch (JMException e) {
+                throw new IllegalStateException("failed to register "+OBJECT_NAME, e);
+            }
+        }
+
+        static void unregister() {
+            try {
+                final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                final ObjectName  name   = new ObjectName(OBJECT_NAME);
+
+                synchronized (INSTANCE) {
+                    if (server.isRegistered(name)) {
+                        server.unregisterMBean(name);
+                    }
+                }
+            } catch (JMException e) {
+                throw new IllegalStateException("failed to unregister "+OBJECT_NAME, e);
+            }
+        }
+    }
+
+    private CodecMetrics() {
+        // nada
+    }
+
+    /**
+     * @return the metrics of this JVM
+     */
+    public static CodecMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Turns recording on, and registers the metrics with the platform MBean server, if they aren't already.
+     * @return the metrics of this JVM
+     */
+    public static CodecMetrics register() {
+        INSTANCE.setEnabled(true);
+        JMX.register();
+        return INSTANCE;
+    }
+
+    /**
+     * Turns recording off, and removes the metrics from the platform MBean server, if they are registered.
+     */
+    public static void unregister() {
+        INSTANCE.setEnabled(false);
+        JMX.unregister();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return MetricsRecorder.isEnabled();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        MetricsRecorder.setEnabled(enabled);
+    }
+
+    @Override
+    public long getEncodedBlocks() {
+        return MetricsRecorder.getEncodedBlocks();
+    }
+
+    @Override
+    public long getEncodedSamples() {
+        return MetricsRecorder.getEncodedSamples();
+    }
+
+    @Override
+    public long getEncodedBytes() {
+        return MetricsRecorder.getEncodedBytes();
+    }
+
+    @Override
+    public long getEncodeErrors() {
+        return MetricsRecorder.getEncodeErrors();
+    }
+
+    @Override
+    public long getDecodedBlocks() {
+        return MetricsRecorder.getDecodedBlocks();
+    }
+
+    @Override
+    public long getDecodedSamples() {
+        return MetricsRecorder.getDecodedSamples();
+    }
+
+    @Override
+    public long getDecodedBytes() {
+        return MetricsRecorder.getDecodedBytes();
+    }
+
+    @Override
+    public long getDecodeErrors() {
+        return MetricsRecorder.getDecodeErrors();
+    }
+
+    @Override
+    public long getLoadedFiles() {
+        return MetricsRecorder.getLoadedFiles();
+    }
+
+    @Override
+    public long getLoadedBytes() {
+        return MetricsRecorder.getLoadedBytes();
+    }
+
+    @Override
+    public long getDumpedFiles() {
+        return MetricsRecorder.getDumpedFiles();
+    }
+
+    @Override
+    public long getDumpedBytes() {
+        return MetricsRecorder.getDumpedBytes();
+    }
+
+    @Override
+    public long getFileErrors() {
+        return MetricsRecorder.getFileErrors();
+    }
+
+    @Override
+    public long getEncodeLatencyP50Nanos() {
+        return MetricsRecorder.getEncodeLatency().getPercentile(0.5);
+    }
+
+    @Override
+    public long getEncodeLatencyP99Nanos() {
+        return MetricsRecorder.getEncodeLatency().getPercentile(0.99);
+    }
+
+    @Override
+    public long getEncodeLatencyP999Nanos() {
+        return MetricsRecorder.getEncodeLatency().getPercentile(0.999);
+    }
+
+    @Override
+    public long getDecodeLatencyP50Nanos() {
+        return MetricsRecorder.getDecodeLatency().getPercentile(0.5);
+    }
+
+    @Override
+    public long getDecodeLatencyP99Nanos() {
+        return MetricsRecorder.getDecodeLatency().getPercentile(0.99);
+    }
+
+    @Override
+    public long getDecodeLatencyP999Nanos() {
+        return MetricsRecorder.getDecodeLatency().getPercentile(0.999);
+    }
+
+    @Override
+    public void reset() {
+        MetricsRecorder.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "CodecMetrics{" +
+            "enabled=" + isEnabled() +
+            ", encodedBlocks=" + getEncodedBlocks() +
+            ", decodedBlocks=" + getDecodedBlocks() +
+            ", encodeLatencyP99Nanos=" + getEncodeLatencyP99Nanos() +
+            ", decodeLatencyP99Nanos=" + getDecodeLatencyP99Nanos() +
+            '}';
+    }
+}
@@ -0,0 +1,122 @@
+package com.jiggawatt.jt.tools.adpcm.util;
+
+/**
+ * The management interface of {@link CodecMetrics}. Counts and latencies cover every encoder, decoder and
+ * {@link WAVFile} in the JVM, from the time recording was enabled or the metrics were last reset.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public interface CodecMetricsMXBean {
+
+    /**
+     * @return {@code true} if codec work is being recorded, {@code false} otherwise
+     */
+    boolean isEnabled();
+
+    /**
+     * Turns recording on or off. While recording is off, the counters and histograms keep their values.
+     * @param enabled  {@code true} to record codec work, {@code false} to stop
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return the number of blocks encoded
+     */
+    long getEncodedBlocks();
+
+    /**
+     * @return the number of PCM samples per channel encoded
+     */
+    long getEncodedSamples();
+
+    /**
+     * @return the number of bytes of ADPCM data produced
+     */
+    long getEncodedBytes();
+
+    /**
+     * @return the number of encoder calls that failed
+     */
+    long getEncodeErrors();
+
+    /**
+     * @return the number of blocks decoded
+     */
+    long getDecodedBlocks();
+
+    /**
+     * @return the number of PCM samples per channel decoded
+     */
+    long getDecodedSamples();
+
+    /**
+     * @return the number of bytes of ADPCM data consumed
+     */
+    long getDecodedBytes();
+
+    /**
+     * @return the number of decoder calls that failed
+     */
+    long getDecodeErrors();
+
+    /**
+     * @return the number of WAV files read
+     */
+    long getLoadedFiles();
+
+    /**
+     * @return the number of bytes of audio data in the WAV files read
+     */
+    long getLoadedBytes();
+
+    /**
+     * @return the number of WAV files written
+     */
+    long getDumpedFiles();
+
+    /**
+     * @return the number of bytes of audio data in the WAV files written
+     */
+    long getDumpedBytes();
+
+    /**
+     * @return the number of WAV files that could not be read
+     */
+    long getFileErrors();
+
+    /**
+     * @return the median time to encode a block, in nanoseconds
+     */
+    long getEncodeLatencyP50Nanos();
+
+    /**
+     * @return the 99th percentile of the time to encode a block, in nanoseconds
+     */
+    long getEncodeLatencyP99Nanos();
+
+    /**
+     * @return the 99.9th percentile of the time to encode a block, in nanoseconds
+     */
+    long getEncodeLatencyP999Nanos();
+
+    /**
+     * @return the median time to decode a block, in nanoseconds
+     */
+    long getDecodeLatencyP50Nanos();
+
+    /**
+     * @return the 99th percentile of the time to decode a block, in nanoseconds
+     */
+    long getDecodeLatencyP99Nanos();
+
+    /**
+     * @return the 99.9th percentile of the time to decode a block, in nanoseconds
+     */
+    long getDecodeLatencyP999Nanos();
+
+    /**
+     * Sets every counter and histogram to zero.
+     */
+    void reset();
+}
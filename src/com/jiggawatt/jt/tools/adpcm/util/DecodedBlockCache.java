@@ -0,0 +1,367 @@
+package com.jiggawatt.jt.tools.adpcm.util;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoderConfig;
+import com.jiggawatt.jt.tools.adpcm.impl.ADPCMUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * A bounded cache of decoded ADPCM blocks. Blocks are identified by a source key chosen by the caller, such as a clip
+ * name or a {@link java.nio.file.Path}, and a block index. A cache hit costs a lookup and whatever copy the caller makes
+ * of the returned samples, rather than a full block decode.
+ * <p>
+ * Decoded samples are stored in direct buffers, outside the Java heap, and the cache holds no more than a fixed
+ * number of bytes of them. The cache is split into independently locked segments, each of which evicts its least
+ * recently used blocks when it runs out of room, so concurrent lookups of different blocks rarely contend.
+ * <p>
+ * Two threads that miss on the same block at the same time may both decode it; only one result is kept.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class DecodedBlockCache {
+
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final long      maxBytes;
+
+    private final LongAdder hits      = new LongAdder();
+    private final LongAdder misses    = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache holding at most {@code maxBytes} bytes of decoded samples.
+     * @param maxBytes  the maximum size of the cache in bytes; must be greater than 0
+     */
+    public DecodedBlockCache(long maxBytes) {
+        this(maxBytes, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Creates a cache holding at most {@code maxBytes} bytes of decoded samples, split into the given number of
+     * segments. Each segment may hold {@code maxBytes / segments} bytes.
+     * @param maxBytes  the maximum size of the cache in bytes; must be greater than 0
+     * @param segments  the number of independently locked segments; must be greater than 0
+     */
+    public DecodedBlockCache(long maxBytes, int segments) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("unsupported cache size: "+maxBytes+"; must be greater than 0");
+        }
+
+        if (segments < 1) {
+            throw new IllegalArgumentException("unsupported segment count: "+segments+"; must be greater than 0");
+        }
+
+        this.maxBytes = maxBytes;
+        this.segments = new Segment[segments];
+
+        for (int i=0; i<segments; i++) {
+            this.segments[i] = new Segment(maxBytes / segments);
+        }
+    }
+
+    /**
+     * Returns a decoded block of the given ADPCM data, decoding it if it is not in the cache. The final block might
+     * contain padding samples; use {@link #getBlock(WAVFile, int)} to drop them.
+     * @param source      identifies {@code adpcmData}; compared with {@link Object#equals(Object)}, so it should be
+     *                    cheap to hash
+     * @param blockIndex  the index of the block to return
+     * @param adpcmData   the ADPCM data containing the block; only read on a cache miss
+     * @param cfg         decoder configuration matching {@code adpcmData}
+     * @return a read-only buffer of interleaved 16-bit samples
+     * @throws IOException if the block is malformed
+     * @throws IndexOutOfBoundsException if {@code adpcmData} contains no block with the given index
+     */
+    public ShortBuffer getBlock(Object source, int blockIndex, ByteBuffer adpcmData, ADPCMDecoderConfig cfg)
+            throws IOException {
+        return getBlock(new Key(source, blockIndex), adpcmData, cfg, -1);
+    }
+
+    /**
+     * Returns a decoded block of the given ADPCM file, decoding it if it is not in the cache. The file is identified
+     * by reference, not by its contents, so blocks of a file that is read again are cached again.
+     * @param adpcm       an ADPCM-encoded file
+     * @param blockIndex  the index of the block to return
+     * @return a read-only buffer of interleaved 16-bit samples; the final block contains no padding samples
+     * @throws IOException if the block is malformed
+     * @throws IndexOutOfBoundsException if the file contains no block with the given index
+     */
+    public ShortBuffer getBlock(WAVFile adpcm, int blockIndex) throws IOException {
+        return getBlock(
+            new Key(new Identity(adpcm), blockIndex),
+            adpcm.getReadOnlyData(),
+            adpcm.createDecoderConfig(),
+            adpcm.getNumSamples()
+        );
+    }
+
+    /**
+     * Removes every block of the given source from the cache.
+     * @param source  a source key passed to {@link #getBlock(Object, int, ByteBuffer, ADPCMDecoderConfig)}, or a file
+     *                passed to {@link #getBlock(WAVFile, int)}
+     */
+    public void invalidate(Object source) {
+        final Identity identity = new Identity(source);
+
+        for (Segment segment : segments) {
+            segment.removeIf(key -> key.source.equals(source) || key.source.equals(identity));
+        }
+    }
+
+    /**
+     * Removes every block from the cache.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.removeIf(key -> true);
+        }
+    }
+
+    // metrics
+    // =================================================================================================================
+    /**
+     * @return the maximum size of the cache in bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the number of bytes of decoded samples currently held by the cache
+     */
+    public long getSizeBytes() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.sizeBytes();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of lookups that found their block in the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that had to decode their block
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of blocks evicted to make room for others
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the ratio of hits to lookups, or 0 if there have been no lookups
+     */
+    public double getHitRate() {
+        final long h = hits.sum();
+        final long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    // implementation
+    // =================================================================================================================
+    private ShortBuffer getBlock(Key key, ByteBuffer adpcmData, ADPCMDecoderConfig cfg, long numSamples)
+            throws IOException {
+        final int     hash    = key.hashCode() ^ (key.hashCode() >>> 16);
+        final Segment segment = segments[(hash & 0x7fffffff) % segments.length];
+
+        ByteBuffer block = segment.get(key);
+        if (block != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            block = segment.put(key, decode(key.blockIndex, adpcmData, cfg, numSamples));
+        }
+
+        return block.asReadOnlyBuffer().order(ByteOrder.nativeOrder()).asShortBuffer();
+    }
+
+    private static ByteBuffer decode(int blockIndex, ByteBuffer adpcmData, ADPCMDecoderConfig cfg, long numSamples)
+            throws IOException {
+        final int channels  = cfg.getChannels();
+        final int blockSize = cfg.getBlockSize();
+        final int dataSize  = adpcmData.remaining();
+        final int numBlocks = (dataSize + blockSize - 1) / blockSize;
+
+        if (blockIndex < 0 || blockIndex >= numBlocks) {
+            throw new IndexOutOfBoundsException("block index "+blockIndex+" out of bounds for "+numBlocks+" blocks");
+        }
+
+        final int start = blockIndex * blockSize;
+        final int count = Math.min(blockSize, dataSize - start);
+
+        final int blockSamples;
+        if (count == blockSize) {
+            blockSamples = cfg.getSamplesPerBlock();
+        } else if (ADPCMUtil.isValidPartialBlockSize(channels, count, cfg.getBitsPerSample())) {
+            blockSamples = ADPCMUtil.computeSamplesPerBlock(channels, count, cfg.getBitsPerSample());
+        } else {
+            throw new IOException("malformed block: unexpected size "+count);
+        }
+
+        final ByteBuffer in = adpcmData.duplicate();
+        in.position(in.position() + start).limit(in.position() + count);
+
+        final ByteBuffer out = ByteBuffer.allocateDirect(blockSamples * channels * 2).order(ByteOrder.nativeOrder());
+        new ADPCMDecoder(cfg).decode(in, out.asShortBuffer());
+
+        // the final block might contain padding samples
+        if (numSamples >= 0) {
+            final long first = (long) blockIndex * cfg.getSamplesPerBlock();
+            final int  keep  = (int) Math.max(0, Math.min(blockSamples, numSamples - first));
+            out.limit(keep * channels * 2);
+        }
+
+        return out;
+    }
+
+    private final class Segment {
+        private final ReentrantLock                  lock    = new ReentrantLock();
+        private final LinkedHashMap<Key, ByteBuffer> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final long                           maxBytes;
+
+        private long sizeBytes;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        ByteBuffer get(Key key) {
+            lock.lock();
+            try {
+                return entries.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return the block now stored under {@code key}; this is not {@code block} if another thread stored one
+         *         first
+         */
+        ByteBuffer put(Key key, ByteBuffer block) {
+            final int size = block.capacity();
+
+            lock.lock();
+            try {
+                final ByteBuffer existing = entries.get(key);
+                if (existing != null) {
+                    return existing;
+                }
+
+                // blocks that could never fit are returned without being stored
+                if (size > maxBytes) {
+                    return block;
+                }
+
+                final Iterator<ByteBuffer> eldest = entries.values().iterator();
+                while (sizeBytes + size > maxBytes) {
+                    sizeBytes -= eldest.next().capacity();
+                    eldest.remove();
+                    evictions.increment();
+                }
+
+                entries.put(key, block);
+                sizeBytes += size;
+
+                return block;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void removeIf(Predicate<Key> filter) {
+            lock.lock();
+            try {
+                final Iterator<Map.Entry<Key, ByteBuffer>> it = entries.entrySet().iterator();
+                while (it.hasNext()) {
+                    final Map.Entry<Key, ByteBuffer> e = it.next();
+                    if (filter.test(e.getKey())) {
+                        sizeBytes -= e.getValue().capacity();
+                        it.remove();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long sizeBytes() {
+            lock.lock();
+            try {
+                return sizeBytes;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class Key {
+        final Object source;
+        final int    blockIndex;
+
+        Key(Object source, int blockIndex) {
+            this.source     = Objects.requireNonNull(source);
+            this.blockIndex = blockIndex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return blockIndex == key.blockIndex && source.equals(key.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * source.hashCode() + blockIndex;
+        }
+    }
+
+    /**
+     * Compares an object by reference.
+     */
+    private static final class Identity {
+        final Object ref;
+
+        Identity(Object ref) {
+            this.ref = ref;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Identity && ((Identity) o).ref == ref;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(ref);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.jiggawatt.jt.tools.adpcm.util;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+import com.jiggawatt.jt.tools.adpcm.impl.CacheKeys;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A content-addressed cache of encoded audio, stored in a directory on disk. Each entry is keyed by a SHA-256 digest
+ * of the PCM input, every field of the encoder configuration, and the version of this library, so an asset whose
+ * input and settings have not changed is never encoded twice.
+ * <p>
+ * Entries are written to a temporary file and atomically renamed into place, so any number of threads and processes
+ * may share a cache directory; a reader never sees a partly written entry. When the cache grows past its size limit,
+ * the least recently used entries are deleted. Use is tracked by each entry's modification time, which is updated on
+ * every hit.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class EncodeCache {
+
+    private static final String ENTRY_SUFFIX = ".adpcm";
+    private static final String TEMP_SUFFIX  = ".tmp";
+
+    private final Path dir;
+    private final long maxBytes;
+
+    private final LongAdder hits   = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Opens a cache in the given directory, creating the directory if it does not exist.
+     * @param dir       the cache directory
+     * @param maxBytes  the maximum total size of the entries in bytes
+     * @throws IOException if the directory could not be created
+     */
+    public EncodeCache(Path dir, long maxBytes) throws IOException {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("unsupported cache size: "+maxBytes+"; must not be negative");
+        }
+
+        this.dir      = Files.createDirectories(Objects.requireNonNull(dir));
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Encodes the given PCM data, or returns a cached result of encoding identical data with the same configuration.
+     * @param pcm  16-bit PCM data; its position is not changed
+     * @param cfg  encoder configuration
+     * @return a buffer containing the ADPCM data, from its position to its limit
+     * @throws IOException when an I/O or encoding problem occurs
+     */
+    public ByteBuffer encode(ShortBuffer pcm, ADPCMEncoderConfig cfg) throws IOException {
+        final String key      = computeKey(pcm, cfg);
+        final int    expected = cfg.computeOutputSize(pcm.remaining() / cfg.getChannels());
+
+        final ByteBuffer cached = read(key, expected);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+
+        final ByteBuffer encoded = new ADPCMEncoder(cfg).encode(pcm.duplicate(), ByteBuffer.allocate(expected)).flip();
+        write(key, encoded.duplicate());
+        evict();
+
+        return encoded;
+    }
+
+    /**
+     * Encodes the given PCM file, or returns a cached result of encoding identical audio with the same configuration.
+     * @param pcm  16-bit PCM input
+     * @param cfg  encoder configuration; its channel count and sample rate must match the input
+     * @return the encoded file
+     * @throws IOException when an I/O or encoding problem occurs
+     * @throws IllegalArgumentException if {@code pcm} is not a PCM file
+     */
+    public WAVFile encode(WAVFile pcm, ADPCMEncoderConfig cfg) throws IOException {
+        if (pcm.getFormat() != WAVFile.Format.PCM) {
+            throw new IllegalArgumentException("unsupported format: "+pcm.getFormat()+"; PCM expected");
+        }
+
+        final ByteBuffer adpcm = encode(pcm.getReadOnlyData().asShortBuffer(), cfg);
+
+        return WAVFile.fromADPCMBuffer(adpcm, pcm.getNumSamples(), cfg);
+    }
+
+    /**
+     * Computes the key under which the result of encoding the given input is cached.
+     * @param pcm  16-bit PCM data, from its position to its limit; its position is not changed
+     * @param cfg  encoder configuration
+     * @return a lowercase hexadecimal SHA-256 digest
+     */
+    public static String computeKey(ShortBuffer pcm, ADPCMEncoderConfig cfg) {
+        return CacheKeys.compute(pcm, cfg, CacheKeys.VERSION);
+    }
+
+    /**
+     * Deletes every entry in the cache.
+     * @throws IOException if an entry could not be deleted
+     */
+    public void clear() throws IOException {
+        for (Entry entry : listEntries()) {
+            Files.deleteIfExists(entry.path);
+        }
+    }
+
+    // metrics
+    // =================================================================================================================
+    /**
+     * @return the number of encodes served from the cache by this instance
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of encodes this instance had to perform
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the total size of the entries currently in the cache directory, in bytes
+     * @throws IOException if the directory could not be read
+     */
+    public long getSizeBytes() throws IOException {
+        long size = 0;
+        for (Entry entry : listEntries()) {
+            size += entry.size;
+        }
+        return size;
+    }
+
+    // implementation
+    // =================================================================================================================
+    private ByteBuffer read(String key, int expected) throws IOException {
+        final Path path = dir.resolve(key + ENTRY_SUFFIX);
+
+        final byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        // an entry of the wrong size can only have been damaged outside this class
+        if (bytes.length != expected) {
+            Files.deleteIfExists(path);
+            return null;
+        }
+
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // evicted by another process since we read it; the contents are still good
+        }
+
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private void write(String key, ByteBuffer data) throws IOException {
+        final Path temp = Files.createTempFile(dir, key, TEMP_SUFFIX);
+
+        try {
+            Files.write(temp, toArray(data));
+
+            try {
+                Files.move(temp, dir.resolve(key + ENTRY_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, dir.resolve(key + ENTRY_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void evict() throws IOException {
+        final List<Entry> entries = listEntries();
+
+        long size = 0;
+        for (Entry entry : entries) {
+            size += entry.size;
+        }
+
+        if (size <= maxBytes) {
+            return;
+        }
+
+        entries.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+
+        for (Entry entry : entries) {
+            if (size <= maxBytes) {
+                break;
+            }
+
+            // another process may have evicted it already
+            Files.deleteIfExists(entry.path);
+            size -= entry.size;
+        }
+    }
+
+    private List<Entry> listEntries() throws IOException {
+        final List<Entry> dst = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + ENTRY_SUFFIX)) {
+            for (Path path : stream) {
+                try {
+                    final BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                    dst.add(new Entry(path, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                } catch (NoSuchFileException e) {
+                    // deleted by another process while listing
+                }
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+
+        return dst;
+    }
+
+    private static byte[] toArray(ByteBuffer data) {
+        final byte[] dst = new byte[data.remaining()];
+        data.get(dst);
+        return dst;
+    }
+
+    private static final class Entry {
+        final Path path;
+        final long size;
+        final long lastUsed;
+
+        Entry(Path path, long size, long lastUsed) {
+            this.path     = path;
+            this.size     = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.jiggawatt.jt.tools.adpcm.util;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+import com.jiggawatt.jt.tools.adpcm.EncoderState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Keeps an encoded copy of a PCM track up to date as the track is edited. Each {@linkplain #update(ShortBuffer)
+ * update} compares the new PCM data with the old one block at a time, and re-encodes only from the first changed
+ * block, continuing until the encoder's state matches the state it had at the same point of the old stream. From
+ * there on, the old ADPCM data is reused as is. The result is always identical to encoding the new PCM data from
+ * scratch, but an edit costs time in proportion to its size rather than the size of the track.
+ * <p>
+ * To resume encoding at any block, an incremental encoder keeps a copy of the PCM data and an {@link EncoderState}
+ * for each block, in addition to the ADPCM data. Edits that insert or remove whole blocks reuse the data that follows
+ * them; other edits that change the length of the track re-encode everything after the first changed block.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class IncrementalEncoder {
+
+    private final ADPCMEncoderConfig config;
+    private final ADPCMEncoder       encoder;
+    private final int                channels;
+    private final int                samplesPerBlock;
+    private final int                blockSize;
+
+    private short[]        pcm;
+    private byte[]         adpcm;
+    private EncoderState[] states;
+    private int            numSamples;
+
+    /**
+     * Encodes the given PCM data.
+     * @param cfg  encoder configuration
+     * @param pcm  16-bit PCM data; its position is not changed
+     * @throws IOException when an encoding problem occurs
+     */
+    public IncrementalEncoder(ADPCMEncoderConfig cfg, ShortBuffer pcm) throws IOException {
+        config          = cfg;
+        encoder         = new ADPCMEncoder(cfg);
+        channels        = cfg.getChannels();
+        samplesPerBlock = cfg.getSamplesPerBlock();
+        blockSize       = cfg.getBlockSize();
+
+        this.pcm   = new short[0];
+        adpcm      = new byte[0];
+        states     = new EncoderState[0];
+        numSamples = 0;
+
+        update(pcm);
+    }
+
+    /**
+     * @return this encoder's configuration object
+     */
+    public ADPCMEncoderConfig getConfiguration() {
+        return config;
+    }
+
+    /**
+     * @return the number of samples per channel in the current track
+     */
+    public int getNumSamples() {
+        return numSamples;
+    }
+
+    /**
+     * @return a read-only buffer containing the ADPCM data for the current track, from its position to its limit
+     */
+    public ByteBuffer getData() {
+        return ByteBuffer.wrap(adpcm).order(ByteOrder.LITTLE_ENDIAN).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the current track, as an ADPCM-encoded WAV file
+     */
+    public WAVFile toWAVFile() {
+        return WAVFile.fromADPCMBuffer(getData(), numSamples, config);
+    }
+
+    /**
+     * Replaces the track with the given PCM data, and re-encodes the blocks that changed.
+     * @param newPcm  16-bit PCM data; its position is not changed
+     * @return a description of the blocks that were re-encoded
+     * @throws IOException when an encoding problem occurs
+     */
+    public Update update(ShortBuffer newPcm) throws IOException {
+        final short[] next = new short[newPcm.remaining() / channels * channels];
+        newPcm.duplicate().get(next);
+
+        final int nextSamples = next.length / channels;
+        final int oldBlocks   = numBlocks(numSamples);
+        final int newBlocks   = numBlocks(nextSamples);
+
+        // find the changed region
+        // -------------------------------------------------------------------------------------------------------------
+        int first = 0;
+        while (first < Math.min(oldBlocks, newBlocks) && sameBlock(pcm, numSamples, first, next, nextSamples, first)) {
+            first++;
+        }
+
+        // the state after the old final block isn't kept, so a track that grew past it resumes from that block
+        if (first == oldBlocks && first > 0 && first < newBlocks) {
+            first--;
+        }
+
+        // the old stream can only be rejoined if blocks following the edit are still aligned with the old ones
+        int shift       = 0;
+        int suffixStart = newBlocks;
+
+        if ((nextSamples - numSamples) % samplesPerBlock == 0) {
+            shift = (nextSamples - numSamples) / samplesPerBlock;
+
+            int tail = 0;
+            while (tail < Math.min(oldBlocks, newBlocks)
+                    && sameBlock(pcm, numSamples, oldBlocks-1-tail, next, nextSamples, newBlocks-1-tail)) {
+                tail++;
+            }
+
+            suffixStart = Math.max(newBlocks - tail, Math.max(first + 1, first + shift));
+        }
+
+        // re-encode until the encoder state matches the old stream
+        // -------------------------------------------------------------------------------------------------------------
+        final byte[]         nextAdpcm  = new byte[config.computeOutputSize(nextSamples)];
+        final EncoderState[] nextStates = new EncoderState[newBlocks];
+        final ByteBuffer     out        = ByteBuffer.wrap(nextAdpcm);
+
+        final int prefix = Math.min(first * blockSize, nextAdpcm.length);
+
+        System.arraycopy(adpcm, 0, nextAdpcm, 0, prefix);
+        System.arraycopy(states, 0, nextStates, 0, first);
+
+        encoder.reset();
+        if (first < oldBlocks) {
+            encoder.restore(states[first]);
+        }
+
+        out.position(prefix);
+
+        int block = first;
+        while (block < newBlocks) {
+            nextStates[block] = encoder.snapshot();
+            encodeBlock(next, nextSamples, block, out);
+            block++;
+
+            if (block >= suffixStart && block < newBlocks && encoder.snapshot().equals(states[block - shift])) {
+                break;
+            }
+        }
+
+        final int end = block;
+
+        // splice the old data back in
+        // -------------------------------------------------------------------------------------------------------------
+        if (end < newBlocks) {
+            final int oldEnd = end - shift;
+
+            System.arraycopy(adpcm, oldEnd * blockSize, nextAdpcm, end * blockSize, adpcm.length - oldEnd * blockSize);
+            System.arraycopy(states, oldEnd, nextStates, end, oldBlocks - oldEnd);
+        }
+
+        encoder.reset();
+
+        pcm        = next;
+        adpcm      = nextAdpcm;
+        states     = nextStates;
+        numSamples = nextSamples;
+
+        return new Update(first, end - first, newBlocks);
+    }
+
+    // implementation
+    // =================================================================================================================
+    private int numBlocks(int samples) {
+        return (samples + samplesPerBlock - 1) / samplesPerBlock;
+    }
+
+    private boolean sameBlock(short[] a, int aSamples, int aBlock, short[] b, int bSamples, int bBlock) {
+        final int aFrom = aBlock * samplesPerBlock;
+        final int bFrom = bBlock * samplesPerBlock;
+        final int aTo   = Math.min(aFrom + samplesPerBlock, aSamples);
+        final int bTo   = Math.min(bFrom + samplesPerBlock, bSamples);
+
+        return Arrays.equals(a, aFrom * channels, aTo * channels, b, bFrom * channels, bTo * channels);
+    }
+
+    private void encodeBlock(short[] src, int samples, int block, ByteBuffer out) throws IOException {
+        final int from  = block * samplesPerBlock;
+        final int count = Math.min(samplesPerBlock, samples - from);
+
+        encoder.encode(ShortBuffer.wrap(src, from * channels, count * channels), out, from + count == samples);
+    }
+
+    /**
+     * Describes the blocks re-encoded by an {@linkplain #update(ShortBuffer) update}.
+     */
+    public static final class Update {
+        private final int firstBlock;
+        private final int encodedBlocks;
+        private final int totalBlocks;
+
+        private Update(int firstBlock, int encodedBlocks, int totalBlocks) {
+            this.firstBlock    = firstBlock;
+            this.encodedBlocks = encodedBlocks;
+            this.totalBlocks   = totalBlocks;
+        }
+
+        /**
+         * @return the index of the first re-encoded block, or the number of blocks if none were re-encoded
+         */
+        public int getFirstBlock() {
+            return firstBlock;
+        }
+
+        /**
+         * @return the number of blocks that were re-encoded
+         */
+        public int getEncodedBlocks() {
+            return encodedBlocks;
+        }
+
+        /**
+         * @return the number of blocks in the new track
+         */
+        public int getTotalBlocks() {
+            return totalBlocks;
+        }
+
+        @Override
+        public String toString() {
+            return "Update{" +
+                "firstBlock=" + firstBlock +
+                ", encodedBlocks=" + encodedBlocks +
+                ", totalBlocks=" + totalBlocks +
+                '}';
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.jiggawatt.jt.tools.adpcm.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free queue of 16-bit PCM values for exactly one producer thread and one consumer thread. Neither
+ * side ever blocks or allocates: {@link #offer(short[], int, int)} stores as many values as fit, and
+ * {@link #poll(short[], int, int)} takes as many as are available.
+ * <p>
+ * The producer and consumer each own one index into a preallocated array. An index is published with an ordered
+ * write once the values it covers have been copied, so the other side only ever sees whole writes.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class PCMRingBuffer {
+
+    private final short[] data;
+    private final int     mask;
+
+    /** The index of the next value to poll; written only by the consumer. */
+    private final AtomicLong head = new AtomicLong();
+    /** The index of the next value to offer; written only by the producer. */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Creates a ring buffer holding at least the given number of values. The capacity is rounded up to a power of two.
+     * @param capacity  the minimum number of values the buffer can hold; must be between 1 and 2<sup>30</sup>
+     */
+    public PCMRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("unsupported capacity: "+capacity+"; must be between 1 and 2^30");
+        }
+
+        final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+
+        data = new short[size];
+        mask = size - 1;
+    }
+
+    /**
+     * @return the number of values this buffer can hold
+     */
+    public int capacity() {
+        return data.length;
+    }
+
+    /**
+     * @return the number of values that can currently be polled; exact only when called by the consumer
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return the number of values that can currently be offered; exact only when called by the producer
+     */
+    public int remainingCapacity() {
+        return data.length - size();
+    }
+
+    /**
+     * Stores up to {@code len} values from the given array. May only be called by the producer thread.
+     * @param src  the values to store
+     * @param off  the index of the first value to store
+     * @param len  the number of values to store
+     * @return the number of values stored, which is less than {@code len} if the buffer is full
+     */
+    public int offer(short[] src, int off, int len) {
+        final long t     = tail.get();
+        final int  count = Math.min(len, data.length - (int) (t - head.get()));
+
+        if (count <= 0) {
+            return 0;
+        }
+
+        final int start = (int) t & mask;
+        final int first = Math.min(count, data.length - start);
+
+        System.arraycopy(src, off, data, start, first);
+        System.arraycopy(src, off + first, data, 0, count - first);
+
+        tail.lazySet(t + count);
+
+        return count;
+    }
+
+    /**
+     * Takes up to {@code len} values and stores them in the given array. May only be called by the consumer thread.
+     * @param dst  the array in which to store the values
+     * @param off  the index at which to store the first value
+     * @param len  the maximum number of values to take
+     * @return the number of values taken, which is less than {@code len} if the buffer holds fewer
+     */
+    public int poll(short[] dst, int off, int len) {
+        final long h     = head.get();
+        final int  count = Math.min(len, (int) (tail.get() - h));
+
+        if (count <= 0) {
+            return 0;
+        }
+
+        final int start = (int) h & mask;
+        final int first = Math.min(count, data.length - start);
+
+        System.arraycopy(data, start, dst, off, first);
+        System.arraycopy(data, 0, dst, off + first, count - first);
+
+        head.lazySet(h + count);
+
+        return count;
+    }
+
+    /**
+     * Discards every value in the buffer. May only be called by the consumer thread.
+     */
+    public void clear() {
+        head.lazySet(tail.get());
+    }
+}
@@ -0,0 +1,171 @@
+package com.jiggawatt.jt.tools.adpcm.util;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Objects;
+
+/**
+ * Encodes live PCM audio, such as the output of a capture device. A capture thread {@linkplain #write(short[], int,
+ * int) writes} frames into a preallocated {@link PCMRingBuffer}; this never blocks, and frames that don't fit are
+ * dropped and counted as an overrun. An encoder thread periodically calls {@link #encode(ByteBuffer)}, which encodes
+ * every whole block buffered so far.
+ * <p>
+ * Once the first block has been encoded, neither side allocates, so the garbage collector has nothing to do with a
+ * running stream. Exactly one thread may write, and exactly one thread may encode.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class RealtimeEncoder {
+
+    private final ADPCMEncoder  encoder;
+    private final PCMRingBuffer ring;
+    private final int           channels;
+    private final int           blockValues;
+    private final int           blockSize;
+
+    // consumer state
+    private final short[]     block;
+    private final ShortBuffer blockIn;
+
+    // each counter is written by a single thread
+    private volatile long overruns;
+    private volatile long droppedFrames;
+    private volatile long underruns;
+
+    /**
+     * Creates a real-time encoder.
+     * @param cfg             encoder configuration
+     * @param capacityBlocks  the number of blocks of PCM frames the ring buffer holds; must be greater than 0
+     */
+    public RealtimeEncoder(ADPCMEncoderConfig cfg, int capacityBlocks) {
+        if (capacityBlocks < 1) {
+            throw new IllegalArgumentException("unsupported capacity: "+capacityBlocks+"; must be greater than 0");
+        }
+
+        Objects.requireNonNull(cfg);
+
+        encoder     = new ADPCMEncoder(cfg);
+        channels    = cfg.getChannels();
+        blockValues = cfg.getSamplesPerBlock() * channels;
+        blockSize   = cfg.getBlockSize();
+        ring        = new PCMRingBuffer(capacityBlocks * blockValues);
+        block       = new short[blockValues];
+        blockIn     = ShortBuffer.wrap(block);
+    }
+
+    /**
+     * @return this encoder's configuration object
+     */
+    public ADPCMEncoderConfig getConfiguration() {
+        return encoder.getConfiguration();
+    }
+
+    // producer
+    // =================================================================================================================
+    /**
+     * Buffers interleaved PCM frames for encoding. Never blocks. If the buffer has room for fewer frames than given,
+     * the frames that don't fit are dropped, and an overrun is counted. May only be called by the producer thread.
+     * @param src  interleaved 16-bit PCM data
+     * @param off  the index of the first value to buffer
+     * @param len  the number of values to buffer; must be a whole number of frames
+     * @return the number of values buffered
+     */
+    public int write(short[] src, int off, int len) {
+        if (len % channels != 0) {
+            throw new IllegalArgumentException("partial frame: "+len+" values for "+channels+" channels");
+        }
+
+        // only whole frames are stored, so the channels stay in step after an overrun
+        final int room    = ring.remainingCapacity() / channels * channels;
+        final int written = ring.offer(src, off, Math.min(len, room));
+
+        if (written < len) {
+            overruns++;
+            droppedFrames += (len - written) / channels;
+        }
+
+        return written;
+    }
+
+    // consumer
+    // =================================================================================================================
+    /**
+     * Encodes every whole block buffered so far, as long as {@code out} has room for it. Counts an underrun if not
+     * even one block was buffered. May only be called by the consumer thread.
+     * @param out  output buffer for ADPCM data
+     * @return the number of blocks encoded
+     * @throws IOException when an encoding problem occurs
+     */
+    public int encode(ByteBuffer out) throws IOException {
+        int blocks = 0;
+
+        while (ring.size() >= blockValues && out.remaining() >= blockSize) {
+            ring.poll(block, 0, blockValues);
+            encoder.encode(blockIn.clear(), out, false);
+            blocks++;
+        }
+
+        if (blocks == 0 && ring.size() < blockValues) {
+            underruns++;
+        }
+
+        return blocks;
+    }
+
+    /**
+     * Encodes every frame buffered so far, ending the stream with a final, shorter block if needed. The next call to
+     * {@link #encode(ByteBuffer)} starts a new stream. May only be called by the consumer thread.
+     * @param out  output buffer for ADPCM data; must have room for every buffered frame
+     * @return the number of bytes stored in {@code out}
+     * @throws IOException when an encoding problem occurs
+     */
+    public int finish(ByteBuffer out) throws IOException {
+        final int start = out.position();
+
+        while (true) {
+            final int count = ring.poll(block, 0, blockValues);
+            if (count < blockValues) {
+                encoder.encode(blockIn.clear().limit(count), out, true);
+                break;
+            }
+            encoder.encode(blockIn.clear(), out, false);
+        }
+
+        return out.position() - start;
+    }
+
+    // metrics
+    // =================================================================================================================
+    /**
+     * @return the number of writes that could not buffer all of their frames
+     */
+    public long getOverrunCount() {
+        return overruns;
+    }
+
+    /**
+     * @return the total number of frames dropped because the buffer was full
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrames;
+    }
+
+    /**
+     * @return the number of calls to {@link #encode(ByteBuffer)} that found less than a block buffered
+     */
+    public long getUnderrunCount() {
+        return underruns;
+    }
+
+    /**
+     * @return the number of frames currently buffered
+     */
+    public int getBufferedFrames() {
+        return ring.size() / channels;
+    }
+}
@@ -0,0 +1,342 @@
+package com.jiggawatt.jt.tools.adpcm.util;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoderConfig;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Encodes long PCM streams in parallel. The input is split into segments of whole blocks, which are encoded on a
+ * {@link ForkJoinPool}, each straight into its own region of the output; the result is a single, ordinary ADPCM
+ * stream.
+ * <p>
+ * ADPCM blocks can be decoded independently, but the encoder carries its step index and noise shaping state from one
+ * block to the next. An encoder starting in the middle of a stream lacks that state, so its first blocks differ from
+ * those a sequential encode would produce. To make up for this, each segment's encoder first encodes a number of
+ * <em>warm-up</em> blocks preceding the segment, and discards the output. The longer the warm-up, the closer the
+ * output is to a sequential encode; a warm-up covering the whole stream reproduces it exactly, at the cost of any
+ * speedup. Use {@link #measureDivergence(ShortBuffer, int)} to choose a warm-up length for a given kind of input.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class SegmentedEncoder {
+
+    private final ADPCMEncoderConfig config;
+    private final int                warmUpBlocks;
+    private final ForkJoinPool       pool;
+
+    /**
+     * Creates a segmented encoder that runs on the common {@link ForkJoinPool}.
+     * @param cfg           encoder configuration
+     * @param warmUpBlocks  the number of blocks each segment's encoder encodes before the start of its segment
+     */
+    public SegmentedEncoder(ADPCMEncoderConfig cfg, int warmUpBlocks) {
+        this(cfg, warmUpBlocks, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a segmented encoder that runs on the given pool.
+     * @param cfg           encoder configuration
+     * @param warmUpBlocks  the number of blocks each segment's encoder encodes before the start of its segment
+     * @param pool          the pool on which to encode
+     */
+    public SegmentedEncoder(ADPCMEncoderConfig cfg, int warmUpBlocks, ForkJoinPool pool) {
+        if (warmUpBlocks < 0) {
+            throw new IllegalArgumentException("unsupported warm-up length: "+warmUpBlocks+"; must not be negative");
+        }
+
+        this.config       = Objects.requireNonNull(cfg);
+        this.warmUpBlocks = warmUpBlocks;
+        this.pool         = Objects.requireNonNull(pool);
+    }
+
+    /**
+     * @return this encoder's configuration object
+     */
+    public ADPCMEncoderConfig getConfiguration() {
+        return config;
+    }
+
+    /**
+     * @return the number of blocks each segment's encoder encodes before the start of its segment
+     */
+    public int getWarmUpBlocks() {
+        return warmUpBlocks;
+    }
+
+    /**
+     * Encodes the PCM audio data stored in buffer {@code in}, with one segment per worker thread of this encoder's
+     * pool, and stores the resulting ADPCM data in buffer {@code out}.
+     * @param in   input buffer; contains 16-bit PCM data
+     * @param out  output buffer for ADPCM data; must have at least
+     *             {@link ADPCMEncoderConfig#computeOutputSize(int)} bytes remaining
+     * @return {@code out}
+     * @throws IOException when an encoding problem occurs
+     */
+    public ByteBuffer encode(ShortBuffer in, ByteBuffer out) throws IOException {
+        return encode(in, out, pool.getParallelism());
+    }
+
+    /**
+     * Encodes the PCM audio data stored in buffer {@code in} in the given number of segments, and stores the resulting
+     * ADPCM data in buffer {@code out}. If the input has fewer blocks than {@code segments}, each block is a segment.
+     * @param in        input buffer; contains 16-bit PCM data
+     * @param out       output buffer for ADPCM data; must have at least
+     *                  {@link ADPCMEncoderConfig#computeOutputSize(int)} bytes remaining
+     * @param segments  the number of segments; must be greater than 0
+     * @return {@code out}
+     * @throws IOException when an encoding problem occurs
+     */
+    public ByteBuffer encode(ShortBuffer in, ByteBuffer out, int segments) throws IOException {
+        if (segments < 1) {
+            throw new IllegalArgumentException("unsupported segment count: "+segments+"; must be greater than 0");
+        }
+
+        final int numSamples = in.remaining() / config.getChannels();
+        final int outSize    = config.computeOutputSize(numSamples);
+
+        if (out.remaining() < outSize) {
+            throw new IllegalArgumentException(
+                "output buffer too small: "+outSize+" bytes required, "+out.remaining()+" remaining"
+            );
+        }
+
+        final int spb       = config.getSamplesPerBlock();
+        final int numBlocks = (numSamples + spb - 1) / spb;
+        final int count     = Math.min(segments, numBlocks);
+
+        if (count > 0) {
+            try {
+                pool.invoke(new Encode(in.duplicate(), out.duplicate(), numBlocks, count, 0, count));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        in.position(in.position() + numSamples * config.getChannels());
+        out.position(out.position() + outSize);
+
+        return out;
+    }
+
+    // divergence
+    // =================================================================================================================
+    /**
+     * Encodes the given input both sequentially and in segments, and compares the results.
+     * @param in        input buffer; contains 16-bit PCM data; its position is not changed
+     * @param segments  the number of segments; must be greater than 0
+     * @return a comparison of the two encodes
+     * @throws IOException when an encoding problem occurs
+     */
+    public Divergence measureDivergence(ShortBuffer in, int segments) throws IOException {
+        final int channels   = config.getChannels();
+        final int numSamples = in.remaining() / channels;
+        final int outSize    = config.computeOutputSize(numSamples);
+        final int blockSize  = config.getBlockSize();
+        final int numBlocks  = (outSize + blockSize - 1) / blockSize;
+
+        final ByteBuffer sequential = ByteBuffer.allocate(outSize);
+        final ByteBuffer segmented  = ByteBuffer.allocate(outSize);
+
+        new ADPCMEncoder(config).encode(in.duplicate(), sequential);
+        encode(in.duplicate(), segmented, segments);
+
+        int differingBlocks = 0;
+        int differingBytes  = 0;
+
+        for (int block=0; block<outSize; block+=blockSize) {
+            final int end  = Math.min(outSize, block + blockSize);
+            boolean   same = true;
+
+            for (int i=block; i<end; i++) {
+                if (sequential.get(i) != segmented.get(i)) {
+                    differingBytes++;
+                    same = false;
+                }
+            }
+
+            if (!same) {
+                differingBlocks++;
+            }
+        }
+
+        // compare the decoded audio
+        // -------------------------------------------------------------------------------------------------------------
+        final ADPCMDecoderConfig dcfg =
+            ADPCMDecoder.configure()
+            .setChannels     (channels)
+            .setSampleRate   (config.getSampleRate())
+            .setBlockSize    (blockSize)
+            .setBitsPerSample(config.getBitsPerSample())
+            .end();
+
+        // the decoder infers the size of the final block from the room left in the output
+        final int         count  = numSamples * channels;
+        final ShortBuffer seqPcm = new ADPCMDecoder(dcfg).decode(sequential.flip(), ShortBuffer.allocate(count));
+        final ShortBuffer segPcm = new ADPCMDecoder(dcfg).decode(segmented.flip(),  ShortBuffer.allocate(count));
+
+        int    maxError = 0;
+        double sumSq    = 0;
+
+        for (int i=0; i<count; i++) {
+            final int diff = Math.abs(seqPcm.get(i) - segPcm.get(i));
+            maxError = Math.max(maxError, diff);
+            sumSq   += (double) diff * diff;
+        }
+
+        final double rmsError = count==0 ? 0 : Math.sqrt(sumSq / count);
+
+        return new Divergence(numBlocks, differingBlocks, differingBytes, maxError, rmsError);
+    }
+
+    /**
+     * Describes how far the output of a segmented encode is from a sequential encode of the same input.
+     *
+     * @see #measureDivergence(ShortBuffer, int)
+     */
+    public static final class Divergence {
+        private final int    numBlocks;
+        private final int    differingBlocks;
+        private final int    differingBytes;
+        private final int    maxSampleError;
+        private final double rmsSampleError;
+
+        private Divergence(int numBlocks, int differingBlocks, int differingBytes, int maxSampleError, double rms) {
+            this.numBlocks       = numBlocks;
+            this.differingBlocks = differingBlocks;
+            this.differingBytes  = differingBytes;
+            this.maxSampleError  = maxSampleError;
+            this.rmsSampleError  = rms;
+        }
+
+        /**
+         * @return the number of blocks in the output
+         */
+        public int getNumBlocks() {
+            return numBlocks;
+        }
+
+        /**
+         * @return the number of blocks that differ from the sequential encode
+         */
+        public int getDifferingBlocks() {
+            return differingBlocks;
+        }
+
+        /**
+         * @return the number of bytes that differ from the sequential encode
+         */
+        public int getDifferingBytes() {
+            return differingBytes;
+        }
+
+        /**
+         * @return the largest absolute difference between a decoded sample of the segmented encode and the same sample
+         *         of the sequential encode
+         */
+        public int getMaxSampleError() {
+            return maxSampleError;
+        }
+
+        /**
+         * @return the root mean square of the differences between the decoded samples of the two encodes
+         */
+        public double getRmsSampleError() {
+            return rmsSampleError;
+        }
+
+        /**
+         * @return {@code true} if the two encodes are identical
+         */
+        public boolean isIdentical() {
+            return differingBytes == 0;
+        }
+
+        @Override
+        public String toString() {
+            return
+                "Divergence{" +
+                "blocks="           + differingBlocks + "/" + numBlocks +
+                ", bytes="          + differingBytes +
+                ", maxSampleError=" + maxSampleError +
+                ", rmsSampleError=" + rmsSampleError +
+                '}';
+        }
+    }
+
+    // implementation
+    // =================================================================================================================
+    @SuppressWarnings("serial") // never serialized
+    private final class Encode extends RecursiveAction {
+        private final ShortBuffer in;
+        private final ByteBuffer  out;
+        private final int         numBlocks;
+        private final int         numSegments;
+        private final int         from;
+        private final int         to;
+
+        Encode(ShortBuffer in, ByteBuffer out, int numBlocks, int numSegments, int from, int to) {
+            this.in          = in;
+            this.out         = out;
+            this.numBlocks   = numBlocks;
+            this.numSegments = numSegments;
+            this.from        = from;
+            this.to          = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                try {
+                    encodeSegment(from);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else if (to - from > 1) {
+                final int mid = (from + to) >>> 1;
+                invokeAll(
+                    new Encode(in, out, numBlocks, numSegments, from, mid),
+                    new Encode(in, out, numBlocks, numSegments, mid, to)
+                );
+            }
+        }
+
+        private void encodeSegment(int segment) throws IOException {
+            final int channels   = config.getChannels();
+            final int blockSize  = config.getBlockSize();
+            final int blockPcm   = config.getSamplesPerBlock() * channels;
+            final int firstBlock = (int) ((long) numBlocks * segment / numSegments);
+            final int endBlock   = (int) ((long) numBlocks * (segment + 1) / numSegments);
+            final int warmUp     = Math.min(warmUpBlocks, firstBlock);
+
+            final ADPCMEncoder encoder = new ADPCMEncoder(config);
+
+            // every block before the last is full, so the warm-up blocks are too
+            if (warmUp > 0) {
+                final ShortBuffer warmUpIn = in.duplicate();
+                warmUpIn.position(in.position() + (firstBlock - warmUp) * blockPcm);
+                warmUpIn.limit   (in.position() + firstBlock * blockPcm);
+
+                encoder.encode(warmUpIn, ByteBuffer.allocate(warmUp * blockSize), false);
+            }
+
+            final ShortBuffer segIn = in.duplicate();
+            segIn.position(in.position() + firstBlock * blockPcm);
+            segIn.limit   ((int) Math.min(in.limit(), in.position() + (long) endBlock * blockPcm));
+
+            final ByteBuffer segOut = out.duplicate();
+            segOut.position(out.position() + firstBlock * blockSize);
+
+            encoder.encode(segIn, segOut, true);
+        }
+    }
+}
@@ -0,0 +1,502 @@
+package com.jiggawatt.jt.tools.adpcm.util;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoderConfig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A read-only archive of many ADPCM clips in a single file. The file is memory-mapped when it is opened; clips are
+ * found by name with a binary search of the archive's index, and their audio data is read straight from the mapping,
+ * without copying it to the heap.
+ * <p>
+ * Use {@link #builder()} to pack {@link WAVFile}s into an archive. The file layout, in little-endian byte order, is:
+ * <pre>
+ * header   magic "JTSB", format version, clip count, reserved       16 bytes
+ * index    one entry per clip, sorted by name hash                  48 bytes per clip
+ * names    the UTF-8 encoded clip names
+ * data     the ADPCM data of each clip, aligned to 4096 bytes
+ * </pre>
+ * Because the whole file is mapped into a single buffer, archives are limited to 2 GB.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class SoundBank {
+
+    private static final int MAGIC      = 0x4253544a;  // "JTSB"
+    private static final int VERSION    = 1;
+    private static final int HEADER     = 16;
+    private static final int ENTRY      = 48;
+    private static final int ALIGNMENT  = 4096;
+
+    // index entry fields
+    // =================================================================================================================
+    private static final int NAME_HASH    = 0;   // long
+    private static final int NAME_OFFSET  = 8;   // int
+    private static final int NAME_LENGTH  = 12;  // int
+    private static final int DATA_OFFSET  = 16;  // long
+    private static final int DATA_SIZE    = 24;  // int
+    private static final int NUM_SAMPLES  = 28;  // int
+    private static final int SAMPLE_RATE  = 32;  // int
+    private static final int BLOCK_SIZE   = 36;  // int
+    private static final int CHANNELS     = 40;  // short
+    private static final int BITS         = 42;  // short
+
+    private final ByteBuffer map;
+    private final int        numClips;
+
+    private SoundBank(ByteBuffer map, int numClips) {
+        this.map      = map;
+        this.numClips = numClips;
+    }
+
+    /**
+     * Creates a builder for a new archive.
+     * @return an empty builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Maps the archive at the given path into memory.
+     * @param file  path to the archive
+     * @return the archive
+     * @throws IOException if the file cannot be read, or is not a valid archive
+     */
+    public static SoundBank open(Path file) throws IOException {
+        final MappedByteBuffer map;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("file too large: "+file+" ("+size+" bytes)");
+            }
+
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        map.order(ByteOrder.LITTLE_ENDIAN);
+
+        return fromBuffer(map);
+    }
+
+    /**
+     * Reads an archive from the given buffer. The buffer is not copied; it must not be modified while the archive is
+     * in use.
+     * @param in  the contents of an archive, from its position to its limit
+     * @return the archive
+     * @throws IOException if the buffer does not contain a valid archive
+     */
+    public static SoundBank fromBuffer(ByteBuffer in) throws IOException {
+        final ByteBuffer map = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+        if (map.capacity() < HEADER || map.getInt(0) != MAGIC) {
+            throw new IOException("not a sound bank");
+        }
+
+        if (map.getInt(4) != VERSION) {
+            throw new IOException("unsupported sound bank version: "+map.getInt(4));
+        }
+
+        final int numClips = map.getInt(8);
+        if (numClips < 0 || HEADER + (long) numClips * ENTRY > map.capacity()) {
+            throw new IOException("malformed sound bank: bad clip count");
+        }
+
+        SoundBank bank = new SoundBank(map, numClips);
+
+        for (int i=0; i<numClips; i++) {
+            bank.validate(i);
+        }
+
+        return bank;
+    }
+
+    /**
+     * @return the number of clips in this archive
+     */
+    public int size() {
+        return numClips;
+    }
+
+    /**
+     * @return the names of the clips in this archive, in index order
+     */
+    public List<String> getNames() {
+        List<String> names = new ArrayList<>(numClips);
+        for (int i=0; i<numClips; i++) {
+            names.add(name(entry(i)));
+        }
+        return names;
+    }
+
+    /**
+     * @param index  the index of a clip, between 0 inclusive and {@link #size()} exclusive
+     * @return the clip at the given position in the index
+     */
+    public Clip getClip(int index) {
+        Objects.checkIndex(index, numClips);
+        return new Clip(entry(index));
+    }
+
+    /**
+     * Finds a clip by name.
+     * @param name  the name of the clip
+     * @return the clip, or {@code null} if this archive does not contain a clip with the given name
+     */
+    public Clip getClip(String name) {
+        final byte[] key  = name.getBytes(StandardCharsets.UTF_8);
+        final long   hash = hash(key);
+
+        int lo = 0;
+        int hi = numClips - 1;
+
+        while (lo <= hi) {
+            final int  mid = (lo + hi) >>> 1;
+            final long h   = map.getLong(entry(mid) + NAME_HASH);
+
+            if (h < hash) {
+                lo = mid + 1;
+            } else if (h > hash) {
+                hi = mid - 1;
+            } else {
+                // names with the same hash are next to each other
+                int first = mid;
+                while (first > 0 && map.getLong(entry(first - 1) + NAME_HASH) == hash) {
+                    first--;
+                }
+
+                for (int i=first; i<numClips && map.getLong(entry(i) + NAME_HASH) == hash; i++) {
+                    if (nameEquals(entry(i), key)) {
+                        return new Clip(entry(i));
+                    }
+                }
+
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    // implementation
+    // =================================================================================================================
+    private int entry(int index) {
+        return HEADER + index * ENTRY;
+    }
+
+    private String name(int entry) {
+        final byte[] b = new byte[map.getInt(entry + NAME_LENGTH)];
+        map.duplicate().position(map.getInt(entry + NAME_OFFSET)).get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private boolean nameEquals(int entry, byte[] name) {
+        final int offset = map.getInt(entry + NAME_OFFSET);
+
+        if (map.getInt(entry + NAME_LENGTH) != name.length) {
+            return false;
+        }
+
+        for (int i=0; i<name.length; i++) {
+            if (map.get(offset + i) != name[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void validate(int index) throws IOException {
+        final int  entry      = entry(index);
+        final int  nameOffset = map.getInt (entry + NAME_OFFSET);
+        final int  nameLength = map.getInt (entry + NAME_LENGTH);
+        final long dataOffset = map.getLong(entry + DATA_OFFSET);
+        final int  dataSize   = map.getInt (entry + DATA_SIZE);
+
+        if (
+            nameOffset < 0 || nameLength < 0 || (long) nameOffset + nameLength > map.capacity()
+            || dataOffset < 0 || dataSize < 0 || dataOffset + dataSize > map.capacity()
+        ) {
+            throw new IOException("malformed sound bank: clip "+index+" out of bounds");
+        }
+
+        if (index > 0 && map.getLong(entry(index - 1) + NAME_HASH) > map.getLong(entry + NAME_HASH)) {
+            throw new IOException("malformed sound bank: index is not sorted");
+        }
+
+        try {
+            new Clip(entry).createDecoderConfig();
+        } catch (IllegalArgumentException e) {
+            throw new IOException("malformed sound bank: clip "+index+" has an unsupported format", e);
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a.
+     */
+    private static long hash(byte[] b) {
+        long h = 0xcbf29ce484222325L;
+        for (byte x : b) {
+            h ^= x & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * A clip stored in a {@link SoundBank}.
+     * @author Nikita Leonidov
+     * @since  1.2.0
+     */
+    public final class Clip {
+
+        private final int entry;
+
+        private Clip(int entry) {
+            this.entry = entry;
+        }
+
+        public String getName() {
+            return name(entry);
+        }
+
+        public int getChannels() {
+            return map.getShort(entry + CHANNELS);
+        }
+
+        /**
+         * @return this clip's sample rate in Hz
+         */
+        public int getSampleRate() {
+            return map.getInt(entry + SAMPLE_RATE);
+        }
+
+        public int getBitsPerSample() {
+            return map.getShort(entry + BITS);
+        }
+
+        /**
+         * @return the number of samples per channel
+         */
+        public int getNumSamples() {
+            return map.getInt(entry + NUM_SAMPLES);
+        }
+
+        /**
+         * @return the ADPCM block size in bytes
+         */
+        public int getBlockSize() {
+            return map.getInt(entry + BLOCK_SIZE);
+        }
+
+        /**
+         * Produces a read-only view of this clip's ADPCM data. The view shares memory with the archive's mapping.
+         * @return a read-only view of this clip's ADPCM data
+         */
+        public ByteBuffer getReadOnlyData() {
+            final int offset = (int) map.getLong(entry + DATA_OFFSET);
+            final int size   = map.getInt(entry + DATA_SIZE);
+
+            return
+                map.asReadOnlyBuffer()
+                .position(offset)
+                .limit(offset + size)
+                .slice()
+                .order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * Creates a decoder configuration matching the format of this clip.
+         * @return a configuration for decoding this clip's audio data
+         */
+        public ADPCMDecoderConfig createDecoderConfig() {
+            return
+                ADPCMDecoder.configure()
+                .setChannels     (getChannels())
+                .setSampleRate   (getSampleRate())
+                .setBlockSize    (getBlockSize())
+                .setBitsPerSample(getBitsPerSample())
+                .end();
+        }
+
+        /**
+         * Decodes this clip.
+         * @param out  output buffer; must have room for {@link #getNumSamples()} samples per channel
+         * @return {@code out}
+         * @throws IOException if the clip's data is malformed
+         */
+        public ShortBuffer decode(ShortBuffer out) throws IOException {
+            final ShortBuffer dst = out.duplicate();
+            dst.limit(dst.position() + getNumSamples() * getChannels());
+
+            new ADPCMDecoder(createDecoderConfig()).decode(getReadOnlyData(), dst);
+            out.position(dst.position());
+
+            return out;
+        }
+
+        /**
+         * Copies this clip into a new {@link WAVFile}.
+         * @return an ADPCM-encoded file with this clip's contents
+         */
+        public WAVFile toWAVFile() {
+            return WAVFile.fromADPCMBuffer(
+                getReadOnlyData(),
+                getNumSamples(),
+                getChannels(),
+                getSampleRate(),
+                getBlockSize(),
+                getBitsPerSample()
+            );
+        }
+    }
+
+    /**
+     * Packs ADPCM-encoded {@link WAVFile}s into a {@link SoundBank} archive. Use {@link SoundBank#builder()} to obtain
+     * an instance of this class.
+     * @author Nikita Leonidov
+     * @since  1.2.0
+     */
+    public static final class Builder {
+
+        private final Map<String, WAVFile> clips = new LinkedHashMap<>();
+
+        Builder() {
+        }
+
+        /**
+         * Adds a clip to the archive.
+         * @param name   the name of the clip; must be unique within the archive
+         * @param adpcm  an ADPCM-encoded file
+         * @return this builder
+         */
+        public Builder add(String name, WAVFile adpcm) {
+            Objects.requireNonNull(name);
+
+            if (adpcm.getFormat() != WAVFile.Format.IMA_ADPCM) {
+                throw new IllegalArgumentException("unsupported format for clip "+name+"; IMA ADPCM expected");
+            }
+
+            if (clips.putIfAbsent(name, adpcm) != null) {
+                throw new IllegalArgumentException("duplicate clip name: "+name);
+            }
+
+            return this;
+        }
+
+        /**
+         * Writes the archive to the given path, replacing any existing file.
+         * @param file  path to the output file
+         * @throws IOException if an I/O problem occurs
+         */
+        public void write(Path file) throws IOException {
+            try (FileChannel out = FileChannel.open(
+                file,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING
+            )) {
+                final List<Map.Entry<String, byte[]>> names  = sortedNames();
+                final ByteBuffer                      header = layout(names);
+
+                writeFully(out, header, 0);
+
+                for (int i=0; i<names.size(); i++) {
+                    final long offset = header.getLong(HEADER + i * ENTRY + DATA_OFFSET);
+                    writeFully(out, clips.get(names.get(i).getKey()).getReadOnlyData(), offset);
+                }
+            }
+        }
+
+        /**
+         * @return the clip names and their UTF-8 encodings, in index order
+         */
+        private List<Map.Entry<String, byte[]>> sortedNames() {
+            final List<Map.Entry<String, byte[]>> names = new ArrayList<>();
+            for (String name : clips.keySet()) {
+                names.add(Map.entry(name, name.getBytes(StandardCharsets.UTF_8)));
+            }
+
+            names.sort(Comparator.comparingLong(e -> hash(e.getValue())));
+
+            return names;
+        }
+
+        /**
+         * Builds everything up to the first clip's data.
+         */
+        private ByteBuffer layout(List<Map.Entry<String, byte[]>> names) {
+            int namesSize = 0;
+            for (Map.Entry<String, byte[]> e : names) {
+                namesSize += e.getValue().length;
+            }
+
+            final int namesOffset = HEADER + names.size() * ENTRY;
+            final int headerSize  = namesOffset + namesSize;
+            long      dataOffset  = align(headerSize);
+
+            final ByteBuffer dst = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+            dst.putInt(MAGIC);
+            dst.putInt(VERSION);
+            dst.putInt(names.size());
+            dst.putInt(0);
+
+            int nameOffset = namesOffset;
+
+            for (Map.Entry<String, byte[]> e : names) {
+                final WAVFile clip = clips.get(e.getKey());
+                final int     size = clip.getReadOnlyData().remaining();
+
+                if (dataOffset + size > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("sound bank too large; the limit is 2 GB");
+                }
+
+                dst.putLong (hash(e.getValue()));
+                dst.putInt  (nameOffset);
+                dst.putInt  (e.getValue().length);
+                dst.putLong (dataOffset);
+                dst.putInt  (size);
+                dst.putInt  (clip.getNumSamples());
+                dst.putInt  (clip.getSampleRate());
+                dst.putInt  (clip.getBlockSize());
+                dst.putShort((short) clip.getChannels());
+                dst.putShort((short) clip.getBitsPerSample());
+                dst.putInt  (0);
+
+                nameOffset += e.getValue().length;
+                dataOffset  = align(dataOffset + size);
+            }
+
+            for (Map.Entry<String, byte[]> e : names) {
+                dst.put(e.getValue());
+            }
+
+            return dst.flip();
+        }
+
+        private static long align(long offset) {
+            return (offset + ALIGNMENT - 1) & -ALIGNMENT;
+        }
+
+        private static void writeFully(FileChannel out, ByteBuffer src, long position) throws IOException {
+            while (src.hasRemaining()) {
+                position += out.write(src, position);
+            }
+        }
+    }
+}
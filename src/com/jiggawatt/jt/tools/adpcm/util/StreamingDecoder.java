@@ -0,0 +1,320 @@
+package com.jiggawatt.jt.tools.adpcm.util;
+
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMDecoderConfig;
+import com.jiggawatt.jt.tools.adpcm.impl.ADPCMUtil;
+import com.jiggawatt.jt.tools.adpcm.impl.IOExecutors;
+import com.jiggawatt.jt.tools.adpcm.impl.WAVHeader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.jiggawatt.jt.tools.adpcm.impl.WAVHeader.WAVE_FORMAT_PCM;
+
+/**
+ * Decodes an ADPCM stream for playback. A background task reads blocks from a {@link ReadableByteChannel} and decodes
+ * them into a {@link PCMRingBuffer}, staying a configurable number of blocks ahead of the consumer. The consumer
+ * {@linkplain #read(short[], int, int) reads} decoded samples without ever blocking on I/O; if the background task has
+ * fallen behind, it gets whatever has been decoded so far, and an underrun is counted.
+ * <p>
+ * Exactly one thread may read from a streaming decoder.
+ *
+ * @author Nikita Leonidov
+ * @since  1.2.0
+ */
+public final class StreamingDecoder implements Closeable {
+
+    private static final class DefaultHolder {
+        static final Executor EXECUTOR = IOExecutors.newExecutor();
+    }
+
+    private final ReadableByteChannel channel;
+    private final ADPCMDecoderConfig  config;
+    private final ADPCMDecoder        decoder;
+    private final PCMRingBuffer       ring;
+    private final long                numSamples;
+
+    private volatile Thread    reader;
+    private volatile boolean   done;
+    private volatile boolean   closed;
+    private volatile Throwable failure;
+    private volatile long      underruns;
+
+    /**
+     * Creates a streaming decoder for raw ADPCM data, and starts reading ahead on a shared pool of daemon threads.
+     * @param in           the ADPCM data
+     * @param cfg          decoder configuration matching the data
+     * @param numSamples   the number of samples per channel in the stream, used to drop the padding at the end of the
+     *                     final block; -1 to decode every sample up to the end of the channel
+     * @param aheadBlocks  the number of blocks to keep decoded ahead of the consumer; must be greater than 0
+     */
+    public StreamingDecoder(ReadableByteChannel in, ADPCMDecoderConfig cfg, long numSamples, int aheadBlocks) {
+        this(in, cfg, numSamples, aheadBlocks, DefaultHolder.EXECUTOR);
+    }
+
+    /**
+     * Creates a streaming decoder for raw ADPCM data, and starts reading ahead on the given executor.
+     * @param in           the ADPCM data
+     * @param cfg          decoder configuration matching the data
+     * @param numSamples   the number of samples per channel in the stream, used to drop the padding at the end of the
+     *                     final block; -1 to decode every sample up to the end of the channel
+     * @param aheadBlocks  the number of blocks to keep decoded ahead of the consumer; must be greater than 0
+     * @param executor     the executor on which to read ahead; the task occupies a thread until the stream ends
+     */
+    public StreamingDecoder(
+        ReadableByteChannel in,
+        ADPCMDecoderConfig  cfg,
+        long                numSamples,
+        int                 aheadBlocks,
+        Executor            executor
+    ) {
+        if (aheadBlocks < 1) {
+            throw new IllegalArgumentException("unsupported read-ahead: "+aheadBlocks+"; must be greater than 0");
+        }
+
+        this.channel    = Objects.requireNonNull(in);
+        this.config     = Objects.requireNonNull(cfg);
+        this.decoder    = new ADPCMDecoder(cfg);
+        this.ring       = new PCMRingBuffer(aheadBlocks * cfg.getSamplesPerBlock() * cfg.getChannels());
+        this.numSamples = numSamples;
+
+        executor.execute(this::readAhead);
+    }
+
+    /**
+     * Reads the header of an IMA ADPCM WAV file from the given channel, and creates a streaming decoder for the rest
+     * of the file. The header is read on the calling thread.
+     * @param wav          a channel positioned at the start of a WAV file
+     * @param aheadBlocks  the number of blocks to keep decoded ahead of the consumer; must be greater than 0
+     * @return a streaming decoder for the file's audio data
+     * @throws IOException if an I/O problem occurs, or if the file is malformed or not ADPCM-encoded
+     */
+    public static StreamingDecoder open(ReadableByteChannel wav, int aheadBlocks) throws IOException {
+        // the stream isn't buffered, so the channel is left at the start of the audio data
+        final WAVHeader header = WAVHeader.read(Channels.newInputStream(wav));
+
+        if (header.getFormat() == WAVE_FORMAT_PCM) {
+            throw new IOException("expected an IMA ADPCM file; found PCM");
+        }
+
+        final ADPCMDecoderConfig cfg =
+            ADPCMDecoder.configure()
+            .setChannels     (header.getChannels())
+            .setSampleRate   (header.getSampleRate())
+            .setBlockSize    (header.getBlockAlign())
+            .setBitsPerSample(header.getBitsPerSample())
+            .end();
+
+        final ReadableByteChannel data = new BoundedChannel(wav, header.getDataSize());
+
+        return new StreamingDecoder(data, cfg, header.getNumSamples(), aheadBlocks);
+    }
+
+    /**
+     * @return this decoder's configuration object
+     */
+    public ADPCMDecoderConfig getConfiguration() {
+        return config;
+    }
+
+    // consumer
+    // =================================================================================================================
+    /**
+     * Reads decoded samples without blocking. If fewer than {@code len} values have been decoded, and the stream has
+     * not ended, returns those that have, and counts an underrun.
+     * @param dst  the array in which to store interleaved 16-bit PCM data
+     * @param off  the index at which to store the first value
+     * @param len  the maximum number of values to read
+     * @return the number of values read, possibly 0; or -1 if the stream has ended and every value has been read
+     * @throws IOException if reading or decoding the stream failed, once every value decoded before the failure has
+     *                     been read
+     */
+    public int read(short[] dst, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, dst.length);
+
+        int count = ring.poll(dst, off, len);
+
+        if (count < len) {
+            if (done) {
+                // pick up any values decoded between the poll and the end of the stream
+                count += ring.poll(dst, off + count, len - count);
+
+                if (count == 0 && len > 0) {
+                    final Throwable t = failure;
+                    if (t != null) {
+                        throw new IOException("failed to read ADPCM stream", t);
+                    }
+                    return -1;
+                }
+            } else {
+                underruns++;
+            }
+        }
+
+        if (count > 0) {
+            final Thread t = reader;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the number of values that can be read without an underrun
+     */
+    public int available() {
+        return ring.size();
+    }
+
+    /**
+     * @return {@code true} if the stream has ended and every value has been read
+     */
+    public boolean isEndOfStream() {
+        return done && ring.size() == 0;
+    }
+
+    /**
+     * @return the number of reads that found fewer values decoded than they asked for, before the end of the stream
+     */
+    public long getUnderrunCount() {
+        return underruns;
+    }
+
+    /**
+     * Stops reading ahead, and closes the channel.
+     * @throws IOException if the channel could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+
+        final Thread t = reader;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+
+        channel.close();
+    }
+
+    // read-ahead
+    // =================================================================================================================
+    private void readAhead() {
+        reader = Thread.currentThread();
+
+        final int        channels    = config.getChannels();
+        final int        blockSize   = config.getBlockSize();
+        final int        bits        = config.getBitsPerSample();
+        final byte[]     adpcm       = new byte[blockSize];
+        final short[]    pcm         = new short[config.getSamplesPerBlock() * channels];
+        final ByteBuffer adpcmBuffer = ByteBuffer.wrap(adpcm);
+
+        long remaining = numSamples < 0 ? Long.MAX_VALUE : numSamples;
+
+        try {
+            while (!closed && remaining > 0) {
+                // read a block
+                // -----------------------------------------------------------------------------------------------------
+                adpcmBuffer.clear();
+                while (adpcmBuffer.hasRemaining() && channel.read(adpcmBuffer) >= 0) {
+                    // keep reading
+                }
+
+                final int size = adpcmBuffer.position();
+                if (size == 0) {
+                    break;
+                }
+
+                final int blockSamples;
+                if (size == blockSize) {
+                    blockSamples = config.getSamplesPerBlock();
+                } else if (ADPCMUtil.isValidPartialBlockSize(channels, size, bits)) {
+                    blockSamples = ADPCMUtil.computeSamplesPerBlock(channels, size, bits);
+                } else {
+                    throw new IOException("malformed block: unexpected size "+size);
+                }
+
+                // decode it
+                // -----------------------------------------------------------------------------------------------------
+                decoder.decode(adpcm, 0, pcm, 0, blockSamples * channels);
+
+                final int count = (int) Math.min(blockSamples, remaining) * channels;
+                remaining -= count / channels;
+
+                int written = 0;
+                while (!closed && written < count) {
+                    written += ring.offer(pcm, written, count - written);
+                    if (written < count) {
+                        LockSupport.park(this);
+                    }
+                }
+
+                if (size < blockSize) {
+                    break;
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // closed by close(); nothing left to report
+        } catch (Throwable t) {
+            failure = t;
+        } finally {
+            done   = true;
+            reader = null;
+        }
+    }
+
+    /**
+     * Limits reads from a channel to a number of bytes, so the chunks that follow the audio data in a WAV file are
+     * not mistaken for blocks.
+     */
+    private static final class BoundedChannel implements ReadableByteChannel {
+        private final ReadableByteChannel channel;
+
+        private long remaining;
+
+        BoundedChannel(ReadableByteChannel channel, long size) {
+            this.channel   = channel;
+            this.remaining = size;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            final int limit = dst.limit();
+            if (dst.remaining() > remaining) {
+                dst.limit(dst.position() + (int) remaining);
+            }
+
+            try {
+                final int count = channel.read(dst);
+                if (count > 0) {
+                    remaining -= count;
+                }
+                return count;
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
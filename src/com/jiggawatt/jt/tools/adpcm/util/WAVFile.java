@@ -5,6 +5,10 @@ import com.jiggawatt.jt.tools.adpcm.ADPCMDecoderConfig;
 import com.jiggawatt.jt.tools.adpcm.ADPCMEncoder;
 import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
 import com.jiggawatt.jt.tools.adpcm.impl.ADPCMUtil;
+import com.jiggawatt.jt.tools.adpcm.impl.CodecEvents;
+import com.jiggawatt.jt.tools.adpcm.impl.DS64Chunk;
+import com.jiggawatt.jt.tools.adpcm.impl.MetricsRecorder;
+import com.jiggawatt.jt.tools.adpcm.impl.WAVHeader;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -13,35 +17,31 @@ import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 
 import static com.jiggawatt.jt.tools.adpcm.impl.RIFFUtil.*;
+import static com.jiggawatt.jt.tools.adpcm.impl.WAVHeader.*;
 
 /**
  * This class provides WAV file input and output functionality for use with the ADPCM codec. Use the
  * {@link #fromADPCMBuffer(ByteBuffer, int, ADPCMEncoderConfig)} family of methods to create an instance from encoder
  * output, or the {@link #fromFile(Path)} method to obtain codec input from disk.
  * To write the file to a stream, use {@link #dump(OutputStream)}.
+ * <p>
+ * RIFF, RF64 and BW64 files can be read. A {@code WAVFile} holds its audio data in a heap buffer, so it is limited to
+ * files of less than 2 GB; use {@link StreamingDecoder} or the command-line tool for larger files.
  *
  * @author Nikita Leonidov
  * @since  1.1.0
  */
 public final class WAVFile {
 
-    private static final int RIFF_ID = chunkId("RIFF");
-    private static final int WAVE_ID = chunkId("WAVE");
-    private static final int FMT_ID  = chunkId("fmt ");
-    private static final int FACT_ID = chunkId("fact");
-    private static final int DATA_ID = chunkId("data");
-
-    private static final int WAVE_FORMAT_PCM        = 0x1;
-    private static final int WAVE_FORMAT_IMA_ADPCM  = 0x11;
-    private static final int WAVE_FORMAT_EXTENSIBLE = 0xfffe;
-
     /**
      * Supported audio coding formats.
      */
@@ -52,25 +52,10 @@ public final class WAVFile {
         IMA_ADPCM
     }
 
-    private int factSamples;
-    private int format;
-    private int numSamples;
-    private int realBitsPerSample;
-
-    // raw header
-    // =================================================================================================================
-    private int formatTag;
-    private int numChannels;
-    private int sampleRate;
-    private int bytesPerSecond;
-    private int blockAlign;
-    private int rawBitsPerSample;
-    private int cbSize;
-    private int union;
-    private int channelMask;
-    private int subFormat;   // this is actually the first 2 bytes of the GUID
-    private String GUID;     // this is the remainder of the GUID
+    /** The size of the largest file that can be read into a heap buffer. */
+    private static final long MAX_FILE_SIZE = Integer.MAX_VALUE - 8;
 
+    private WAVHeader  header;
     private ByteBuffer data;
 
     /**
@@ -81,7 +66,14 @@ public final class WAVFile {
      * @return a {@code WAVFile} with the given contents
      */
     public static WAVFile fromADPCMBuffer(ByteBuffer encodedData, int numSamples, ADPCMEncoderConfig cfg) {
-        return fromADPCMBuffer(encodedData, numSamples, cfg.getChannels(), cfg.getSampleRate(), cfg.getBlockSize());
+        return fromADPCMBuffer(
+            encodedData,
+            numSamples,
+            cfg.getChannels(),
+            cfg.getSampleRate(),
+            cfg.getBlockSize(),
+            cfg.getBitsPerSample()
+        );
     }
 
     /**
@@ -100,28 +92,39 @@ public final class WAVFile {
             int sampleRate,
             int blockSize
     ) {
-        final int samplesPerBlock = ADPCMUtil.computeSamplesPerBlock(channels, blockSize);
+        return fromADPCMBuffer(encodedData, numSamples, channels, sampleRate, blockSize, 4);
+    }
 
+    /**
+     * Creates a new {@link WAVFile} instance from the given ADPCM-encoded buffer.
+     * @param encodedData    the ADPCM-encoded audio
+     * @param numSamples     the number of samples stored in the input buffer
+     * @param channels       the number of channels stored in the input buffer
+     * @param sampleRate     the sample rate of the input data in Hz
+     * @param blockSize      the ADPCM block size for the input data
+     * @param bitsPerSample  the number of bits per ADPCM sample in the input data
+     * @return a {@code WAVFile} with the given contents
+     * @since 1.2.0
+     */
+    public static WAVFile fromADPCMBuffer(
+            ByteBuffer encodedData,
+            int numSamples,
+            int channels,
+            int sampleRate,
+            int blockSize,
+            int bitsPerSample
+    ) {
         WAVFile dst = new WAVFile();
 
-        dst.factSamples       = numSamples;
-        dst.format            = WAVE_FORMAT_IMA_ADPCM;
-        dst.numSamples        = numSamples;
-        dst.realBitsPerSample = 4;
-
-        dst.formatTag        = WAVE_FORMAT_IMA_ADPCM;
-        dst.numChannels      = channels;
-        dst.sampleRate       = sampleRate;
-        dst.bytesPerSecond   = ADPCMUtil.computeBytesPerSecond(sampleRate, blockSize, samplesPerBlock);
-        dst.blockAlign       = blockSize;
-        dst.rawBitsPerSample = 4;
-        dst.cbSize           = 2;
-        dst.union            = samplesPerBlock;
-        dst.channelMask      = 0;
-        dst.subFormat        = 0;
-        dst.GUID             = new String(new byte[14]);
-
-        dst.data = copyBuffer(encodedData);
+        dst.data   = copyBuffer(encodedData);
+        dst.header = WAVHeader.forADPCM(
+            numSamples,
+            dst.data.capacity(),
+            channels,
+            sampleRate,
+            blockSize,
+            bitsPerSample
+        );
 
         return dst;
     }
@@ -136,30 +139,8 @@ public final class WAVFile {
     public static WAVFile fromPCMBuffer(ByteBuffer pcmData, int channels, int sampleRate) {
         WAVFile dst = new WAVFile();
 
-        final int bytesPerSample = 2;
-        final int bitsPerSample  = 16;
-        final int numSamples     = pcmData.capacity() / (bytesPerSample * channels);
-
-        dst.factSamples       = 0;
-        dst.format            = WAVE_FORMAT_PCM;
-        dst.numSamples        = numSamples;
-        dst.realBitsPerSample = bitsPerSample;
-
-        dst.formatTag        = WAVE_FORMAT_PCM;
-        dst.numChannels      = channels;
-        dst.sampleRate       = sampleRate;
-        dst.bytesPerSecond   = sampleRate * channels * bytesPerSample;
-        dst.blockAlign       = bytesPerSample * channels;
-        dst.rawBitsPerSample = bitsPerSample;
-
-        // the following members are not written for pcm files
-        dst.cbSize           = 0;
-        dst.union            = 0;
-        dst.channelMask      = 0;
-        dst.subFormat        = 0;
-        dst.GUID             = new String(new byte[14]);
-
-        dst.data = copyBuffer(pcmData);
+        dst.data   = copyBuffer(pcmData);
+        dst.header = WAVHeader.forPCM(dst.data.capacity(), channels, sampleRate);
 
         return dst;
     }
@@ -192,26 +173,118 @@ public final class WAVFile {
      * @return a {@code WAVFile} with the given contents
      */
     public static WAVFile fromStream(InputStream in) throws IOException {
-        WAVFile dst = new WAVFile();
+        final Object event = CodecEvents.beginLoad();
+
+        try {
+            return loaded(event, readStream(in));
+        } catch (IOException e) {
+            MetricsRecorder.recordFileError();
+            throw e;
+        }
+    }
 
+    private static WAVFile readStream(InputStream in) throws IOException {
         // read the main chunk to determine how many bytes we need to grab from the stream
         // =============================================================================================================
         // this stuff is ugly -- we should really be using a little-endian input stream or something, but the extra
         // dependency would be too much
-        requireId(in, RIFF_ID);
+        final boolean rf64 = requireRiffId(intLittleEndian(in));
+
+        long   riffSize = Integer.toUnsignedLong(intLittleEndian(in));
+        byte[] head     = new byte[0];
 
-        final int    riffSize   = intLittleEndian(in);
-        final byte[] fileBytes  = new byte[riffSize];
-        final int    actualSize = in.read(fileBytes);
+        if (rf64) {
+            // the real size of an RF64 file is in its ds64 chunk, which comes first
+            head = readFully(in, 12);
+
+            final ByteBuffer headBuffer = ByteBuffer.wrap(head).order(ByteOrder.LITTLE_ENDIAN);
+            requireId(headBuffer, WAVE_ID);
+            requireId(headBuffer, DS64_ID);
+
+            final long ds64Size = Integer.toUnsignedLong(headBuffer.getInt());
+            if (ds64Size > MAX_FILE_SIZE - head.length) {
+                throw new IOException("malformed file; ds64 chunk of "+ds64Size+" bytes is too large");
+            }
+
+            final byte[] ds64 = readFully(in, (int) ds64Size);
+            riffSize = DS64Chunk.read(ByteBuffer.wrap(ds64)).getRiffSize();
+
+            head = Arrays.copyOf(head, head.length + ds64.length);
+            System.arraycopy(ds64, 0, head, 12, ds64.length);
+        }
+
+        requireLoadable(riffSize);
+
+        final byte[] fileBytes  = Arrays.copyOf(head, (int) riffSize);
+        final int    actualSize = head.length + in.readNBytes(fileBytes, head.length, fileBytes.length - head.length);
 
         if (actualSize != riffSize) {
             throw new IOException("malformed file; expected "+riffSize+" bytes in RIFF chunk, but found "+actualSize);
         }
 
-        ByteBuffer riffChunk = ByteBuffer.wrap(fileBytes).order(ByteOrder.LITTLE_ENDIAN);
+        return fromRiffChunk(ByteBuffer.wrap(fileBytes).order(ByteOrder.LITTLE_ENDIAN), rf64);
+    }
+
+    /**
+     * Creates a {@link WAVFile} from the contents of the given buffer. The buffer's contents are copied, so it may be
+     * reused once this method returns.
+     * @param in  a buffer containing a WAV file, from its position to its limit
+     * @return a {@code WAVFile} with the given contents
+     * @throws IOException if the file is malformed or unsupported
+     * @since 1.2.0
+     */
+    public static WAVFile fromBuffer(ByteBuffer in) throws IOException {
+        final Object event = CodecEvents.beginLoad();
+
+        try {
+            return loaded(event, readBuffer(in));
+        } catch (IOException e) {
+            MetricsRecorder.recordFileError();
+            throw e;
+        }
+    }
+
+    private static WAVFile readBuffer(ByteBuffer in) throws IOException {
+        ByteBuffer file = in.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        if (file.remaining() < 8) {
+            throw new IOException("malformed file; expected at least 8 bytes, found "+file.remaining());
+        }
+
+        final boolean rf64 = requireRiffId(file.getInt());
+
+        long riffSize = Integer.toUnsignedLong(file.getInt());
+
+        if (rf64) {
+            // the real size of an RF64 file is in its ds64 chunk, which comes first
+            final ByteBuffer head = file.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            requireId(head, WAVE_ID);
+            riffSize = readDs64Chunk(head).getRiffSize();
+        }
+
+        if (riffSize > file.remaining()) {
+            throw new IOException(
+                "malformed file; expected "+riffSize+" bytes in RIFF chunk, but found "+file.remaining());
+        }
+
+        file.limit(file.position() + (int) riffSize);
+
+        return fromRiffChunk(file.slice().order(ByteOrder.LITTLE_ENDIAN), rf64);
+    }
+
+    private static WAVFile loaded(Object event, WAVFile dst) {
+        CodecEvents.endLoad(event, dst.header);
+        MetricsRecorder.recordLoad(dst.data.capacity());
+        return dst;
+    }
+
+    private static WAVFile fromRiffChunk(ByteBuffer riffChunk, boolean rf64) throws IOException {
+        WAVFile dst = new WAVFile();
 
         requireId(riffChunk, WAVE_ID);
 
+        final DS64Chunk ds64 = rf64 ? readDs64Chunk(riffChunk) : null;
+
         // find the chunks we need to properly read the audio in this file
         // =============================================================================================================
         ByteBuffer fmtChunk  = null;
@@ -219,8 +292,17 @@ public final class WAVFile {
         ByteBuffer dataChunk = null;
 
         while (riffChunk.hasRemaining()) {
-            final int chunkId   = riffChunk.getInt();
-            final int chunkSize = riffChunk.getInt();
+            final int  chunkId  = riffChunk.getInt();
+            final long size     = DS64Chunk.resolveSize(ds64, chunkId, riffChunk.getInt());
+
+            if (size > riffChunk.remaining()) {
+                throw new IOException(
+                    "malformed file; expected "+size+" bytes in "+chunkId(chunkId)+" chunk, but found "+
+                    riffChunk.remaining()
+                );
+            }
+
+            final int chunkSize = (int) size;
 
             if (chunkId == FMT_ID && fmtChunk == null) {
                 fmtChunk = copyChunk(riffChunk, chunkId, chunkSize);
@@ -238,10 +320,14 @@ public final class WAVFile {
 
         // process each chunk
         // =============================================================================================================
-        readFmtChunk(dst, fmtChunk);
-        if (factChunk != null) {
-            readFactChunk(dst, factChunk);
+        dst.header = WAVHeader.fromChunks(fmtChunk, factChunk, ds64, dataChunk.remaining());
+
+        if (dst.header.getNumSamples() > Integer.MAX_VALUE) {
+            throw new IOException(
+                "too many samples to load into memory: "+dst.header.getNumSamples()+"; use StreamingDecoder"
+            );
         }
+
         readDataChunk(dst, dataChunk);
 
         // we're done.
@@ -250,26 +336,27 @@ public final class WAVFile {
     }
 
     public int getChannels() {
-        return numChannels;
+        return header.getChannels();
     }
 
     /**
      * @return this file's sample rate in Hz
      */
     public int getSampleRate() {
-        return sampleRate;
+        return header.getSampleRate();
     }
 
     public int getBitsPerSample() {
-        return realBitsPerSample;
+        return header.getBitsPerSample();
     }
 
     public Format getFormat() {
-        return format==WAVE_FORMAT_PCM? Format.PCM : Format.IMA_ADPCM;
+        return header.getFormat()==WAVE_FORMAT_PCM? Format.PCM : Format.IMA_ADPCM;
     }
 
     public int getNumSamples() {
-        return numSamples;
+        // checked when the file is loaded
+        return (int) header.getNumSamples();
     }
 
     /**
@@ -278,7 +365,27 @@ public final class WAVFile {
      * @return ADPCM block size, or the number of bytes in an audio sample
      */
     public int getBlockSize() {
-        return blockAlign;
+        return header.getBlockAlign();
+    }
+
+    /**
+     * Creates a decoder configuration matching the format of this ADPCM-encoded file.
+     * @return a configuration for decoding this file's audio data
+     * @throws IllegalStateException if this is not an ADPCM-encoded file
+     * @since 1.2.0
+     */
+    public ADPCMDecoderConfig createDecoderConfig() {
+        if (getFormat() != Format.IMA_ADPCM) {
+            throw new IllegalStateException("not an IMA ADPCM file");
+        }
+
+        return
+            ADPCMDecoder.configure()
+            .setChannels     (getChannels())
+            .setSampleRate   (getSampleRate())
+            .setBlockSize    (getBlockSize())
+            .setBitsPerSample(getBitsPerSample())
+            .end();
     }
 
     /**
@@ -292,81 +399,216 @@ public final class WAVFile {
     }
 
     /**
-     * Writes the contents of this object to the given output stream as a WAV file.
-     * @param out  output stream for the file
-     * @throws IOException  if an IO problem occurs
+     * The number of samples per channel in each block of this file's audio data. An ADPCM block can be decoded on its
+     * own, so it is the smallest unit that can be cut from or joined to a file without re-encoding; see
+     * {@link #slice(int, int)}. A PCM file has one sample per block.
+     * @return ADPCM samples per block, or {@code 1} if this is a PCM file
+     * @since 1.2.0
      */
-    public void dump(OutputStream out) throws IOException {
-        DataOutputStream dataOut = new DataOutputStream(out);
+    public int getSamplesPerBlock() {
+        return getFormat() == Format.PCM ? 1 : header.getSamplesPerBlock();
+    }
 
-        // create format chunk
-        // =============================================================================================================
-        final boolean isPcm = getFormat() == Format.PCM;
+    /**
+     * Creates a file holding a range of this file's samples. The audio data is copied block by block, and is not
+     * decoded or re-encoded. The range must start on a block boundary, but may end anywhere: a block that is cut short
+     * is truncated after the group holding its last sample, and the exact sample count is kept in the {@code fact}
+     * chunk, so the result decodes to exactly the same samples as the range did in this file.
+     * @param from  the index of the first sample per channel in the range; a multiple of {@link #getSamplesPerBlock()}
+     * @param to    the index after the last sample per channel in the range
+     * @return a new file holding the given range
+     * @throws IndexOutOfBoundsException if {@code from < 0}, {@code to > getNumSamples()} or {@code from > to}
+     * @throws IllegalArgumentException if the range is empty or {@code from} is not on a block boundary
+     * @since 1.2.0
+     */
+    public WAVFile slice(int from, int to) {
+        final int numSamples = getNumSamples();
 
-        final ByteBuffer fmtChunk =
-            ByteBuffer
-            .allocate(26 + 14) // size of format chunk = 8-byte header + 26 bytes + 14-byte format GUID remainder
-            .order(ByteOrder.LITTLE_ENDIAN);
+        if (from < 0 || to > numSamples || from > to) {
+            throw new IndexOutOfBoundsException("range ["+from+", "+to+") out of bounds for length "+numSamples);
+        }
 
-        fmtChunk.putShort((short) formatTag);
-        fmtChunk.putShort((short) numChannels);
-        fmtChunk.putInt  (sampleRate);
-        fmtChunk.putInt  (bytesPerSecond);
-        fmtChunk.putShort((short) blockAlign);
-        fmtChunk.putShort((short) rawBitsPerSample);
-
-        if (!isPcm) {
-            fmtChunk.putShort((short) cbSize);
-            fmtChunk.putShort((short) union);
-            if (channelMask != 0 && subFormat != 0) {
-                fmtChunk.putInt  (channelMask);
-                fmtChunk.putShort((short) subFormat);
-                fmtChunk.put     (GUID.getBytes(StandardCharsets.US_ASCII));
-            }
+        if (from == to) {
+            throw new IllegalArgumentException("empty range: ["+from+", "+to+")");
+        }
+
+        if (from % getSamplesPerBlock() != 0) {
+            throw new IllegalArgumentException(
+                "range must start on a block boundary; "+from+" is not a multiple of "+getSamplesPerBlock()
+            );
+        }
+
+        // the last block, which may be larger than its sample count requires, is kept whole
+        final int start = dataOffset(from);
+        final int end   = to == numSamples ? data.capacity() : dataOffset(to);
+
+        return create(
+            this,
+            to - from,
+            data.duplicate().limit(end).position(start)
+        );
+    }
+
+    /**
+     * Splits this file into consecutive parts of the given length, as if by {@link #slice(int, int)}. The last part
+     * holds the remaining samples, and may be shorter.
+     * @param length  the number of samples per channel in each part; a multiple of {@link #getSamplesPerBlock()}
+     * @return the parts, in order
+     * @throws IllegalArgumentException if {@code length} is not a positive multiple of the block length
+     * @since 1.2.0
+     */
+    public List<WAVFile> split(int length) {
+        if (length <= 0 || length % getSamplesPerBlock() != 0) {
+            throw new IllegalArgumentException(
+                "part length must be a positive multiple of "+getSamplesPerBlock()+"; got "+length
+            );
         }
 
-        fmtChunk.limit(fmtChunk.position()).rewind();
+        final int           numSamples = getNumSamples();
+        final List<WAVFile> dst        = new ArrayList<>();
 
-        // create optional fact chunk
+        for (long from=0; from<numSamples; from+=length) {
+            dst.add(slice((int) from, (int) Math.min(from + length, numSamples)));
+        }
+
+        return dst;
+    }
+
+    /**
+     * Joins files of the same format end to end. The audio data is copied block by block, and is not decoded or
+     * re-encoded. Only the last file may end in a partial block, i.e. every other file must hold a multiple of
+     * {@link #getSamplesPerBlock()} samples; use {@link #slice(int, int)} to trim a file to a block boundary.
+     * @param files  the files to join, in order
+     * @return a new file holding the samples of every given file
+     * @throws IllegalArgumentException if no files are given, if they differ in format, channels, sample rate, block
+     *                                  size or bits per sample, if a file other than the last ends in a partial block,
+     *                                  or if the result would be too large to hold in memory
+     * @since 1.2.0
+     */
+    public static WAVFile concat(List<WAVFile> files) {
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("no files to join");
+        }
+
+        final WAVFile first = files.get(0);
+
+        // validate the inputs and size the output
         // =============================================================================================================
-        final ByteBuffer factChunk;
-        if (!isPcm) {
-            factChunk = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
-            factChunk.putInt(factSamples);
-            factChunk.rewind();
-        } else {
-            factChunk = ByteBuffer.allocate(0);
+        long numSamples = 0;
+        long dataSize   = 0;
+
+        for (int i=0; i<files.size(); i++) {
+            final WAVFile file = files.get(i);
+
+            if (
+                file.getFormat()        != first.getFormat()     ||
+                file.getChannels()      != first.getChannels()   ||
+                file.getSampleRate()    != first.getSampleRate() ||
+                file.getBlockSize()     != first.getBlockSize()  ||
+                file.getBitsPerSample() != first.getBitsPerSample()
+            ) {
+                throw new IllegalArgumentException("file "+i+" does not match the format of file 0");
+            }
+
+            if (i < files.size() - 1 && file.getNumSamples() % file.getSamplesPerBlock() != 0) {
+                throw new IllegalArgumentException(
+                    "file "+i+" ends in a partial block; only the last file may hold a number of samples that is " +
+                    "not a multiple of "+first.getSamplesPerBlock()
+                );
+            }
+
+            numSamples += file.getNumSamples();
+            dataSize   += file.data.capacity();
+        }
+
+        if (numSamples > Integer.MAX_VALUE || dataSize > MAX_FILE_SIZE) {
+            throw new IllegalArgumentException(
+                "joined file too large to hold in memory: "+numSamples+" samples, "+dataSize+" bytes"
+            );
         }
 
-        // create data chunk
+        // copy the audio data
         // =============================================================================================================
-        // data chunk might include padding byte
-        final int dataPadding = data.capacity() % 2 == 0 ? 0 : 1;
+        final ByteBuffer dst = ByteBuffer.allocate((int) dataSize).order(first.data.order());
+
+        for (WAVFile file : files) {
+            dst.put(file.data.duplicate().clear());
+        }
+
+        return create(first, (int) numSamples, dst.flip());
+    }
+
+    /**
+     * @param numSamples  a number of samples per channel
+     * @return the number of bytes of audio data that hold the first {@code numSamples} samples; this is the offset of
+     *         a block if {@code numSamples} is on a block boundary
+     */
+    private int dataOffset(int numSamples) {
+        if (getFormat() == Format.PCM) {
+            return numSamples * getBlockSize();
+        }
+
+        return ADPCMUtil.computeOutputSize(
+            numSamples,
+            getChannels(),
+            getSamplesPerBlock(),
+            getBlockSize(),
+            getBitsPerSample()
+        );
+    }
+
+    /**
+     * Creates a file in the format of the given one.
+     * @param format      a file in the format of the new one
+     * @param numSamples  the number of samples per channel in {@code src}
+     * @param src         the audio data, from its position to its limit; it is copied
+     * @return a new file
+     */
+    private static WAVFile create(WAVFile format, int numSamples, ByteBuffer src) {
+        WAVFile dst = new WAVFile();
+
+        dst.data = ByteBuffer.allocate(src.remaining()).order(format.data.order());
+        dst.data.put(src).rewind();
+
+        dst.header = format.getFormat() == Format.PCM
+            ? WAVHeader.forPCM(dst.data.capacity(), format.getChannels(), format.getSampleRate())
+            : WAVHeader.forADPCM(
+                numSamples,
+                dst.data.capacity(),
+                format.getChannels(),
+                format.getSampleRate(),
+                format.getBlockSize(),
+                format.getBitsPerSample()
+            );
+
+        return dst;
+    }
 
-        // populate header
+    /**
+     * Writes the contents of this object to the given output stream as a WAV file.
+     * @param out  output stream for the file
+     * @throws IOException  if an IO problem occurs
+     */
+    public void dump(OutputStream out) throws IOException {
+        final Object event = CodecEvents.beginDump();
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+
+        // write the RIFF header, format and fact chunks, and the data chunk's header
         // =============================================================================================================
-        final int fileSize =
-                4 + chunkSize(fmtChunk)
-                + (factChunk.limit() > 0 ? chunkSize(factChunk) : 0)
-                + chunkSize(data) + dataPadding;
-        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
-        header.putInt(RIFF_ID);
-        header.putInt(fileSize);
-        header.putInt(WAVE_ID);
-
-        // dump all chunks
+        header.write(dataOut);
+
+        // dump the data chunk's contents
         // =============================================================================================================
-        out.write(header.array());
-        dumpChunk(dataOut, fmtChunk,  FMT_ID);
-        if (factChunk.limit() > 0) {
-            dumpChunk(dataOut, factChunk, FACT_ID);
-        }
-        dumpChunk(dataOut, data, DATA_ID);
+        dumpData(dataOut, data);
 
-        // append padding bytes, if needed
-        for (int i=0; i<dataPadding; i++) {
+        // data chunk might include padding byte
+        if (data.capacity() % 2 != 0) {
             out.write(0);
         }
+
+        CodecEvents.endDump(event, header);
+        MetricsRecorder.recordDump(data.capacity());
     }
 
     @Override
@@ -374,57 +616,20 @@ public final class WAVFile {
         if (this == o) return true;
         if (!(o instanceof WAVFile)) return false;
         WAVFile wavFile = (WAVFile) o;
-        return factSamples == wavFile.factSamples
-            && format == wavFile.format
-            && numSamples == wavFile.numSamples
-            && realBitsPerSample == wavFile.realBitsPerSample
-            && formatTag == wavFile.formatTag
-            && numChannels == wavFile.numChannels
-            && sampleRate == wavFile.sampleRate
-            && bytesPerSecond == wavFile.bytesPerSecond
-            && blockAlign == wavFile.blockAlign
-            && rawBitsPerSample == wavFile.rawBitsPerSample
-            && cbSize == wavFile.cbSize
-            && union == wavFile.union
-            && channelMask == wavFile.channelMask
-            && subFormat == wavFile.subFormat
-            && GUID.equals(wavFile.GUID)
+        return header.equals(wavFile.header)
             && data.equals(wavFile.data);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(
-            factSamples,
-            format,
-            numSamples,
-            realBitsPerSample,
-            formatTag,
-            numChannels,
-            sampleRate,
-            bytesPerSecond,
-            blockAlign,
-            rawBitsPerSample,
-            cbSize,
-            union,
-            channelMask,
-            subFormat,
-            GUID,
-            data
-        );
+        return Objects.hash(header, data);
     }
 
     private WAVFile() {
         //
     }
 
-    private int samplesPerBlock() {
-        return union;
-    }
-
-    private static void dumpChunk(DataOutputStream out, ByteBuffer chunkData, int chunkId) throws IOException {
-        out.writeInt(Integer.reverseBytes(chunkId));
-        out.writeInt(Integer.reverseBytes(chunkData.limit()));
+    private static void dumpData(DataOutputStream out, ByteBuffer chunkData) throws IOException {
         if (chunkData.isDirect() || chunkData.isReadOnly()) {
             ByteBuffer dataView = chunkData.rewind().asReadOnlyBuffer();
             byte[] elements = new byte[512];
@@ -445,6 +650,35 @@ public final class WAVFile {
         }
     }
 
+    private static void requireLoadable(long riffSize) throws IOException {
+        if (riffSize > MAX_FILE_SIZE) {
+            throw new IOException(
+                "file too large to load into memory: "+(riffSize + 8)+" bytes; use StreamingDecoder"
+            );
+        }
+    }
+
+    private static DS64Chunk readDs64Chunk(ByteBuffer riffChunk) throws IOException {
+        if (riffChunk.remaining() < 8) {
+            throw new IOException("expected " + chunkId(DS64_ID) + " chunk in file; none found");
+        }
+
+        requireId(riffChunk, DS64_ID);
+
+        final long chunkSize = Integer.toUnsignedLong(riffChunk.getInt());
+        if (chunkSize > riffChunk.remaining()) {
+            throw new IOException(
+                "malformed file; expected "+chunkSize+" bytes in ds64 chunk, but found "+riffChunk.remaining()
+            );
+        }
+
+        final ByteBuffer chunk = riffChunk.slice();
+        chunk.limit((int) chunkSize);
+        skipChunk(riffChunk, (int) Math.min(riffChunk.remaining(), chunkSize + chunkSize % 2));
+
+        return DS64Chunk.read(chunk);
+    }
+
     private static void requireChunk(ByteBuffer fmtChunk, int riffId) throws IOException {
         if (fmtChunk == null) {
             throw new IOException("expected " + chunkId(riffId) + " chunk in file; none found");
@@ -469,147 +703,13 @@ public final class WAVFile {
         return copy.rewind();
     }
 
-    private static int chunkSize(ByteBuffer chunkData) {
-        return chunkData.limit() + 8;
-    }
-
     private static void skipChunk(ByteBuffer riffChunk, int chunkSize) {
         riffChunk.position(riffChunk.position() + chunkSize);
     }
 
-    private static void readFmtChunk(WAVFile dst, ByteBuffer in) throws IOException {
-        dst.formatTag        = uint16(in);  // 2
-        dst.numChannels      = uint16(in);  // 2
-        dst.sampleRate       = uint32(in);  // 4
-        dst.bytesPerSecond   = uint32(in);  // 4
-        dst.blockAlign       = uint16(in);  // 2
-        dst.rawBitsPerSample = uint16(in);  // 2
-        dst.cbSize           = uint16(in);  // 2
-        dst.union            = uint16(in);  // 2
-        dst.channelMask      = uint32(in);  // 4
-        dst.subFormat        = uint16(in);  // 2
-
-        byte[] b = new byte[14];
-        for (int i = 0; i < 14; i++) {
-            b[i] = int8(in);
-        }
-        dst.GUID = new String(b);
-
-        final boolean hasExtensionBytes = in.capacity() >= 40;
-
-        dst.format = hasExtensionBytes && dst.formatTag == WAVE_FORMAT_EXTENSIBLE
-                ? dst.subFormat
-                : dst.formatTag;
-
-        int validBitsPerSample = dst.union;
-
-        dst.realBitsPerSample = hasExtensionBytes && validBitsPerSample!=0
-                ? validBitsPerSample
-                : dst.rawBitsPerSample;
-
-        // validate
-        // =============================================================================================================
-        if (dst.numChannels < 1 || dst.numChannels > 2) {
-            throw new IOException("unsupported number of channels: "+dst.numChannels+"; expected mono or stereo");
-        }
-
-        if (dst.format == WAVE_FORMAT_PCM) {
-            if (dst.realBitsPerSample != 16) {
-                throw new IOException("unsupported bits per sample: " + dst.realBitsPerSample + "; expected 16");
-            }
-
-            if (dst.blockAlign != dst.numChannels*2) {
-                throw new IOException("block alignment must match number of channels");
-            }
-        } else if (dst.format == WAVE_FORMAT_IMA_ADPCM) {
-            if (dst.realBitsPerSample!=4) {
-                throw new IOException("unsupported bits per sample: "+dst.realBitsPerSample+"; expected 4");
-            }
-
-            int expect = (dst.blockAlign - dst.numChannels*4) * (dst.numChannels^3) + 1;
-            int samplesPerBlock = dst.union;
-            if (samplesPerBlock != expect) {
-                throw new IOException("malformed WAV file");
-            }
-        } else {
-            throw new IOException("unsupported format; PCM or IMA ADPCM expected");
-        }
-    }
-
-    private static int uint16(ByteBuffer in) {
-        return in.hasRemaining() ? Short.toUnsignedInt(in.getShort()) : 0;
-    }
-
-    private static int uint32(ByteBuffer in) {
-        return in.hasRemaining() ? in.getInt() : 0;
-    }
-
-    private static byte int8(ByteBuffer in) {
-        return in.hasRemaining() ? in.get() : 0;
-    }
-
-    private static void readFactChunk(WAVFile dst, ByteBuffer in) {
-        dst.factSamples = in.getInt();
-    }
-
-    private static void readDataChunk(WAVFile dst, ByteBuffer in) throws IOException {
+    private static void readDataChunk(WAVFile dst, ByteBuffer in) {
         final int chunkSize = in.remaining();
 
-        if (chunkSize==0) {
-            throw new IOException("malformed WAV file: no samples");
-        }
-
-        final int channels    = dst.numChannels;
-        final int format      = dst.format;
-        final int blockAlign  = dst.blockAlign;
-        int       factSamples = dst.factSamples;
-
-        // determine number of samples & validate
-        // =============================================================================================================
-        if (format == WAVE_FORMAT_PCM) {
-            if (chunkSize % dst.blockAlign != 0) {
-                throw new IOException("malformed WAV file; data chunk size is not a multiple of block alignment");
-            }
-
-            dst.numSamples = chunkSize / blockAlign;
-        } else {
-            int q = chunkSize / blockAlign;
-            int r = chunkSize % blockAlign;
-
-            int lastBlockSamples;
-
-            dst.numSamples = q * dst.samplesPerBlock();
-
-            if (r!=0) {
-                if (r % (channels*4) != 0) {
-                    throw new IOException("malformed WAV file");
-                }
-
-                lastBlockSamples = (r - (channels*4)) * (channels^3)+1;
-                dst.numSamples += lastBlockSamples;
-            } else {
-                lastBlockSamples = dst.samplesPerBlock();
-            }
-
-            if (factSamples!=0) {
-                if (factSamples < dst.numSamples && factSamples > dst.numSamples - lastBlockSamples) {
-                    dst.numSamples = factSamples;
-                } else if (
-                    channels == 2 && (factSamples >>= 1) < dst.numSamples
-                    && factSamples > dst.numSamples - lastBlockSamples
-                ) {
-                    dst.numSamples = factSamples;
-                }
-            }
-        }
-
-        if (dst.numSamples==0) {
-            throw new IOException("malformed WAV file: no samples");
-        }
-
-        // read data
-        // =============================================================================================================
-        // read data
         byte[] dataBytes = new byte[chunkSize];
         ByteBuffer data = ByteBuffer.wrap(dataBytes).order(ByteOrder.LITTLE_ENDIAN);
         in.get(dataBytes);
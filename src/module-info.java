@@ -1,6 +1,15 @@
 module com.jiggawatt.jt.tools.adpcm {
     requires java.base;
+    requires static transitive java.desktop;
+    requires static java.management;
 
     exports com.jiggawatt.jt.tools.adpcm;
+    exports com.jiggawatt.jt.tools.adpcm.flow;
+    exports com.jiggawatt.jt.tools.adpcm.sound;
     exports com.jiggawatt.jt.tools.adpcm.util;
-}
\ No newline at end of file
+
+    provides javax.sound.sampled.spi.AudioFileReader
+        with com.jiggawatt.jt.tools.adpcm.sound.ADPCMAudioFileReader;
+    provides javax.sound.sampled.spi.FormatConversionProvider
+        with com.jiggawatt.jt.tools.adpcm.sound.ADPCMFormatConversionProvider;
+}
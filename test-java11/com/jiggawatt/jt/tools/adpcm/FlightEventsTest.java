@@ -0,0 +1,258 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import jdk.jfr.Configuration;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.SettingDescriptor;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Records the Flight Recorder events of the Java 11 classes, and reads them back from the recording file.
+ */
+public class FlightEventsTest {
+
+    private static final String ENCODE       = "com.jiggawatt.jt.adpcm.Encode";
+    private static final String DECODE       = "com.jiggawatt.jt.adpcm.Decode";
+    private static final String BLOCK_SEARCH = "com.jiggawatt.jt.adpcm.BlockSearch";
+    private static final String WAV_LOAD     = "com.jiggawatt.jt.adpcm.WAVLoad";
+    private static final String WAV_DUMP     = "com.jiggawatt.jt.adpcm.WAVDump";
+
+    private static final String[] ALL = { ENCODE, DECODE, BLOCK_SEARCH, WAV_LOAD, WAV_DUMP };
+
+    private static WAVFile            pcm;
+    private static ADPCMEncoderConfig cfg;
+    private static int                numBlocks;
+
+    @BeforeAll
+    public static void load() throws IOException {
+        pcm       = TestUtils.getClasspathWav("pcm_16bit_8000Hz_stereo.wav");
+        cfg       = TestUtils.configureEncoder(pcm, 512).setNoiseShaping(true).end();
+        numBlocks = (pcm.getNumSamples() + cfg.getSamplesPerBlock() - 1) / cfg.getSamplesPerBlock();
+
+        // warm up, so that the interpreter doesn't push the first blocks over the search threshold
+        for (int i = 0; i < 5; i++) {
+            encode();
+        }
+    }
+
+    @Test
+    public void eventsAreOffByDefault() throws IOException, ParseException {
+        for (String name : ALL) {
+            EventType type = eventType(name);
+            assertNotNull(type, name);
+            assertEquals("false", defaultSetting(type, "enabled"), name);
+            assertEquals("jt-adpcm", type.getCategoryNames().get(0), name);
+        }
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording(Configuration.getConfiguration("default"))) {
+            recording.start();
+            exerciseCodec();
+            events = stop(recording);
+        }
+
+        for (RecordedEvent event : events) {
+            assertFalse(event.getEventType().getName().startsWith("com.jiggawatt.jt.adpcm."), event::toString);
+        }
+    }
+
+    @Test
+    public void recordsCodecCalls() throws IOException {
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(ENCODE);
+            recording.enable(DECODE);
+            recording.start();
+
+            ByteBuffer  adpcm = encode();
+            ShortBuffer out   = ShortBuffer.allocate(pcm.getNumSamples() * pcm.getChannels());
+            new ADPCMDecoder(decoderConfig()).decode(adpcm, out);
+
+            events = stop(recording);
+        }
+
+        final int bytes = cfg.computeOutputSize(pcm.getNumSamples());
+
+        RecordedEvent encode = only(events, ENCODE);
+        assertEquals(cfg.getChannels(),      encode.getInt("channels"));
+        assertEquals(cfg.getSampleRate(),    encode.getInt("sampleRate"));
+        assertEquals(cfg.getBlockSize(),     encode.getInt("blockSize"));
+        assertEquals(cfg.getBitsPerSample(), encode.getInt("bitsPerSample"));
+        assertTrue  (encode.getBoolean("noiseShaping"));
+        assertEquals(pcm.getNumSamples(),    encode.getInt("samples"));
+        assertEquals(bytes,                  encode.getInt("bytes"));
+
+        RecordedEvent decode = only(events, DECODE);
+        assertEquals(cfg.getChannels(),      decode.getInt("channels"));
+        assertEquals(cfg.getSampleRate(),    decode.getInt("sampleRate"));
+        assertEquals(cfg.getBlockSize(),     decode.getInt("blockSize"));
+        assertEquals(cfg.getBitsPerSample(), decode.getInt("bitsPerSample"));
+        assertEquals(pcm.getNumSamples(),    decode.getInt("samples"));
+        assertEquals(bytes,                  decode.getInt("bytes"));
+    }
+
+    @Test
+    public void recordsWavLoadAndDump() throws IOException {
+        WAVFile adpcm = WAVFile.fromADPCMBuffer(encode(), pcm.getNumSamples(), cfg);
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(WAV_LOAD);
+            recording.enable(WAV_DUMP);
+            recording.start();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            adpcm.dump(out);
+            WAVFile.fromBuffer(ByteBuffer.wrap(out.toByteArray()));
+
+            out.reset();
+            pcm.dump(out);
+
+            events = stop(recording);
+        }
+
+        List<RecordedEvent> dumps = all(events, WAV_DUMP);
+        assertEquals(2, dumps.size());
+        assertFile(adpcm, "IMA ADPCM", dumps.get(0));
+        assertFile(pcm,   "PCM",       dumps.get(1));
+        assertFile(adpcm, "IMA ADPCM", only(events, WAV_LOAD));
+    }
+
+    @Test
+    public void blockSearchHasOneMillisecondThreshold() throws IOException {
+        assertEquals("1 ms", defaultSetting(eventType(BLOCK_SEARCH), "threshold"));
+
+        // fast blocks fall under the default threshold...
+        List<RecordedEvent> slow;
+        try (Recording recording = new Recording()) {
+            recording.enable(BLOCK_SEARCH);
+            recording.start();
+            encode();
+            slow = all(stop(recording), BLOCK_SEARCH);
+        }
+
+        assertTrue(slow.size() < numBlocks, slow.size()+" of "+numBlocks+" blocks took 1 ms");
+        for (RecordedEvent event : slow) {
+            assertTrue(event.getDuration().compareTo(Duration.ofMillis(1)) >= 0, event::toString);
+        }
+
+        // ...and a zero threshold records every one of them
+        List<RecordedEvent> every;
+        try (Recording recording = new Recording()) {
+            recording.enable(BLOCK_SEARCH).withThreshold(Duration.ZERO);
+            recording.start();
+            encode();
+            every = all(stop(recording), BLOCK_SEARCH);
+        }
+
+        assertEquals(numBlocks, every.size());
+        for (RecordedEvent event : every) {
+            assertEquals(cfg.getChannels(),      event.getInt("channels"));
+            assertEquals(cfg.getBitsPerSample(), event.getInt("bitsPerSample"));
+            assertTrue  (event.getBoolean("noiseShaping"));
+            assertTrue  (event.getInt("samples") <= cfg.getSamplesPerBlock());
+            assertNull  (event.getStackTrace());
+        }
+    }
+
+    private static void exerciseCodec() throws IOException {
+        ByteBuffer adpcm = encode();
+
+        ShortBuffer out = ShortBuffer.allocate(pcm.getNumSamples() * pcm.getChannels());
+        new ADPCMDecoder(decoderConfig()).decode(adpcm.duplicate(), out);
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        WAVFile.fromADPCMBuffer(adpcm, pcm.getNumSamples(), cfg).dump(file);
+        WAVFile.fromBuffer(ByteBuffer.wrap(file.toByteArray()));
+    }
+
+    private static ADPCMDecoderConfig decoderConfig() {
+        return ADPCMDecoder.configure()
+            .setChannels  (cfg.getChannels())
+            .setSampleRate(cfg.getSampleRate())
+            .setBlockSize (cfg.getBlockSize())
+            .end();
+    }
+
+    private static ByteBuffer encode() throws IOException {
+        ByteBuffer adpcm = ByteBuffer.allocate(cfg.computeOutputSize(pcm.getNumSamples()));
+        new ADPCMEncoder(cfg).encode(pcm.getReadOnlyData().asShortBuffer(), adpcm).flip();
+        return adpcm;
+    }
+
+    private static void assertFile(WAVFile file, String format, RecordedEvent event) {
+        assertEquals(format,                            event.getString("format"));
+        assertEquals(file.getChannels(),                event.getInt("channels"));
+        assertEquals(file.getSampleRate(),              event.getInt("sampleRate"));
+        assertEquals(file.getNumSamples(),              event.getLong("samples"));
+        assertEquals(file.getReadOnlyData().remaining(), event.getLong("bytes"));
+    }
+
+    private static EventType eventType(String name) {
+        for (EventType type : FlightRecorder.getFlightRecorder().getEventTypes()) {
+            if (type.getName().equals(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private static String defaultSetting(EventType type, String name) {
+        for (SettingDescriptor setting : type.getSettingDescriptors()) {
+            if (setting.getName().equals(name)) {
+                return setting.getDefaultValue();
+            }
+        }
+        return null;
+    }
+
+    private static List<RecordedEvent> stop(Recording recording) throws IOException {
+        recording.stop();
+
+        Path file = Files.createTempFile("jt-adpcm", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<RecordedEvent> all(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> found = events.stream()
+            .filter(e -> e.getEventType().getName().equals(name))
+            .collect(Collectors.toCollection(ArrayList::new));
+        found.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+        return found;
+    }
+
+    private static RecordedEvent only(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> found = all(events, name);
+        assertEquals(1, found.size(), name);
+        return found.get(0);
+    }
+}
@@ -0,0 +1,119 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.impl.IOExecutors;
+import com.jiggawatt.jt.tools.adpcm.util.AsyncCodec;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the Java 21 classes wait for file I/O on virtual threads.
+ */
+public class IOExecutorsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void runsTasksOnVirtualThreads() throws InterruptedException, ExecutionException {
+        ExecutorService executor = IOExecutors.newExecutor();
+        try {
+            Thread first  = executor.submit(Thread::currentThread).get();
+            Thread second = executor.submit(Thread::currentThread).get();
+
+            assertTrue(first.isVirtual());
+            assertTrue(first.getName().startsWith("jt-adpcm-io-"), first.getName());
+            assertTrue(second.isVirtual());
+            assertFalse(first.getName().equals(second.getName()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void asyncCodecWaitsOnVirtualThreads() throws IOException {
+        Path in  = tempDir.resolve("in.wav");
+        Path out = tempDir.resolve("out.wav");
+        try (InputStream src = TestUtils.openClasspathStream("pcm_16bit_8000Hz_stereo.wav")) {
+            Files.copy(src, in);
+        }
+
+        ThreadRecorder io    = new ThreadRecorder(IOExecutors.newExecutor());
+        AsyncCodec     codec = new AsyncCodec(io, ForkJoinPool.commonPool());
+        try {
+            codec.encodeAsync(in, out).join();
+        } finally {
+            io.shutdown();
+        }
+
+        assertEquals(TestUtils.getClasspathWav("adpcm_16bit_8000Hz_stereo.wav"), WAVFile.fromFile(out));
+
+        assertFalse(io.threads.isEmpty());
+        for (Thread thread : io.threads) {
+            assertTrue(thread.isVirtual(), thread::toString);
+        }
+    }
+
+    /**
+     * Remembers the thread that runs each task of the executor it wraps.
+     */
+    private static final class ThreadRecorder extends AbstractExecutorService {
+        final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+        private final ExecutorService executor;
+
+        ThreadRecorder(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            executor.execute(() -> {
+                threads.add(Thread.currentThread());
+                command.run();
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            executor.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return executor.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return executor.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return executor.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return executor.awaitTermination(timeout, unit);
+        }
+    }
+}
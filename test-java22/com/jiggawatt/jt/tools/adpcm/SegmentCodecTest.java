@@ -0,0 +1,233 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.impl.WAVHeader;
+import com.jiggawatt.jt.tools.adpcm.util.SegmentCodec;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SegmentCodecTest {
+
+    /** Two of the 64 MB windows the codec works in; the encoder and decoder must carry their state across them. */
+    private static final long LARGE_PCM_BYTES = 2L << 26;
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "16bit_8000Hz_mono.wav",
+        "16bit_8000Hz_stereo.wav",
+        "16bit_44100Hz_stereo.wav",
+    })
+    public void matchesBufferCodec(String name) throws IOException {
+        WAVFile            pcm = TestUtils.getClasspathWav("pcm_"+name);
+        ADPCMEncoderConfig cfg = TestUtils.configureEncoder(pcm).setNoiseShaping(true).end();
+
+        // the sample count of each file leaves a partial block at the end
+        assertRoundTrip(cfg, MemorySegment.ofBuffer(pcm.getReadOnlyData()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 2, 504, 505, 506, 3 * 505 - 1 })
+    public void encodesPartialFinalBlock(int numSamples) throws IOException {
+        WAVFile            pcm = TestUtils.getClasspathWav("pcm_16bit_8000Hz_stereo.wav");
+        ADPCMEncoderConfig cfg = TestUtils.configureEncoder(pcm, 512).end();
+        assertEquals(505, cfg.getSamplesPerBlock());
+
+        assertRoundTrip(cfg, MemorySegment.ofBuffer(pcm.getReadOnlyData()).asSlice(0, numSamples * 4L));
+    }
+
+    @Test
+    public void encodesAcrossWindows() throws IOException {
+        ADPCMEncoderConfig cfg =
+            ADPCMEncoder.configure()
+            .setChannels     (2)
+            .setSampleRate   (44100)
+            .setBlockSize    (2048)
+            .setBitsPerSample(2)
+            .setNoiseShaping (false)
+            .end();
+
+        try (Arena arena = Arena.ofConfined()) {
+            // a whole number of frames, but not of blocks
+            MemorySegment pcm = arena.allocate(LARGE_PCM_BYTES + 4 * 123);
+
+            // a slow ramp under quiet noise: cheap for the encoder to search, but never still enough for its step size to
+            // settle, so a window that lost the state of the one before would show
+            ShortBuffer samples = littleEndian(pcm).asShortBuffer();
+            for (int i = 0; samples.hasRemaining(); i++) {
+                samples.put((short) ((i >> 12) + Math.floorMod(i * 7919, 401) - 200));
+            }
+
+            assertRoundTrip(cfg, pcm);
+        }
+    }
+
+    @Test
+    public void rejectsSmallSegments() throws IOException {
+        WAVFile            pcm = TestUtils.getClasspathWav("pcm_16bit_8000Hz_stereo.wav");
+        ADPCMEncoderConfig cfg = TestUtils.configureEncoder(pcm, 512).end();
+
+        MemorySegment in   = MemorySegment.ofBuffer(pcm.getReadOnlyData());
+        long          size = SegmentCodec.computeOutputSize(cfg, pcm.getNumSamples());
+
+        assertThrows(IllegalArgumentException.class, () ->
+            SegmentCodec.encode(new ADPCMEncoder(cfg), in, MemorySegment.ofArray(new byte[(int) size - 1])));
+
+        ADPCMDecoder decoder = new ADPCMDecoder(decoderConfig(cfg));
+        assertThrows(IOException.class, () ->
+            SegmentCodec.decode(decoder, MemorySegment.ofArray(new byte[(int) size - 1]), pcmSegment(in.byteSize())));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "RIFF", "RF64", "BW64" })
+    public void mapsAdpcmFiles(String riffId) throws IOException {
+        WAVFile adpcm = TestUtils.getClasspathWav("adpcm_16bit_8000Hz_stereo.wav");
+        WAVFile dec   = TestUtils.getClasspathWav("dec_16bit_8000Hz_stereo.wav");
+        Path    file  = write(adpcm, riffId);
+
+        try (Arena arena = Arena.ofConfined()) {
+            SegmentCodec.Mapping mapping = SegmentCodec.map(file, arena);
+
+            assertEquals(WAVFile.Format.IMA_ADPCM,   mapping.getFormat());
+            assertEquals(adpcm.getChannels(),        mapping.getChannels());
+            assertEquals(adpcm.getSampleRate(),      mapping.getSampleRate());
+            assertEquals(adpcm.getBitsPerSample(),   mapping.getBitsPerSample());
+            assertEquals(adpcm.getBlockSize(),       mapping.getBlockSize());
+            assertEquals(adpcm.getNumSamples(),      mapping.getNumSamples());
+            assertEquals(-1, MemorySegment.ofBuffer(adpcm.getReadOnlyData()).mismatch(mapping.getData()));
+
+            MemorySegment pcm = pcmSegment(mapping.getNumSamples() * mapping.getChannels() * 2);
+            long read = SegmentCodec.decode(new ADPCMDecoder(mapping.createDecoderConfig()), mapping.getData(), pcm);
+
+            assertEquals(mapping.getData().byteSize(), read);
+            assertEquals(-1, MemorySegment.ofBuffer(dec.getReadOnlyData()).mismatch(pcm));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "RIFF", "RF64", "BW64" })
+    public void mapsPcmFiles(String riffId) throws IOException {
+        WAVFile pcm  = TestUtils.getClasspathWav("pcm_16bit_8000Hz_mono.wav");
+        Path    file = write(pcm, riffId);
+
+        try (Arena arena = Arena.ofConfined()) {
+            SegmentCodec.Mapping mapping = SegmentCodec.map(file, arena);
+
+            assertEquals(WAVFile.Format.PCM,    mapping.getFormat());
+            assertEquals(pcm.getChannels(),     mapping.getChannels());
+            assertEquals(pcm.getSampleRate(),   mapping.getSampleRate());
+            assertEquals(16,                    mapping.getBitsPerSample());
+            assertEquals(pcm.getNumSamples(),   mapping.getNumSamples());
+            assertEquals(-1, MemorySegment.ofBuffer(pcm.getReadOnlyData()).mismatch(mapping.getData()));
+
+            assertThrows(IllegalStateException.class, mapping::createDecoderConfig);
+        }
+    }
+
+    @Test
+    public void rejectsMalformedFiles() throws IOException {
+        Path file = tempDir.resolve("short.wav");
+        Files.write(file, "RIFF\0\0\0\0WAV".getBytes(StandardCharsets.US_ASCII));
+
+        try (Arena arena = Arena.ofConfined()) {
+            assertThrows(IOException.class, () -> SegmentCodec.map(file, arena));
+
+            Files.write(file, "RF64\0\0\0\0WAVE".getBytes(StandardCharsets.US_ASCII));
+            assertThrows(IOException.class, () -> SegmentCodec.map(file, arena));
+        }
+    }
+
+    /**
+     * Encodes and decodes {@code pcm} with {@link SegmentCodec}, and checks that the results match those of the
+     * buffer-based {@link ADPCMEncoder} and {@link ADPCMDecoder}.
+     */
+    private static void assertRoundTrip(ADPCMEncoderConfig cfg, MemorySegment pcm) throws IOException {
+        final long numSamples = pcm.byteSize() / (cfg.getChannels() * 2);
+        final long outSize    = SegmentCodec.computeOutputSize(cfg, numSamples);
+
+        ByteBuffer expectAdpcm = ByteBuffer.allocate((int) outSize);
+        new ADPCMEncoder(cfg).encode(littleEndian(pcm).asShortBuffer(), expectAdpcm).flip();
+
+        MemorySegment adpcm = MemorySegment.ofArray(new byte[(int) outSize]);
+        assertEquals(outSize, SegmentCodec.encode(new ADPCMEncoder(cfg), pcm, adpcm));
+        assertEquals(-1, MemorySegment.ofBuffer(expectAdpcm).mismatch(adpcm));
+
+        MemorySegment expectPcm = pcmSegment(pcm.byteSize());
+        new ADPCMDecoder(decoderConfig(cfg)).decode(expectAdpcm, littleEndian(expectPcm).asShortBuffer());
+
+        MemorySegment decoded = pcmSegment(pcm.byteSize());
+        assertEquals(outSize, SegmentCodec.decode(new ADPCMDecoder(decoderConfig(cfg)), adpcm, decoded));
+        assertEquals(-1, expectPcm.mismatch(decoded));
+    }
+
+    private static ADPCMDecoderConfig decoderConfig(ADPCMEncoderConfig cfg) {
+        return
+            ADPCMDecoder.configure()
+            .setChannels     (cfg.getChannels())
+            .setSampleRate   (cfg.getSampleRate())
+            .setBlockSize    (cfg.getBlockSize())
+            .setBitsPerSample(cfg.getBitsPerSample())
+            .end();
+    }
+
+    private static MemorySegment pcmSegment(long bytes) {
+        return MemorySegment.ofBuffer(ByteBuffer.allocateDirect((int) bytes));
+    }
+
+    private static ByteBuffer littleEndian(MemorySegment segment) {
+        return segment.asByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Writes {@code wav} to a file in the temporary directory, as a RIFF file, or as an RF64 or BW64 file with a
+     * {@code ds64} chunk.
+     */
+    private Path write(WAVFile wav, String riffId) throws IOException {
+        ByteBuffer data   = wav.getReadOnlyData();
+        WAVHeader  header = wav.getFormat() == WAVFile.Format.PCM
+            ? WAVHeader.forPCM(data.remaining(), wav.getChannels(), wav.getSampleRate())
+            : WAVHeader.forADPCM(
+                wav.getNumSamples(),
+                data.remaining(),
+                wav.getChannels(),
+                wav.getSampleRate(),
+                wav.getBlockSize(),
+                wav.getBitsPerSample()
+            );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header.write(out, !riffId.equals("RIFF"));
+        Channels.newChannel(out).write(data);
+        if (out.size() % 2 != 0) {
+            out.write(0);
+        }
+
+        // an RF64 header, but for the id
+        byte[] bytes = out.toByteArray();
+        System.arraycopy(riffId.getBytes(StandardCharsets.US_ASCII), 0, bytes, 0, 4);
+
+        Path file = tempDir.resolve(riffId+".wav");
+        Files.write(file, bytes);
+        return file;
+    }
+}
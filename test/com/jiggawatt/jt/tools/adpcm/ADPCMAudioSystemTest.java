@@ -0,0 +1,86 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.sound.ADPCMFormatConversionProvider;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class ADPCMAudioSystemTest {
+
+    @Test
+    public void readsAdpcmFileFormat() throws IOException, UnsupportedAudioFileException {
+        try (InputStream in = new BufferedInputStream(TestUtils.openClasspathStream("adpcm_16bit_8000Hz_stereo.wav"))) {
+            AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(in);
+            AudioFormat     format     = fileFormat.getFormat();
+
+            assertEquals(AudioFileFormat.Type.WAVE,                     fileFormat.getType());
+            assertEquals(53127,                                         fileFormat.getFrameLength());
+            assertEquals(ADPCMFormatConversionProvider.IMA_ADPCM,       format.getEncoding());
+            assertEquals(2,                                             format.getChannels());
+            assertEquals(8000f,                                         format.getSampleRate());
+            assertEquals(512, format.getProperty(ADPCMFormatConversionProvider.BLOCK_SIZE_PROPERTY));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings={
+        "16bit_8000Hz_mono.wav",
+        "16bit_8000Hz_stereo.wav",
+        "16bit_44100Hz_mono.wav",
+        "16bit_44100Hz_stereo.wav"
+    })
+    public void decodesThroughAudioSystem(String name) throws IOException, UnsupportedAudioFileException {
+        WAVFile     expectWav = TestUtils.getClasspathWav("dec_"+name);
+        ByteBuffer  expect    = expectWav.getReadOnlyData();
+
+        try (
+            InputStream      in    = new BufferedInputStream(TestUtils.openClasspathStream("adpcm_"+name));
+            AudioInputStream adpcm = AudioSystem.getAudioInputStream(in);
+            AudioInputStream pcm   = AudioSystem.getAudioInputStream(AudioFormat.Encoding.PCM_SIGNED, adpcm)
+        ) {
+            assertEquals(expectWav.getNumSamples(), pcm.getFrameLength());
+            assertFalse(pcm.getFormat().isBigEndian());
+
+            ByteBuffer actual = ByteBuffer.wrap(pcm.readAllBytes());
+            assertEquals(expect, actual);
+        }
+    }
+
+    @Test
+    public void convertsToBigEndian() throws IOException, UnsupportedAudioFileException {
+        WAVFile    expectWav = TestUtils.getClasspathWav("dec_16bit_8000Hz_mono.wav");
+        ByteBuffer expect    = expectWav.getReadOnlyData().order(ByteOrder.LITTLE_ENDIAN);
+
+        try (
+            InputStream      in    = new BufferedInputStream(TestUtils.openClasspathStream("adpcm_16bit_8000Hz_mono.wav"));
+            AudioInputStream adpcm = AudioSystem.getAudioInputStream(in)
+        ) {
+            AudioFormat target = new AudioFormat(8000f, 16, 1, true, true);
+
+            try (AudioInputStream pcm = AudioSystem.getAudioInputStream(target, adpcm)) {
+                ByteBuffer actual = ByteBuffer.wrap(pcm.readAllBytes()).order(ByteOrder.BIG_ENDIAN);
+
+                assertEquals(expect.remaining(), actual.remaining());
+                while (expect.hasRemaining()) {
+                    assertEquals(expect.getShort(), actual.getShort());
+                }
+            }
+        }
+    }
+}
@@ -11,6 +11,7 @@ import java.util.List;
 import static com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig.AUTO_BLOCK_SIZE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
@@ -188,4 +189,20 @@ public class ADPCMEncoderConfigTest {
         assertEquals(src.getNoiseShaping(), cpy.getNoiseShaping());
         assertEquals(src.getBlockSize(),    cpy.getBlockSize());
     }
+
+    @Test
+    public void equalConfigurationsHaveEqualSettings() {
+        ADPCMEncoderConfig src = ADPCMEncoder.configure()
+            .setChannels(1)
+            .setSampleRate(8000)
+            .setBlockSize(256)
+            .end();
+
+        assertEquals(src, ADPCMEncoder.configure(src).end());
+        assertEquals(src.hashCode(), ADPCMEncoder.configure(src).end().hashCode());
+
+        assertNotEquals(src, ADPCMEncoder.configure(src).setNoiseShaping(false).end());
+        assertNotEquals(src, ADPCMEncoder.configure(src).setBitsPerSample(3).end());
+        assertNotEquals(src, ADPCMEncoder.configure(src).setBlockSize(512).end());
+    }
 }
@@ -0,0 +1,226 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that encoding and decoding don't allocate once a codec has been created. Each path is run over a short and a
+ * long input, and the difference in the bytes allocated by the test thread, divided by the difference in blocks, must
+ * stay within budget; this leaves out allocations made once per call, such as the encoder's context.
+ * <p>
+ * The counter is {@code com.sun.management.ThreadMXBean.getCurrentThreadAllocatedBytes}, or, before Java 14,
+ * {@code getThreadAllocatedBytes} with the id of the current thread. The tests run inside this library's module, which
+ * doesn't read {@code jdk.management}, so it is called through a method handle.
+ */
+public class AllocationTest {
+
+    /** The number of bytes the encoder may allocate per block. */
+    private static final long ENCODE_BUDGET = 0;
+    /** The number of bytes the decoder may allocate per block. */
+    private static final long DECODE_BUDGET = 0;
+
+    private static final int SHORT_BLOCKS = 2;
+    private static final int LONG_BLOCKS  = 12;
+    private static final int ATTEMPTS     = 5;
+
+    /** {@code getCurrentThreadAllocatedBytes}, or {@code null} before Java 14. */
+    private static MethodHandle allocatedBytes;
+    /** {@code getThreadAllocatedBytes}, used before Java 14. */
+    private static MethodHandle threadAllocatedBytes;
+
+    @BeforeAll
+    public static void requireAllocationCounter() throws ReflectiveOperationException {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final Class<?>     type;
+
+        try {
+            type = Class.forName("com.sun.management.ThreadMXBean");
+        } catch (ClassNotFoundException e) {
+            assumeTrue(false, "com.sun.management.ThreadMXBean is not available");
+            return;
+        }
+
+        assumeTrue(type.isInstance(threads));
+        assumeTrue((Boolean) type.getMethod("isThreadAllocatedMemorySupported").invoke(threads));
+        type.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(threads, true);
+
+        final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+        try {
+            allocatedBytes = lookup
+                .findVirtual(type, "getCurrentThreadAllocatedBytes", MethodType.methodType(long.class))
+                .bindTo(threads);
+        } catch (NoSuchMethodException e) {
+            // Java 9 to 13
+            threadAllocatedBytes = lookup
+                .findVirtual(type, "getThreadAllocatedBytes", MethodType.methodType(long.class, long.class))
+                .bindTo(threads);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("configurations")
+    public void encodingDoesNotAllocatePerBlock(int channels, int sampleRate, int bits, boolean shaping)
+            throws IOException {
+        final ADPCMEncoderConfig cfg     = configure(channels, sampleRate, bits, shaping);
+        final ADPCMEncoder       encoder = new ADPCMEncoder(cfg);
+        final short[]            pcm     = noise(LONG_BLOCKS * cfg.getSamplesPerBlock() * channels);
+        final byte[]             adpcm   = new byte[cfg.computeOutputSize(LONG_BLOCKS * cfg.getSamplesPerBlock())];
+        final ShortBuffer        in      = ShortBuffer.wrap(pcm);
+        final ByteBuffer         out     = ByteBuffer.wrap(adpcm);
+
+        assertWithinBudget("array encode", ENCODE_BUDGET, blocks ->
+            encoder.encode(pcm, 0, blocks * cfg.getSamplesPerBlock() * channels, adpcm, 0));
+
+        assertWithinBudget("buffer encode", ENCODE_BUDGET, blocks -> {
+            in.clear().limit(blocks * cfg.getSamplesPerBlock() * channels);
+            encoder.encode(in, out.clear(), true);
+        });
+
+        final short[][] planar = new short[channels][LONG_BLOCKS * cfg.getSamplesPerBlock()];
+
+        assertWithinBudget("planar encode", ENCODE_BUDGET, blocks ->
+            encoder.encode(planar, 0, blocks * cfg.getSamplesPerBlock(), adpcm, 0));
+    }
+
+    @ParameterizedTest
+    @MethodSource("configurations")
+    public void decodingDoesNotAllocatePerBlock(int channels, int sampleRate, int bits, boolean shaping)
+            throws IOException {
+        final ADPCMEncoderConfig ecfg   = configure(channels, sampleRate, bits, shaping);
+        final int                length = LONG_BLOCKS * ecfg.getSamplesPerBlock() * channels;
+        final short[]            pcm    = new short[length];
+        final byte[]             adpcm  = new byte[ecfg.computeOutputSize(LONG_BLOCKS * ecfg.getSamplesPerBlock())];
+
+        new ADPCMEncoder(ecfg).encode(noise(length), 0, length, adpcm, 0);
+
+        final ADPCMDecoder decoder =
+            new ADPCMDecoder(
+                ADPCMDecoder.configure()
+                .setChannels     (channels)
+                .setSampleRate   (sampleRate)
+                .setBlockSize    (ecfg.getBlockSize())
+                .setBitsPerSample(bits)
+                .end()
+            );
+
+        final ByteBuffer  in  = ByteBuffer.wrap(adpcm);
+        final ShortBuffer out = ShortBuffer.wrap(pcm);
+
+        assertWithinBudget("array decode", DECODE_BUDGET, blocks ->
+            decoder.decode(adpcm, 0, pcm, 0, blocks * ecfg.getSamplesPerBlock() * channels));
+
+        assertWithinBudget("buffer decode", DECODE_BUDGET, blocks -> {
+            in.clear().limit(blocks * ecfg.getBlockSize());
+            out.clear().limit(blocks * ecfg.getSamplesPerBlock() * channels);
+            decoder.decode(in, out);
+        });
+
+        final short[][] planar = new short[channels][LONG_BLOCKS * ecfg.getSamplesPerBlock()];
+
+        assertWithinBudget("planar decode", DECODE_BUDGET, blocks ->
+            decoder.decode(adpcm, 0, planar, 0, blocks * ecfg.getSamplesPerBlock()));
+    }
+
+    private static Stream<Arguments> configurations() {
+        final List<Arguments> dst = new ArrayList<>();
+
+        for (int channels = 1; channels <= 2; channels++) {
+            for (int bits = 2; bits <= 5; bits++) {
+                // dynamic noise shaping, static noise shaping (above 64 kHz), and none
+                dst.add(Arguments.of(channels, 44100, bits, true));
+                dst.add(Arguments.of(channels, 96000, bits, true));
+                dst.add(Arguments.of(channels, 44100, bits, false));
+            }
+        }
+
+        return dst.stream();
+    }
+
+    private static void assertWithinBudget(String path, long budgetPerBlock, Run run) throws IOException {
+        // warm up, so class loading and first-call initialization aren't counted
+        run.run(LONG_BLOCKS);
+        run.run(SHORT_BLOCKS);
+
+        // the JIT may allocate on this thread now and then, e.g. when a method is recompiled; such noise doesn't
+        // repeat, whereas an allocation in the codec shows up in every attempt
+        long perBlock = Long.MAX_VALUE;
+
+        for (int i=0; i<ATTEMPTS && perBlock > budgetPerBlock; i++) {
+            final long shortRun = allocated(run, SHORT_BLOCKS);
+            final long longRun  = allocated(run, LONG_BLOCKS);
+
+            perBlock = Math.min(perBlock, (longRun - shortRun) / (LONG_BLOCKS - SHORT_BLOCKS));
+        }
+
+        assertTrue(perBlock <= budgetPerBlock,
+            path+" allocated "+perBlock+" bytes per block; the budget is "+budgetPerBlock);
+    }
+
+    private static long allocated(Run run, int blocks) throws IOException {
+        final long before = allocatedBytes();
+        run.run(blocks);
+        return allocatedBytes() - before;
+    }
+
+    private static long allocatedBytes() {
+        try {
+            return allocatedBytes != null
+                ? (long) allocatedBytes.invokeExact()
+                : (long) threadAllocatedBytes.invokeExact(currentThreadId());
+        } catch (Throwable e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    // only called before Java 14; Thread.getId() isn't deprecated until Java 19, and its replacement, threadId(), isn't
+    // available there
+    @SuppressWarnings("deprecation")
+    private static long currentThreadId() {
+        return Thread.currentThread().getId();
+    }
+
+    private static ADPCMEncoderConfig configure(int channels, int sampleRate, int bits, boolean shaping) {
+        return ADPCMEncoder.configure()
+            .setChannels     (channels)
+            .setSampleRate   (sampleRate)
+            .setBlockSize    (512)
+            .setBitsPerSample(bits)
+            .setNoiseShaping (shaping)
+            .end();
+    }
+
+    private static short[] noise(int length) {
+        final Random  random = new Random(length);
+        final short[] dst    = new short[length];
+
+        for (int i=0; i<length; i++) {
+            dst[i] = (short) (8000 * Math.sin(i * 0.05) + random.nextGaussian() * 2000);
+        }
+
+        return dst;
+    }
+
+    @FunctionalInterface
+    private interface Run {
+        void run(int blocks) throws IOException;
+    }
+}
@@ -0,0 +1,94 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.BatchEncoder;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchEncoderTest {
+
+    @Test
+    public void encodesClipsWithReusedEncoders() throws IOException {
+        WAVFile     pcm   = TestUtils.getClasspathWav("pcm_16bit_8000Hz_mono.wav");
+        ShortBuffer input = pcm.getReadOnlyData().asShortBuffer();
+
+        List<BatchEncoder.Job> jobs   = new ArrayList<>();
+        List<ByteBuffer>       expect = new ArrayList<>();
+
+        // clips of many lengths, most shorter than a block, with two configurations
+        for (int i=0; i<200; i++) {
+            int                length = i % 10 == 0 ? input.remaining() : (i * 37) % 500;
+            ADPCMEncoderConfig cfg    = TestUtils.configureEncoder(pcm, i % 2 == 0 ? 256 : 512).end();
+            ShortBuffer        clip   = input.duplicate().limit(length);
+
+            ByteBuffer out = ByteBuffer.allocate(cfg.computeOutputSize(length));
+
+            jobs.add(new BatchEncoder.Job("clip"+i, clip, cfg));
+            expect.add(new ADPCMEncoder(cfg).encode(clip.duplicate(), out).flip());
+        }
+
+        ForkJoinPool pool    = new ForkJoinPool(4);
+        BatchEncoder encoder = new BatchEncoder(pool);
+
+        try {
+            BatchEncoder.Result result = encoder.encode(jobs.stream());
+
+            assertEquals(200, result.getClipCount());
+            for (int i=0; i<200; i++) {
+                assertEquals(expect.get(i), result.getOutput("clip"+i));
+            }
+
+            // at most one encoder per thread per configuration
+            assertTrue(result.getCreatedEncoders() <= 2 * (pool.getParallelism() + 1), result.toString());
+            assertTrue(result.getSamplesPerSecond() > 0);
+
+            long bytes = expect.stream().mapToLong(ByteBuffer::remaining).sum();
+            assertEquals(bytes, result.getOutputBytes());
+
+            // a second batch reuses the encoders of the first
+            BatchEncoder.Result again = encoder.encode(jobs.stream());
+
+            assertEquals(result.getOutputs(), again.getOutputs());
+            assertTrue(again.getCreatedEncoders() <= result.getCreatedEncoders(), again.toString());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void acceptsFiles() throws IOException {
+        WAVFile            pcm    = TestUtils.getClasspathWav("pcm_16bit_44100Hz_stereo.wav");
+        WAVFile            expect = TestUtils.getClasspathWav("adpcm_16bit_44100Hz_stereo.wav");
+        ADPCMEncoderConfig cfg    = TestUtils.configureEncoder(pcm, expect.getBlockSize()).end();
+
+        BatchEncoder.Result result = new BatchEncoder().encode(Stream.of(new BatchEncoder.Job("music", pcm, cfg)));
+
+        assertEquals(expect.getReadOnlyData(), result.getOutput("music"));
+    }
+
+    @Test
+    public void rejectsDuplicateIds() {
+        ADPCMEncoderConfig cfg  = ADPCMEncoder.configure().setChannels(1).end();
+        ShortBuffer        clip = ShortBuffer.allocate(100);
+
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new BatchEncoder().encode(Stream.of(
+                new BatchEncoder.Job("a", clip, cfg),
+                new BatchEncoder.Job("a", clip, cfg)
+            ))
+        );
+    }
+}
@@ -0,0 +1,90 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.BulkDecoder;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BulkDecoderTest {
+
+    private static final List<String> NAMES = Arrays.asList(
+        "16bit_8000Hz_mono.wav",
+        "16bit_8000Hz_stereo.wav",
+        "16bit_44100Hz_mono.wav",
+        "16bit_44100Hz_stereo.wav"
+    );
+
+    @Test
+    public void decodesFiles() throws IOException {
+        List<WAVFile> clips = new ArrayList<>();
+        for (String name : NAMES) {
+            clips.add(TestUtils.getClasspathWav("adpcm_"+name));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<ShortBuffer> actual = new BulkDecoder(pool).decode(clips);
+
+            assertEquals(NAMES.size(), actual.size());
+            for (int i=0; i<NAMES.size(); i++) {
+                ShortBuffer expect = TestUtils.getClasspathWav("dec_"+NAMES.get(i)).getReadOnlyData().asShortBuffer();
+
+                assertTrue(actual.get(i).isDirect());
+                assertEquals(expect, actual.get(i));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void decodesBuffers() throws IOException {
+        WAVFile            adpcm  = TestUtils.getClasspathWav("adpcm_16bit_44100Hz_stereo.wav");
+        ShortBuffer        expect = TestUtils.getClasspathWav("dec_16bit_44100Hz_stereo.wav").getReadOnlyData().asShortBuffer();
+        ADPCMDecoderConfig cfg    = adpcm.createDecoderConfig();
+
+        List<ShortBuffer> actual = new BulkDecoder().decode(
+            Collections.nCopies(3, adpcm.getReadOnlyData()),
+            cfg
+        );
+
+        for (ShortBuffer clip : actual) {
+            // the buffers are decoded with the padding at the end of the last block
+            assertTrue(clip.remaining() >= expect.remaining());
+            assertEquals(expect, clip.limit(expect.remaining()));
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedData() throws IOException {
+        WAVFile    adpcm = TestUtils.getClasspathWav("adpcm_16bit_8000Hz_mono.wav");
+        ByteBuffer data  = adpcm.getReadOnlyData();
+
+        ByteBuffer truncated = data.limit(data.limit() - 3);
+
+        assertThrows(
+            IOException.class,
+            () -> new BulkDecoder().decode(Collections.singletonList(truncated), adpcm.createDecoderConfig())
+        );
+    }
+
+    @Test
+    public void rejectsPcmFiles() throws IOException {
+        WAVFile pcm = TestUtils.getClasspathWav("pcm_16bit_8000Hz_mono.wav");
+
+        assertThrows(IllegalArgumentException.class, () -> new BulkDecoder().decode(Collections.singletonList(pcm)));
+    }
+}
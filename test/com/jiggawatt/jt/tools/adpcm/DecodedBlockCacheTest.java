@@ -0,0 +1,131 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.DecodedBlockCache;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DecodedBlockCacheTest {
+
+    @ParameterizedTest
+    @ValueSource(strings={"16bit_8000Hz_mono.wav", "16bit_44100Hz_stereo.wav"})
+    public void decodesEveryBlock(String name) throws IOException {
+        WAVFile     adpcm  = TestUtils.getClasspathWav("adpcm_"+name);
+        ShortBuffer expect = TestUtils.getClasspathWav("dec_"+name).getReadOnlyData().asShortBuffer();
+
+        DecodedBlockCache cache  = new DecodedBlockCache(1 << 20);
+        ShortBuffer       actual = ShortBuffer.allocate(expect.remaining());
+
+        for (int i=0; actual.hasRemaining(); i++) {
+            actual.put(cache.getBlock(adpcm, i));
+        }
+
+        assertEquals(expect, actual.flip());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void countsHitsAndMisses() throws IOException {
+        WAVFile           adpcm = TestUtils.getClasspathWav("adpcm_16bit_8000Hz_mono.wav");
+        DecodedBlockCache cache = new DecodedBlockCache(1 << 20);
+
+        ShortBuffer first  = cache.getBlock(adpcm, 3);
+        ShortBuffer second = cache.getBlock(adpcm, 3);
+        cache.getBlock(adpcm, 4);
+
+        assertEquals(first, second);
+        assertEquals(1,     cache.getHitCount());
+        assertEquals(2,     cache.getMissCount());
+        assertEquals(1/3.0, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBlocks() throws IOException {
+        WAVFile            adpcm = TestUtils.getClasspathWav("adpcm_16bit_8000Hz_mono.wav");
+        ADPCMDecoderConfig cfg   = adpcm.createDecoderConfig();
+        ByteBuffer         data  = adpcm.getReadOnlyData();
+
+        // room for exactly two blocks in a single segment
+        final int blockBytes = cfg.getSamplesPerBlock() * cfg.getChannels() * 2;
+        DecodedBlockCache cache = new DecodedBlockCache(2 * blockBytes, 1);
+
+        cache.getBlock("clip", 0, data, cfg);
+        cache.getBlock("clip", 1, data, cfg);
+        cache.getBlock("clip", 0, data, cfg);   // block 1 is now the least recently used
+        cache.getBlock("clip", 2, data, cfg);   // evicts block 1
+
+        assertEquals(1,              cache.getEvictionCount());
+        assertEquals(2 * blockBytes, cache.getSizeBytes());
+
+        cache.getBlock("clip", 0, data, cfg);
+        assertEquals(2, cache.getHitCount());
+
+        cache.getBlock("clip", 1, data, cfg);
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getEvictionCount());
+
+        cache.invalidate("clip");
+        assertEquals(0, cache.getSizeBytes());
+    }
+
+    @Test
+    public void rejectsBlockIndexOutOfBounds() throws IOException {
+        WAVFile           adpcm = TestUtils.getClasspathWav("adpcm_16bit_8000Hz_mono.wav");
+        DecodedBlockCache cache = new DecodedBlockCache(1 << 20);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> cache.getBlock(adpcm, -1));
+        assertThrows(IndexOutOfBoundsException.class, () -> cache.getBlock(adpcm, 1 << 20));
+    }
+
+    @Test
+    public void servesConcurrentReaders() throws Exception {
+        WAVFile           adpcm  = TestUtils.getClasspathWav("adpcm_16bit_44100Hz_stereo.wav");
+        ShortBuffer       expect = TestUtils.getClasspathWav("dec_16bit_44100Hz_stereo.wav").getReadOnlyData().asShortBuffer();
+        DecodedBlockCache cache  = new DecodedBlockCache(1 << 16);
+
+        final int samplesPerBlock = adpcm.createDecoderConfig().getSamplesPerBlock() * adpcm.getChannels();
+        final int numBlocks       = (expect.remaining() + samplesPerBlock - 1) / samplesPerBlock;
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t=0; t<4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int n=0; n<4 * numBlocks; n++) {
+                        int i = (n * 7) % numBlocks;
+                        ShortBuffer block = cache.getBlock(adpcm, i);
+                        ShortBuffer slice = expect.duplicate().position(i * samplesPerBlock).limit(
+                            Math.min(expect.limit(), (i + 1) * samplesPerBlock)
+                        );
+                        assertEquals(slice, block);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(cache.getSizeBytes() <= cache.getMaxBytes());
+        assertEquals(16 * numBlocks, cache.getHitCount() + cache.getMissCount());
+    }
+}
@@ -0,0 +1,156 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.impl.CacheKeys;
+import com.jiggawatt.jt.tools.adpcm.util.EncodeCache;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EncodeCacheTest {
+
+    @Test
+    public void servesRepeatedEncodesFromDisk(@TempDir Path dir) throws IOException {
+        WAVFile            pcm    = TestUtils.getClasspathWav("pcm_16bit_44100Hz_stereo.wav");
+        WAVFile            expect = TestUtils.getClasspathWav("adpcm_16bit_44100Hz_stereo.wav");
+        ADPCMEncoderConfig cfg    = TestUtils.configureEncoder(pcm, expect.getBlockSize()).end();
+
+        EncodeCache cache = new EncodeCache(dir, 1 << 24);
+
+        assertEquals(expect, cache.encode(pcm, cfg));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // a new instance sees the entry written by the first
+        EncodeCache other = new EncodeCache(dir, 1 << 24);
+
+        assertEquals(expect, other.encode(pcm, cfg));
+        assertEquals(1, other.getHitCount());
+        assertEquals(0, other.getMissCount());
+        assertEquals(expect.getReadOnlyData().remaining(), other.getSizeBytes());
+    }
+
+    @Test
+    public void keyCoversInputAndConfiguration() throws IOException {
+        WAVFile     pcm   = TestUtils.getClasspathWav("pcm_16bit_8000Hz_mono.wav");
+        ShortBuffer input = pcm.getReadOnlyData().asShortBuffer();
+
+        ADPCMEncoderConfig cfg = TestUtils.configureEncoder(pcm, 256).end();
+        String             key = EncodeCache.computeKey(input, cfg);
+
+        assertEquals(64, key.length());
+        assertEquals(key, EncodeCache.computeKey(input, TestUtils.configureEncoder(pcm, 256).end()));
+
+        assertNotEquals(key, EncodeCache.computeKey(input, TestUtils.configureEncoder(pcm, 512).end()));
+
+        ADPCMEncoderConfig shaped = ADPCMEncoder.configure(cfg).setNoiseShaping(!cfg.getNoiseShaping()).end();
+        ADPCMEncoderConfig bits   = ADPCMEncoder.configure(cfg).setBitsPerSample(3).end();
+
+        assertNotEquals(key, EncodeCache.computeKey(input, shaped));
+        assertNotEquals(key, EncodeCache.computeKey(input, bits));
+
+        ShortBuffer changed = ShortBuffer.allocate(input.remaining()).put(input.duplicate()).flip();
+        changed.put(100, (short) (changed.get(100) + 1));
+
+        assertNotEquals(key, EncodeCache.computeKey(changed, cfg));
+    }
+
+    @Test
+    public void keyCoversLibraryVersion() throws IOException {
+        WAVFile            pcm   = TestUtils.getClasspathWav("pcm_16bit_8000Hz_mono.wav");
+        ShortBuffer        input = pcm.getReadOnlyData().asShortBuffer();
+        ADPCMEncoderConfig cfg   = TestUtils.configureEncoder(pcm, 256).end();
+
+        assertEquals(CacheKeys.compute(input, cfg, CacheKeys.VERSION), EncodeCache.computeKey(input, cfg));
+        assertEquals(CacheKeys.compute(input, cfg, "1.2.0"), CacheKeys.compute(input, cfg, "1.2.0"));
+        assertNotEquals(CacheKeys.compute(input, cfg, "1.2.0"), CacheKeys.compute(input, cfg, "1.2.1"));
+    }
+
+    @Test
+    public void findsLibraryVersionOnEitherPath() {
+        // the tests run on the module path, where the version comes from the module descriptor...
+        Module module = EncodeCache.class.getModule();
+        assertTrue(module.isNamed());
+        assertEquals(module.getDescriptor().rawVersion().get(), CacheKeys.VERSION);
+
+        // ...and the resource that class path users read instead holds the same version
+        assertEquals(CacheKeys.VERSION, CacheKeys.versionOf(ClassLoader.getSystemClassLoader().getUnnamedModule()));
+        assertNotEquals("development", CacheKeys.VERSION);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntries(@TempDir Path dir) throws IOException {
+        WAVFile            pcm   = TestUtils.getClasspathWav("pcm_16bit_8000Hz_mono.wav");
+        ShortBuffer        input = pcm.getReadOnlyData().asShortBuffer();
+        ADPCMEncoderConfig cfg   = TestUtils.configureEncoder(pcm, 256).end();
+        int                size  = cfg.computeOutputSize(pcm.getNumSamples());
+
+        EncodeCache cache = new EncodeCache(dir, 2L * size);
+
+        ShortBuffer a = input;
+        ShortBuffer b = copyWithOffset(input, 1);
+        ShortBuffer c = copyWithOffset(input, 2);
+
+        cache.encode(a, cfg);
+        cache.encode(b, cfg);
+        age(dir, EncodeCache.computeKey(a, cfg), 2000);
+        age(dir, EncodeCache.computeKey(b, cfg), 3000);
+
+        // a hit makes b the most recently used entry
+        cache.encode(b, cfg);
+        cache.encode(c, cfg);
+
+        assertFalse(Files.exists(entry(dir, EncodeCache.computeKey(a, cfg))));
+        assertTrue (Files.exists(entry(dir, EncodeCache.computeKey(b, cfg))));
+        assertTrue (Files.exists(entry(dir, EncodeCache.computeKey(c, cfg))));
+        assertEquals(2L * size, cache.getSizeBytes());
+    }
+
+    @Test
+    public void replacesDamagedEntries(@TempDir Path dir) throws IOException {
+        WAVFile            pcm   = TestUtils.getClasspathWav("pcm_16bit_8000Hz_mono.wav");
+        ShortBuffer        input = pcm.getReadOnlyData().asShortBuffer();
+        ADPCMEncoderConfig cfg   = TestUtils.configureEncoder(pcm, 256).end();
+
+        EncodeCache cache  = new EncodeCache(dir, 1 << 24);
+        ByteBuffer  expect = cache.encode(input, cfg);
+
+        Files.write(entry(dir, EncodeCache.computeKey(input, cfg)), new byte[] { 1, 2, 3 });
+
+        assertEquals(expect, cache.encode(input, cfg));
+        assertEquals(2, cache.getMissCount());
+        assertEquals(expect.remaining(), Files.size(entry(dir, EncodeCache.computeKey(input, cfg))));
+
+        cache.clear();
+        assertEquals(0, cache.getSizeBytes());
+    }
+
+    private static ShortBuffer copyWithOffset(ShortBuffer src, int delta) {
+        ShortBuffer dst = ShortBuffer.allocate(src.remaining());
+        for (int i=src.position(); i<src.limit(); i++) {
+            dst.put((short) (src.get(i) + delta));
+        }
+        return dst.flip();
+    }
+
+    private static Path entry(Path dir, String key) {
+        return dir.resolve(key + ".adpcm");
+    }
+
+    private static void age(Path dir, String key, long seconds) throws IOException {
+        Path path = entry(dir, key);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() - seconds*1000));
+    }
+}
@@ -0,0 +1,190 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.flow.ADPCMDecodingProcessor;
+import com.jiggawatt.jt.tools.adpcm.flow.ADPCMEncodingProcessor;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FlowProcessorTest {
+
+    @ParameterizedTest
+    @ValueSource(strings={"16bit_8000Hz_mono.wav", "16bit_44100Hz_stereo.wav"})
+    public void encodesStream(String name) throws Exception {
+        WAVFile     pcm    = TestUtils.getClasspathWav("pcm_"+name);
+        ByteBuffer  expect = TestUtils.getClasspathWav("adpcm_"+name).getReadOnlyData();
+        ShortBuffer input  = pcm.getReadOnlyData().asShortBuffer();
+
+        ADPCMEncoderConfig cfg =
+            ADPCMEncoder.configure()
+            .setChannels  (pcm.getChannels())
+            .setSampleRate(pcm.getSampleRate())
+            .end();
+
+        ADPCMEncodingProcessor processor = new ADPCMEncodingProcessor(cfg);
+        Collector<ByteBuffer>  collector = new Collector<>();
+        processor.subscribe(collector);
+
+        try (SubmissionPublisher<ShortBuffer> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            for (ShortBuffer chunk : split(input, 1001)) {
+                publisher.submit(chunk);
+            }
+        }
+
+        ByteBuffer actual = ByteBuffer.allocate(expect.remaining());
+        for (ByteBuffer block : collector.result.get(30, TimeUnit.SECONDS)) {
+            assertTrue(block.remaining() <= cfg.getBlockSize());
+            actual.put(block);
+        }
+
+        assertEquals(expect, actual.flip());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings={"16bit_8000Hz_mono.wav", "16bit_44100Hz_stereo.wav"})
+    public void decodesStream(String name) throws Exception {
+        WAVFile    adpcm  = TestUtils.getClasspathWav("adpcm_"+name);
+        ByteBuffer expect = TestUtils.getClasspathWav("dec_"+name).getReadOnlyData();
+
+        ADPCMDecoderConfig cfg =
+            ADPCMDecoder.configure()
+            .setChannels  (adpcm.getChannels())
+            .setSampleRate(adpcm.getSampleRate())
+            .setBlockSize (adpcm.getBlockSize())
+            .end();
+
+        ADPCMDecodingProcessor processor = new ADPCMDecodingProcessor(cfg, adpcm.getNumSamples());
+        Collector<ShortBuffer> collector = new Collector<>();
+        processor.subscribe(collector);
+
+        try (SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            for (ByteBuffer chunk : split(adpcm.getReadOnlyData(), 333)) {
+                publisher.submit(chunk);
+            }
+        }
+
+        ShortBuffer actual = ShortBuffer.allocate(expect.remaining() / 2);
+        for (ShortBuffer block : collector.result.get(30, TimeUnit.SECONDS)) {
+            actual.put(block);
+        }
+
+        assertEquals(expect.asShortBuffer(), actual.flip());
+    }
+
+    @Test
+    public void honorsDemand() throws Exception {
+        WAVFile adpcm = TestUtils.getClasspathWav("adpcm_16bit_8000Hz_mono.wav");
+
+        ADPCMDecoderConfig cfg =
+            ADPCMDecoder.configure()
+            .setChannels  (adpcm.getChannels())
+            .setSampleRate(adpcm.getSampleRate())
+            .setBlockSize (adpcm.getBlockSize())
+            .end();
+
+        // each chunk holds a single block
+        List<ByteBuffer> chunks = split(adpcm.getReadOnlyData(), cfg.getBlockSize());
+        long[] upstreamRequested = new long[1];
+
+        ADPCMDecodingProcessor processor = new ADPCMDecodingProcessor(cfg);
+        processor.onSubscribe(new Flow.Subscription() {
+            private int next;
+
+            @Override
+            public void request(long n) {
+                upstreamRequested[0] += n;
+                while (n-- > 0 && next < chunks.size()) {
+                    processor.onNext(chunks.get(next++));
+                }
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+
+        List<ShortBuffer> received = new ArrayList<>();
+        Flow.Subscription[] subscription = new Flow.Subscription[1];
+        processor.subscribe(new Flow.Subscriber<ShortBuffer>() {
+            @Override public void onSubscribe(Flow.Subscription s) { subscription[0] = s; }
+            @Override public void onNext(ShortBuffer item)         { received.add(item); }
+            @Override public void onError(Throwable throwable)     {}
+            @Override public void onComplete()                     {}
+        });
+
+        assertEquals(0, upstreamRequested[0]);
+
+        subscription[0].request(2);
+        assertEquals(2, received.size());
+        assertEquals(2, upstreamRequested[0]);
+
+        subscription[0].request(1);
+        assertEquals(3, received.size());
+        assertEquals(3, upstreamRequested[0]);
+    }
+
+    private static List<ShortBuffer> split(ShortBuffer src, int size) {
+        List<ShortBuffer> out = new ArrayList<>();
+        for (int i=0; i<src.limit(); i+=size) {
+            out.add(src.duplicate().position(i).limit(Math.min(i+size, src.limit())).slice());
+        }
+        return out;
+    }
+
+    private static List<ByteBuffer> split(ByteBuffer src, int size) {
+        List<ByteBuffer> out = new ArrayList<>();
+        for (int i=0; i<src.limit(); i+=size) {
+            out.add(src.duplicate().position(i).limit(Math.min(i+size, src.limit())).slice());
+        }
+        return out;
+    }
+
+    /**
+     * Requests one item at a time and collects everything it receives.
+     */
+    private static final class Collector<T> implements Flow.Subscriber<T> {
+        final CompletableFuture<List<T>> result = new CompletableFuture<>();
+        final List<T> items = new ArrayList<>();
+
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            subscription = s;
+            s.request(1);
+        }
+
+        @Override
+        public void onNext(T item) {
+            items.add(item);
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(items);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.IncrementalEncoder;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IncrementalEncoderTest {
+
+    private static final String FILE = "pcm_16bit_8000Hz_stereo.wav";
+
+    @ParameterizedTest
+    @ValueSource(booleans = { true, false })
+    public void reencodesEditedRegion(boolean noiseShaping) throws IOException {
+        WAVFile            pcm = TestUtils.getClasspathWav(FILE);
+        ADPCMEncoderConfig cfg = TestUtils.configureEncoder(pcm, 512).setNoiseShaping(noiseShaping).end();
+        short[]            src = samples(pcm);
+
+        IncrementalEncoder encoder = new IncrementalEncoder(cfg, ShortBuffer.wrap(src));
+        assertEquals(encode(cfg, src), encoder.getData());
+
+        // silence a short region in the middle of the track
+        short[] edited = src.clone();
+        Arrays.fill(edited, edited.length / 2, edited.length / 2 + 600, (short) 0);
+
+        IncrementalEncoder.Update update = encoder.update(ShortBuffer.wrap(edited));
+
+        assertEquals(encode(cfg, edited), encoder.getData());
+        assertTrue(update.getFirstBlock() > 0, update.toString());
+        assertTrue(update.getFirstBlock() + update.getEncodedBlocks() < update.getTotalBlocks(), update.toString());
+
+        // nothing changed
+        update = encoder.update(ShortBuffer.wrap(edited));
+
+        assertEquals(0, update.getEncodedBlocks());
+        assertEquals(encode(cfg, edited), encoder.getData());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { -3, -1, 1, 2 })
+    public void reencodesWholeBlockInsertionsAndDeletions(int blocks) throws IOException {
+        WAVFile            pcm    = TestUtils.getClasspathWav(FILE);
+        ADPCMEncoderConfig cfg    = TestUtils.configureEncoder(pcm, 512).setNoiseShaping(true).end();
+        short[]            src    = samples(pcm);
+        int                values = cfg.getSamplesPerBlock() * cfg.getChannels();
+        int                at     = 5 * values;
+
+        short[] edited;
+        if (blocks > 0) {
+            edited = new short[src.length + blocks * values];
+            System.arraycopy(src, 0, edited, 0, at);
+            Arrays.fill(edited, at, at + blocks * values, (short) 1000);
+            System.arraycopy(src, at, edited, at + blocks * values, src.length - at);
+        } else {
+            edited = new short[src.length + blocks * values];
+            System.arraycopy(src, 0, edited, 0, at);
+            System.arraycopy(src, at - blocks * values, edited, at, edited.length - at);
+        }
+
+        IncrementalEncoder        encoder = new IncrementalEncoder(cfg, ShortBuffer.wrap(src));
+        IncrementalEncoder.Update update  = encoder.update(ShortBuffer.wrap(edited));
+
+        assertEquals(encode(cfg, edited), encoder.getData());
+        assertEquals(edited.length / cfg.getChannels(), encoder.getNumSamples());
+        assertTrue(update.getFirstBlock() + update.getEncodedBlocks() < update.getTotalBlocks(), update.toString());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { -1000, -1, 1, 1000 })
+    public void reencodesToEndWhenLengthChanges(int frames) throws IOException {
+        WAVFile            pcm = TestUtils.getClasspathWav(FILE);
+        ADPCMEncoderConfig cfg = TestUtils.configureEncoder(pcm, 512).setNoiseShaping(true).end();
+        short[]            src = samples(pcm);
+
+        // grow or shrink the track at its end, and edit its start
+        short[] edited = Arrays.copyOf(src, src.length + frames * cfg.getChannels());
+        edited[0]++;
+
+        IncrementalEncoder encoder = new IncrementalEncoder(cfg, ShortBuffer.wrap(src));
+        encoder.update(ShortBuffer.wrap(edited));
+
+        WAVFile expect = WAVFile.fromADPCMBuffer(encode(cfg, edited), edited.length / cfg.getChannels(), cfg);
+
+        assertEquals(encode(cfg, edited), encoder.getData());
+        assertEquals(expect, encoder.toWAVFile());
+
+        // append to the end
+        short[] appended = Arrays.copyOf(edited, edited.length + 2 * cfg.getSamplesPerBlock() * cfg.getChannels());
+        IncrementalEncoder.Update update = encoder.update(ShortBuffer.wrap(appended));
+
+        assertEquals(encode(cfg, appended), encoder.getData());
+        assertTrue(update.getFirstBlock() >= update.getTotalBlocks() - 4, update.toString());
+    }
+
+    private static short[] samples(WAVFile pcm) {
+        ShortBuffer data = pcm.getReadOnlyData().asShortBuffer();
+        short[]     dst  = new short[data.remaining()];
+        data.get(dst);
+        return dst;
+    }
+
+    private static ByteBuffer encode(ADPCMEncoderConfig cfg, short[] pcm) throws IOException {
+        int    numSamples = pcm.length / cfg.getChannels();
+        byte[] dst        = new byte[cfg.computeOutputSize(numSamples)];
+
+        new ADPCMEncoder(cfg).encode(pcm, 0, pcm.length, dst, 0);
+
+        return ByteBuffer.wrap(dst);
+    }
+}
@@ -0,0 +1,139 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.cli.Main;
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MainTest {
+
+    private static final String[] FILES = { "pcm_16bit_8000Hz_mono.wav", "pcm_16bit_8000Hz_stereo.wav" };
+
+    @Test
+    public void convertsDirectoryTrees(@TempDir Path dir) throws IOException {
+        Path pcm     = dir.resolve("pcm");
+        Path adpcm   = dir.resolve("adpcm");
+        Path decoded = dir.resolve("decoded");
+
+        copy(FILES[0], pcm.resolve(FILES[0]));
+        copy(FILES[1], pcm.resolve("sub").resolve(FILES[1]));
+
+        Result result = run("encode", "--threads", "2", "--block-size", "512", pcm.toString(), adpcm.toString());
+        assertEquals(Main.EXIT_OK, result.code, result.err);
+        assertTrue(result.out.contains("2 converted, 0 up to date, 0 failed"), result.out);
+
+        for (String name : FILES) {
+            Path    rel    = name.equals(FILES[0]) ? Paths.get(name) : Paths.get("sub", name);
+            WAVFile input  = TestUtils.getClasspathWav(name);
+            WAVFile output = WAVFile.fromFile(adpcm.resolve(rel));
+
+            ADPCMEncoderConfig cfg =
+                ADPCMEncoder.configure()
+                .setChannels  (input.getChannels())
+                .setSampleRate(input.getSampleRate())
+                .setBlockSize (512)
+                .end();
+
+            ByteBuffer encoded = ByteBuffer.allocate(cfg.computeOutputSize(input.getNumSamples()));
+            new ADPCMEncoder(cfg).encode(input.getReadOnlyData().asShortBuffer(), encoded).flip();
+
+            assertEquals(WAVFile.fromADPCMBuffer(encoded, input.getNumSamples(), cfg), output);
+
+            // streamed decoding matches decoding in memory
+            assertEquals(Main.EXIT_OK, run("decode", adpcm.resolve(rel).toString(), decoded.resolve(name).toString()).code);
+
+            ShortBuffer expect = ShortBuffer.allocate(input.getNumSamples() * input.getChannels());
+            new ADPCMDecoder(output.createDecoderConfig()).decode(output.getReadOnlyData(), expect);
+
+            WAVFile pcmOut = WAVFile.fromFile(decoded.resolve(name));
+            assertEquals(expect.flip(), pcmOut.getReadOnlyData().asShortBuffer());
+        }
+
+        // outputs newer than their inputs are skipped
+        result = run("encode", "--block-size", "512", pcm.toString(), adpcm.toString());
+        assertTrue(result.out.contains("0 converted, 2 up to date, 0 failed"), result.out);
+
+        result = run("encode", "--force", "--block-size", "512", pcm.toString(), adpcm.toString());
+        assertTrue(result.out.contains("2 converted, 0 up to date, 0 failed"), result.out);
+    }
+
+    @Test
+    public void reportsFailedFiles(@TempDir Path dir) throws IOException {
+        Path in = dir.resolve("in");
+        copy("adpcm_16bit_8000Hz_mono.wav", in.resolve("a.wav"));
+        copy(FILES[0], in.resolve("b.wav"));
+
+        Result result = run("encode", in.toString(), dir.resolve("out").toString());
+
+        assertEquals(Main.EXIT_FAILED, result.code);
+        assertTrue(result.out.contains("1 converted, 0 up to date, 1 failed"), result.out);
+        assertTrue(result.err.contains("a.wav"), result.err);
+    }
+
+    @Test
+    public void benchmarksSettings(@TempDir Path dir) throws IOException {
+        copy(FILES[0], dir.resolve(FILES[0]));
+
+        Result result = run("bench", "--block-sizes", "256,1024", "--iterations", "1", dir.toString());
+
+        assertEquals(Main.EXIT_OK, result.code, result.err);
+        assertTrue(result.out.contains("1 files"), result.out);
+        assertEquals(6, result.out.split("\n").length, result.out);
+    }
+
+    @Test
+    public void rejectsMalformedCommandLines() {
+        assertEquals(Main.EXIT_USAGE, run().code);
+        assertEquals(Main.EXIT_USAGE, run("transcode", "a", "b").code);
+        assertEquals(Main.EXIT_USAGE, run("encode", "a").code);
+        assertEquals(Main.EXIT_USAGE, run("encode", "--block-size", "300", "a", "b").code);
+        assertEquals(Main.EXIT_USAGE, run("encode", "--threads").code);
+        assertEquals(Main.EXIT_USAGE, run("bench", "--colour", "a").code);
+    }
+
+    private static void copy(String resource, Path dst) throws IOException {
+        Files.createDirectories(dst.getParent());
+        try (InputStream in = TestUtils.openClasspathStream(resource)) {
+            Files.copy(in, dst);
+        }
+    }
+
+    private static Result run(String... args) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        try {
+            int code = Main.run(args, new PrintStream(out, true, "UTF-8"), new PrintStream(err, true, "UTF-8"));
+            return new Result(code, out.toString("UTF-8"), err.toString("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static final class Result {
+        final int    code;
+        final String out;
+        final String err;
+
+        Result(int code, String out, String err) {
+            this.code = code;
+            this.out  = out;
+            this.err  = err;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.jiggawatt.jt.tools.adpcm;
+
+import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.util.SegmentedEncoder;
+import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SegmentedEncoderTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"16bit_8000Hz_mono.wav", "16bit_44100Hz_stereo.wav", "16bit_88200Hz_stereo.wav"})
+    public void fullWarmUpMatchesSequentialEncode(String name) throws IOException {
+        WAVFile            pcm   = TestUtils.getClasspathWav("pcm_"+name);
+        ShortBuffer        input = pcm.getReadOnlyData().asShortBuffer();
+        ADPCMEncoderConfig cfg   = TestUtils.configureEncoder(pcm).setNoiseShaping(true).end();
+
+        ByteBuffer expect = new ADPCMEncoder(cfg).encode(input.duplicate(), ByteBuffer.allocate(cfg.computeOutputSize(input)));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SegmentedEncoder encoder = new SegmentedEncoder(cfg, Integer.MAX_VALUE, pool);
+            ByteBuffer       actual  = encoder.encode(input.duplicate(), ByteBuffer.allocate(cfg.computeOutputSize(input)), 7);
+
+            assertFalse(actual.hasRemaining());
+            assertEquals(expect.flip(), actual.flip());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void warmUpReducesDivergence() throws IOException {
+        WAVFile            pcm   = TestUtils.getClasspathWav("pcm_16bit_44100Hz_stereo.wav");
+        ShortBuffer        input = pcm.getReadOnlyData().asShortBuffer();
+        ADPCMEncoderConfig cfg   = TestUtils.configureEncoder(pcm).setNoiseShaping(true).end();
+
+        SegmentedEncoder.Divergence cold = new SegmentedEncoder(cfg, 0).measureDivergence(input, 8);
+        SegmentedEncoder.Divergence warm = new SegmentedEncoder(cfg, 8).measureDivergence(input, 8);
+
+        assertFalse(cold.isIdentical());
+        assertTrue (warm.getDifferingBytes() <= cold.getDifferingBytes());
+        assertTrue (warm.getRmsSampleError() <= cold.getRmsSampleError());
+        assertEquals(input.position(), 0);
+    }
+
+    @Test
+    public void singleSegmentIsIdentical() throws IOException {
+        WAVFile            pcm   = TestUtils.getClasspathWav("pcm_16bit_8000Hz_stereo.wav");
+        ShortBuffer        input = pcm.getReadOnlyData().asShortBuffer();
+        ADPCMEncoderConfig cfg   = TestUtils.configureEncoder(pcm).setNoiseShaping(true).end();
+
+        SegmentedEncoder.Divergence divergence = new SegmentedEncoder(cfg, 0).measureDivergence(input, 1);
+
+        assertTrue  (divergence.isIdentical());
+        assertEquals(0, divergence.getMaxSampleError());
+    }
+
+    @Test
+    public void rejectsSmallOutputBuffer() throws IOException {
+        WAVFile            pcm   = TestUtils.getClasspathWav("pcm_16bit_8000Hz_mono.wav");
+        ShortBuffer        input = pcm.getReadOnlyData().asShortBuffer();
+        ADPCMEncoderConfig cfg   = TestUtils.configureEncoder(pcm).setNoiseShaping(true).end();
+
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new SegmentedEncoder(cfg, 4).encode(input, ByteBuffer.allocate(cfg.computeOutputSize(input) - 1))
+        );
+    }
+}
@@ -1,14 +1,23 @@
 package com.jiggawatt.jt.tools.adpcm;
 
 import com.jiggawatt.jt.tools.adpcm.data.TestUtils;
+import com.jiggawatt.jt.tools.adpcm.impl.WAVHeader;
 import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import static com.jiggawatt.jt.tools.adpcm.util.WAVFile.Format.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class WAVHeaderTest {
 
@@ -67,4 +76,104 @@ public class WAVHeaderTest {
             assertEquals(512,       file.getBlockSize());
         }
     }
+
+    @Test
+    public void writesSmallFilesAsRiff() throws IOException {
+        assertEquals("RIFF", formatId(WAVHeader.forPCM(1000, 2, 44100)));
+    }
+
+    @Test
+    public void writesAndReadsLargeAdpcmHeaderAsRf64() throws IOException {
+        // 5 GB of stereo ADPCM; the sample count doesn't fit in 32 bits either
+        final long blocks = 10_000_000L;
+        WAVHeader header = WAVHeader.forADPCM(blocks * 505, blocks * 512, 2, 44100, 512, 4);
+
+        byte[] bytes = write(header, false);
+        assertEquals("RF64", formatId(bytes));
+
+        WAVHeader actual = WAVHeader.read(new ByteArrayInputStream(bytes));
+        assertEquals(header,         actual);
+        assertEquals(blocks * 505,   actual.getNumSamples());
+        assertEquals(blocks * 512,   actual.getDataSize());
+    }
+
+    @Test
+    public void writesAndReadsLargePcmHeaderAsRf64() throws IOException {
+        WAVHeader header = WAVHeader.forPCM(6_000_000_000L, 2, 44100);
+
+        byte[] bytes = write(header, false);
+        assertEquals("RF64", formatId(bytes));
+
+        WAVHeader actual = WAVHeader.read(new ByteArrayInputStream(bytes));
+        assertEquals(header,            actual);
+        assertEquals(1_500_000_000L,    actual.getNumSamples());
+        assertEquals(6_000_000_000L,    actual.getDataSize());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "pcm_16bit_8000Hz_mono.wav", "adpcm_16bit_8000Hz_stereo.wav" })
+    public void readsRf64Files(String name) throws IOException {
+        WAVFile expect = TestUtils.getClasspathWav(name);
+        expect = expect.getFormat() == PCM
+            ? WAVFile.fromPCMBuffer(expect.getReadOnlyData(), expect.getChannels(), expect.getSampleRate())
+            : WAVFile.fromADPCMBuffer(
+                expect.getReadOnlyData(),
+                expect.getNumSamples(),
+                expect.getChannels(),
+                expect.getSampleRate(),
+                expect.getBlockSize(),
+                expect.getBitsPerSample()
+            );
+
+        ByteBuffer data = expect.getReadOnlyData();
+        WAVHeader  header = expect.getFormat() == PCM
+            ? WAVHeader.forPCM(data.remaining(), expect.getChannels(), expect.getSampleRate())
+            : WAVHeader.forADPCM(
+                expect.getNumSamples(),
+                data.remaining(),
+                expect.getChannels(),
+                expect.getSampleRate(),
+                expect.getBlockSize(),
+                expect.getBitsPerSample()
+            );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header.write(out, true);
+        while (data.hasRemaining()) {
+            out.write(data.get());
+        }
+        if (out.size() % 2 != 0) {
+            out.write(0);
+        }
+
+        byte[] file = out.toByteArray();
+        assertEquals("RF64", formatId(file));
+
+        assertEquals(expect, WAVFile.fromStream(new ByteArrayInputStream(file)));
+        assertEquals(expect, WAVFile.fromBuffer(ByteBuffer.wrap(file)));
+        assertEquals(header, WAVHeader.read(new ByteArrayInputStream(file)));
+    }
+
+    @Test
+    public void rejectsFilesTooLargeForMemory() {
+        // a RIFF header claiming almost 4 GB, with no data behind it
+        byte[] file = { 'R', 'I', 'F', 'F', (byte) 0xf0, (byte) 0xff, (byte) 0xff, (byte) 0xff, 'W', 'A', 'V', 'E' };
+
+        IOException e = assertThrows(IOException.class, () -> WAVFile.fromStream(new ByteArrayInputStream(file)));
+        assertTrue(e.getMessage().contains("too large"), e.getMessage());
+    }
+
+    private static byte[] write(WAVHeader header, boolean rf64) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header.write(out, rf64);
+        return out.toByteArray();
+    }
+
+    private static String formatId(WAVHeader header) throws IOException {
+        return formatId(write(header, false));
+    }
+
+    private static String formatId(byte[] file) {
+        return new String(file, 0, 4, StandardCharsets.US_ASCII);
+    }
 }
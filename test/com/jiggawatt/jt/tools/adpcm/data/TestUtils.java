@@ -1,5 +1,7 @@
 package com.jiggawatt.jt.tools.adpcm.data;
 
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoder;
+import com.jiggawatt.jt.tools.adpcm.ADPCMEncoderConfig;
 import com.jiggawatt.jt.tools.adpcm.util.WAVFile;
 
 import java.io.FileNotFoundException;
@@ -24,4 +26,22 @@ public class TestUtils {
         }
         return in;
     }
+
+    /**
+     * Starts an encoder configuration with the channel count and sample rate of the given PCM file, and the default
+     * block size for them.
+     */
+    public static ADPCMEncoderConfig.Builder configureEncoder(WAVFile pcm) {
+        return ADPCMEncoder.configure()
+            .setChannels  (pcm.getChannels())
+            .setSampleRate(pcm.getSampleRate());
+    }
+
+    /**
+     * Starts an encoder configuration with the channel count and sample rate of the given PCM file, and the given
+     * block size.
+     */
+    public static ADPCMEncoderConfig.Builder configureEncoder(WAVFile pcm, int blockSize) {
+        return configureEncoder(pcm).setBlockSize(blockSize);
+    }
 }